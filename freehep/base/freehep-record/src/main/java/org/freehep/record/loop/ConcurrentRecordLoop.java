@@ -206,17 +206,20 @@ public class ConcurrentRecordLoop extends DefaultRecordLoop {
         
         _consumerExecutor.execute(new Runnable() {
           public void run() {
-            consumeRecord(record);
-            synchronized (_stateLock) {
-              _consumed++;
-              _totalConsumed++;
-              if (_countableRecords.remove(record)) {
-                _countableConsumed++;
-                _totalCountableConsumed++;
+            try {
+              consumeRecord(record);
+            } finally { // release the worker even if handleClientError() throws
+              synchronized (_stateLock) {
+                _consumed++;
+                _totalConsumed++;
+                if (_countableRecords.remove(record)) {
+                  _countableConsumed++;
+                  _totalCountableConsumed++;
+                }
+                _stateLock.notifyAll(); // wake up keepLoopingConcurrent()
               }
-              _stateLock.notifyAll(); // wake up keepLoopingConcurrent()
+              _semaphore.release();
             }
-            _semaphore.release();
           }
         });
         
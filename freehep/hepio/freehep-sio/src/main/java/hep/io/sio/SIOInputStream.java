@@ -11,12 +11,12 @@ import java.util.Vector;
  */
 public class SIOInputStream extends XDRInputStream {
 
-    private Vector map;
+    private PointerMap map;
     private static final SIORef nullRef = new NullRef();
 
     SIOInputStream(InputStream in) {
         super(in);
-        map = new Vector();
+        map = new PointerMap();
     }
 
     /**
@@ -31,6 +31,16 @@ public class SIOInputStream extends XDRInputStream {
         map.removeAllElements();
     }
 
+    /**
+     * Set a resolver which is called when a pointer is followed whose target
+     * has not yet been read. The resolver is shared by all streams which share
+     * the same pointer map.
+     * @param resolver The resolver, or <code>null</code> to remove it
+     */
+    public void setPointerResolver(PointerResolver resolver) {
+        map.resolver = resolver;
+    }
+
     /**
      * Read an SIO PTAG and associate it with an Object o
      */
@@ -64,6 +74,14 @@ public class SIOInputStream extends XDRInputStream {
         }
 
         public Object getObject() {
+            Object result = lookup();
+            while (result == null && map.resolver != null && map.resolver.resolve()) {
+                result = lookup();
+            }
+            return result;
+        }
+
+        private Object lookup() {
             try {
                 return map.elementAt(index);
             } catch (Exception x) {
@@ -73,6 +91,26 @@ public class SIOInputStream extends XDRInputStream {
         private int index;
     }
 
+    /**
+     * Allows the targets of pointers to be read on demand, for example when
+     * the blocks of a record are decoded lazily.
+     */
+    public interface PointerResolver {
+
+        /**
+         * Called when a pointer is followed whose target has not been read.
+         * @return <code>true</code> if more data was read, in which case the
+         * pointer is looked up again, or <code>false</code> if there is nothing
+         * more to read.
+         */
+        boolean resolve();
+    }
+
+    private static class PointerMap extends Vector {
+
+        private PointerResolver resolver;
+    }
+
     private static class NullRef implements SIORef {
 
         public Object getObject() {
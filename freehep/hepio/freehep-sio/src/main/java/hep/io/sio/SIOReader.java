@@ -79,6 +79,20 @@ public class SIOReader implements Closeable {
         return currentRecord;
     }
 
+    /**
+     * Read the next record from this file into memory, without inflating or
+     * decoding it. The returned record can then be inflated and its blocks read
+     * on any thread, while this reader goes on to read further records.
+     * @return The record that was read.
+     * @throws IOException If an IO exception occurs
+     * @since 2.6
+     */
+    public SIORecordBuffer readRecordBuffer() throws IOException {
+        SIORecordBuffer result = currentRecord.readBuffer();
+        nextRecordPosition = currentRecord.nextRecordPosition();
+        return result;
+    }
+
     /**
      * Read a record from a given position in a file.
      * @param position The position of the record to read
@@ -156,8 +170,25 @@ public class SIOReader implements Closeable {
             skipRemainderOfRecord();
             readRecordHeader();
             startPos = getPosition();
+            return nextRecordPosition();
+        }
+
+        long nextRecordPosition() {
             return startPos + pad(compressedLength);
         }
+
+        SIORecordBuffer readBuffer() throws IOException {
+            skipRemainderOfRecord();
+            readRecordHeader();
+            startPos = getPosition();
+            byte[] data = new byte[compressedLength];
+            if (xdr instanceof XDRInputStream) {
+                ((XDRInputStream) xdr).clearReadLimit();
+            }
+            xdr.readFully(data);
+            blocksRead = true;
+            return new SIORecordBuffer(name, compressed, uncompressedLength, data);
+        }
         private int pad(int size) {
             int r = size % 4;
             if (r == 0) {
@@ -258,7 +289,7 @@ public class SIOReader implements Closeable {
         }
     }
 
-    private static class SIOBlockImpl implements SIOBlock {
+    static class SIOBlockImpl implements SIOBlock {
 
         private String name;
         private int recordLength;
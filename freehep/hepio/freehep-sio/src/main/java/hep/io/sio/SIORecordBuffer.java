@@ -0,0 +1,103 @@
+package hep.io.sio;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An SIO record which has been read into memory by
+ * {@link SIOReader#readRecordBuffer()}. Unlike records returned by
+ * {@link SIOReader#readRecord()}, a record buffer remains valid after further
+ * records are read, so records can be inflated and split into blocks on
+ * other threads while reading continues. Each record buffer should only be
+ * used by one thread at a time.
+ * @since 2.6
+ */
+public class SIORecordBuffer implements SIORecord {
+
+    private static final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+    private final String name;
+    private final int uncompressedLength;
+    private boolean compressed;
+    private byte[] data;
+    private SIOReader.SIOBlockImpl currentBlock;
+
+    SIORecordBuffer(String name, boolean compressed, int uncompressedLength, byte[] data) {
+        this.name = name;
+        this.compressed = compressed;
+        this.uncompressedLength = uncompressedLength;
+        this.data = data;
+    }
+
+    public String getRecordName() {
+        return name;
+    }
+
+    public int getRecordLength() {
+        return uncompressedLength;
+    }
+
+    /**
+     * Test if the record data is still compressed.
+     * @return <code>true</code> if the record has not yet been inflated.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Inflate the record data if it is compressed. This is done automatically
+     * when the first block is read, but may be called explicitly to do the
+     * work on a different thread.
+     * @throws IOException If the compressed data is corrupt.
+     */
+    public void inflate() throws IOException {
+        if (!compressed) {
+            return;
+        }
+        Inflater inf = inflater.get();
+        inf.reset();
+        inf.setInput(data);
+        byte[] result = new byte[uncompressedLength];
+        try {
+            int n = 0;
+            while (n < result.length) {
+                int l = inf.inflate(result, n, result.length - n);
+                if (l == 0 && (inf.finished() || inf.needsInput() || inf.needsDictionary())) {
+                    throw new IOException("Record " + name + " inflated to " + n + " bytes, expected " + uncompressedLength);
+                }
+                n += l;
+            }
+        } catch (DataFormatException x) {
+            IOException io = new IOException("Corrupt compressed record " + name);
+            io.initCause(x);
+            throw io;
+        }
+        data = result;
+        compressed = false;
+    }
+
+    /**
+     * Get the next block
+     * @return the next block, or null if there are no more blocks in the record
+     */
+    public SIOBlock getBlock() throws IOException {
+        if (currentBlock == null) {
+            inflate();
+            currentBlock = new SIOReader.SIOBlockImpl(new SIOInputStream(new ByteArrayInputStream(data)), data.length);
+        }
+        try {
+            currentBlock.nextBlock();
+            return currentBlock;
+        } catch (EOFException x) {
+            return null; // no more blocks
+        }
+    }
+}
@@ -10,13 +10,27 @@ import java.io.DataOutput;
 import java.io.File;
 import java.io.Flushable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
 /**
  * Class for writing out SIO files. Includes limited support for rewriting
  * existing records, which is useful for supporting record based random access.
+ * <p>
+ * By default records are compressed and written by the thread which creates them.
+ * In asynchronous mode (see {@link #setAsynchronous(int, int)}) the content of each
+ * record is still written by the calling thread, but records are compressed by a
+ * pool of threads and written to the output, in order, by a background thread.
  * @author tonyj
  */
 public class SIOWriter implements Closeable, Flushable {
@@ -39,6 +53,36 @@ public class SIOWriter implements Closeable, Flushable {
     private static int bufferSize = Integer.getInteger("hep.io.sio.BufferSize", 32768).intValue();
     private int originalLength; // Gives length of original record when a rewrite is in progress
     private long originalPosition; // Gives position of next record when a rewrite is in progress
+    private RecordListener listener;
+    private boolean recordAsync; // current record is to be compressed and written asynchronously
+    private ExecutorService compressors;
+    private ExecutorService output;
+    private Semaphore pending;
+    private int maxPending;
+    private volatile IOException asyncError;
+    private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater();
+        }
+    };
+
+    /**
+     * Notified when each record has been written.
+     * @since 2.6
+     */
+    public interface RecordListener {
+
+        /**
+         * Called after a record is written, in the order the records are written.
+         * In asynchronous mode this is called by the background output thread.
+         * Not called for rewritten records or reserved space.
+         * @param name The name of the record
+         * @param position The position of the record in the file
+         * @param length The number of bytes written for the record, including its header and padding
+         */
+        void recordWritten(String name, long position, long length);
+    }
 
     /** Creates an SIOWriter which writes to an OutputStream. The resulting SIOWriter
      will not support random access.
@@ -68,12 +112,60 @@ public class SIOWriter implements Closeable, Flushable {
     public SIOWriter(File file) throws IOException {
         this.xdr = new XDRBufferedRandomAccessFile(file, false, bufferSize);
     }
+    /**
+     * Switch to asynchronous mode, in which records are compressed by a pool of threads
+     * and written to the output in order by a background thread. At most
+     * <code>maxPendingRecords</code> records may be waiting to be compressed or written;
+     * when this limit is reached {@link #createRecord(String, boolean)} blocks until a
+     * record has been written.
+     * <p>
+     * In asynchronous mode the position of a record is not known when it is created; use
+     * a {@link RecordListener} to obtain it. An error writing a record is reported by
+     * the next call to createRecord, flush or close. Rewriting records and reserving
+     * space are still supported, but first wait for all pending records to be written.
+     * @param threads The number of compression threads, or zero to return to synchronous mode
+     * @param maxPendingRecords The maximum number of records waiting to be written
+     * @throws IOException If an error occurs writing pending records
+     * @since 2.6
+     */
+    public void setAsynchronous(int threads, int maxPendingRecords) throws IOException {
+        if (threads < 0 || (threads > 0 && maxPendingRecords < 1)) {
+            throw new IllegalArgumentException("Invalid asynchronous settings");
+        }
+        flushRecord();
+        shutdownAsync();
+        if (threads > 0) {
+            compressors = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("SIOWriter-deflate-"));
+            output = Executors.newSingleThreadExecutor(new DaemonThreadFactory("SIOWriter-output-"));
+            maxPending = maxPendingRecords;
+            pending = new Semaphore(maxPendingRecords);
+        }
+    }
+
+    /**
+     * Test if the writer is in asynchronous mode
+     * @see #setAsynchronous(int, int)
+     * @since 2.6
+     */
+    public boolean isAsynchronous() {
+        return output != null;
+    }
+
+    /**
+     * Set a listener to be notified as records are written.
+     * @since 2.6
+     */
+    public void setRecordListener(RecordListener listener) {
+        this.listener = listener;
+    }
+
     /**
      * Create a new record.
      * @param name The name if the newly created record.
      * @param compress <code>true</code> if the record should be compressed.
      * @return The position of the record in the file. This position can be used to
-     * rewrite the record later if the writer supports random access.
+     * rewrite the record later if the writer supports random access. In asynchronous 
+     * mode the position is not yet known, and -1 is returned.
      * @throws IOException If an error occurs
      * @see #rewriteRecord(long, boolean)
      * @since 2.1
@@ -81,6 +173,14 @@ public class SIOWriter implements Closeable, Flushable {
 
     public long createRecord(String name, boolean compress) throws IOException {
         flushRecord();
+        if (isAsynchronous()) {
+            checkAsyncError();
+            recordName = name;
+            recordAsync = true;
+            record = new XDROutputStream(recordBytes);
+            recordCompress = compress;
+            return -1;
+        }
         prepareRecord(name, compress);
         return getPosition();
     }
@@ -101,6 +201,7 @@ public class SIOWriter implements Closeable, Flushable {
      */
     public void rewriteRecord(long position, boolean compress) throws IOException {
         flushRecord();
+        drain();
 
         XDRRandomAccessFile raf = checkRandomAccess();
         originalPosition = raf.getFilePointer();
@@ -141,6 +242,7 @@ public class SIOWriter implements Closeable, Flushable {
      */
     public long reserveSpaceForRecord(String name, int size) throws IOException {
         flushRecord();
+        drain();
 
         XDRRandomAccessFile raf = checkRandomAccess();
         long recordPosition = raf.getFilePointer();
@@ -188,6 +290,10 @@ public class SIOWriter implements Closeable, Flushable {
         if (recordName == null) {
             return;
         }
+        if (recordAsync) {
+            flushRecordAsync();
+            return;
+        }
         try {
             flushBlock();
             block.clear();
@@ -202,12 +308,16 @@ public class SIOWriter implements Closeable, Flushable {
                 }
 
             }
+            long position = originalPosition == 0 && listener != null ? getPosition() : -1;
             writeRecordHeader(recordName,recordCompress ? 1 : 0,
                     originalPosition != 0 ? originalLength : recordBytes.size(),
                     (int) record.getBytesWritten());
             recordBytes.writeTo(xdr);
             recordBytes.reset();
             xdr.pad();
+            if (position >= 0) {
+                listener.recordWritten(recordName, position, getPosition() - position);
+            }
         } finally {
             recordName = null;
             if (originalPosition != 0) {
@@ -218,9 +328,122 @@ public class SIOWriter implements Closeable, Flushable {
         }
     }
 
+    private void flushRecordAsync() throws IOException {
+        final String name = recordName;
+        final boolean compress = recordCompress;
+        final byte[] data;
+        try {
+            flushBlock();
+            block.clear();
+            record.flush();
+            data = recordBytes.toByteArray();
+        } finally {
+            recordName = null;
+            recordAsync = false;
+            recordBytes.reset();
+        }
+        try {
+            pending.acquire();
+        } catch (InterruptedException x) {
+            throw new InterruptedIOException();
+        }
+        final Future<byte[]> compressed;
+        try {
+            compressed = compress ? compressors.submit(new Callable<byte[]>() {
+                public byte[] call() throws IOException {
+                    return deflate(data);
+                }
+            }) : null;
+            output.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (asyncError != null) {
+                            return;
+                        }
+                        byte[] bytes = compressed == null ? data : compressed.get();
+                        long position = getPosition();
+                        writeRecordHeader(name, compress ? 1 : 0, bytes.length, data.length);
+                        xdr.write(bytes);
+                        xdr.pad();
+                        if (listener != null) {
+                            listener.recordWritten(name, position, getPosition() - position);
+                        }
+                    } catch (ExecutionException x) {
+                        setAsyncError(x.getCause());
+                    } catch (Throwable x) {
+                        setAsyncError(x);
+                    } finally {
+                        pending.release();
+                    }
+                }
+            });
+        } catch (RuntimeException x) {
+            pending.release();
+            throw x;
+        }
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        SIOByteArrayOutputStream out = new SIOByteArrayOutputStream();
+        DeflaterOutputStream compressor = new DeflaterOutputStream(out, deflater, 8192);
+        compressor.write(data);
+        compressor.finish();
+        return out.toByteArray();
+    }
+
+    private void setAsyncError(Throwable x) {
+        if (asyncError == null) {
+            asyncError = x instanceof IOException ? (IOException) x : (IOException) new IOException("Error writing record").initCause(x);
+        }
+    }
+
+    private void checkAsyncError() throws IOException {
+        IOException x = asyncError;
+        if (x != null) {
+            throw (IOException) new IOException("Asynchronous write failed").initCause(x);
+        }
+    }
+
+    /**
+     * Wait for all pending asynchronous records to be written
+     */
+    private void drain() throws IOException {
+        if (pending != null) {
+            try {
+                pending.acquire(maxPending);
+            } catch (InterruptedException x) {
+                throw new InterruptedIOException();
+            }
+            pending.release(maxPending);
+            checkAsyncError();
+        }
+    }
+
+    private void shutdownAsync() throws IOException {
+        if (output != null) {
+            try {
+                drain();
+            } finally {
+                compressors.shutdown();
+                output.shutdown();
+                compressors = null;
+                output = null;
+                pending = null;
+            }
+        }
+    }
+
     @Override
     public void close() throws IOException {
         flushRecord();
+        try {
+            shutdownAsync();
+        } catch (IOException x) {
+            xdr.close();
+            throw x;
+        }
         if (xdr instanceof XDRRandomAccessFile)
         {
             XDRRandomAccessFile raf = (XDRRandomAccessFile) xdr;
@@ -232,6 +455,7 @@ public class SIOWriter implements Closeable, Flushable {
     @Override
     public void flush() throws IOException {
         flushRecord();
+        drain();
         xdr.flush();
     }
 
@@ -280,6 +504,22 @@ public class SIOWriter implements Closeable, Flushable {
         recordCompress = compress;
     }
 
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
     private static class SIOByteArrayOutputStream extends ByteArrayOutputStream {
 
         void writeTo(DataOutput out) throws IOException {
@@ -110,6 +110,98 @@ public class SIOTest extends TestCase {
         tempFile.delete();
     }
 
+    public void testRecordBufferCompressed() throws Exception {
+        testRecordBuffer(true);
+    }
+
+    public void testRecordBufferUncompressed() throws Exception {
+        testRecordBuffer(false);
+    }
+
+    private void testRecordBuffer(boolean compress) throws Exception {
+        File tempFile = File.createTempFile("test", "sio");
+        tempFile.deleteOnExit();
+
+        List<Double> values = new ArrayList<Double>();
+        List<Long> recordPos = new ArrayList<Long>();
+        writeFile(false, tempFile, compress, recordPos, values);
+
+        // Read all the records before decoding any of them
+        SIOReader reader = new SIOReader(tempFile);
+        List<SIORecordBuffer> records = new ArrayList<SIORecordBuffer>();
+        for (int i = 0; i < 10; i++) {
+            records.add(reader.readRecordBuffer());
+            if (i < 9) assertEquals(recordPos.get(i + 1).longValue(), reader.getNextRecordPosition());
+        }
+        try {
+            reader.readRecordBuffer();
+            fail("Expected EOF");
+        } catch (EOFException x) {
+        }
+        reader.close();
+
+        for (int i = 9; i >= 0; i--) {
+            SIORecordBuffer record = records.get(i);
+            assertEquals("record" + i, record.getRecordName());
+            assertEquals(compress, record.isCompressed());
+            record.inflate();
+            assertFalse(record.isCompressed());
+            SIOBlock block = record.getBlock();
+            assertEquals("blockA" + i, block.getBlockName());
+            assertEquals(values.get(i), block.getData().readDouble(), 1e-15);
+            assertEquals("blockB" + i, record.getBlock().getBlockName());
+            assertNull(record.getBlock());
+        }
+        tempFile.delete();
+    }
+
+    public void testAsynchronousCompressed() throws Exception {
+        testAsynchronous(true);
+    }
+
+    public void testAsynchronousUncompressed() throws Exception {
+        testAsynchronous(false);
+    }
+
+    private void testAsynchronous(boolean compress) throws Exception {
+        File tempFile = File.createTempFile("test", "sio");
+        tempFile.deleteOnExit();
+
+        List<Double> values = new ArrayList<Double>();
+        List<Long> recordPos = new ArrayList<Long>();
+        writeFile(false, tempFile, compress, recordPos, values);
+        long length = tempFile.length();
+
+        final List<Long> asyncPos = new ArrayList<Long>();
+        final long[] end = new long[1];
+        SIOWriter writer = new SIOWriter(new FileOutputStream(tempFile));
+        writer.setAsynchronous(3, 2);
+        writer.setRecordListener(new SIOWriter.RecordListener() {
+            public void recordWritten(String name, long position, long length) {
+                assertEquals("record" + asyncPos.size(), name);
+                assertEquals(end[0], position);
+                end[0] = position + length;
+                asyncPos.add(position);
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            assertEquals(-1, writer.createRecord("record" + i, compress));
+            SIOOutputStream sio = writer.createBlock("blockA" + i, 1, 0);
+            sio.writeDouble(values.get(i));
+            sio.close();
+            sio = writer.createBlock("blockB" + i, 1, 0);
+            sio.writeDouble(Math.random());
+            sio.close();
+        }
+        writer.close();
+
+        assertEquals(recordPos, asyncPos);
+        assertEquals(length, tempFile.length());
+        assertEquals(length, end[0]);
+        readFile(true, tempFile, values);
+        tempFile.delete();
+    }
+
     public void testRewrite() throws IOException {
         File tempFile = File.createTempFile("test", "sio");
         tempFile.deleteOnExit();
@@ -0,0 +1,111 @@
+package hep.io.xdr;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Bulk conversion of primitive arrays to and from XDR (big-endian) bytes. Rather
+ * than reading or writing one element at a time, arrays are transferred in chunks
+ * through a scratch byte buffer, and converted using a big-endian view of the buffer.
+ * @version $Id$
+ */
+final class XDRArrays
+{
+   /** Size of the scratch buffer, must be a multiple of 8 */
+   static final int SCRATCH_SIZE = 8192;
+
+   private XDRArrays()
+   {
+   }
+
+   static byte[] createScratch()
+   {
+      return new byte[SCRATCH_SIZE];
+   }
+
+   static void readInts(DataInput in, int[] dst, int off, int n, byte[] scratch) throws IOException
+   {
+      ByteBuffer bb = ByteBuffer.wrap(scratch);
+      while (n > 0)
+      {
+         int l = Math.min(n, SCRATCH_SIZE / 4);
+         in.readFully(scratch, 0, l * 4);
+         bb.clear();
+         bb.asIntBuffer().get(dst, off, l);
+         off += l;
+         n -= l;
+      }
+   }
+
+   static void readFloats(DataInput in, float[] dst, int off, int n, byte[] scratch) throws IOException
+   {
+      ByteBuffer bb = ByteBuffer.wrap(scratch);
+      while (n > 0)
+      {
+         int l = Math.min(n, SCRATCH_SIZE / 4);
+         in.readFully(scratch, 0, l * 4);
+         bb.clear();
+         bb.asFloatBuffer().get(dst, off, l);
+         off += l;
+         n -= l;
+      }
+   }
+
+   static void readDoubles(DataInput in, double[] dst, int off, int n, byte[] scratch) throws IOException
+   {
+      ByteBuffer bb = ByteBuffer.wrap(scratch);
+      while (n > 0)
+      {
+         int l = Math.min(n, SCRATCH_SIZE / 8);
+         in.readFully(scratch, 0, l * 8);
+         bb.clear();
+         bb.asDoubleBuffer().get(dst, off, l);
+         off += l;
+         n -= l;
+      }
+   }
+
+   static void writeInts(DataOutput out, int[] src, int off, int n, byte[] scratch) throws IOException
+   {
+      ByteBuffer bb = ByteBuffer.wrap(scratch);
+      while (n > 0)
+      {
+         int l = Math.min(n, SCRATCH_SIZE / 4);
+         bb.clear();
+         bb.asIntBuffer().put(src, off, l);
+         out.write(scratch, 0, l * 4);
+         off += l;
+         n -= l;
+      }
+   }
+
+   static void writeFloats(DataOutput out, float[] src, int off, int n, byte[] scratch) throws IOException
+   {
+      ByteBuffer bb = ByteBuffer.wrap(scratch);
+      while (n > 0)
+      {
+         int l = Math.min(n, SCRATCH_SIZE / 4);
+         bb.clear();
+         bb.asFloatBuffer().put(src, off, l);
+         out.write(scratch, 0, l * 4);
+         off += l;
+         n -= l;
+      }
+   }
+
+   static void writeDoubles(DataOutput out, double[] src, int off, int n, byte[] scratch) throws IOException
+   {
+      ByteBuffer bb = ByteBuffer.wrap(scratch);
+      while (n > 0)
+      {
+         int l = Math.min(n, SCRATCH_SIZE / 8);
+         bb.clear();
+         bb.asDoubleBuffer().put(src, off, l);
+         out.write(scratch, 0, l * 8);
+         off += l;
+         n -= l;
+      }
+   }
+}
@@ -20,6 +20,7 @@ import java.io.InputStream;
 public class XDRInputStream extends DataInputStream implements XDRDataInput
 {
    private CountedInputStream cin;
+   private byte[] scratch;
    private final static int SANITY_CHECK = Integer.getInteger("hep.io.xdr.sanityCheck",100000).intValue();
 
    public XDRInputStream(InputStream in)
@@ -66,8 +67,7 @@ public class XDRInputStream extends DataInputStream implements XDRDataInput
       double[] result = buffer;
       if ((buffer == null) || (l > buffer.length))
          result = new double[l];
-      for (int i = 0; i < l; i++)
-         result[i] = readDouble();
+      XDRArrays.readDoubles(this, result, 0, l, scratch());
       return result;
    }
 
@@ -80,8 +80,7 @@ public class XDRInputStream extends DataInputStream implements XDRDataInput
       float[] result = buffer;
       if ((buffer == null) || (l > buffer.length))
          result = new float[l];
-      for (int i = 0; i < l; i++)
-         result[i] = readFloat();
+      XDRArrays.readFloats(this, result, 0, l, scratch());
       return result;
    }
 
@@ -94,11 +93,17 @@ public class XDRInputStream extends DataInputStream implements XDRDataInput
       int[] result = buffer;
       if ((buffer == null) || (l > buffer.length))
          result = new int[l];
-      for (int i = 0; i < l; i++)
-         result[i] = readInt();
+      XDRArrays.readInts(this, result, 0, l, scratch());
       return result;
    }
 
+   private byte[] scratch()
+   {
+      if (scratch == null)
+         scratch = XDRArrays.createScratch();
+      return scratch;
+   }
+
    public String readString(int l) throws IOException
    {
       byte[] ascii = new byte[l];
@@ -20,6 +20,7 @@ public class XDROutputStream extends DataOutputStream implements XDRDataOutput
 {
    private CountedOutputStream cout;
    private final static byte[] padding = { 0, 0, 0, 0 };
+   private byte[] scratch;
 
    public XDROutputStream(OutputStream out)
    {
@@ -42,32 +43,37 @@ public class XDROutputStream extends DataOutputStream implements XDRDataOutput
    public void writeIntArray(int[] array) throws IOException
    {
       writeInt(array.length);
-      for (int i=0; i<array.length; i++) writeInt(array[i]);
+      XDRArrays.writeInts(this, array, 0, array.length, scratch());
    }
    public void writeIntArray(int[] array, int start, int n) throws IOException
    {
       writeInt(n);
-      for (int i=start; i<n; i++) writeInt(array[i]);
+      XDRArrays.writeInts(this, array, start, n, scratch());
    }
    public void writeDoubleArray(double[] array) throws IOException
    {
       writeInt(array.length);
-      for (int i=0; i<array.length; i++) writeDouble(array[i]);
+      XDRArrays.writeDoubles(this, array, 0, array.length, scratch());
    }
    public void writeDoubleArray(double[] array, int start, int n) throws IOException
    {
       writeInt(n);
-      for (int i=start; i<n; i++) writeDouble(array[i]);
+      XDRArrays.writeDoubles(this, array, start, n, scratch());
    }
    public void writeFloatArray(float[] array) throws IOException
    {
       writeInt(array.length);
-      for (int i=0; i<array.length; i++) writeFloat(array[i]);
+      XDRArrays.writeFloats(this, array, 0, array.length, scratch());
    }
    public void writeFloatArray(float[] array, int start, int n) throws IOException
    {
       writeInt(n);
-      for (int i=start; i<n; i++) writeFloat(array[i]);
+      XDRArrays.writeFloats(this, array, start, n, scratch());
+   }
+   private byte[] scratch()
+   {
+      if (scratch == null) scratch = XDRArrays.createScratch();
+      return scratch;
    }
    /**
     * Skips appropriate amount to bring stream to 4-byte boundary.
@@ -12,6 +12,7 @@ import java.io.RandomAccessFile;
 public class XDRRandomAccessFile extends RandomAccessFile implements XDRDataInput, XDRDataOutput
 {
    private final static int SANITY_CHECK = Integer.getInteger("hep.io.xdr.sanityCheck",100000).intValue();
+   private byte[] scratch;
 
    public XDRRandomAccessFile(String name, String mode) throws IOException
    {
@@ -38,8 +39,7 @@ public class XDRRandomAccessFile extends RandomAccessFile implements XDRDataInpu
       double[] result = buffer;
       if ((buffer == null) || (l > buffer.length))
          result = new double[l];
-      for (int i = 0; i < l; i++)
-         result[i] = readDouble();
+      XDRArrays.readDoubles(this, result, 0, l, scratch());
       return result;
    }
 
@@ -52,8 +52,7 @@ public class XDRRandomAccessFile extends RandomAccessFile implements XDRDataInpu
       float[] result = buffer;
       if ((buffer == null) || (l > buffer.length))
          result = new float[l];
-      for (int i = 0; i < l; i++)
-         result[i] = readFloat();
+      XDRArrays.readFloats(this, result, 0, l, scratch());
       return result;
    }
 
@@ -66,11 +65,17 @@ public class XDRRandomAccessFile extends RandomAccessFile implements XDRDataInpu
       int[] result = buffer;
       if ((buffer == null) || (l > buffer.length))
          result = new int[l];
-      for (int i = 0; i < l; i++)
-         result[i] = readInt();
+      XDRArrays.readInts(this, result, 0, l, scratch());
       return result;
    }
 
+   private byte[] scratch()
+   {
+      if (scratch == null)
+         scratch = XDRArrays.createScratch();
+      return scratch;
+   }
+
    public String readString(int l) throws IOException
    {
       byte[] ascii = new byte[l];
@@ -90,43 +95,37 @@ public class XDRRandomAccessFile extends RandomAccessFile implements XDRDataInpu
    public void writeDoubleArray(double[] array) throws IOException
    {
       writeInt(array.length);
-      for (int i = 0; i < array.length; i++)
-         writeDouble(array[i]);
+      XDRArrays.writeDoubles(this, array, 0, array.length, scratch());
    }
 
    public void writeDoubleArray(double[] array, int start, int n) throws IOException
    {
       writeInt(n);
-      for (int i = start; i < n; i++)
-         writeDouble(array[i]);
+      XDRArrays.writeDoubles(this, array, start, n, scratch());
    }
 
    public void writeFloatArray(float[] array) throws IOException
    {
       writeInt(array.length);
-      for (int i = 0; i < array.length; i++)
-         writeFloat(array[i]);
+      XDRArrays.writeFloats(this, array, 0, array.length, scratch());
    }
 
    public void writeFloatArray(float[] array, int start, int n) throws IOException
    {
       writeInt(n);
-      for (int i = start; i < n; i++)
-         writeFloat(array[i]);
+      XDRArrays.writeFloats(this, array, start, n, scratch());
    }
 
    public void writeIntArray(int[] array) throws IOException
    {
       writeInt(array.length);
-      for (int i = 0; i < array.length; i++)
-         writeInt(array[i]);
+      XDRArrays.writeInts(this, array, 0, array.length, scratch());
    }
 
    public void writeIntArray(int[] array, int start, int n) throws IOException
    {
       writeInt(n);
-      for (int i = start; i < n; i++)
-         writeInt(array[i]);
+      XDRArrays.writeInts(this, array, start, n, scratch());
    }
 
    public void writeString(String s) throws IOException
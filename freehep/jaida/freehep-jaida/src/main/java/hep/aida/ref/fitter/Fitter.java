@@ -30,6 +30,7 @@ import hep.aida.ext.IOptimizerFactory;
 import hep.aida.ext.IVariableSettings;
 import hep.aida.ref.AidaUtils;
 import hep.aida.ref.fitter.fitdata.FitDataCreator;
+import hep.aida.ref.fitter.fitmethod.AbstractFitMethod;
 import hep.aida.ref.function.BaseModelFunction;
 import hep.aida.ref.function.FunctionCatalog;
 import hep.aida.ref.function.RangeSet;
@@ -75,11 +76,15 @@ public class Fitter implements IExtFitter {
     private ArrayList constraintList = new ArrayList();
     private Hashtable simpleConstraintHash = new Hashtable();
     private boolean createClone = true;
+    private int threads = 1;
     
     /**
      * Create a new Fitter specifying the underlying optimizing engine.
      * @param fitMethodType The type of fitter.
      * @param engineType The type of optimizer to use.
+     * @param options The options: "noClone=true" to fit the function itself rather than a copy,
+     *                "threads=n" to evaluate the fit method over the data on n threads (0 for all processors),
+     *                for the functions which support it (see AbstractFitMethod.isThreadSafe).
      * @throws IllegalArgumentException if the engineType does not exist.
      *
      */
@@ -90,6 +95,8 @@ public class Fitter implements IExtFitter {
         Map opt = hep.aida.ref.AidaUtils.parseOptions(options);
         String val = (String) opt.get("noClone");
         if ( val != null && val.trim().equalsIgnoreCase("true") ) createClone = false;
+        val = (String) opt.get("threads");
+        if ( val != null ) threads = Integer.parseInt(val.trim());
     }
     
     public void setEngine(String engineType) throws IllegalArgumentException {
@@ -248,6 +255,8 @@ public class Fitter implements IExtFitter {
         //Clear the fit method and set the correlation Object
         fitMethod.clear();
         fitMethod.setCorrelationObject(correlationObject);
+        if ( fitMethod instanceof AbstractFitMethod )
+            ( (AbstractFitMethod) fitMethod ).setNumberOfThreads(threads);
                 
         loadFitDataAndFunction(d,f);
         
@@ -3,6 +3,13 @@ package hep.aida.ref.fitter.fitmethod;
 import hep.aida.IFunction;
 import hep.aida.dev.IDevFitDataIterator;
 import hep.aida.ext.IFitMethod;
+import hep.aida.ref.function.BaseModelFunction;
+import hep.aida.ref.function.FunctionCore;
+import hep.aida.ref.function.IFunctionCoreNotNorm;
+import hep.aida.ref.function.JELFunctionCore;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  *
@@ -15,6 +22,19 @@ import hep.aida.ext.IFitMethod;
  * Most classes extending this class should only implement the evaluateSumElement(...) method
  * unless efficiency is gained by overwriting the evaluate(...) method.
  *
+ * The sums can be evaluated in parallel, see setNumberOfThreads(int). The data
+ * is then copied into primitive arrays and split into fixed ranges of entries;
+ * the partial sum of each range is accumulated with compensated (Kahan) summation
+ * and the partial sums are combined in the order of the ranges, so the result
+ * does not depend on the number of threads or on their scheduling.
+ * In this mode evaluateSumElement(...) and evaluateGradientSumElement(...) are
+ * invoked concurrently, so this is only done for functions which support concurrent
+ * calls to value(...) and parameterGradient(...) once their parameters are set,
+ * see isThreadSafe(IFunction). The sums for any other function, like one compiled
+ * from an expression, are evaluated on the calling thread. Any state the function
+ * computes lazily (like the normalization of a BaseModelFunction) is primed by
+ * evaluating the first entry on the calling thread.
+ *
  */
 public abstract class AbstractFitMethod implements IFitMethod {
     
@@ -22,6 +42,19 @@ public abstract class AbstractFitMethod implements IFitMethod {
     private int fitType;
     private Object correlationObject;
 
+    /**
+     * The number of entries in each range of a parallel evaluation.
+     */
+    static final int RANGE = 4096;
+    /**
+     * The smallest number of entries for which the sums are evaluated in parallel.
+     */
+    static final int MIN_ENTRIES = 4*RANGE;
+
+    private int threads = 1;
+    private ForkJoinPool pool;
+    private FitDataArrays data;
+
     public AbstractFitMethod(int fitType, String[] fitMethodNames) {
         this.fitType = fitType;
         this.fitMethodNames = fitMethodNames;
@@ -38,6 +71,8 @@ public abstract class AbstractFitMethod implements IFitMethod {
     public double[] evaluateGradient(int dimension, IDevFitDataIterator dataIter, IFunction function) {
         if ( correlationObject() != null )
             throw new IllegalArgumentException("Correlation Object not used by this fit method.");
+        if ( isParallel(dataIter, function) )
+            return evaluateParallel(dimension, function);
         dataIter.start();
         double[] fitFunctionGradients = new double[ dimension ];
         while( dataIter.next() ) {
@@ -51,6 +86,8 @@ public abstract class AbstractFitMethod implements IFitMethod {
     public double evaluate(IDevFitDataIterator dataIter, IFunction function) {
         if ( correlationObject() != null )
             throw new IllegalArgumentException("Correlation Object not used by this fit method.");
+        if ( isParallel(dataIter, function) )
+            return evaluateParallel(-1, function)[0];
         dataIter.start();
         double fitFunctionValue = 0;
         while( dataIter.next() )
@@ -64,10 +101,142 @@ public abstract class AbstractFitMethod implements IFitMethod {
     
     public void clear() {
         correlationObject = null;
+        data = null;
     }
     
     public Object correlationObject() {
         return correlationObject;
     }
+
+    /**
+     * Set the number of threads used to evaluate the sums over the data.
+     * With one thread, the default, the sums are evaluated on the calling thread.
+     * @param threads The number of threads; 0 to use all the available processors.
+     *
+     */
+    public synchronized void setNumberOfThreads(int threads) {
+        if ( threads < 0 ) throw new IllegalArgumentException("Illegal number of threads: "+threads);
+        if ( threads == 0 ) threads = Runtime.getRuntime().availableProcessors();
+        if ( threads == this.threads ) return;
+        this.threads = threads;
+        if ( pool != null ) {
+            pool.shutdown();
+            pool = null;
+        }
+        data = null;
+    }
+
+    public int numberOfThreads() {
+        return threads;
+    }
+
+    /**
+     * Check if the function supports concurrent calls to value(...) and
+     * parameterGradient(...). Only model functions built on one of the standard
+     * function cores are known to do so. Functions compiled from expressions
+     * keep the variables and parameters in shared state while they are evaluated,
+     * and nothing is known about other functions.
+     *
+     */
+    protected boolean isThreadSafe(IFunction function) {
+        if ( function == null || function.getClass() != BaseModelFunction.class ) return false;
+        FunctionCore core = ( (BaseModelFunction) function ).core();
+        if ( core == null || core instanceof JELFunctionCore || core instanceof IFunctionCoreNotNorm ) return false;
+        return core.getClass().getPackage() == FunctionCore.class.getPackage();
+    }
+
+    /**
+     * Check if the sums over the data are to be evaluated in parallel, and
+     * copy the data into arrays if it has not been copied since the last clear().
+     *
+     */
+    private synchronized boolean isParallel(IDevFitDataIterator dataIter, IFunction function) {
+        if ( threads < 2 || dataIter.entries() < MIN_ENTRIES || ! isThreadSafe(function) ) return false;
+        if ( data == null || ! data.isCopyOf(dataIter) ) data = new FitDataArrays(dataIter);
+        if ( pool == null ) pool = new ForkJoinPool(threads);
+        return true;
+    }
+
+    /**
+     * Evaluate the sum over the data in parallel.
+     * @param dimension The number of parameters for the gradient, or -1 for the value.
+     * @return The gradient, or an array holding only the value.
+     *
+     */
+    private double[] evaluateParallel(int dimension, IFunction function) {
+        FitDataArrays d;
+        ForkJoinPool p;
+        synchronized (this) {
+            d = data;
+            p = pool;
+        }
+        int n = dimension < 0 ? 1 : dimension;
+
+        IDevFitDataIterator first = d.iterator(0, 1);
+        first.next();
+        if ( dimension < 0 ) evaluateSumElement(first, function);
+        else evaluateGradientSumElement(first, function);
+
+        int ranges = (d.entries()+RANGE-1)/RANGE;
+        double[][] partials = new double[ranges][n];
+        p.invoke(new RangeSums(d, function, dimension, partials, 0, ranges));
+
+        double[] sum = new double[n];
+        double[] compensation = new double[n];
+        for ( int r = 0; r < ranges; r++ )
+            add(sum, compensation, partials[r]);
+        return sum;
+    }
+
+    /**
+     * Add the terms to the sums, using Kahan summation.
+     *
+     */
+    private static void add(double[] sum, double[] compensation, double[] terms) {
+        for ( int i = 0; i < sum.length; i++ ) {
+            double y = terms[i] - compensation[i];
+            double t = sum[i] + y;
+            compensation[i] = (t - sum[i]) - y;
+            sum[i] = t;
+        }
+    }
+
+    private class RangeSums extends RecursiveAction {
+        private FitDataArrays data;
+        private IFunction function;
+        private int dimension;
+        private double[][] partials;
+        private int first;
+        private int last;
+
+        RangeSums(FitDataArrays data, IFunction function, int dimension, double[][] partials, int first, int last) {
+            this.data = data;
+            this.function = function;
+            this.dimension = dimension;
+            this.partials = partials;
+            this.first = first;
+            this.last = last;
+        }
+
+        protected void compute() {
+            if ( last-first > 1 ) {
+                int middle = (first+last) >>> 1;
+                invokeAll(new RangeSums(data, function, dimension, partials, first, middle),
+                          new RangeSums(data, function, dimension, partials, middle, last));
+                return;
+            }
+            double[] sum = partials[first];
+            double[] compensation = new double[sum.length];
+            double[] term = dimension < 0 ? new double[1] : null;
+            IDevFitDataIterator dataIter = data.iterator(first*RANGE, Math.min((first+1)*RANGE, data.entries()));
+            while ( dataIter.next() ) {
+                if ( dimension < 0 ) {
+                    term[0] = evaluateSumElement(dataIter, function);
+                    add(sum, compensation, term);
+                } else
+                    add(sum, compensation, evaluateGradientSumElement(dataIter, function));
+            }
+        }
+    }
     
 }
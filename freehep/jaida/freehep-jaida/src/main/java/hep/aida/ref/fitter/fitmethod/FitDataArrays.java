@@ -0,0 +1,129 @@
+package hep.aida.ref.fitter.fitmethod;
+
+import hep.aida.dev.IDevFitDataIterator;
+
+/**
+ * A copy of the data of an IDevFitDataIterator in contiguous primitive arrays.
+ * The copy can be read through any number of independent iterators, each over
+ * a range of the entries, so that the range can be evaluated on its own thread.
+ *
+ * @version $Id$
+ */
+final class FitDataArrays {
+
+    private final IDevFitDataIterator source;
+    private final int entries;
+    private final int dimension;
+    private final double[] vars;
+    private final double[] values;
+    private final double[] errors;
+    private final double[] minusErrors;
+
+    FitDataArrays(IDevFitDataIterator dataIter) {
+        this.source = dataIter;
+        int size = Math.max(dataIter.entries(), 0);
+        double[] v = new double[size];
+        double[] e = new double[size];
+        double[] m = new double[size];
+        double[] x = null;
+        int dim = 0;
+        int n = 0;
+        dataIter.start();
+        while ( dataIter.next() ) {
+            double[] point = dataIter.vars();
+            if ( x == null ) {
+                dim = point.length;
+                x = new double[size*dim];
+            }
+            if ( n == v.length ) {
+                int newSize = 2*n+1;
+                v = copyOf(v, newSize);
+                e = copyOf(e, newSize);
+                m = copyOf(m, newSize);
+                x = copyOf(x, newSize*dim);
+            }
+            System.arraycopy(point, 0, x, n*dim, dim);
+            v[n] = dataIter.value();
+            e[n] = dataIter.error();
+            m[n] = dataIter.minusError();
+            n++;
+        }
+        this.entries = n;
+        this.dimension = dim;
+        this.vars = x;
+        this.values = v;
+        this.errors = e;
+        this.minusErrors = m;
+    }
+
+    /**
+     * Check if this copy was made from the given iterator, and still has the
+     * same number of entries.
+     *
+     */
+    boolean isCopyOf(IDevFitDataIterator dataIter) {
+        return source == dataIter && dataIter.entries() == entries;
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    /**
+     * Create an iterator over a range of the entries.
+     * @param from The first entry of the range.
+     * @param to   The entry after the last entry of the range.
+     *
+     */
+    IDevFitDataIterator iterator(int from, int to) {
+        return new RangeIterator(from, to);
+    }
+
+    private static double[] copyOf(double[] array, int length) {
+        double[] copy = new double[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private final class RangeIterator implements IDevFitDataIterator {
+        private final int from;
+        private final int to;
+        private final double[] point = new double[dimension];
+        private int index;
+
+        RangeIterator(int from, int to) {
+            this.from = from;
+            this.to = to;
+            this.index = from-1;
+        }
+
+        public int entries() {
+            return to-from;
+        }
+
+        public void start() {
+            index = from-1;
+        }
+
+        public boolean next() {
+            return ++index < to;
+        }
+
+        public double value() {
+            return values[index];
+        }
+
+        public double error() {
+            return errors[index];
+        }
+
+        public double minusError() {
+            return minusErrors[index];
+        }
+
+        public double[] vars() {
+            System.arraycopy(vars, index*dimension, point, 0, dimension);
+            return point;
+        }
+    }
+}
@@ -16,12 +16,20 @@ import hep.aida.ref.ManagedObject;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 
 public abstract class AbstractBaseHistogram extends ManagedObject implements IBaseHistogram {
     
     private int dimension;
     private IAnnotation annotation;
     
+    private long notificationInterval = 0;
+    private long lastNotification = 0;
+    private TimerTask pendingNotification;
+    private final Object notificationLock = new Object();
+    private static Timer notificationTimer;
+    
     // Allowed keys that can be set in the annotation from options
     static String[] styleKeys = {"xaxislabel", "xaxisscale", "xaxistype", "yaxislabel", "yaxisscale", "yaxistype"};
     
@@ -157,4 +165,67 @@ public abstract class AbstractBaseHistogram extends ManagedObject implements IBa
      */
     abstract public int nanEntries();
     
+    /**
+     *
+     *  Developer area. All the non-AIDA methods are down here.
+     *
+     */
+    
+    /**
+     * Set the minimum time between the notifications sent to the listeners when
+     * the histogram is filled. Fills arriving less than the interval after the last
+     * notification are coalesced into a single notification, sent when the interval
+     * has elapsed.
+     * @param millis The interval in milliseconds. If zero, which is the default, the listeners
+     *               are notified on every fill.
+     *
+     */
+    public void setNotificationInterval(long millis) {
+        if ( millis < 0 ) throw new IllegalArgumentException("Illegal notification interval "+millis);
+        notificationInterval = millis;
+    }
+    
+    /**
+     * Get the minimum time between the notifications sent when the histogram is filled.
+     * @return The interval in milliseconds.
+     *
+     */
+    public long notificationInterval() {
+        return notificationInterval;
+    }
+    
+    /**
+     * Notify the listeners that the histogram has been filled, respecting the notification interval.
+     *
+     */
+    protected void fireFilled() {
+        if ( ! isValid ) return;
+        if ( notificationInterval > 0 ) {
+            synchronized (notificationLock) {
+                if ( pendingNotification != null ) return;
+                long now = System.currentTimeMillis();
+                long delay = lastNotification + notificationInterval - now;
+                if ( delay > 0 ) {
+                    pendingNotification = new TimerTask() {
+                        public void run() {
+                            synchronized (notificationLock) {
+                                pendingNotification = null;
+                                lastNotification = System.currentTimeMillis();
+                            }
+                            if (isValid) fireStateChanged();
+                        }
+                    };
+                    notificationTimer().schedule(pendingNotification, delay);
+                    return;
+                }
+                lastNotification = now;
+            }
+        }
+        fireStateChanged();
+    }
+    
+    private static synchronized Timer notificationTimer() {
+        if ( notificationTimer == null ) notificationTimer = new Timer("AIDA histogram notification", true);
+        return notificationTimer;
+    }
 }
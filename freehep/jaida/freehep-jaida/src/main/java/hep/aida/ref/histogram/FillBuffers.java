@@ -0,0 +1,124 @@
+package hep.aida.ref.histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-thread buffers of the entries filled into a concurrent Histogram.
+ * Each filling thread appends its entries to its own buffer, so that threads
+ * do not contend with each other. A buffer is replayed into the Histogram
+ * when it is full, and all buffers are replayed before the Histogram is read.
+ * <p>
+ * Each buffer holds one column per coordinate followed by a column for the
+ * weights.
+ *
+ * @version $Id$
+ */
+final class FillBuffers {
+
+    private static final int SIZE = 1024;
+
+    private final Histogram histogram;
+    private final int columns;
+    private final ThreadLocal local = new ThreadLocal();
+    private final List buffers = new ArrayList();
+
+    FillBuffers(Histogram histogram, int columns) {
+        this.histogram = histogram;
+        this.columns = columns;
+    }
+
+    void add(double x, double weight) {
+        Buffer b = buffer();
+        boolean full;
+        synchronized (b) {
+            b.data[0][b.n] = x;
+            b.data[1][b.n] = weight;
+            full = ++b.n == SIZE;
+        }
+        if (full) drain(b);
+    }
+
+    void add(double x, double y, double weight) {
+        Buffer b = buffer();
+        boolean full;
+        synchronized (b) {
+            b.data[0][b.n] = x;
+            b.data[1][b.n] = y;
+            b.data[2][b.n] = weight;
+            full = ++b.n == SIZE;
+        }
+        if (full) drain(b);
+    }
+
+    void add(double x, double y, double z, double weight) {
+        Buffer b = buffer();
+        boolean full;
+        synchronized (b) {
+            b.data[0][b.n] = x;
+            b.data[1][b.n] = y;
+            b.data[2][b.n] = z;
+            b.data[3][b.n] = weight;
+            full = ++b.n == SIZE;
+        }
+        if (full) drain(b);
+    }
+
+    /**
+     * Replay the entries of all the buffers into the Histogram.
+     */
+    synchronized void drain() {
+        for (int i = 0; i < buffers.size(); i++) {
+            Buffer b = (Buffer) buffers.get(i);
+            synchronized (b) {
+                replay(b);
+            }
+        }
+    }
+
+    /**
+     * Discard the entries of all the buffers.
+     */
+    synchronized void clear() {
+        for (int i = 0; i < buffers.size(); i++) {
+            Buffer b = (Buffer) buffers.get(i);
+            synchronized (b) {
+                b.n = 0;
+            }
+        }
+    }
+
+    private synchronized void drain(Buffer b) {
+        synchronized (b) {
+            replay(b);
+        }
+    }
+
+    private void replay(Buffer b) {
+        if (b.n > 0) {
+            histogram.fillBuffered(b.data, b.n);
+            b.n = 0;
+        }
+    }
+
+    private Buffer buffer() {
+        Buffer b = (Buffer) local.get();
+        if (b == null) {
+            b = new Buffer(columns);
+            synchronized (this) {
+                buffers.add(b);
+            }
+            local.set(b);
+        }
+        return b;
+    }
+
+    private static final class Buffer {
+        final double[][] data;
+        int n;
+
+        Buffer(int columns) {
+            data = new double[columns][SIZE];
+        }
+    }
+}
@@ -19,6 +19,7 @@ public abstract class Histogram extends AbstractBaseHistogram implements IHistog
     
     private boolean useOutflows = false;
     protected boolean meanAndRmsIsSet = false;
+    private transient FillBuffers fillBuffers;
     
     /**
      * Create a new Histogram.
@@ -51,6 +52,7 @@ public abstract class Histogram extends AbstractBaseHistogram implements IHistog
      */
     public void reset() {
         super.reset();
+        if ( fillBuffers != null ) fillBuffers.clear();
         allEntries = 0;
         validEntries = 0;
         isFillable = true;
@@ -67,6 +69,7 @@ public abstract class Histogram extends AbstractBaseHistogram implements IHistog
      *
      */
     public int entries() {
+        flush();
         return validEntries;
     }
     
@@ -77,6 +80,7 @@ public abstract class Histogram extends AbstractBaseHistogram implements IHistog
      *
      */
     public int allEntries() {
+        flush();
         return allEntries;
     }
     
@@ -93,6 +97,7 @@ public abstract class Histogram extends AbstractBaseHistogram implements IHistog
      *
      */    
     public double equivalentBinEntries() {
+        flush();
 	if ( validEntries != 0 ) return sumOfWeights*sumOfWeights/sumOfWeightsSquared;
 	return 0;
     }
@@ -177,4 +182,77 @@ public abstract class Histogram extends AbstractBaseHistogram implements IHistog
     }
     
     public boolean isMeanAndRmsSet() { return meanAndRmsIsSet; }
+    
+    /**
+     * Allow the Histogram to be filled from several threads at once. In concurrent
+     * mode the entries filled by each thread are collected in a buffer private to
+     * that thread, and are added to the contents of the Histogram when the buffer
+     * is full or when the Histogram is read. The contents are exact once all the
+     * fills have returned; while fills are in progress a reader may see a state in
+     * which only some of the entries have been added.
+     * @param concurrent <code>true</code> to allow concurrent fills.
+     *
+     */
+    public synchronized void setConcurrent(boolean concurrent) {
+        if ( concurrent == isConcurrent() ) return;
+        if ( concurrent ) {
+            fillBuffers = new FillBuffers(this, dimension()+1);
+        } else {
+            flush();
+            fillBuffers = null;
+        }
+    }
+    
+    /**
+     * Check if the Histogram can be filled from several threads at once.
+     * @return <code>true</code> if the Histogram is in concurrent mode.
+     *
+     */
+    public boolean isConcurrent() {
+        return fillBuffers != null;
+    }
+    
+    /**
+     * Add the entries buffered by concurrent fills to the contents of the Histogram.
+     * This is done automatically before the Histogram is read.
+     *
+     */
+    public void flush() {
+        FillBuffers b = fillBuffers;
+        if ( b != null ) b.drain();
+    }
+    
+    /**
+     * Buffer an entry filled in concurrent mode.
+     * @return <code>true</code> if the entry was buffered, <code>false</code> if the Histogram is not in concurrent mode.
+     *
+     */
+    protected boolean buffer(double x, double weight) {
+        FillBuffers b = fillBuffers;
+        if ( b == null ) return false;
+        b.add(x, weight);
+        return true;
+    }
+    
+    protected boolean buffer(double x, double y, double weight) {
+        FillBuffers b = fillBuffers;
+        if ( b == null ) return false;
+        b.add(x, y, weight);
+        return true;
+    }
+    
+    protected boolean buffer(double x, double y, double z, double weight) {
+        FillBuffers b = fillBuffers;
+        if ( b == null ) return false;
+        b.add(x, y, z, weight);
+        return true;
+    }
+    
+    /**
+     * Add buffered entries to the contents of the Histogram.
+     * @param data The coordinates of the entries, one array per dimension, followed by their weights.
+     * @param n The number of entries.
+     *
+     */
+    abstract protected void fillBuffered(double[][] data, int n);
 }
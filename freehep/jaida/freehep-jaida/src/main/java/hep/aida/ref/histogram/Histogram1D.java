@@ -69,6 +69,35 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      */
     public void fill(double x, double weight) {
         if ( ! isFillable() ) throw new UnfillableHistogramException();
+        if ( ! buffer(x, weight) ) fillEntry(x, weight);
+        fireFilled();
+    }
+    
+    /**
+     * Fill the Histogram with several entries at once. Listeners are notified once for all the entries.
+     * @param x The values to be filled.
+     * @param w The weights of the entries, or <code>null</code> for unit weights.
+     * @param n The number of entries to fill, taken from the start of the arrays.
+     *
+     */
+    public void fillN(double[] x, double[] w, int n) {
+        if ( ! isFillable() ) throw new UnfillableHistogramException();
+        if ( n > x.length || ( w != null && n > w.length ) ) throw new IllegalArgumentException("Too few values for "+n+" entries");
+        for (int i=0; i<n; i++) {
+            double weight = w == null ? 1. : w[i];
+            if ( ! buffer(x[i], weight) ) fillEntry(x[i], weight);
+        }
+        fireFilled();
+    }
+    
+    protected void fillBuffered(double[][] data, int n) {
+        double[] x = data[0];
+        double[] w = data[1];
+        for (int i=0; i<n; i++)
+            fillEntry(x[i], w[i]);
+    }
+    
+    private void fillEntry(double x, double weight) {
         allEntries++;
         if ( (! Double.isNaN(x)) && (!Double.isNaN(weight)) ) {
             int coordToIndex = xAxis.coordToIndex(x);
@@ -94,8 +123,6 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
                 sumOfWeightsSquared += weight*weight;
             }
         }
-        
-        if (isValid) fireStateChanged();
     }
     
     /**
@@ -189,6 +216,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      *
      */
     public int binEntries(int index) {
+        flush();
         return binner1D.entries(mapBinNumber(index, axis()));
     }
     
@@ -199,6 +227,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      *
      */
     public double binHeight(int index) {
+        flush();
         return binner1D.height(mapBinNumber(index, axis()));
     }
     
@@ -209,6 +238,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      *
      */
     public double binError(int index) {
+        flush();
         return binner1D.plusError(mapBinNumber(index, axis()));
     }
     
@@ -219,6 +249,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      *
      */
     public double mean() {
+        flush();
         if ( validEntries != 0 ) return mean/sumOfWeights + center;
         return 0;
     }
@@ -229,6 +260,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      *
      */
     public double rms(){
+        flush();
         if ( validEntries != 0 ) return Math.sqrt((rms - mean*mean/sumOfWeights)/sumOfWeights);
         return 0;
     }
@@ -248,6 +280,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      *
      */
     public void setMeanAndRms( double otherMean, double otherRms ) {
+        flush();
         this.meanAndRmsIsSet = true;
         this.mean = (otherMean - center)*sumOfWeights;
         this.rms = otherRms*otherRms*sumOfWeights + (otherMean - center)*(otherMean - center)*sumOfWeights;
@@ -275,6 +308,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      *
      */
     public void scale(double scaleFactor) throws IllegalArgumentException {
+        flush();
         if ( scaleFactor <= 0 ) throw new IllegalArgumentException("Illegal scale factor "+scaleFactor+" it has to be positive");
         binner1D.scale(scaleFactor);
         mean *= scaleFactor;
@@ -291,6 +325,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      * @throws IllegalArgumentException if histogram binnings are incompatible
      */
     public void add(IHistogram1D hist) throws IllegalArgumentException {
+        flush();
         HistMath.checkCompatibility(axis(), hist.axis());
         int bins = axis().bins()+2;
         boolean h1Aida = !(hist instanceof Histogram1D);
@@ -350,6 +385,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      *
      */
     public double binMean(int index) {
+        flush();
         int bin = mapBinNumber(index, axis());
         double m = binner1D.mean(bin);
         if (Double.isNaN(m)) return binner1D.binCenter(bin);
@@ -363,6 +399,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      *
      */
     public double binRms(int index) {
+        flush();
         double r = binner1D.rms(mapBinNumber(index, axis()));
         return Double.isNaN(r) ? axis().binWidth(index)/Math.sqrt(12) : r;
     }
@@ -480,6 +517,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
      * <li>[4] : weight * x * x
      */
     public double[] getStatistics() {
+      flush();
       double[] out = new double[5];
       out[0] = validEntries;
       out[1] = sumOfWeights;
@@ -547,6 +585,7 @@ public class Histogram1D extends Histogram implements IHistogram1D, IsObservable
     
     
     public AbstractBinner1D binner() {
+        flush();
         return binner1D;
     }
     
@@ -69,6 +69,37 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      */
     public void fill( double x, double y, double weight) {
         if ( ! isFillable() ) throw new UnfillableHistogramException();
+        if ( ! buffer(x, y, weight) ) fillEntry(x, y, weight);
+        fireFilled();
+    }
+    
+    /**
+     * Fill the Histogram with several entries at once. Listeners are notified once for all the entries.
+     * @param x The x values to be filled.
+     * @param y The y values to be filled.
+     * @param w The weights of the entries, or <code>null</code> for unit weights.
+     * @param n The number of entries to fill, taken from the start of the arrays.
+     *
+     */
+    public void fillN(double[] x, double[] y, double[] w, int n) {
+        if ( ! isFillable() ) throw new UnfillableHistogramException();
+        if ( n > x.length || n > y.length || ( w != null && n > w.length ) ) throw new IllegalArgumentException("Too few values for "+n+" entries");
+        for (int i=0; i<n; i++) {
+            double weight = w == null ? 1. : w[i];
+            if ( ! buffer(x[i], y[i], weight) ) fillEntry(x[i], y[i], weight);
+        }
+        fireFilled();
+    }
+    
+    protected void fillBuffered(double[][] data, int n) {
+        double[] x = data[0];
+        double[] y = data[1];
+        double[] w = data[2];
+        for (int i=0; i<n; i++)
+            fillEntry(x[i], y[i], w[i]);
+    }
+    
+    private void fillEntry(double x, double y, double weight) {
         allEntries++;
         if ( (! Double.isNaN(x)) && (!Double.isNaN(y)) && (!Double.isNaN(weight))) {
             int xCoordToIndex = xAxis.coordToIndex(x);
@@ -87,7 +118,6 @@ public class Histogram2D extends Histogram implements IHistogram2D {
                 rmsXY += x*y*weight;
             }
         }
-        if (isValid) fireStateChanged();
     }
     
     /**
@@ -177,6 +207,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public int binEntries(int indexX, int indexY ) {
+        flush();
         return binner2D.entries(mapBinNumber(indexX, xAxis()),mapBinNumber(indexY, yAxis()));
     }
     
@@ -214,6 +245,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public double binHeight(int indexX, int indexY) {
+        flush();
         return binner2D.height(mapBinNumber(indexX, xAxis()),mapBinNumber(indexY, yAxis()));
     }
     
@@ -253,6 +285,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public double binError(int indexX,int indexY) {
+        flush();
         return binner2D.plusError(mapBinNumber(indexX, xAxis()),mapBinNumber(indexY, yAxis()));
     }
     
@@ -262,6 +295,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public double meanX() {
+        flush();
         if( validEntries != 0) return meanX/sumOfWeights;
         return 0;
     }
@@ -272,6 +306,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public double meanY() {
+        flush();
         if( validEntries != 0) return meanY/sumOfWeights;
         return 0;
     }
@@ -282,6 +317,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public double rmsX(){
+        flush();
         if ( validEntries != 0 ) return Math.sqrt(rmsX/sumOfWeights - meanX*meanX/sumOfWeights/sumOfWeights);
         return 0;
     }
@@ -292,6 +328,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public double rmsY(){
+        flush();
         if ( validEntries != 0 ) return Math.sqrt(rmsY/sumOfWeights - meanY*meanY/sumOfWeights/sumOfWeights);
         return 0;
     }
@@ -339,6 +376,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public void scale(double scaleFactor) {
+        flush();
         if ( scaleFactor <= 0 ) throw new IllegalArgumentException("Illegal scale factor "+scaleFactor+" it has to be positive");
         binner2D.scale(scaleFactor);
         meanX *= scaleFactor;
@@ -357,6 +395,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      * @throws IllegalArgumentException if histogram binnings are incompatible
      */
     public void add(IHistogram2D hist) throws IllegalArgumentException {
+        flush();
         HistMath.checkCompatibility(xAxis(), hist.xAxis());
         HistMath.checkCompatibility(yAxis(), hist.yAxis());
         int xbins = xAxis().bins()+2;
@@ -426,18 +465,22 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      */
     
     public void setMeanX(double meanX) {
+        flush();
         this.meanX = meanX*sumOfWeights;
     }
     
     public void setRmsX(double rmsX) {
+        flush();
         this.rmsX = rmsX*rmsX*sumOfWeights + meanX()*meanX()*sumOfWeights;
     }
     
     public void setMeanY(double meanY) {
+        flush();
         this.meanY = meanY*sumOfWeights;
     }
     
     public void setRmsY(double rmsY) {
+        flush();
         this.rmsY = rmsY*rmsY*sumOfWeights + meanY()*meanY()*sumOfWeights;
     }
     
@@ -449,6 +492,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public double binMeanX(int indexX, int indexY) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         double m = binner2D.meanX(binx, biny);
@@ -463,6 +507,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public double binMeanY(int indexX, int indexY) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         double m = binner2D.meanY(binx, biny);
@@ -477,6 +522,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public double binRmsX(int indexX, int indexY) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         double r = binner2D.rmsX(binx, biny);
@@ -491,6 +537,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      *
      */
     public double binRmsY(int indexX, int indexY) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         double r = binner2D.rmsY(binx, biny);
@@ -504,6 +551,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      * @param error the error.
      */
     public void setBinError(int indexX, int indexY, double error) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         binner2D.setBinContent(binx,biny,binEntries(indexX,indexY),binHeight(indexX,indexY),error, error,binMeanX(indexX,indexY),binRmsX(indexX,indexY),binMeanY(indexX,indexY),binRmsY(indexX,indexY));
@@ -614,6 +662,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
      * <li>[7] : weight * x * y
      */
     public double[] getStatistics() {
+      flush();
       double[] out = new double[8];
       out[0] = validEntries;
       out[1] = sumOfWeights;
@@ -627,6 +676,7 @@ public class Histogram2D extends Histogram implements IHistogram2D {
     }
     
     public Binner2D binner() {
+        flush();
       return binner2D;
     }
     
@@ -73,6 +73,39 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      */
     public void fill( double x, double y, double z, double weight) {
         if ( ! isFillable() ) throw new UnfillableHistogramException();
+        if ( ! buffer(x, y, z, weight) ) fillEntry(x, y, z, weight);
+        fireFilled();
+    }
+    
+    /**
+     * Fill the Histogram with several entries at once. Listeners are notified once for all the entries.
+     * @param x The x values to be filled.
+     * @param y The y values to be filled.
+     * @param z The z values to be filled.
+     * @param w The weights of the entries, or <code>null</code> for unit weights.
+     * @param n The number of entries to fill, taken from the start of the arrays.
+     *
+     */
+    public void fillN(double[] x, double[] y, double[] z, double[] w, int n) {
+        if ( ! isFillable() ) throw new UnfillableHistogramException();
+        if ( n > x.length || n > y.length || n > z.length || ( w != null && n > w.length ) ) throw new IllegalArgumentException("Too few values for "+n+" entries");
+        for (int i=0; i<n; i++) {
+            double weight = w == null ? 1. : w[i];
+            if ( ! buffer(x[i], y[i], z[i], weight) ) fillEntry(x[i], y[i], z[i], weight);
+        }
+        fireFilled();
+    }
+    
+    protected void fillBuffered(double[][] data, int n) {
+        double[] x = data[0];
+        double[] y = data[1];
+        double[] z = data[2];
+        double[] w = data[3];
+        for (int i=0; i<n; i++)
+            fillEntry(x[i], y[i], z[i], w[i]);
+    }
+    
+    private void fillEntry(double x, double y, double z, double weight) {
         allEntries++;
         
         if ( (! Double.isNaN(x)) && (!Double.isNaN(y)) && (!Double.isNaN(z)) && (!Double.isNaN(weight))) {
@@ -96,7 +129,6 @@ public class Histogram3D extends Histogram implements IHistogram3D {
                 sumOfWeightsSquared += weight*weight;
             }
         }
-        if (isValid) fireStateChanged();
     }
     
     /**
@@ -195,6 +227,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public int binEntries(int indexX, int indexY, int indexZ) {
+        flush();
         return binner3D.entries(mapBinNumber(indexX, xAxis()),mapBinNumber(indexY, yAxis()),mapBinNumber(indexZ,zAxis()));
     }
     
@@ -249,6 +282,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double binHeight(int indexX, int indexY, int indexZ) {
+        flush();
         return binner3D.height(mapBinNumber(indexX, xAxis()),mapBinNumber(indexY, yAxis()),mapBinNumber(indexZ, zAxis()));
     }
     
@@ -306,6 +340,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double binError(int indexX, int indexY, int indexZ) {
+        flush();
         return binner3D.plusError(mapBinNumber(indexX, xAxis()),mapBinNumber(indexY, yAxis()),mapBinNumber(indexZ, zAxis()));
     }
     
@@ -315,6 +350,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double meanX() {
+        flush();
         if( validEntries != 0) return meanX/sumOfWeights;
         return 0;
     }
@@ -325,6 +361,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double meanY() {
+        flush();
         if( validEntries != 0) return meanY/sumOfWeights;
         return 0;
     }
@@ -335,6 +372,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double meanZ() {
+        flush();
         if( validEntries != 0) return meanZ/sumOfWeights;
         return 0;
     }
@@ -345,6 +383,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double rmsX(){
+        flush();
         if ( validEntries != 0 ) return Math.sqrt(rmsX/sumOfWeights - meanX*meanX/sumOfWeights/sumOfWeights);
         return 0;
     }
@@ -355,6 +394,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double rmsY(){
+        flush();
         if ( validEntries != 0 ) return Math.sqrt(rmsY/sumOfWeights - meanY*meanY/sumOfWeights/sumOfWeights);
         return 0;
     }
@@ -365,6 +405,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double rmsZ(){
+        flush();
         if ( validEntries != 0 ) return Math.sqrt(rmsZ/sumOfWeights - meanZ*meanZ/sumOfWeights/sumOfWeights);
         return 0;
     }
@@ -431,6 +472,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public void scale(double scaleFactor) throws IllegalArgumentException {
+        flush();
         if ( scaleFactor <= 0 ) throw new IllegalArgumentException("Illegal scale factor "+scaleFactor+" it has to be positive");
         binner3D.scale(scaleFactor);
         meanX *= scaleFactor;
@@ -451,6 +493,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      * @throws IllegalArgumentException if histogram binnings are incompatible
      */
     public void add(IHistogram3D hist) throws IllegalArgumentException {
+        flush();
         HistMath.checkCompatibility(xAxis(), hist.xAxis());
         HistMath.checkCompatibility(yAxis(), hist.yAxis());
         HistMath.checkCompatibility(zAxis(), hist.zAxis());
@@ -540,26 +583,32 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      */
     
     public void setMeanX(double meanX) {
+        flush();
         this.meanX = meanX*sumOfWeights;
     }
     
     public void setRmsX(double rmsX) {
+        flush();
         this.rmsX = rmsX*rmsX*sumOfWeights + meanX()*meanX()*sumOfWeights;
     }
     
     public void setMeanY(double meanY) {
+        flush();
         this.meanY = meanY*sumOfWeights;
     }
     
     public void setRmsY(double rmsY) {
+        flush();
         this.rmsY = rmsY*rmsY*sumOfWeights + meanY()*meanY()*sumOfWeights;
     }
     
     public void setMeanZ(double meanZ) {
+        flush();
         this.meanZ = meanZ*sumOfWeights;
     }
     
     public void setRmsZ(double rmsZ) {
+        flush();
         this.rmsZ = rmsZ*rmsZ*sumOfWeights + meanZ()*meanZ()*sumOfWeights;
     }
     
@@ -572,6 +621,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double binMeanX(int indexX, int indexY, int indexZ) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         int binz = mapBinNumber(indexZ, zAxis());
@@ -588,6 +638,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double binMeanY(int indexX, int indexY, int indexZ) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         int binz = mapBinNumber(indexZ, zAxis());
@@ -604,6 +655,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double binMeanZ(int indexX, int indexY, int indexZ) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         int binz = mapBinNumber(indexZ, zAxis());
@@ -621,6 +673,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double binRmsX(int indexX, int indexY, int indexZ) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         int binz = mapBinNumber(indexZ, zAxis());
@@ -637,6 +690,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double binRmsY(int indexX, int indexY, int indexZ) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         int binz = mapBinNumber(indexZ, zAxis());
@@ -653,6 +707,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      *
      */
     public double binRmsZ(int indexX, int indexY, int indexZ) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         int binz = mapBinNumber(indexZ, zAxis());
@@ -667,6 +722,7 @@ public class Histogram3D extends Histogram implements IHistogram3D {
      * @param indexZ the bin number (0...N-1) or OVERFLOW or UNDERFLOW.
      */
     public void setBinError(int indexX, int indexY, int indexZ, double error) {
+        flush();
         int binx = mapBinNumber(indexX, xAxis());
         int biny = mapBinNumber(indexY, yAxis());
         int binz = mapBinNumber(indexZ, zAxis());
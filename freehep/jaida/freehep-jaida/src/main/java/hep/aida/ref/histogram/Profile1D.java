@@ -89,7 +89,7 @@ public class Profile1D extends Profile implements hep.aida.IProfile1D,Serializab
     
     public void fill(double x, double y, double weight) {
         hist.fill(x, y, weight);
-        if (isValid) fireStateChanged();
+        fireFilled();
     }
     
     public void fill(double x, double y) {
@@ -227,6 +227,32 @@ public class Profile1D extends Profile implements hep.aida.IProfile1D,Serializab
         hist.setValidEntries(entries);
     }
     
+    /**
+     * Fill the Profile with several entries at once. Listeners are notified once for all the entries.
+     * @param x The x values to be filled.
+     * @param y The y values to be filled.
+     * @param w The weights of the entries, or <code>null</code> for unit weights.
+     * @param n The number of entries to fill, taken from the start of the arrays.
+     *
+     */
+    public void fillN(double[] x, double[] y, double[] w, int n) {
+        hist.fillN(x, y, w, n);
+        fireFilled();
+    }
+    
+    /**
+     * Allow the Profile to be filled from several threads at once.
+     * @see Histogram#setConcurrent(boolean)
+     *
+     */
+    public void setConcurrent(boolean concurrent) {
+        hist.setConcurrent(concurrent);
+    }
+    
+    public boolean isConcurrent() {
+        return hist.isConcurrent();
+    }
+    
     public Binner2D binner() {
         return hist.binner();
     }
@@ -105,12 +105,12 @@ public class Profile2D extends Profile implements hep.aida.IProfile2D,IsObservab
     
     public void fill(double x, double y, double z) throws java.lang.IllegalArgumentException {
         hist.fill(x, y, z);
-        if (isValid) fireStateChanged();
+        fireFilled();
     }
     
     public void fill(double x, double y, double z, double weight) throws java.lang.IllegalArgumentException {
         hist.fill(x, y, z, weight);
-        if (isValid) fireStateChanged();
+        fireFilled();
     }
         
     public double meanX() {
@@ -249,6 +249,33 @@ public class Profile2D extends Profile implements hep.aida.IProfile2D,IsObservab
        hist.setValidEntries(entries);
     }
     
+    /**
+     * Fill the Profile with several entries at once. Listeners are notified once for all the entries.
+     * @param x The x values to be filled.
+     * @param y The y values to be filled.
+     * @param z The z values to be filled.
+     * @param w The weights of the entries, or <code>null</code> for unit weights.
+     * @param n The number of entries to fill, taken from the start of the arrays.
+     *
+     */
+    public void fillN(double[] x, double[] y, double[] z, double[] w, int n) {
+        hist.fillN(x, y, z, w, n);
+        fireFilled();
+    }
+    
+    /**
+     * Allow the Profile to be filled from several threads at once.
+     * @see Histogram#setConcurrent(boolean)
+     *
+     */
+    public void setConcurrent(boolean concurrent) {
+        hist.setConcurrent(concurrent);
+    }
+    
+    public boolean isConcurrent() {
+        return hist.isConcurrent();
+    }
+    
     public void setContents(double[][] heights, double[][] errors, int[][] entries, double[][] rmss, double[][] meanXs, double[][] meanYs) {
         int binX = xAxis().bins()+2;
         int binY = yAxis().bins()+2;
@@ -450,9 +450,12 @@ public abstract class AbstractTuple extends ManagedObject implements ITuple, FTu
         return max;
     }
     
-    // Projections on IHistogram1D
+    // Projections on IHistogram1D and IHistogram2D
+    // Large in-memory tuples are projected in parallel when the evaluators and filter
+    // are the JEL based Evaluator and Filter, see ParallelProjection.
     
     public void project(IHistogram1D histogram, IEvaluator evaluator) {
+        if ( ParallelProjection.project(this, histogram, new IEvaluator[] {evaluator}, null, null) ) return;
         start();
         evaluator.initialize(this);
         while ( next() )
@@ -461,6 +464,7 @@ public abstract class AbstractTuple extends ManagedObject implements ITuple, FTu
     
     
     public void project(IHistogram1D histogram, IEvaluator evaluator, IEvaluator weightEvaluator) {
+        if ( ParallelProjection.project(this, histogram, new IEvaluator[] {evaluator}, null, weightEvaluator) ) return;
         start();
         evaluator.initialize(this);
         weightEvaluator.initialize(this);
@@ -469,6 +473,7 @@ public abstract class AbstractTuple extends ManagedObject implements ITuple, FTu
     }
     
     public void project(IHistogram1D histogram, IEvaluator evaluator, IFilter filter, IEvaluator weightEvaluator) {
+        if ( ParallelProjection.project(this, histogram, new IEvaluator[] {evaluator}, filter, weightEvaluator) ) return;
         start();
         filter.initialize(this);
         evaluator.initialize(this);
@@ -479,6 +484,7 @@ public abstract class AbstractTuple extends ManagedObject implements ITuple, FTu
     }
     
     public void project(IHistogram1D histogram, IEvaluator evaluator, IFilter filter) {
+        if ( ParallelProjection.project(this, histogram, new IEvaluator[] {evaluator}, filter, null) ) return;
         start();
         evaluator.initialize(this);
         filter.initialize(this);
@@ -490,6 +496,7 @@ public abstract class AbstractTuple extends ManagedObject implements ITuple, FTu
     // Projections on IHistogram2D
     
     public void project(IHistogram2D histogram, IEvaluator evaluatorX, IEvaluator evaluatorY, IFilter filter) {
+        if ( ParallelProjection.project(this, histogram, new IEvaluator[] {evaluatorX, evaluatorY}, filter, null) ) return;
         start();
         evaluatorX.initialize(this);
         evaluatorY.initialize(this);
@@ -500,6 +507,7 @@ public abstract class AbstractTuple extends ManagedObject implements ITuple, FTu
     }
     
     public void project(IHistogram2D histogram, IEvaluator evaluatorX, IEvaluator evaluatorY) {
+        if ( ParallelProjection.project(this, histogram, new IEvaluator[] {evaluatorX, evaluatorY}, null, null) ) return;
         start();
         evaluatorX.initialize(this);
         evaluatorY.initialize(this);
@@ -507,6 +515,7 @@ public abstract class AbstractTuple extends ManagedObject implements ITuple, FTu
             histogram.fill( evaluatorX.evaluateDouble(), evaluatorY.evaluateDouble());
     }
     public void project(IHistogram2D histogram, IEvaluator evaluatorX, IEvaluator evaluatorY, IEvaluator weightEvaluator) {
+        if ( ParallelProjection.project(this, histogram, new IEvaluator[] {evaluatorX, evaluatorY}, null, weightEvaluator) ) return;
         start();
         evaluatorX.initialize(this);
         evaluatorY.initialize(this);
@@ -515,6 +524,7 @@ public abstract class AbstractTuple extends ManagedObject implements ITuple, FTu
             histogram.fill( evaluatorX.evaluateDouble(), evaluatorY.evaluateDouble(), weightEvaluator.evaluateDouble());
     }
     public void project(IHistogram2D histogram, IEvaluator evaluatorX, IEvaluator evaluatorY, IFilter filter, IEvaluator weightEvaluator) {
+        if ( ParallelProjection.project(this, histogram, new IEvaluator[] {evaluatorX, evaluatorY}, filter, weightEvaluator) ) return;
         start();
         evaluatorX.initialize(this);
         evaluatorY.initialize(this);
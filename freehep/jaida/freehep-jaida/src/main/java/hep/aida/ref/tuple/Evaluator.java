@@ -36,4 +36,15 @@ public class Evaluator implements hep.aida.IEvaluator {
     public double evaluateDouble() {
 	return jelExpression.evaluateDouble();
     }    
+
+    /**
+     * Create a new Evaluator for the same expression, so that it can be
+     * initialized on another tuple and used on another thread.
+     * @return The new Evaluator, or <code>null</code> for subclasses of Evaluator.
+     *
+     */
+    Evaluator copy() {
+        if ( getClass() != Evaluator.class ) return null;
+        return new Evaluator( expression() );
+    }
 }
@@ -59,6 +59,18 @@ public class Filter implements hep.aida.IFilter {
 	jelExpression.compile(Boolean.TYPE,tuple);
     }
 
+    /**
+     * Create a new Filter for the same expression, so that it can be
+     * initialized on another tuple and used on another thread.
+     * @return The new Filter, or <code>null</code> for subclasses of Filter
+     *         and Filters selecting rows by their number.
+     *
+     */
+    Filter copy() {
+        if ( getClass() != Filter.class || rowToProcess >= 0 || startingRow >= 0 ) return null;
+        return new Filter( expression() );
+    }
+
     public boolean accept() {
 	if (useRows && startingRow>((Tuple) tuple).getRow()) return false;
 	if (useRows && (startingRow+rowToProcess)<=((Tuple) tuple).getRow()) return false;
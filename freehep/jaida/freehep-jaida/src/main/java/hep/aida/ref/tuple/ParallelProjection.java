@@ -0,0 +1,150 @@
+package hep.aida.ref.tuple;
+
+import hep.aida.IEvaluator;
+import hep.aida.IFilter;
+import hep.aida.ref.histogram.Histogram1D;
+import hep.aida.ref.histogram.Histogram2D;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Projection of a large in-memory Tuple into a Histogram1D or Histogram2D,
+ * with the rows split into ranges evaluated in parallel on a fork/join pool.
+ * Each range is read through its own TupleRange with its own compiled
+ * evaluators, and the evaluated values are filled into the histogram in blocks.
+ * <p>
+ * Only the JEL based Evaluator and Filter can be copied for each range; for any
+ * other evaluator or filter the projection is left to the caller.
+ *
+ * @version $Id$
+ */
+class ParallelProjection extends RecursiveAction {
+
+    /**
+     * The smallest number of rows for which a projection is done in parallel.
+     */
+    static final int MIN_ROWS = 100000;
+    private static final int BLOCK = 4096;
+    private static ForkJoinPool pool;
+
+    private Tuple tuple;
+    private Object histogram;
+    private Evaluator[] evaluators;
+    private Filter filter;
+    private Evaluator weightEvaluator;
+    private int startRow;
+    private int endRow;
+    private int rowsPerTask;
+
+    private ParallelProjection(Tuple tuple, Object histogram, Evaluator[] evaluators, Filter filter, Evaluator weightEvaluator, int startRow, int endRow, int rowsPerTask) {
+        this.tuple = tuple;
+        this.histogram = histogram;
+        this.evaluators = evaluators;
+        this.filter = filter;
+        this.weightEvaluator = weightEvaluator;
+        this.startRow = startRow;
+        this.endRow = endRow;
+        this.rowsPerTask = rowsPerTask;
+    }
+
+    /**
+     * Project a tuple in parallel, if possible.
+     * @param tuple           The tuple.
+     * @param histogram       The histogram to fill, a Histogram1D for one evaluator or a Histogram2D for two.
+     * @param evaluators      The evaluators of the coordinates.
+     * @param filter          The filter, or <code>null</code> to accept all rows.
+     * @param weightEvaluator The evaluator of the weights, or <code>null</code> for unit weights.
+     * @return <code>true</code> if the projection was done, <code>false</code> if it cannot be done in parallel.
+     *
+     */
+    static boolean project(AbstractTuple tuple, Object histogram, IEvaluator[] evaluators, IFilter filter, IEvaluator weightEvaluator) {
+        if ( ! (tuple instanceof Tuple) || tuple.rows() < MIN_ROWS ) return false;
+        if ( evaluators.length == 1 && ! (histogram instanceof Histogram1D) ) return false;
+        if ( evaluators.length == 2 && ! (histogram instanceof Histogram2D) ) return false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        if ( threads < 2 ) return false;
+
+        Evaluator[] e = new Evaluator[evaluators.length];
+        for ( int i = 0; i < e.length; i++ ) {
+            e[i] = copy(evaluators[i]);
+            if ( e[i] == null ) return false;
+        }
+        Filter f = null;
+        if ( filter != null ) {
+            f = filter instanceof Filter ? ((Filter) filter).copy() : null;
+            if ( f == null ) return false;
+        }
+        Evaluator w = null;
+        if ( weightEvaluator != null ) {
+            w = copy(weightEvaluator);
+            if ( w == null ) return false;
+        }
+
+        int start = tuple.startRow();
+        int rows = tuple.rows();
+        int rowsPerTask = Math.max(MIN_ROWS/4, rows/(4*threads)+1);
+        pool().invoke(new ParallelProjection((Tuple) tuple, histogram, e, f, w, start, start+rows, rowsPerTask));
+        return true;
+    }
+
+    protected void compute() {
+        if ( endRow-startRow > rowsPerTask ) {
+            int middle = (startRow+endRow) >>> 1;
+            invokeAll(new ParallelProjection(tuple, histogram, evaluators, filter, weightEvaluator, startRow, middle, rowsPerTask),
+                      new ParallelProjection(tuple, histogram, evaluators, filter, weightEvaluator, middle, endRow, rowsPerTask));
+            return;
+        }
+
+        TupleRange range = new TupleRange(tuple, startRow, endRow);
+        Evaluator[] e = new Evaluator[evaluators.length];
+        for ( int i = 0; i < e.length; i++ ) {
+            e[i] = evaluators[i].copy();
+            e[i].initialize(range);
+        }
+        Filter f = null;
+        if ( filter != null ) {
+            f = filter.copy();
+            f.initialize(range);
+        }
+        Evaluator w = null;
+        if ( weightEvaluator != null ) {
+            w = weightEvaluator.copy();
+            w.initialize(range);
+        }
+
+        double[][] values = new double[e.length][BLOCK];
+        double[] weights = w == null ? null : new double[BLOCK];
+        int n = 0;
+        range.start();
+        while ( range.next() ) {
+            if ( f != null && ! f.accept() ) continue;
+            for ( int i = 0; i < e.length; i++ )
+                values[i][n] = e[i].evaluateDouble();
+            if ( w != null ) weights[n] = w.evaluateDouble();
+            if ( ++n == BLOCK ) {
+                fill(values, weights, n);
+                n = 0;
+            }
+        }
+        if ( n > 0 ) fill(values, weights, n);
+    }
+
+    private void fill(double[][] values, double[] weights, int n) {
+        synchronized (histogram) {
+            if ( values.length == 1 )
+                ((Histogram1D) histogram).fillN(values[0], weights, n);
+            else
+                ((Histogram2D) histogram).fillN(values[0], values[1], weights, n);
+        }
+    }
+
+    private static Evaluator copy(IEvaluator evaluator) {
+        return evaluator instanceof Evaluator ? ((Evaluator) evaluator).copy() : null;
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if ( pool == null ) pool = new ForkJoinPool();
+        return pool;
+    }
+}
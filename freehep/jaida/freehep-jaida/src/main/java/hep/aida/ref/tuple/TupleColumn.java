@@ -325,6 +325,28 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
      *
      */
     protected void setCurrentArray( int index ) {
+        checkIndex( index );
+        int arrayIndex = index/arraySize;
+        if ( arrayIndex != currentArrayIndex ) {
+            currentArrayIndex = arrayIndex;
+            currentArray = arrayList.get( currentArrayIndex );
+            currentArrayUpdated();
+        }
+    }
+    
+    /**
+     * Get the internal array holding a given value's index. Unlike setCurrentArray( int )
+     * this does not change the current array, so values can be read from several threads at once.
+     * @param index The value's index.
+     * @return The array holding the value.
+     *
+     */
+    protected java.lang.Object arrayFor( int index ) {
+        checkIndex( index );
+        return arrayList.get( index/arraySize );
+    }
+    
+    private void checkIndex( int index ) {
         if ( index < 0 || index > getFilledRows() ) {
             java.lang.String message = "Illegal cursor position. ";
             if ( index < 0 )
@@ -333,12 +355,6 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
                 message += "Before accessing the data start() has to be invoked.";
             throw new IllegalArgumentException(message);
         }
-        int arrayIndex = index/arraySize;
-        if ( arrayIndex != currentArrayIndex ) {
-            currentArrayIndex = arrayIndex;
-            currentArray = arrayList.get( currentArrayIndex );
-            currentArrayUpdated();
-        }
     }
     
     /**
@@ -425,7 +441,7 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
         }
         
         public void value(int index, Value value) {
-            setCurrentArray( index );
+            boolean[] data = (boolean[]) arrayFor( index );
             value.set( data[ index%arraySize ] );
         }
         
@@ -497,7 +513,7 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
         }
         
         public void value(int index, Value value) {
-            setCurrentArray( index );
+            float[] data = (float[]) arrayFor( index );
             value.set( data[ index%arraySize ] );
         }
         
@@ -568,7 +584,7 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
         }
         
         public void value(int index, Value value) {
-            setCurrentArray( index );
+            double[] data = (double[]) arrayFor( index );
             value.set( data[ index%arraySize ] );
         }
         
@@ -639,7 +655,7 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
         }
         
         public void value(int index, Value value) {
-            setCurrentArray( index );
+            byte[] data = (byte[]) arrayFor( index );
             value.set( data[ index%arraySize ] );
         }
         
@@ -710,8 +726,7 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
         }
         
         public void value(int index, Value value) {
-            setCurrentArray( index );
-            short[] data = (short[]) currentArray;
+            short[] data = (short[]) arrayFor( index );
             value.set( data[ index%arraySize ] );
         }
         
@@ -784,7 +799,7 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
         }
         
         public void value(int index, Value value) {
-            setCurrentArray( index );
+            int[] data = (int[]) arrayFor( index );
             value.set( data[ index%arraySize ] );
         }
         
@@ -854,7 +869,7 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
         }
         
         public void value(int index, Value value) {
-            setCurrentArray( index );
+            long[] data = (long[]) arrayFor( index );
             value.set( data[ index%arraySize ] );
         }
         
@@ -925,7 +940,7 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
         }
         
         public void value(int index, Value value) {
-            setCurrentArray( index );
+            char[] data = (char[]) arrayFor( index );
             value.set( data[ index%arraySize ] );
         }
         
@@ -996,7 +1011,7 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
         }
         
         public void value(int index, Value value) {
-            setCurrentArray( index );
+            java.lang.String[] data = (java.lang.String[]) arrayFor( index );
             value.set( data[ index%arraySize ] );
         }
         
@@ -1197,7 +1212,7 @@ public abstract class TupleColumn implements IBaseTupleColumn, FTupleColumn{
         }
         
         public void value(int index, Value value) {
-            setCurrentArray( index );
+            java.lang.Object[] data = (java.lang.Object[]) arrayFor( index );
             value.set( data[ index%arraySize ] );
         }
         
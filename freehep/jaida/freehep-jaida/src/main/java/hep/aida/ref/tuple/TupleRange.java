@@ -0,0 +1,85 @@
+package hep.aida.ref.tuple;
+
+import hep.aida.ITuple;
+
+import org.freehep.util.Value;
+
+/**
+ * A read only view of a range of rows of a Tuple. The view has its own
+ * cursor, so several views of the same Tuple can be read from different
+ * threads at once, as long as the Tuple is not filled at the same time.
+ *
+ * @version $Id$
+ */
+class TupleRange extends ReadOnlyAbstractTuple {
+
+    private Tuple tuple;
+    private int startRow;
+    private int endRow;
+
+    /**
+     * Create a view of a range of rows.
+     * @param tuple    The Tuple.
+     * @param startRow The first row of the range.
+     * @param endRow   The row after the last row of the range.
+     *
+     */
+    TupleRange(Tuple tuple, int startRow, int endRow) {
+        super(tuple.name(), tuple.title(), tuple.getOptions());
+        this.tuple = tuple;
+        this.startRow = startRow;
+        this.endRow = endRow;
+    }
+
+    int startRow() {
+        return startRow;
+    }
+
+    public int rows() {
+        return endRow-startRow;
+    }
+
+    public void columnValue(int column, Value value) {
+        tuple.columnValue(column, internalCursor(), value);
+    }
+
+    public double columnMax(int index) throws IllegalArgumentException {
+        return tuple.columnMax(index);
+    }
+
+    public double columnMean(int index) throws IllegalArgumentException {
+        return tuple.columnMean(index);
+    }
+
+    public double columnMin(int index) throws IllegalArgumentException {
+        return tuple.columnMin(index);
+    }
+
+    public String columnName(int index) throws IllegalArgumentException {
+        return tuple.columnName(index);
+    }
+
+    public double columnRms(int index) throws IllegalArgumentException {
+        return tuple.columnRms(index);
+    }
+
+    public Class columnType(int index) throws IllegalArgumentException {
+        return tuple.columnType(index);
+    }
+
+    public int columns() {
+        return tuple.columns();
+    }
+
+    public String columnDefaultString(int column) {
+        return tuple.columnDefaultString(column);
+    }
+
+    public int findColumn(String name) throws IllegalArgumentException {
+        return tuple.findColumn(name);
+    }
+
+    public ITuple findTuple(int index) {
+        return tuple.findTuple(index);
+    }
+}
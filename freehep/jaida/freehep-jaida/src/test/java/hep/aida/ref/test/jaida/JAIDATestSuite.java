@@ -43,6 +43,9 @@ public class JAIDATestSuite extends TestCase {
         suite.addTestSuite( TestPlotter.class );
         suite.addTestSuite( TestOptions.class );
         suite.addTestSuite( TestXMLToString.class );
+        suite.addTestSuite( TestConcurrentFill.class );
+        suite.addTestSuite( TestTupleProjection.class );
+        suite.addTestSuite( TestParallelFitMethod.class );
 // FIXME, needs to mocve to root
 //        suite.addTestSuite( TestRootDaemon.class );
         
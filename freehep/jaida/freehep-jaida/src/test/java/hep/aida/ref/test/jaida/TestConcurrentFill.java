@@ -0,0 +1,104 @@
+package hep.aida.ref.test.jaida;
+
+import hep.aida.IAnalysisFactory;
+import hep.aida.IHistogramFactory;
+import hep.aida.ref.histogram.Histogram1D;
+import hep.aida.ref.histogram.Histogram2D;
+import hep.aida.ref.histogram.Profile1D;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test bulk and concurrent filling of histograms.
+ * @version $Id$
+ */
+public class TestConcurrentFill extends TestCase
+{
+   private static final int THREADS = 4;
+   private static final int ENTRIES = 100000;
+
+   private IHistogramFactory histogramFactory;
+
+   public TestConcurrentFill(String testName)
+   {
+      super(testName);
+   }
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      IAnalysisFactory af = IAnalysisFactory.create();
+      histogramFactory = af.createHistogramFactory(af.createTreeFactory().create());
+   }
+
+   public void testFillN()
+   {
+      Histogram1D h1 = (Histogram1D) histogramFactory.createHistogram1D("h1",50,0,1);
+      Histogram1D h2 = (Histogram1D) histogramFactory.createHistogram1D("h2",50,0,1);
+      Random r = new Random(1);
+      double[] x = new double[1000];
+      double[] w = new double[1000];
+      for (int i=0; i<x.length; i++)
+      {
+         x[i] = r.nextGaussian()*0.3+0.5;
+         w[i] = r.nextDouble();
+         h1.fill(x[i],w[i]);
+      }
+      h2.fillN(x,w,x.length);
+      assertEqualContents(h1,h2);
+   }
+
+   public void testConcurrentFill() throws InterruptedException
+   {
+      final Histogram1D h1 = (Histogram1D) histogramFactory.createHistogram1D("h1",50,0,1);
+      final Histogram2D h2 = (Histogram2D) histogramFactory.createHistogram2D("h2",20,0,1,20,0,1);
+      final Profile1D p1 = (Profile1D) histogramFactory.createProfile1D("p1",20,0,1);
+      h1.setConcurrent(true);
+      h2.setConcurrent(true);
+      p1.setConcurrent(true);
+
+      Thread[] threads = new Thread[THREADS];
+      for (int t=0; t<THREADS; t++)
+      {
+         final long seed = t;
+         threads[t] = new Thread()
+         {
+            public void run()
+            {
+               Random r = new Random(seed);
+               for (int i=0; i<ENTRIES; i++)
+               {
+                  double x = r.nextDouble();
+                  h1.fill(x);
+                  h2.fill(x,r.nextDouble());
+                  p1.fill(x,1);
+               }
+            }
+         };
+         threads[t].start();
+      }
+      for (int t=0; t<THREADS; t++) threads[t].join();
+
+      assertEquals(THREADS*ENTRIES,h1.allEntries());
+      assertEquals(THREADS*ENTRIES,h2.allEntries());
+      assertEquals(THREADS*ENTRIES,p1.allEntries());
+      assertEquals(THREADS*ENTRIES,h1.sumBinHeights(),1e-6);
+      assertEquals(THREADS*ENTRIES,h2.sumAllBinHeights(),1e-6);
+      assertEquals(1,p1.binHeight(0),1e-12);
+   }
+
+   private void assertEqualContents(Histogram1D h1, Histogram1D h2)
+   {
+      assertEquals(h1.allEntries(),h2.allEntries());
+      assertEquals(h1.mean(),h2.mean(),1e-12);
+      assertEquals(h1.rms(),h2.rms(),1e-12);
+      for (int i=-2; i<h1.axis().bins(); i++)
+      {
+         assertEquals(h1.binEntries(i),h2.binEntries(i));
+         assertEquals(h1.binHeight(i),h2.binHeight(i),1e-12);
+         assertEquals(h1.binError(i),h2.binError(i),1e-12);
+      }
+   }
+}
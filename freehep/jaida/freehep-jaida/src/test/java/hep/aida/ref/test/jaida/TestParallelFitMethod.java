@@ -0,0 +1,112 @@
+package hep.aida.ref.test.jaida;
+
+import hep.aida.IAnalysisFactory;
+import hep.aida.IFunction;
+import hep.aida.dev.IDevFitDataIterator;
+import hep.aida.ref.fitter.fitmethod.AbstractFitMethod;
+import hep.aida.ref.fitter.fitmethod.ChiSquaredFitMethod;
+import hep.aida.ref.fitter.fitmethod.UnbinnedMaximumLikelihoodFitMethod;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare the fit methods evaluated in parallel with the fit methods
+ * evaluated on a single thread.
+ * @version $Id$
+ */
+public class TestParallelFitMethod extends TestCase
+{
+   private static final int ENTRIES = 100000;
+
+   private IFunction function;
+   private IFunction script;
+   private double[] x;
+   private double[] y;
+
+   public TestParallelFitMethod(String testName)
+   {
+      super(testName);
+   }
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      IAnalysisFactory af = IAnalysisFactory.create();
+      function = af.createFunctionFactory(af.createTreeFactory().create()).createFunctionByName("g","g");
+      function.setParameter("amplitude",1);
+      function.setParameter("mean",0.1);
+      function.setParameter("sigma",1.1);
+      script = af.createFunctionFactory(af.createTreeFactory().create()).createFunctionFromScript("s",1,"a*exp(-(x[0]-m)*(x[0]-m)/(2*s*s))","a,m,s","");
+      script.setParameter("a",1);
+      script.setParameter("m",0.1);
+      script.setParameter("s",1.1);
+      Random r = new Random(1);
+      x = new double[ENTRIES];
+      y = new double[ENTRIES];
+      for (int i=0; i<ENTRIES; i++)
+      {
+         x[i] = r.nextGaussian();
+         y[i] = 1+r.nextDouble();
+      }
+   }
+
+   public void testUnbinnedMaximumLikelihood()
+   {
+      compare(new UnbinnedMaximumLikelihoodFitMethod(),new UnbinnedMaximumLikelihoodFitMethod());
+   }
+
+   public void testChiSquared()
+   {
+      compare(new ChiSquaredFitMethod(),new ChiSquaredFitMethod());
+   }
+
+   /**
+    * A function compiled from an expression can not be evaluated concurrently,
+    * so its sums must be evaluated on the calling thread even when threads are
+    * requested, giving exactly the serial result.
+    */
+   public void testScriptFunction()
+   {
+      AbstractFitMethod serial = new UnbinnedMaximumLikelihoodFitMethod();
+      AbstractFitMethod parallel = new UnbinnedMaximumLikelihoodFitMethod();
+      parallel.setNumberOfThreads(4);
+      IDevFitDataIterator data = new ArrayIterator();
+      assertEquals(serial.evaluate(data,script),parallel.evaluate(data,script),0);
+
+      serial = new ChiSquaredFitMethod();
+      parallel = new ChiSquaredFitMethod();
+      parallel.setNumberOfThreads(4);
+      assertEquals(serial.evaluate(data,script),parallel.evaluate(data,script),0);
+   }
+
+   private void compare(AbstractFitMethod serial, AbstractFitMethod parallel)
+   {
+      parallel.setNumberOfThreads(4);
+      IDevFitDataIterator data = new ArrayIterator();
+      double value = serial.evaluate(data,function);
+      assertEquals(value,parallel.evaluate(data,function),1e-9*Math.abs(value));
+      assertEquals(parallel.evaluate(data,function),parallel.evaluate(data,function),0);
+
+      int n = function.numberOfParameters();
+      double[] gradient = serial.evaluateGradient(n,data,function);
+      double[] parallelGradient = parallel.evaluateGradient(n,data,function);
+      for (int i=0; i<n; i++)
+         assertEquals(gradient[i],parallelGradient[i],1e-9*Math.abs(gradient[i])+1e-9);
+   }
+
+   private class ArrayIterator implements IDevFitDataIterator
+   {
+      private int index = -1;
+      private double[] vars = new double[1];
+
+      public int entries() { return ENTRIES; }
+      public void start() { index = -1; }
+      public boolean next() { return ++index < ENTRIES; }
+      public double value() { return y[index]; }
+      public double error() { return Math.sqrt(y[index]); }
+      public double minusError() { return error(); }
+      public double[] vars() { vars[0] = x[index]; return vars; }
+   }
+}
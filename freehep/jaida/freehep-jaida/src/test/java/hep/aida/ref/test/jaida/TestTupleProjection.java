@@ -0,0 +1,81 @@
+package hep.aida.ref.test.jaida;
+
+import hep.aida.IAnalysisFactory;
+import hep.aida.IHistogram1D;
+import hep.aida.IHistogram2D;
+import hep.aida.IHistogramFactory;
+import hep.aida.ITree;
+import hep.aida.ITuple;
+import hep.aida.ITupleFactory;
+import hep.aida.ref.tuple.Evaluator;
+import hep.aida.ref.tuple.Filter;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare projections of a large tuple, which are done in parallel,
+ * with projections done one row at a time.
+ * @version $Id$
+ */
+public class TestTupleProjection extends TestCase
+{
+   private static final int ROWS = 300000;
+
+   private IHistogramFactory hf;
+   private ITuple tuple;
+
+   public TestTupleProjection(String testName)
+   {
+      super(testName);
+   }
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      IAnalysisFactory af = IAnalysisFactory.create();
+      ITree tree = af.createTreeFactory().create();
+      hf = af.createHistogramFactory(tree);
+      ITupleFactory tf = af.createTupleFactory(tree);
+      tuple = tf.create("tuple","tuple","double x, float y, int n");
+      Random r = new Random(1);
+      for (int i=0; i<ROWS; i++)
+      {
+         tuple.fill(0,r.nextGaussian());
+         tuple.fill(1,(float) r.nextGaussian());
+         tuple.fill(2,r.nextInt(10));
+         tuple.addRow();
+      }
+   }
+
+   public void testProject1D()
+   {
+      IHistogram1D parallel = hf.createHistogram1D("p",50,-3,3);
+      IHistogram1D serial = hf.createHistogram1D("s",50,-3,3);
+      tuple.project(parallel,new Evaluator("x+y"),new Filter("n>3"),new Evaluator("n"));
+      tuple.project(serial,new Evaluator("x+y") {},new Filter("n>3"),new Evaluator("n"));
+      assertEquals(serial.allEntries(),parallel.allEntries());
+      assertEquals(serial.mean(),parallel.mean(),1e-9);
+      assertEquals(serial.rms(),parallel.rms(),1e-9);
+      for (int i=-2; i<50; i++)
+      {
+         assertEquals(serial.binEntries(i),parallel.binEntries(i));
+         assertEquals(serial.binHeight(i),parallel.binHeight(i),1e-6);
+      }
+   }
+
+   public void testProject2D()
+   {
+      IHistogram2D parallel = hf.createHistogram2D("p",20,-3,3,20,-3,3);
+      IHistogram2D serial = hf.createHistogram2D("s",20,-3,3,20,-3,3);
+      tuple.project(parallel,new Evaluator("x"),new Evaluator("y"));
+      tuple.project(serial,new Evaluator("x") {},new Evaluator("y"));
+      assertEquals(ROWS,parallel.allEntries());
+      assertEquals(serial.meanX(),parallel.meanX(),1e-9);
+      assertEquals(serial.rmsY(),parallel.rmsY(),1e-9);
+      for (int i=-2; i<20; i++)
+         for (int j=-2; j<20; j++)
+            assertEquals(serial.binEntries(i,j),parallel.binEntries(i,j));
+   }
+}
@@ -78,6 +78,15 @@ public class AIDA
       }
    }
 
+   private AIDA(AIDA parent)
+   {
+      defMax = parent.defMax;
+      compressFormat = parent.compressFormat;
+      af = parent.af;
+      tree = af.createTreeFactory().create();
+      hf = af.createHistogramFactory(tree);
+   }
+
    private void checkPath(String path)
    {
       int pos = path.lastIndexOf('/');
@@ -370,6 +379,107 @@ public class AIDA
          if (obj instanceof IBaseHistogram) ((IBaseHistogram) obj).reset();
       }
    }
+
+   /**
+    * Create an AIDA with its own in-memory tree, for use by a single event processing
+    * thread. The histograms booked through the copy are added to those of this AIDA
+    * by {@link #merge(AIDA)}.
+    */
+   public synchronized AIDA createThreadCopy()
+   {
+      return new AIDA(this);
+   }
+
+   /**
+    * Add the contents of the histograms, profiles and clouds of a copy to the objects
+    * with the same path in this AIDA, creating any which do not exist here yet.
+    * @param copy An AIDA created by {@link #createThreadCopy()}
+    */
+   public synchronized void merge(AIDA copy)
+   {
+      String[] names = copy.tree.listObjectNames("/",true);
+      for (int i=0; i<names.length; i++)
+      {
+         if (names[i].endsWith("/")) continue;
+         IManagedObject obj = copy.tree.find(names[i]);
+         IManagedObject target;
+         try
+         {
+            target = tree.find(names[i]);
+         }
+         catch (IllegalArgumentException x)
+         {
+            checkPath(names[i]);
+            copy(names[i], obj);
+            continue;
+         }
+         if (obj instanceof IHistogram1D) ((IHistogram1D) target).add((IHistogram1D) obj);
+         else if (obj instanceof IHistogram2D) ((IHistogram2D) target).add((IHistogram2D) obj);
+         else if (obj instanceof IHistogram3D) ((IHistogram3D) target).add((IHistogram3D) obj);
+         else if (obj instanceof IProfile1D) ((IProfile1D) target).add((IProfile1D) obj);
+         else if (obj instanceof IProfile2D) ((IProfile2D) target).add((IProfile2D) obj);
+         else if (obj instanceof ICloud1D) add((ICloud1D) target, (ICloud1D) obj);
+         else if (obj instanceof ICloud2D) add((ICloud2D) target, (ICloud2D) obj);
+         else if (obj instanceof ICloud3D) add((ICloud3D) target, (ICloud3D) obj);
+      }
+   }
+
+   private void copy(String path, IManagedObject obj)
+   {
+      if (obj instanceof IHistogram1D) hf.createCopy(path, (IHistogram1D) obj);
+      else if (obj instanceof IHistogram2D) hf.createCopy(path, (IHistogram2D) obj);
+      else if (obj instanceof IHistogram3D) hf.createCopy(path, (IHistogram3D) obj);
+      else if (obj instanceof IProfile1D) hf.createCopy(path, (IProfile1D) obj);
+      else if (obj instanceof IProfile2D) hf.createCopy(path, (IProfile2D) obj);
+      else if (obj instanceof ICloud1D) hf.createCopy(path, (ICloud1D) obj);
+      else if (obj instanceof ICloud2D) hf.createCopy(path, (ICloud2D) obj);
+      else if (obj instanceof ICloud3D) hf.createCopy(path, (ICloud3D) obj);
+   }
+
+   // A converted cloud only keeps its histogram, which is added to the target after
+   // converting it with the same binning, otherwise the entries are filled again.
+   private static void add(ICloud1D target, ICloud1D cloud)
+   {
+      if (cloud.isConverted())
+      {
+         IHistogram1D h = cloud.histogram();
+         if (!target.isConverted()) target.convert(h.axis().bins(), h.axis().lowerEdge(), h.axis().upperEdge());
+         target.histogram().add(h);
+      }
+      else
+      {
+         for (int i=0; i<cloud.entries(); i++) target.fill(cloud.value(i), cloud.weight(i));
+      }
+   }
+
+   private static void add(ICloud2D target, ICloud2D cloud)
+   {
+      if (cloud.isConverted())
+      {
+         IHistogram2D h = cloud.histogram();
+         if (!target.isConverted()) target.convert(h.xAxis().bins(), h.xAxis().lowerEdge(), h.xAxis().upperEdge(), h.yAxis().bins(), h.yAxis().lowerEdge(), h.yAxis().upperEdge());
+         target.histogram().add(h);
+      }
+      else
+      {
+         for (int i=0; i<cloud.entries(); i++) target.fill(cloud.valueX(i), cloud.valueY(i), cloud.weight(i));
+      }
+   }
+
+   private static void add(ICloud3D target, ICloud3D cloud)
+   {
+      if (cloud.isConverted())
+      {
+         IHistogram3D h = cloud.histogram();
+         if (!target.isConverted()) target.convert(h.xAxis().bins(), h.xAxis().lowerEdge(), h.xAxis().upperEdge(), h.yAxis().bins(), h.yAxis().lowerEdge(), h.yAxis().upperEdge(), h.zAxis().bins(), h.zAxis().lowerEdge(), h.zAxis().upperEdge());
+         target.histogram().add(h);
+      }
+      else
+      {
+         for (int i=0; i<cloud.entries(); i++) target.fill(cloud.valueX(i), cloud.valueY(i), cloud.valueZ(i), cloud.weight(i));
+      }
+   }
+
    private static class RewindListener extends AbstractLoopListener
    {
       private Reference weak;
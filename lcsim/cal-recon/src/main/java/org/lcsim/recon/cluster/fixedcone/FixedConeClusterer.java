@@ -1,6 +1,7 @@
 package org.lcsim.recon.cluster.fixedcone;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -56,6 +57,10 @@ public class FixedConeClusterer implements Clusterer {
     private double[] _cutFunc;//(function Format :  A*Eseed+B*Eseed*Eseed)
     private static final double PI = Math.PI;
     private static final double TWOPI = 2. * PI;
+    // smallest (theta, phi) grid cell, in radians
+    private static final double MIN_CELL_SIZE = 0.01;
+    // margin of the grid window around a cone, in radians
+    private static final double WINDOW_MARGIN = 1e-6;
     public FixedConeClusterPropertyCalculator _clusterPropertyCalculator;
     private FixedConeDistanceMetric _dm;
 
@@ -172,6 +177,13 @@ public class FixedConeClusterer implements Clusterer {
         int size = in.size();
         boolean[] used = new boolean[size];
 
+        // directions of the hits, and a grid of the hits in (theta, phi)
+        // so that each seed only looks at the hits near its cone
+        ThetaPhiHitIndex index = new ThetaPhiHitIndex(in, gridCellSize(in));
+        int[] candidates = new int[size];
+        int[] window = new int[4];
+        int[] newWindow = new int[4];
+
         //   outer loop finds a seed
         for (int i = 0; i < size; ++i) {
             if (!used[i]) {
@@ -192,14 +204,11 @@ public class FixedConeClusterer implements Clusterer {
                         break;
                     }
                     double rsquared = _radius * _radius;
-                    double[] pos = p.getPosition();
-                    SpacePoint sp = new CartesianPoint(pos);
-                    double phi1 = sp.phi();
-                    double sphi1 = sin(phi1);
-                    double cphi1 = cos(phi1);
-                    double theta1 = sp.theta();
-                    double stheta1 = sin(theta1);
-                    double ctheta1 = cos(theta1);
+                    double cosRadius = cos(_radius);
+                    double sphi1 = index.sinPhi[i];
+                    double cphi1 = index.cosPhi[i];
+                    double stheta1 = index.sinTheta[i];
+                    double ctheta1 = index.cosTheta[i];
                     
 //                    decoder = p.getIDDecoder();
 //                    decoder.setID(p.getCellID());
@@ -214,18 +223,30 @@ public class FixedConeClusterer implements Clusterer {
                     Lorentz4Vector sum = new Momentum4Vector(px, py, pz, cellE);
                     double phiseed = sum.phi();
                     double thetaseed = sum.theta();
+                    double sinphiseed = sin(phiseed);
+                    double cosphiseed = cos(phiseed);
+                    double sinthetaseed = sin(thetaseed);
+                    double costhetaseed = cos(thetaseed);
 
                     // constituent cells
                     List<CalorimeterHit> members = new ArrayList<CalorimeterHit>();
                     members.add(p);
-                    // inner loop adds neighboring cells to seed
-
-                    for (int j = i + 1; j < size; ++j) {
-                        if (!used[j]) {
+                    // inner loop adds neighboring cells to seed.
+                    // The unused hits after the seed that are near the cone
+                    // are checked in order, as a loop over all the hits would;
+                    // the hits further away cannot be in the cone. Whenever
+                    // the cone moves to other grid cells, the hits near it
+                    // after the last hit added are looked up again.
+                    int last = i;
+                    boolean search = coneWindow(index, thetaseed, phiseed, window);
+                    while (search) {
+                        search = false;
+                        int ncandidates = index.candidates(window, last, used, candidates);
+                        for (int k = 0; k < ncandidates; ++k) {
+                            int j = candidates[k];
                             CalorimeterHit p2 = in.get(j);
-                            SpacePoint sp2 = new CartesianPoint(p2.getPosition());
-                            double phi = sp2.phi();
-                            double theta = sp2.theta();
+                            double phi = index.phi[j];
+                            double theta = index.theta[j];
                             double dphi = phi - phiseed;
 
                             if (dphi < -PI) {
@@ -241,7 +262,7 @@ public class FixedConeClusterer implements Clusterer {
                             switch (_dm) {
                                 case DPHIDCOSTHETA: // R^2 = dphi^2 + d(cos theta)^2
 
-                                    double dcostheta = cos(theta) - cos(thetaseed);
+                                    double dcostheta = index.cosTheta[j] - costhetaseed;
                                     R2 = dphi * dphi + dcostheta * dcostheta;
                                     cond = (R2 < rsquared);
                                     break;
@@ -253,28 +274,44 @@ public class FixedConeClusterer implements Clusterer {
                                 case DOTPRODUCT:
                                 default: // dot product method
 
-                                    double dotp = Math.sin(theta) * Math.sin(thetaseed) *
-                                            (sin(phi) * sin(phiseed) +
-                                            cos(phi) * cos(phiseed)) +
-                                            cos(theta) * cos(thetaseed);
-                                    cond = (dotp > cos(_radius));
+                                    double dotp = index.sinTheta[j] * sinthetaseed *
+                                            (index.sinPhi[j] * sinphiseed +
+                                            index.cosPhi[j] * cosphiseed) +
+                                            index.cosTheta[j] * costhetaseed;
+                                    cond = (dotp > cosRadius);
                                     break;
                             }
 
                             if (cond) {
                                 //  particle within cone
                                 cellE = p2.getCorrectedEnergy();
-                                px = cellE * cos(phi) * sin(theta);
-                                py = cellE * sin(phi) * sin(theta);
-                                pz = cellE * cos(theta);
-                                sum.plusEquals(new Momentum4Vector(px, py, pz, cellE));
+                                px = cellE * index.cosPhi[j] * index.sinTheta[j];
+                                py = cellE * index.sinPhi[j] * index.sinTheta[j];
+                                pz = cellE * index.cosTheta[j];
+                                sum.plusEquals(px, py, pz, cellE);
                                 members.add(p2);
                                 // tag this element so we don't reuse it
                                 used[j] = true;
+                                last = j;
 
                                 //   recalculate cone center
                                 phiseed = sum.phi();
                                 thetaseed = sum.theta();
+                                sinphiseed = sin(phiseed);
+                                cosphiseed = cos(phiseed);
+                                sinthetaseed = sin(thetaseed);
+                                costhetaseed = cos(thetaseed);
+
+                                if (!coneWindow(index, thetaseed, phiseed, newWindow)) {
+                                    break;
+                                }
+                                if (!Arrays.equals(window, newWindow)) {
+                                    int[] tmp = window;
+                                    window = newWindow;
+                                    newWindow = tmp;
+                                    search = true;
+                                    break;
+                                }
                             }
                         }
                     }// end of inner loop
@@ -302,12 +339,16 @@ public class FixedConeClusterer implements Clusterer {
             // sort the clusters in descending energy
             Collections.sort(out, new ClusterESort());
             // loop over the found clusters and look for overlaps
-            // i.e distance between clusters is less than 2*R
+            // i.e distance between clusters is less than 2*R.
+            // The cluster axes only change when hits are moved between clusters.
+            Lorentz4Vector[] axes = new Lorentz4Vector[out.size()];
             for (int i = 0; i < out.size(); ++i) {
                 for (int j = i + 1; j < out.size(); ++j) {
-                    double dTheta = dTheta(out.get(i), out.get(j));
+                    double dTheta = dTheta(axis(out, axes, i), axis(out, axes, j));
                     if (dTheta < radius.get(i) + radius.get(j)) {
                         resolve((BaseCluster) (out.get(i)), radius.get(i), (BaseCluster) (out.get(j)), radius.get(j));
+                        axes[i] = null;
+                        axes[j] = null;
                     }
                 }
             }
@@ -317,6 +358,69 @@ public class FixedConeClusterer implements Clusterer {
         return out;
     }
 
+    /**
+     * Choose the size of the (theta, phi) grid cells from the cone radius,
+     * or from the radius predicted for the most energetic hit.
+     */
+    private double gridCellSize(List<CalorimeterHit> hits) {
+        double r = _radius;
+        if (!_radiusSetFlag && !hits.isEmpty()) {
+            r = _coneFunc[0] * Math.log(hits.get(0).getCorrectedEnergy()) + _coneFunc[1];
+        }
+        if (!(r > MIN_CELL_SIZE)) {
+            r = MIN_CELL_SIZE;
+        }
+        return Math.min(r, PI);
+    }
+
+    /**
+     * Find the grid cells that cover the cone around an axis, with a margin
+     * for rounding.
+     *
+     * @return false if the axis is undefined, in which case no hit is in the cone.
+     */
+    private boolean coneWindow(ThetaPhiHitIndex index, double thetaseed, double phiseed, int[] window) {
+        if (Double.isNaN(thetaseed) || Double.isNaN(phiseed)) {
+            return false;
+        }
+        double r = _radius + WINDOW_MARGIN;
+        double thetaMin = thetaseed - r;
+        double thetaMax = thetaseed + r;
+        double dphi = r;
+        switch (_dm) {
+            case DPHIDCOSTHETA:
+                double costheta = cos(thetaseed);
+                thetaMin = Math.acos(Math.min(1., costheta + r)) - WINDOW_MARGIN;
+                thetaMax = Math.acos(Math.max(-1., costheta - r)) + WINDOW_MARGIN;
+                break;
+            case DPHIDTHETA:
+                break;
+            case DOTPRODUCT:
+            default:
+                // the cone is a circle on the sphere
+                if (r >= PI / 2. || thetaMin <= 0. || thetaMax >= PI) {
+                    dphi = PI;
+                } else {
+                    dphi = Math.asin(Math.min(1., sin(r) / sin(thetaseed))) + WINDOW_MARGIN;
+                }
+                break;
+        }
+        index.window(thetaMin, thetaMax, phiseed, dphi, window);
+        return true;
+    }
+
+    private Lorentz4Vector axis(List<Cluster> clusters, Lorentz4Vector[] axes, int i) {
+        if (axes[i] == null) {
+            axes[i] = _clusterPropertyCalculator.calculateVec(clusters.get(i).getCalorimeterHits());
+        }
+        return axes[i];
+    }
+
+    private double dTheta(Lorentz4Vector v1, Lorentz4Vector v2) {
+        double costheta = (v1.vec3dot(v2)) / (v1.p() * v2.p());
+        return Math.acos(costheta);
+    }
+
     /**
      * Calculate the angle between two Clusters
      *
@@ -329,8 +433,7 @@ public class FixedConeClusterer implements Clusterer {
         Lorentz4Vector v1 = _clusterPropertyCalculator.vector();
         _clusterPropertyCalculator.calculateProperties(c2.getCalorimeterHits());
         Lorentz4Vector v2 = _clusterPropertyCalculator.vector();
-        double costheta = (v1.vec3dot(v2)) / (v1.p() * v2.p());
-        return Math.acos(costheta);
+        return dTheta(v1, v2);
     }
 
     /**
@@ -0,0 +1,156 @@
+package org.lcsim.recon.cluster.fixedcone;
+
+import java.util.Arrays;
+import java.util.List;
+import org.lcsim.event.CalorimeterHit;
+import org.lcsim.spacegeom.CartesianPoint;
+
+import static java.lang.Math.sin;
+import static java.lang.Math.cos;
+
+/**
+ * The directions of a list of calorimeter hits, kept in primitive arrays,
+ * and a grid of the hits in (theta, phi) for finding the hits in a cone
+ * without looping over all of them.
+ *
+ * The hits of each grid cell are kept in increasing order of their index
+ * in the list, so that the hits of a window can be returned in the order
+ * in which a loop over the list would see them.
+ *
+ * @version $Id$
+ */
+final class ThetaPhiHitIndex {
+
+    private static final double TWOPI = 2. * Math.PI;
+
+    // Directions of the hits, as given by SpacePoint.
+    final double[] phi;
+    final double[] theta;
+    final double[] sinPhi;
+    final double[] cosPhi;
+    final double[] sinTheta;
+    final double[] cosTheta;
+
+    private final int nTheta;
+    private final int nPhi;
+    private final double thetaWidth;
+    private final double phiWidth;
+
+    // Hits of cell c are cellHits[cellStart[c]] to cellHits[cellStart[c+1]-1].
+    private final int[] cellStart;
+    private final int[] cellHits;
+
+    /**
+     * Index a list of hits.
+     *
+     * @param hits The hits.
+     * @param cellSize The approximate size of a grid cell in theta and phi, in radians.
+     */
+    ThetaPhiHitIndex(List<CalorimeterHit> hits, double cellSize) {
+        int size = hits.size();
+        phi = new double[size];
+        theta = new double[size];
+        sinPhi = new double[size];
+        cosPhi = new double[size];
+        sinTheta = new double[size];
+        cosTheta = new double[size];
+        for (int i = 0; i < size; ++i) {
+            CartesianPoint sp = new CartesianPoint(hits.get(i).getPosition());
+            phi[i] = sp.phi();
+            theta[i] = sp.theta();
+            sinPhi[i] = sin(phi[i]);
+            cosPhi[i] = cos(phi[i]);
+            sinTheta[i] = sin(theta[i]);
+            cosTheta[i] = cos(theta[i]);
+        }
+
+        nTheta = (int) Math.ceil(Math.PI / cellSize);
+        nPhi = (int) Math.ceil(TWOPI / cellSize);
+        thetaWidth = Math.PI / nTheta;
+        phiWidth = TWOPI / nPhi;
+
+        int[] cell = new int[size];
+        cellStart = new int[nTheta * nPhi + 1];
+        for (int i = 0; i < size; ++i) {
+            cell[i] = thetaBin(theta[i]) * nPhi + phiBin(phi[i]);
+            cellStart[cell[i] + 1]++;
+        }
+        for (int c = 0; c < nTheta * nPhi; ++c) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellHits = new int[size];
+        int[] fill = Arrays.copyOf(cellStart, nTheta * nPhi);
+        for (int i = 0; i < size; ++i) {
+            cellHits[fill[cell[i]]++] = i;
+        }
+    }
+
+    private int thetaBin(double t) {
+        int bin = (int) (t / thetaWidth);
+        return bin < 0 ? 0 : (bin >= nTheta ? nTheta - 1 : bin);
+    }
+
+    private int phiBin(double p) {
+        if (p < 0.) {
+            p += TWOPI;
+        }
+        int bin = (int) (p / phiWidth);
+        return bin < 0 ? 0 : (bin >= nPhi ? nPhi - 1 : bin);
+    }
+
+    /**
+     * Compute the grid cells that cover a window in theta and phi.
+     *
+     * @param thetaMin The lower edge of the window in theta.
+     * @param thetaMax The upper edge of the window in theta.
+     * @param phiCenter The center of the window in phi.
+     * @param dphi The half width of the window in phi; pi or more for all phi.
+     * @param window Set to the first theta bin, the last theta bin,
+     *               the first phi bin and the number of phi bins.
+     */
+    void window(double thetaMin, double thetaMax, double phiCenter, double dphi, int[] window) {
+        window[0] = thetaBin(thetaMin);
+        window[1] = thetaBin(thetaMax);
+        if (dphi >= Math.PI) {
+            window[2] = 0;
+            window[3] = nPhi;
+        } else {
+            int first = (int) Math.floor((phiCenter - dphi) / phiWidth);
+            int last = (int) Math.floor((phiCenter + dphi) / phiWidth);
+            window[2] = ((first % nPhi) + nPhi) % nPhi;
+            window[3] = Math.min(last - first + 1, nPhi);
+        }
+    }
+
+    /**
+     * Find the hits in a window that are not used and come after a given hit.
+     *
+     * @param window The grid cells of the window, as set by {@link #window}.
+     * @param after Only hits with a larger index are returned.
+     * @param used Flags of the hits that are already used.
+     * @param found Set to the indices of the hits found, in increasing order.
+     * @return The number of hits found.
+     */
+    int candidates(int[] window, int after, boolean[] used, int[] found) {
+        int n = 0;
+        for (int t = window[0]; t <= window[1]; ++t) {
+            for (int k = 0; k < window[3]; ++k) {
+                int c = t * nPhi + (window[2] + k) % nPhi;
+                int from = cellStart[c];
+                int to = cellStart[c + 1];
+                int start = Arrays.binarySearch(cellHits, from, to, after + 1);
+                if (start < 0) {
+                    start = -start - 1;
+                }
+                for (int h = start; h < to; ++h) {
+                    int j = cellHits[h];
+                    if (!used[j]) {
+                        found[n++] = j;
+                    }
+                }
+            }
+        }
+        Arrays.sort(found, 0, n);
+        return n;
+    }
+}
@@ -0,0 +1,56 @@
+package org.lcsim.recon.cluster.localequivalence;
+
+/**
+ * A hash table from cell ID to Cell, with the IDs kept in a primitive array
+ * so that looking up the neighbours of a cell does not box them.
+ * Collisions are resolved by linear probing. Cells cannot be removed.
+ *
+ * @version $Id$
+ */
+final class CellIDIndex
+{
+    private final long[] _ids;
+    private final Cell[] _cells;
+    private final int _mask;
+
+    /**
+     * @param expected The number of cells that will be added.
+     */
+    CellIDIndex(int expected)
+    {
+        int capacity = Integer.highestOneBit(Math.max(2 * expected, 2) - 1) << 1;
+        _ids = new long[capacity];
+        _cells = new Cell[capacity];
+        _mask = capacity - 1;
+    }
+
+    private int slot(long id)
+    {
+        long h = id * 0x9E3779B97F4A7C15L;
+        int i = (int) (h ^ (h >>> 32)) & _mask;
+        while (_cells[i] != null && _ids[i] != id)
+        {
+            i = (i + 1) & _mask;
+        }
+        return i;
+    }
+
+    /**
+     * Add a cell, replacing any cell with the same ID.
+     */
+    void put(Cell cell)
+    {
+        long id = cell.cellID();
+        int i = slot(id);
+        _ids[i] = id;
+        _cells[i] = cell;
+    }
+
+    /**
+     * @return The cell with this ID, or null if there is none.
+     */
+    Cell get(long id)
+    {
+        return _cells[slot(id)];
+    }
+}
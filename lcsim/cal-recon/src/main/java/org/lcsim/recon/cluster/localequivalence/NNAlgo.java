@@ -12,10 +12,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.SortedSet;
 import org.lcsim.event.CalorimeterHit;
 import org.lcsim.geometry.IDDecoder;
@@ -58,12 +56,15 @@ public class NNAlgo
         List<Cell> cells = new ArrayList<Cell>();
         Map<Long, Cell> cellmap = new HashMap<Long, Cell>();
         Collection<CalorimeterHit> hits = hitmap.values();
+        // the cells by cell ID, for looking up neighbors without boxing
+        CellIDIndex index = new CellIDIndex(hits.size());
         for(CalorimeterHit hit : hits)
         {
             Cell3D cell = new Cell3D(hit);
             cells.add(cell);
             long key = hit.getCellID();
             cellmap.put(key, cell);
+            index.put(cell);
 //            System.out.println(decodeCalHit(hit));
         }
         Collections.sort(cells);
@@ -89,13 +90,11 @@ public class NNAlgo
 //                System.out.println("  j: "+j);
 //                System.out.println("  "+decodeCellID(neighbors[j],c.getIDDecoder()));
 //                System.out.println(c3d.cellID()+ " j= "+j+" neighbor= "+neighbors[j]);
-                CalorimeterHit h = hitmap.get(neighbors[j]);
+                Cell neigh = index.get(neighbors[j]);
                 // is the neighboring cell id hit?
                 // if so, does it meet or exceed threshold?
-                if (h != null)
+                if (neigh != null)
                 {
-//                    System.out.println("   hit neighbor "+ decodeCalHit(h));
-                    Cell neigh = cellmap.get(neighbors[j]);
                     // find highest neighbor to point to...
                     if (neigh.value() > max) //Note difference between > and >=
                     {
@@ -121,23 +120,24 @@ public class NNAlgo
         
         // A collection to hold the clusters
         List<NNCluster> clusters = new ArrayList<NNCluster>();
-//                // The set of linked cells in the map
-        Set set = cellmap.entrySet();
+        // The linked cells in the order of the map. Removing entries does not
+        // change the order of the others, so starting each cluster from the
+        // first cell still in the map gives the same clusters as restarting
+        // an iterator over the map after every cluster.
+        List<Cell> linked = new ArrayList<Cell>(cellmap.values());
 //
         int cluster  = 0;
-        int size = cellmap.size();
-        Iterator it;
-        while(size>0)
+        for(Cell first : linked)
         {
-            it = set.iterator();
-            Map.Entry entry = (Map.Entry) it.next();
-            Cell cell = (Cell) entry.getValue();
+            // skip cells already added to a cluster
+            if(cellmap.get(first.cellID()) != first) continue;
+            Cell cell = first;
             Cell nextcell = cell.pointsTo();
             
             ++cluster;
             NNCluster clus = new NNCluster();
             // loop over all cells pointed to by this cell recursively
-            while(cellmap.containsValue(cell))
+            while(cellmap.get(cell.cellID()) == cell)
             {
                 clus.addCell(cell);
                 cellmap.remove(cell.cellID());
@@ -158,7 +158,6 @@ public class NNAlgo
                     hitmap.remove(c.cellID());
                 }
             }
-            size = cellmap.size();
         } // end of clustering loop over map
         return clusters;
     }
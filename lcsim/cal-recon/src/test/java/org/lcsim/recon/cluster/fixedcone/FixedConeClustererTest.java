@@ -0,0 +1,304 @@
+package org.lcsim.recon.cluster.fixedcone;
+
+import hep.physics.vec.BasicHep3Vector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+import org.lcsim.event.CalorimeterHit;
+import org.lcsim.event.Cluster;
+import org.lcsim.event.base.BaseCalorimeterHit;
+import org.lcsim.event.base.BaseCluster;
+import org.lcsim.event.util.CalorimeterHitEsort;
+import org.lcsim.geometry.IDDecoder;
+import org.lcsim.geometry.util.BaseIDDecoder;
+import org.lcsim.recon.cluster.fixedcone.FixedConeClusterer.FixedConeDistanceMetric;
+import org.lcsim.recon.cluster.util.ClusterESort;
+import org.lcsim.recon.cluster.util.FixedConeClusterPropertyCalculator;
+import org.lcsim.spacegeom.CartesianPoint;
+import org.lcsim.spacegeom.SpacePoint;
+import org.lcsim.util.fourvec.Lorentz4Vector;
+import org.lcsim.util.fourvec.Momentum4Vector;
+
+/**
+ * Compare the clusters found by {@link FixedConeClusterer} with those of a
+ * plain loop over all the hits after each seed, for each distance metric,
+ * with fixed and predicted cone sizes, and for cones which cross phi = 0 or pi
+ * or contain the beam axis.
+ *
+ * @version $Id$
+ */
+public class FixedConeClustererTest extends TestCase
+{
+    private static final double[] CONE_FUNC = {0.011347, 0.043117};
+    private static final double[] CUT_FUNC = {3.2, 2.0};
+
+    public void testRandomJets()
+    {
+        Random random = new Random(7);
+        double[][] axes = new double[20][];
+        for (int k = 0; k < axes.length; ++k)
+        {
+            axes[k] = new double[]{Math.acos(2 * random.nextDouble() - 1), 2 * Math.PI * random.nextDouble()};
+        }
+        compareAll(jets(axes, 0.05, 3000, random));
+    }
+
+    public void testPhiWrap()
+    {
+        // jets on both sides of phi = 0, where the cone axis wraps, and of phi = +-pi,
+        // where the hit positions wrap
+        double[][] axes = {{1.0, 0.02}, {1.2, -0.03}, {2.0, 0.}, {2.2, -0.12},
+                           {1.1, Math.PI - 0.02}, {1.9, -Math.PI + 0.03}};
+        compareAll(jets(axes, 0.05, 1500, new Random(11)));
+    }
+
+    public void testPolarCones()
+    {
+        // jets along and close to the beam axis, where phi is poorly defined
+        double[][] axes = {{0.01, 0.5}, {0.06, 2.5}, {Math.PI - 0.01, -1.0}, {Math.PI - 0.08, 1.5}};
+        compareAll(jets(axes, 0.05, 1500, new Random(13)));
+    }
+
+    private static void compareAll(List<CalorimeterHit> hits)
+    {
+        for (FixedConeDistanceMetric metric : FixedConeDistanceMetric.values())
+        {
+            compare(hits, new FixedConeClusterer(0.1, 0.1, 0.0, metric), 0.1, 0.1, metric);
+            compare(hits, new FixedConeClusterer(0.1, 0.0, CONE_FUNC, CUT_FUNC, metric), Double.NaN, 0.1, metric);
+        }
+    }
+
+    private static void compare(List<CalorimeterHit> hits, FixedConeClusterer clusterer, double radius, double seed, FixedConeDistanceMetric metric)
+    {
+        List<Cluster> found = clusterer.createClusters(new ArrayList<CalorimeterHit>(hits));
+        List<Cluster> expected = reference(new ArrayList<CalorimeterHit>(hits), radius, seed, metric);
+        String what = metric + (Double.isNaN(radius) ? " with predicted radius" : " with radius " + radius);
+        assertTrue("No clusters found " + what, found.size() > 1);
+        assertEquals("Wrong number of clusters " + what, expected.size(), found.size());
+        for (int i = 0; i < found.size(); ++i)
+        {
+            List<CalorimeterHit> e = expected.get(i).getCalorimeterHits();
+            List<CalorimeterHit> f = found.get(i).getCalorimeterHits();
+            assertEquals("Wrong hits in cluster " + i + " " + what, e.size(), f.size());
+            for (int j = 0; j < e.size(); ++j)
+            {
+                assertSame("Wrong hits in cluster " + i + " " + what, e.get(j), f.get(j));
+            }
+        }
+    }
+
+    /**
+     * The clusters found by checking every unused hit after each seed, in
+     * the way FixedConeClusterer has always defined them. Overlapping
+     * clusters are resolved by FixedConeClusterer itself.
+     *
+     * @param radius The cone radius, or NaN to predict it from the seed energy.
+     */
+    private static List<Cluster> reference(List<CalorimeterHit> in, double radius, double seed, FixedConeDistanceMetric metric)
+    {
+        FixedConeClusterer resolver = new FixedConeClusterer(0.1, seed, 0.0, metric);
+        resolver._clusterPropertyCalculator = new FixedConeClusterPropertyCalculator();
+        List<Cluster> out = new ArrayList<Cluster>();
+        List<Double> radii = new ArrayList<Double>();
+        Collections.sort(in, new CalorimeterHitEsort());
+        boolean[] used = new boolean[in.size()];
+        for (int i = 0; i < in.size(); ++i)
+        {
+            CalorimeterHit p = in.get(i);
+            double eseed = p.getCorrectedEnergy();
+            if (used[i] || eseed <= seed)
+            {
+                continue;
+            }
+            double r = radius;
+            double clusterCut = 0.0;
+            if (Double.isNaN(radius))
+            {
+                r = CONE_FUNC[0] * Math.log(eseed) + CONE_FUNC[1];
+                clusterCut = CUT_FUNC[0] * eseed + CUT_FUNC[1] * eseed * eseed;
+                if (r < 0.0)
+                {
+                    break;
+                }
+            }
+            Lorentz4Vector sum = momentum(p);
+            List<CalorimeterHit> members = new ArrayList<CalorimeterHit>();
+            members.add(p);
+            for (int j = i + 1; j < in.size(); ++j)
+            {
+                if (used[j])
+                {
+                    continue;
+                }
+                SpacePoint sp = new CartesianPoint(in.get(j).getPosition());
+                double phi = sp.phi();
+                double theta = sp.theta();
+                double dphi = phi - sum.phi();
+                if (dphi < -Math.PI)
+                {
+                    dphi += 2 * Math.PI;
+                }
+                if (dphi > Math.PI)
+                {
+                    dphi -= 2 * Math.PI;
+                }
+                boolean inside;
+                switch (metric)
+                {
+                    case DPHIDCOSTHETA:
+                        double dcostheta = Math.cos(theta) - Math.cos(sum.theta());
+                        inside = dphi * dphi + dcostheta * dcostheta < r * r;
+                        break;
+                    case DPHIDTHETA:
+                        double dtheta = theta - sum.theta();
+                        inside = dphi * dphi + dtheta * dtheta < r * r;
+                        break;
+                    default:
+                        double dotp = Math.sin(theta) * Math.sin(sum.theta())
+                                * (Math.sin(phi) * Math.sin(sum.phi()) + Math.cos(phi) * Math.cos(sum.phi()))
+                                + Math.cos(theta) * Math.cos(sum.theta());
+                        inside = dotp > Math.cos(r);
+                        break;
+                }
+                if (inside)
+                {
+                    sum.plusEquals(momentum(in.get(j)));
+                    members.add(in.get(j));
+                    used[j] = true;
+                }
+            }
+            if (sum.E() > clusterCut)
+            {
+                BaseCluster clus = new BaseCluster();
+                clus.setPropertyCalculator(resolver._clusterPropertyCalculator);
+                for (CalorimeterHit hit : members)
+                {
+                    clus.addHit(hit);
+                }
+                out.add(clus);
+                radii.add(r);
+            }
+        }
+        if (out.size() > 1)
+        {
+            Collections.sort(out, new ClusterESort());
+            for (int i = 0; i < out.size(); ++i)
+            {
+                for (int j = i + 1; j < out.size(); ++j)
+                {
+                    if (resolver.dTheta(out.get(i), out.get(j)) < radii.get(i) + radii.get(j))
+                    {
+                        resolver.resolve((BaseCluster) out.get(i), radii.get(i), (BaseCluster) out.get(j), radii.get(j));
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private static Lorentz4Vector momentum(CalorimeterHit hit)
+    {
+        SpacePoint sp = new CartesianPoint(hit.getPosition());
+        double e = hit.getCorrectedEnergy();
+        return new Momentum4Vector(
+                e * Math.cos(sp.phi()) * Math.sin(sp.theta()),
+                e * Math.sin(sp.phi()) * Math.sin(sp.theta()),
+                e * Math.cos(sp.theta()), e);
+    }
+
+    /**
+     * Hits spread around the given (theta, phi) axes, one in three of them
+     * low energy noise anywhere in the detector.
+     */
+    private static List<CalorimeterHit> jets(double[][] axes, double width, int n, Random random)
+    {
+        Decoder decoder = new Decoder();
+        List<CalorimeterHit> hits = new ArrayList<CalorimeterHit>();
+        for (int i = 0; i < n; ++i)
+        {
+            double theta;
+            double phi;
+            double e;
+            if (i % 3 == 0)
+            {
+                theta = Math.acos(2 * random.nextDouble() - 1);
+                phi = 2 * Math.PI * random.nextDouble();
+                e = 0.01 * random.nextDouble();
+            }
+            else
+            {
+                double[] axis = axes[random.nextInt(axes.length)];
+                theta = axis[0] + width * random.nextGaussian();
+                phi = axis[1] + width * random.nextGaussian();
+                e = Math.exp(-3 * random.nextDouble());
+            }
+            double r = 1500 + 500 * random.nextDouble();
+            double[] pos = {r * Math.sin(theta) * Math.cos(phi), r * Math.sin(theta) * Math.sin(phi), r * Math.cos(theta)};
+            decoder.positions.add(pos);
+            hits.add(new Hit(e, i, pos, decoder));
+        }
+        return hits;
+    }
+
+    private static class Hit extends BaseCalorimeterHit
+    {
+        private final IDDecoder decoder;
+
+        Hit(double e, long id, double[] pos, IDDecoder decoder)
+        {
+            super(e, e, 0., 0., id, new BasicHep3Vector(pos), 0, null);
+            this.decoder = decoder;
+        }
+
+        public IDDecoder getIDDecoder()
+        {
+            return decoder;
+        }
+    }
+
+    /**
+     * Decodes the index of a hit, which is used as its cell ID, to its position.
+     */
+    private static class Decoder extends BaseIDDecoder
+    {
+        private final List<double[]> positions = new ArrayList<double[]>();
+        private double[] pos;
+
+        public void setID(long id)
+        {
+            pos = positions.get((int) id);
+        }
+
+        public double getX()
+        {
+            return pos[0];
+        }
+
+        public double getY()
+        {
+            return pos[1];
+        }
+
+        public double getZ()
+        {
+            return pos[2];
+        }
+
+        public double getPhi()
+        {
+            return Math.atan2(pos[1], pos[0]);
+        }
+
+        public double getTheta()
+        {
+            return Math.atan2(Math.hypot(pos[0], pos[1]), pos[2]);
+        }
+
+        public int getLayer()
+        {
+            return 0;
+        }
+    }
+}
@@ -7,10 +7,16 @@
 package org.lcsim.recon.cluster.localequivalence;
 
 import hep.physics.vec.Hep3Vector;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
 import junit.framework.TestCase;
 import org.lcsim.detector.DetectorIdentifierHelper;
 import org.lcsim.detector.IDetectorElement;
@@ -121,6 +127,165 @@ public class NNAlgoTest extends TestCase
 //
     }
     
+    /**
+     * Compare the clusters with those of the original implementation, which
+     * looked up every neighbour in the hit map and searched the whole cell map
+     * for each cell added to a cluster.
+     */
+    public void testAgainstReference()
+    {
+        Random random = new Random(7);
+        Map<Long, CalorimeterHit> hitmap = new HashMap<Long, CalorimeterHit>();
+        while(hitmap.size()<3000)
+        {
+            long id = Hit3D.id(1+random.nextInt(20), 1+random.nextInt(30), 1+random.nextInt(30));
+            // energies on a coarse grid, so that some neighbours have the same value
+            hitmap.put(id, new Hit3D(Math.floor(random.nextDouble()*100)/100., id));
+        }
+        int[][] deltas = {{1,1,1}, {2,1,1}, {0,2,2}};
+        for(int[] d : deltas)
+        {
+            Map<Long, CalorimeterHit> found = new HashMap<Long, CalorimeterHit>(hitmap);
+            Map<Long, CalorimeterHit> expected = new HashMap<Long, CalorimeterHit>(hitmap);
+            List<NNCluster> clusters = new NNAlgo(0.5, d[0], d[1], d[2]).cluster(found);
+            List<NNCluster> reference = reference(expected, 0.5, d[0], d[1], d[2]);
+            if(debug) System.out.println("found "+clusters.size()+" clusters");
+            assertTrue(clusters.size() > 1);
+            assertEquals(reference.size(), clusters.size());
+            for(int i=0; i<clusters.size(); ++i)
+            {
+                assertEquals(reference.get(i).value(), clusters.get(i).value());
+                assertEquals(reference.get(i).hits(), clusters.get(i).hits());
+            }
+            assertEquals(expected.keySet(), found.keySet());
+        }
+    }
+    
+    /**
+     * The original NNAlgo.cluster.
+     */
+    private static List<NNCluster> reference(Map<Long, CalorimeterHit> hitmap, double minValue, int deltaLayer, int deltaTheta, int deltaPhi)
+    {
+        List<Cell> cells = new ArrayList<Cell>();
+        Map<Long, Cell> cellmap = new HashMap<Long, Cell>();
+        Collection<CalorimeterHit> hits = hitmap.values();
+        for(CalorimeterHit hit : hits)
+        {
+            Cell3D cell = new Cell3D(hit);
+            cells.add(cell);
+            cellmap.put(hit.getCellID(), cell);
+        }
+        Collections.sort(cells);
+        Collections.reverse(cells);
+        for(Cell cell : cells)
+        {
+            Cell pointsto = cell.pointsTo();
+            double max = cell.value();
+            CalorimeterHit c = ((Cell3D) cell).getCalorimeterHit();
+            IDDecoder decoder = c.getIDDecoder();
+            decoder.setID(c.getCellID());
+            long[] neighbors = decoder.getNeighbourIDs(deltaLayer, deltaTheta, deltaPhi);
+            for (int j=0; j<neighbors.length; ++j)
+            {
+                if (hitmap.get(neighbors[j]) != null)
+                {
+                    Cell neigh = cellmap.get(neighbors[j]);
+                    if (neigh.value() > max)
+                    {
+                        max = neigh.value();
+                        pointsto = neigh;
+                    }
+                }
+            }
+            if (cell != pointsto)
+            {
+                cell.pointsTo(pointsto);
+                pointsto.pointedTo().pointsTo(cell);
+                cell.pointedTo(pointsto.pointedTo());
+                pointsto.pointedTo(cell);
+            }
+        }
+        List<NNCluster> clusters = new ArrayList<NNCluster>();
+        Set<Map.Entry<Long, Cell>> set = cellmap.entrySet();
+        while(cellmap.size()>0)
+        {
+            Iterator<Map.Entry<Long, Cell>> it = set.iterator();
+            Cell cell = it.next().getValue();
+            Cell nextcell = cell.pointsTo();
+            NNCluster clus = new NNCluster();
+            while(cellmap.containsValue(cell))
+            {
+                clus.addCell(cell);
+                cellmap.remove(cell.cellID());
+                cell = nextcell;
+                nextcell = cell.pointsTo();
+            }
+            if(clus.value()>minValue)
+            {
+                clusters.add(clus);
+                SortedSet clusCells = clus.cells();
+                for(Object o : clusCells)
+                {
+                    hitmap.remove(((Cell3D) o).cellID());
+                }
+            }
+        }
+        return clusters;
+    }
+}
+
+/**
+ * A hit whose cell ID packs layer, theta and phi indices.
+ */
+class Hit3D extends CalHit
+{
+    private Decoder3D _decoder = new Decoder3D();
+    
+    static long id(long layer, long theta, long phi)
+    {
+        return (layer*1000+theta)*1000+phi;
+    }
+    
+    public Hit3D(double e, long id)
+    {
+        super(e, e, id, 0., new double[3]);
+    }
+    
+    public IDDecoder getIDDecoder()
+    {
+        return _decoder;
+    }
+}
+
+class Decoder3D extends Decoder
+{
+    private long _id;
+    
+    public void setID(long id)
+    {
+        _id = id;
+        super.setID(id);
+    }
+    
+    public long[] getNeighbourIDs(int deltaLayer, int deltaTheta, int deltaPhi)
+    {
+        long layer = _id/1000000;
+        long theta = (_id/1000)%1000;
+        long phi = _id%1000;
+        long[] n = new long[(2*deltaLayer+1)*(2*deltaTheta+1)*(2*deltaPhi+1)-1];
+        int k = 0;
+        for(int l=-deltaLayer; l<=deltaLayer; ++l)
+        {
+            for(int t=-deltaTheta; t<=deltaTheta; ++t)
+            {
+                for(int p=-deltaPhi; p<=deltaPhi; ++p)
+                {
+                    if(l!=0 || t!=0 || p!=0) n[k++] = Hit3D.id(layer+l, theta+t, phi+p);
+                }
+            }
+        }
+        return n;
+    }
 }
 
 class CalHit implements CalorimeterHit
@@ -20,6 +20,9 @@ implements ILogicalVolume
 	// The volumes must have unique names within their mother.
 	// PhysicalVolume copy numbers are allowed to be duplicated.
 	IPhysicalVolumeContainer physicalVolumes = new PhysicalVolumeContainer(true,true,false);
+	
+	// Lookup structure for the daughters, built on first use.
+	private volatile SmartVoxels voxels;
 		
 	public LogicalVolume(String name, ISolid solid, IMaterial material)
 	{        
@@ -60,6 +63,22 @@ implements ILogicalVolume
 	public void addDaughter(IPhysicalVolume physvol)
 	{	
 		physicalVolumes.add(physvol);				
+		voxels = null;
+	}
+	
+	/**
+	 * Get the structure used by {@link PhysicalVolumeNavigator} to find
+	 * the daughter containing a point.  It is rebuilt after a daughter is added.
+	 */
+	SmartVoxels getVoxels()
+	{
+		SmartVoxels v = voxels;
+		if (v == null)
+		{
+			v = new SmartVoxels(this);
+			voxels = v;
+		}
+		return v;
 	}
 	
 	public IPhysicalVolume getDaughter(String name)
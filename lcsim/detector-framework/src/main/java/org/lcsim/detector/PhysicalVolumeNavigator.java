@@ -3,6 +3,7 @@ package org.lcsim.detector;
 import hep.physics.vec.BasicHep3Vector;
 import hep.physics.vec.Hep3Vector;
 
+import java.util.Arrays;
 import java.util.Collection;
 
 import org.lcsim.detector.solids.Inside;
@@ -30,7 +31,13 @@ import org.lcsim.detector.solids.Inside;
  * given PhysicalVolume node.
  * 
  * Locates the deepest daughter volume containing a given 
- * global point within the top volume.
+ * global point within the top volume.  The daughters
+ * of each LogicalVolume are searched using its
+ * {@link SmartVoxels}, starting with the daughter found
+ * in the same mother by the previous search from the
+ * same thread, since consecutive points are usually close.
+ * The daughter found is always the first one containing
+ * the point, as with a plain loop over the daughters.
  * 
  * Computes the combined transform of IPhysicalVolumePaths.
  *
@@ -88,58 +95,52 @@ implements IPhysicalVolumeNavigator
 		// The current local point that is computed
         // by applying the containing daughter's transform
         // successively as the search is performed.
-        Hep3Vector localPoint = new BasicHep3Vector(globalPoint.x(),globalPoint.y(),globalPoint.z());
+        BasicHep3Vector localPoint = new BasicHep3Vector(globalPoint.x(),globalPoint.y(),globalPoint.z());
         
-        // Combined transform of path to current daughter.
-        // If a daughter is found to contain the point,
-        // its transform is applied to this.
-        ITransform3D combinedTransform = new Transform3D();
+        // Scratch point in the coordinate system of a candidate daughter.
+        BasicHep3Vector checkLocalPoint = new BasicHep3Vector();
+        
+        // Daughters of the last path found by this thread,
+        // which are checked first when the mother is the same.
+        LastPath last = lastPath.get();
         
         // Go into the geometry tree as long as there are 
         // daughter volumes in the current LogicalVolume.
 		while(lvCurr.getNumberOfDaughters() != 0)
 		{			
-            // No daughter found yet.
-			boolean inDau=false;
+			SmartVoxels voxels = getVoxels(lvCurr);
+			
+			// Find the first daughter containing the point.
+			int index = voxels.find(localPoint, checkLocalPoint, last.getHint(depth, lvCurr));
+			
+			// Remember the daughter for the next search from this thread.
+			last.set(depth, lvCurr, index);
 			
-			// Loop over the daughters.
-			for (IPhysicalVolume dau : lvCurr.getDaughters())
-			{												
-                // Transform the local point from parent
-                // into the daughter's coordinate system.
-                Hep3Vector checkLocalPoint =
-                    dau.getTransform().inverse().transformed(localPoint);
-                                						
-                // Check if the point is inside this daughter's solid.
-                if (dau.getLogicalVolume().getSolid().inside(checkLocalPoint) == Inside.INSIDE)
-				{                    
-                    // Found a containing daughter.
-					inDau=true;
-					
-					// Add this daughter to the returned path.
-					path.add(dau);
+			// No daughter was found, so stop looking.
+			if (index < 0)
+			{
+				break;
+			}
+			
+			IPhysicalVolume dau = voxels.getDaughter(index);
+			
+			// Add this daughter to the returned path.
+			path.add(dau);
 
-					// Traverse into the daughter.
-					lvCurr = dau.getLogicalVolume();
+			// Traverse into the daughter.
+			lvCurr = dau.getLogicalVolume();
 
-					// Increment the current depth.
-					++depth;
-                    
-                    // Add the daughter's transform to the combined transform.
-                    combinedTransform.multiplyBy(dau.getTransform());
-                    
-                    // Set the current point to the daughter's local point.
-                    localPoint = checkLocalPoint;
-					
-					// Stop looking at this volume's daughters.
-					break;
-				}			                
-			}
+			// Increment the current depth.
+			++depth;
+			
+			// Set the current point to the daughter's local point.
+			BasicHep3Vector tmp = localPoint;
+			localPoint = checkLocalPoint;
+			checkLocalPoint = tmp;
 
-			// If depth is past selected level or
-            // no daughter was found, stop looking
-            // and quit.  Current path will be returned.
-			if ( level != -1 && depth >= level || !inDau)
+			// If depth is past selected level, stop looking 
+			// and quit.  Current path will be returned.
+			if ( level != -1 && depth >= level )
 			{
 				break;
 			}			
@@ -147,6 +148,18 @@ implements IPhysicalVolumeNavigator
 
 		return path;
 	}
+	
+	/**
+	 * Get the lookup structure for the daughters of a LogicalVolume.
+	 */
+	private static SmartVoxels getVoxels(ILogicalVolume lv)
+	{
+		if (lv instanceof LogicalVolume)
+		{
+			return ((LogicalVolume)lv).getVoxels();
+		}
+		return new SmartVoxels(lv);
+	}
 
 	/**
 	 * Get the IPhysicalVolumePath to the deepest PhysicalVolume
@@ -322,6 +335,41 @@ implements IPhysicalVolumeNavigator
 	}
 		
 	private IPhysicalVolume pvTop;
+	
+	// The last path found by each thread.
+	private final ThreadLocal<LastPath> lastPath = new ThreadLocal<LastPath>()
+	{
+		protected LastPath initialValue()
+		{
+			return new LastPath();
+		}
+	};
+	
+	/**
+	 * The mother and the index of the daughter found at each depth
+	 * by the last search, used as hints for the next search.
+	 */
+	private static final class LastPath
+	{
+		private ILogicalVolume[] mothers = new ILogicalVolume[0];
+		private int[] daughters = new int[0];
+		
+		int getHint(int depth, ILogicalVolume mother)
+		{
+			return depth < mothers.length && mothers[depth] == mother ? daughters[depth] : -1;
+		}
+		
+		void set(int depth, ILogicalVolume mother, int daughter)
+		{
+			if (depth >= mothers.length)
+			{
+				mothers = Arrays.copyOf(mothers, 2*depth+1);
+				daughters = Arrays.copyOf(daughters, 2*depth+1);
+			}
+			mothers[depth] = mother;
+			daughters[depth] = daughter;
+		}
+	}
 
     public PhysicalVolumeNavigator(String name, IPhysicalVolume pvTop)
     {
@@ -0,0 +1,422 @@
+package org.lcsim.detector;
+
+import hep.physics.vec.BasicHep3Vector;
+import hep.physics.vec.Hep3Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.lcsim.detector.solids.Box;
+import org.lcsim.detector.solids.IPolyhedron;
+import org.lcsim.detector.solids.ISolid;
+import org.lcsim.detector.solids.Inside;
+import org.lcsim.detector.solids.Polycone;
+import org.lcsim.detector.solids.Tolerance;
+import org.lcsim.detector.solids.Trd;
+import org.lcsim.detector.solids.Tube;
+
+/**
+ * Acceleration structure for locating the daughter of a LogicalVolume
+ * that contains a point, modeled on the smart voxels of Geant4's G4SmartVoxelHeader.
+ *
+ * The inverse transform of each daughter is computed once and stored as
+ * a plain rotation matrix and translation, so that a point can be brought
+ * into the daughter's coordinate system without allocating transforms.
+ *
+ * When there are enough daughters, the mother is sliced along the axis
+ * that best separates the daughters' bounding boxes, and each slice lists
+ * the daughters that may contain a point within it.  Daughters with solids
+ * whose extent is not known are listed in every slice.  The candidates
+ * of a slice are kept in the order of the daughters, so the first daughter
+ * found to contain a point is the same as with a plain loop over the daughters.
+ *
+ * A caller may suggest a daughter to check first, such as the one found for
+ * the previous point.  For each daughter the earlier daughters whose extents
+ * overlap it are listed, and if the suggested daughter contains the point these
+ * are checked before it is accepted, so the result is still the first match.
+ *
+ * The structure is built from the daughters and their transforms at the
+ * time it is created, and is discarded by {@link LogicalVolume} when a
+ * daughter is added.
+ *
+ * @version $Id$
+ */
+final class SmartVoxels
+{
+    // Minimum number of daughters for slicing the mother.
+    static final int MIN_DAUGHTERS = 8;
+
+    // Maximum number of slices along the selected axis.
+    static final int MAX_SLICES = 1000;
+
+    // Maximum number of overlapping earlier daughters for using a daughter as a hint.
+    static final int MAX_OVERLAPS = 8;
+
+    private final IPhysicalVolume[] daughters;
+
+    // Inverse transforms as { r00, r01, r02, r10, r11, r12, r20, r21, r22, tx, ty, tz }.
+    private final double[][] inverse;
+
+    // Selected axis; -1 if the mother is not sliced.
+    private int axis = -1;
+    private double lower;
+    private double width;
+    private int[][] slices;
+    private int[] unbounded;
+    private int[] all;
+
+    // Earlier daughters which may contain the same points as each daughter,
+    // in daughter order; null if there are too many to use it as a hint.
+    private int[][] overlaps;
+
+    SmartVoxels(ILogicalVolume logicalVolume)
+    {
+        int n = logicalVolume.getNumberOfDaughters();
+        daughters = new IPhysicalVolume[n];
+        inverse = new double[n][];
+        all = new int[n];
+        for (int i=0; i<n; i++)
+        {
+            daughters[i] = logicalVolume.getDaughter(i);
+            inverse[i] = toArray(daughters[i].getTransform().inverse());
+            all[i] = i;
+        }
+
+        double[][] extents = new double[n][];
+        for (int i=0; i<n; i++)
+        {
+            extents[i] = extent(daughters[i]);
+        }
+        if (n >= MIN_DAUGHTERS)
+        {
+            voxelize(extents);
+        }
+        findOverlaps(extents);
+    }
+
+    IPhysicalVolume getDaughter(int i)
+    {
+        return daughters[i];
+    }
+
+    /**
+     * Find the first daughter containing a point.
+     *
+     * @param point The point in the mother's coordinate system.
+     * @param local Set to the point in the coordinate system of the daughter found.
+     * @param hint  Index of a daughter to check first, or -1 for none.
+     * @return The index of the first daughter containing the point, or -1 if none does.
+     */
+    int find(Hep3Vector point, BasicHep3Vector local, int hint)
+    {
+        double x = point.x();
+        double y = point.y();
+        double z = point.z();
+
+        if (hint >= 0 && hint < daughters.length && overlaps[hint] != null)
+        {
+            if (inside(hint, x, y, z, local))
+            {
+                // An earlier daughter containing the point must overlap the hint.
+                double lx = local.x();
+                double ly = local.y();
+                double lz = local.z();
+                for (int dau : overlaps[hint])
+                {
+                    if (inside(dau, x, y, z, local))
+                    {
+                        return dau;
+                    }
+                }
+                local.setV(lx, ly, lz);
+                return hint;
+            }
+        }
+        else
+        {
+            hint = -1;
+        }
+
+        int[] candidates = candidates(x, y, z);
+        for (int i=0; i<candidates.length; i++)
+        {
+            int dau = candidates[i];
+            if (dau != hint && inside(dau, x, y, z, local))
+            {
+                return dau;
+            }
+        }
+        return -1;
+    }
+
+    private boolean inside(int dau, double x, double y, double z, BasicHep3Vector local)
+    {
+        double[] t = inverse[dau];
+        local.setV(
+                t[0]*x + t[1]*y + t[2]*z + t[9],
+                t[3]*x + t[4]*y + t[5]*z + t[10],
+                t[6]*x + t[7]*y + t[8]*z + t[11]);
+        return daughters[dau].getLogicalVolume().getSolid().inside(local) == Inside.INSIDE;
+    }
+
+    private int[] candidates(double x, double y, double z)
+    {
+        if (axis < 0)
+        {
+            return all;
+        }
+        double c = axis == 0 ? x : (axis == 1 ? y : z);
+        double s = (c - lower) / width;
+        if (s < 0 || s >= slices.length)
+        {
+            return unbounded;
+        }
+        return slices[(int)s];
+    }
+
+    /**
+     * Slice the mother along the axis with the fewest candidates per slice.
+     */
+    private void voxelize(double[][] extents)
+    {
+        int n = daughters.length;
+
+        List<Integer> open = new ArrayList<Integer>();
+        for (int i=0; i<n; i++)
+        {
+            if (extents[i] == null)
+            {
+                open.add(i);
+            }
+        }
+        if (open.size() == n)
+        {
+            return;
+        }
+        unbounded = toIntArray(open);
+
+        int nslices = Math.min(2*n, MAX_SLICES);
+        double bestCost = n;
+        for (int a=0; a<3; a++)
+        {
+            double lo = Double.POSITIVE_INFINITY;
+            double hi = Double.NEGATIVE_INFINITY;
+            for (int i=0; i<n; i++)
+            {
+                if (extents[i] != null)
+                {
+                    lo = Math.min(lo, extents[i][a]);
+                    hi = Math.max(hi, extents[i][a+3]);
+                }
+            }
+            double w = (hi - lo) / nslices;
+            if (!(w > 0))
+            {
+                continue;
+            }
+
+            int[][] s = new int[nslices][];
+            long entries = 0;
+            List<Integer> list = new ArrayList<Integer>();
+            for (int k=0; k<nslices; k++)
+            {
+                double slo = lo + k*w;
+                double shi = slo + w;
+                list.clear();
+                for (int i=0; i<n; i++)
+                {
+                    if (extents[i] == null || (extents[i][a] <= shi && extents[i][a+3] >= slo))
+                    {
+                        list.add(i);
+                    }
+                }
+                s[k] = toIntArray(list);
+                entries += s[k].length;
+            }
+
+            double cost = (double)entries / nslices;
+            if (cost < bestCost)
+            {
+                bestCost = cost;
+                axis = a;
+                lower = lo;
+                width = w;
+                slices = s;
+            }
+        }
+    }
+
+    /**
+     * List the earlier daughters whose extents overlap each daughter.  Daughters
+     * which overlap share a slice, so only daughters in the same slice are compared.
+     */
+    private void findOverlaps(double[][] extents)
+    {
+        int n = daughters.length;
+        List<SortedSet<Integer>> found = new ArrayList<SortedSet<Integer>>(n);
+        for (int i=0; i<n; i++)
+        {
+            found.add(new TreeSet<Integer>());
+        }
+        for (int[] group : axis < 0 ? new int[][] {all} : slices)
+        {
+            for (int a=1; a<group.length; a++)
+            {
+                SortedSet<Integer> earlier = found.get(group[a]);
+                for (int b=0; b<a && earlier.size() <= MAX_OVERLAPS; b++)
+                {
+                    if (overlap(extents[group[a]], extents[group[b]]))
+                    {
+                        earlier.add(group[b]);
+                    }
+                }
+            }
+        }
+        overlaps = new int[n][];
+        for (int i=0; i<n; i++)
+        {
+            if (found.get(i).size() <= MAX_OVERLAPS)
+            {
+                overlaps[i] = toIntArray(new ArrayList<Integer>(found.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Whether two extents overlap, counting an unknown extent as overlapping everything.
+     */
+    private static boolean overlap(double[] e1, double[] e2)
+    {
+        if (e1 == null || e2 == null)
+        {
+            return true;
+        }
+        for (int a=0; a<3; a++)
+        {
+            if (e1[a] > e2[a+3] || e2[a] > e1[a+3])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compute the axis-aligned extent of a daughter in the mother's
+     * coordinate system, as { xmin, ymin, zmin, xmax, ymax, zmax },
+     * or null if the extent of its solid is not known.
+     */
+    private static double[] extent(IPhysicalVolume dau)
+    {
+        double[] box = boundingBox(dau.getLogicalVolume().getSolid());
+        if (box == null)
+        {
+            return null;
+        }
+
+        double[] e = new double[] {
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        ITransform3D transform = dau.getTransform();
+        for (int corner=0; corner<8; corner++)
+        {
+            Hep3Vector p = transform.transformed(new BasicHep3Vector(
+                    (corner & 1) == 0 ? box[0] : box[3],
+                    (corner & 2) == 0 ? box[1] : box[4],
+                    (corner & 4) == 0 ? box[2] : box[5]));
+            double[] v = new double[] {p.x(), p.y(), p.z()};
+            for (int a=0; a<3; a++)
+            {
+                e[a] = Math.min(e[a], v[a] - Tolerance.TOLERANCE);
+                e[a+3] = Math.max(e[a+3], v[a] + Tolerance.TOLERANCE);
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Bounding box of a solid in its own coordinate system,
+     * as { xmin, ymin, zmin, xmax, ymax, zmax }, or null if
+     * it is not known for this type of solid.
+     */
+    private static double[] boundingBox(ISolid solid)
+    {
+        if (solid instanceof Box)
+        {
+            Box b = (Box)solid;
+            return symmetricBox(b.getXHalfLength(), b.getYHalfLength(), b.getZHalfLength());
+        }
+        else if (solid instanceof Trd)
+        {
+            Trd t = (Trd)solid;
+            return symmetricBox(
+                    Math.max(t.getXHalfLength1(), t.getXHalfLength2()),
+                    Math.max(t.getYHalfLength1(), t.getYHalfLength2()),
+                    t.getZHalfLength());
+        }
+        else if (solid instanceof Tube)
+        {
+            Tube t = (Tube)solid;
+            return symmetricBox(t.getOuterRadius(), t.getOuterRadius(), t.getZHalfLength());
+        }
+        else if (solid instanceof Polycone)
+        {
+            Polycone p = (Polycone)solid;
+            double r = 0;
+            double zmin = Double.POSITIVE_INFINITY;
+            double zmax = Double.NEGATIVE_INFINITY;
+            for (Polycone.ZPlane plane : p.getZPlanes())
+            {
+                r = Math.max(r, plane.getRMax());
+                zmin = Math.min(zmin, plane.getZ());
+                zmax = Math.max(zmax, plane.getZ());
+            }
+            return new double[] {-r, -r, zmin, r, r, zmax};
+        }
+        else if (solid instanceof IPolyhedron)
+        {
+            double[] b = new double[] {
+                    Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            for (Hep3Vector v : ((IPolyhedron)solid).getVertices())
+            {
+                b[0] = Math.min(b[0], v.x());
+                b[1] = Math.min(b[1], v.y());
+                b[2] = Math.min(b[2], v.z());
+                b[3] = Math.max(b[3], v.x());
+                b[4] = Math.max(b[4], v.y());
+                b[5] = Math.max(b[5], v.z());
+            }
+            return b[0] <= b[3] ? b : null;
+        }
+        return null;
+    }
+
+    private static double[] symmetricBox(double dx, double dy, double dz)
+    {
+        return new double[] {-dx, -dy, -dz, dx, dy, dz};
+    }
+
+    private static double[] toArray(ITransform3D transform)
+    {
+        IRotation3D r = transform.getRotation();
+        ITranslation3D t = transform.getTranslation();
+        return new double[] {
+                r.getComponent(0,0), r.getComponent(0,1), r.getComponent(0,2),
+                r.getComponent(1,0), r.getComponent(1,1), r.getComponent(1,2),
+                r.getComponent(2,0), r.getComponent(2,1), r.getComponent(2,2),
+                t.x(), t.y(), t.z()};
+    }
+
+    private static int[] toIntArray(List<Integer> list)
+    {
+        int[] a = new int[list.size()];
+        for (int i=0; i<a.length; i++)
+        {
+            a[i] = list.get(i);
+        }
+        return a;
+    }
+}
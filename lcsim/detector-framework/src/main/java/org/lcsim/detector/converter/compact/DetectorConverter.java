@@ -1,10 +1,9 @@
 package org.lcsim.detector.converter.compact;
 
 import java.io.IOException;
-import java.lang.reflect.Modifier;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.jdom.Document;
 import org.jdom.Element;
@@ -37,7 +36,6 @@ import org.lcsim.geometry.Detector;
 import org.lcsim.geometry.compact.Constant;
 import org.lcsim.geometry.compact.Subdetector;
 import org.lcsim.geometry.subdetector.PolyconeSupport;
-import org.reflections.Reflections;
 
 public class DetectorConverter implements IDetectorConverter {
     
@@ -96,9 +94,7 @@ public class DetectorConverter implements IDetectorConverter {
     }
 
     public void registerSubdetectorConverters() {
-        Reflections reflect = new Reflections("org.lcsim.detector.converter.compact");
-        Set<Class<? extends AbstractSubdetectorConverter>> converters = reflect
-                .getSubTypesOf(AbstractSubdetectorConverter.class);
+        List<Class<? extends AbstractSubdetectorConverter>> converters = SubdetectorConverterIndex.getConverterClasses();
 
         if (converters.size() == 0) {
             throw new RuntimeException("No subdetector converter classes were found.");
@@ -106,9 +102,7 @@ public class DetectorConverter implements IDetectorConverter {
 
         for (Class<? extends AbstractSubdetectorConverter> converter : converters) {
             try {
-                if (!Modifier.isAbstract(converter.getModifiers())) {
-                    this.addSubdetectorConverter(converter.newInstance());
-                }
+                this.addSubdetectorConverter(converter.newInstance());
             } catch (InstantiationException | IllegalAccessException e) {
                 throw new RuntimeException(e);
             }
@@ -0,0 +1,209 @@
+package org.lcsim.detector.converter.compact;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.lcsim.util.cache.FileCache;
+import org.reflections.Reflections;
+
+/**
+ * The list of subdetector converter classes, which is found by scanning the classpath
+ * with Reflections. Scanning a full lcsim classpath takes seconds, so the list is kept
+ * for the lifetime of the JVM, and is also written to a small versioned binary file in
+ * the {@link FileCache} directory. The file name contains a hash of the classpath jars,
+ * including their sizes and modification times, so later jobs with the same jars read
+ * the list instead of scanning. When the classpath contains directories, which can
+ * change without the hash noticing, the file is neither read nor written.
+ *
+ * @version $Id$
+ */
+final class SubdetectorConverterIndex {
+
+    // Version of the file format, which is part of the file name.
+    static final int VERSION = 1;
+
+    private static final int MAGIC = 0x53444349;
+    private static final String PACKAGE = "org.lcsim.detector.converter.compact";
+
+    private static List<Class<? extends AbstractSubdetectorConverter>> converters;
+
+    private SubdetectorConverterIndex() {
+    }
+
+    /**
+     * Get the concrete subdetector converter classes, sorted by name.
+     * @return The converter classes.
+     */
+    static synchronized List<Class<? extends AbstractSubdetectorConverter>> getConverterClasses() {
+        if (converters == null) {
+            converters = Collections.unmodifiableList(load());
+        }
+        return converters;
+    }
+
+    private static List<Class<? extends AbstractSubdetectorConverter>> load() {
+        File file = null;
+        String key = classpathKey();
+        if (key != null) {
+            try {
+                file = new File(new FileCache().getCacheDirectory(), "converters-v" + VERSION + "-" + key + ".bin");
+                if (file.exists()) {
+                    List<Class<? extends AbstractSubdetectorConverter>> cached = read(file);
+                    if (cached != null) {
+                        return cached;
+                    }
+                }
+            } catch (IOException x) {
+                // Unusable cache, so scan the classpath.
+            }
+        }
+
+        List<Class<? extends AbstractSubdetectorConverter>> scanned = scan();
+        if (file != null && !scanned.isEmpty()) {
+            try {
+                write(file, scanned);
+            } catch (IOException x) {
+                // The list is still used for this JVM.
+            }
+        }
+        return scanned;
+    }
+
+    private static List<Class<? extends AbstractSubdetectorConverter>> scan() {
+        Reflections reflect = new Reflections(PACKAGE);
+        List<Class<? extends AbstractSubdetectorConverter>> list = new ArrayList<Class<? extends AbstractSubdetectorConverter>>();
+        for (Class<? extends AbstractSubdetectorConverter> converter : reflect.getSubTypesOf(AbstractSubdetectorConverter.class)) {
+            if (!Modifier.isAbstract(converter.getModifiers())) {
+                list.add(converter);
+            }
+        }
+        Collections.sort(list, new Comparator<Class<?>>() {
+            public int compare(Class<?> a, Class<?> b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Read the converter classes from a file.
+     * @return The classes, or null if the file is invalid or names a class that cannot be loaded.
+     */
+    private static List<Class<? extends AbstractSubdetectorConverter>> read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int n = in.readInt();
+            ClassLoader loader = AbstractSubdetectorConverter.class.getClassLoader();
+            List<Class<? extends AbstractSubdetectorConverter>> list = new ArrayList<Class<? extends AbstractSubdetectorConverter>>(n);
+            for (int i = 0; i < n; i++) {
+                String name = in.readUTF();
+                try {
+                    list.add(Class.forName(name, false, loader).asSubclass(AbstractSubdetectorConverter.class));
+                } catch (ClassNotFoundException | ClassCastException x) {
+                    return null;
+                }
+            }
+            return list;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the converter classes to a file. The file is written under a temporary name and
+     * then renamed, so that concurrent jobs sharing the cache never read a partial file.
+     */
+    private static void write(File file, List<Class<? extends AbstractSubdetectorConverter>> list) throws IOException {
+        File temp = File.createTempFile("converters", null, file.getParentFile());
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(list.size());
+            for (Class<?> converter : list) {
+                out.writeUTF(converter.getName());
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Compute a hash of the jars on the classpath.
+     * @return The hash as a hex string, or null if the converters cannot be identified by the classpath.
+     */
+    static String classpathKey() {
+        File location = codeSource();
+        if (location == null || !location.isFile()) {
+            return null;
+        }
+        String classpath = System.getProperty("java.class.path");
+        if (classpath == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            Charset utf8 = Charset.forName("UTF-8");
+            boolean found = false;
+            for (String entry : classpath.split(File.pathSeparator)) {
+                if (entry.length() == 0) {
+                    continue;
+                }
+                File f = new File(entry).getAbsoluteFile();
+                if (f.isDirectory()) {
+                    return null;
+                }
+                found |= f.equals(location);
+                digest.update((f.getPath() + ":" + f.length() + ":" + f.lastModified() + "\n").getBytes(utf8));
+            }
+            // The converters may have been loaded by another class loader.
+            if (!found) {
+                return null;
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException x) {
+            return null;
+        }
+    }
+
+    private static File codeSource() {
+        CodeSource source = AbstractSubdetectorConverter.class.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            return null;
+        }
+        URL url = source.getLocation();
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI()).getAbsoluteFile();
+        } catch (URISyntaxException | IllegalArgumentException x) {
+            return null;
+        }
+    }
+}
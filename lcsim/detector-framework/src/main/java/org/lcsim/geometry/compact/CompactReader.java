@@ -1,5 +1,7 @@
 package org.lcsim.geometry.compact;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -62,6 +64,9 @@ public class CompactReader {
 
     /**
      * Read a compact geometry XML file.
+     * <p>
+     * The parsed id descriptions and field grids are kept in the {@link DetectorSnapshot}
+     * of the file, which is used instead of parsing them when the same file is read again.
      * 
      * @param in The input stream to read.
      * @throws java.io.IOException If an IO error occurs while reading the stream.
@@ -71,6 +76,33 @@ public class CompactReader {
      * @return The parsed detector description.
      */
     public Detector read(InputStream in) throws IOException, JDOMException, ElementCreationException {
+        byte[] compact = readFully(in);
+        DetectorSnapshot snapshot = null;
+        try {
+            snapshot = DetectorSnapshot.open(compact);
+        } catch (IOException x) {
+            // No usable cache directory, so everything is parsed.
+        }
+
+        DetectorSnapshot.setCurrent(snapshot);
+        Detector det;
+        try {
+            det = parse(new ByteArrayInputStream(compact));
+        } finally {
+            DetectorSnapshot.setCurrent(null);
+        }
+
+        if (snapshot != null) {
+            try {
+                snapshot.save();
+            } catch (IOException x) {
+                // The snapshot is written again by the next job.
+            }
+        }
+        return det;
+    }
+
+    private Detector parse(InputStream in) throws IOException, JDOMException, ElementCreationException {
         expr = new JDOMExpressionFactory();
 
         // Setup CLHEP units in the expression evaluator.
@@ -297,6 +329,15 @@ public class CompactReader {
         }
     }
 
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) >= 0;) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
     // TODO: Should be protected or private but need to fix some external code first.
     public static void registerCLHEPConstants(JDOMExpressionFactory f) {
         Constants constants = Constants.getInstance();
@@ -0,0 +1,260 @@
+package org.lcsim.geometry.compact;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lcsim.geometry.util.IDDescriptor;
+import org.lcsim.util.cache.FileCache;
+
+/**
+ * A versioned binary snapshot of the parts of a detector which are slow to build from
+ * the compact description: the parsed id descriptions of the readouts, and the field
+ * grids parsed from text field maps. Snapshots are kept in the {@link FileCache}
+ * directory under a hash of the compact description, so a later job reading the same
+ * compact description, at the same snapshot version, reuses them instead of parsing.
+ * <p>
+ * While {@link CompactReader#read} runs, the snapshot of the compact description being
+ * read is available to the elements it creates through {@link #getCurrent()}. Each field
+ * grid is written to a file of its own, which can be memory-mapped, and records the size
+ * and modification time of the field map it was parsed from, so a changed field map is
+ * parsed again. Snapshot files are written under a temporary name and then renamed, so
+ * concurrent jobs sharing the cache never read a partial file.
+ *
+ * @version $Id$
+ */
+public final class DetectorSnapshot {
+
+    // Version of the file format, which is part of the file names.
+    static final int VERSION = 1;
+
+    private static final int MAGIC = 0x44534e50;
+    private static final String PREFIX = "detector-v" + VERSION + "-";
+    private static final ThreadLocal<DetectorSnapshot> current = new ThreadLocal<DetectorSnapshot>();
+
+    private final File directory;
+    private final String name;
+    private final Map<String, IDDescriptor> descriptors = new HashMap<String, IDDescriptor>();
+    private final Map<String, Grid> grids = new HashMap<String, Grid>();
+    private boolean modified;
+
+    private DetectorSnapshot(File directory, String name) {
+        this.directory = directory;
+        this.name = name;
+    }
+
+    /**
+     * Get the snapshot of the compact description being read on this thread.
+     * @return The snapshot, or null if no compact description is being read or there is no snapshot for it.
+     */
+    public static DetectorSnapshot getCurrent() {
+        return current.get();
+    }
+
+    static void setCurrent(DetectorSnapshot snapshot) {
+        if (snapshot == null) {
+            current.remove();
+        } else {
+            current.set(snapshot);
+        }
+    }
+
+    /**
+     * Open the snapshot of a compact description in the default cache directory.
+     * @param compact The bytes of the compact description.
+     * @return The snapshot, which is empty if none has been saved yet or the saved one cannot be read.
+     * @throws IOException If the cache directory cannot be used.
+     */
+    static DetectorSnapshot open(byte[] compact) throws IOException {
+        return open(compact, new FileCache().getCacheDirectory());
+    }
+
+    static DetectorSnapshot open(byte[] compact, File directory) throws IOException {
+        DetectorSnapshot snapshot = new DetectorSnapshot(directory, PREFIX + hash(compact));
+        File file = snapshot.getFile();
+        if (file.exists()) {
+            try {
+                snapshot.read(file);
+            } catch (IOException | IllegalArgumentException x) {
+                // Unusable snapshot, which will be written again.
+                snapshot.descriptors.clear();
+                snapshot.grids.clear();
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * The file holding the index of this snapshot.
+     */
+    File getFile() {
+        return new File(directory, name + ".bin");
+    }
+
+    /**
+     * Get the parsed id description of a readout.
+     * @param readout The name of the readout.
+     * @param description The id description in the compact description.
+     * @return The parsed description, or null if it is not in the snapshot.
+     */
+    public synchronized IDDescriptor getIDDescriptor(String readout, String description) {
+        IDDescriptor desc = descriptors.get(readout);
+        return desc != null && desc.toString().equals(description) ? desc : null;
+    }
+
+    /**
+     * Add the parsed id description of a readout to the snapshot.
+     */
+    public synchronized void putIDDescriptor(String readout, IDDescriptor desc) {
+        descriptors.put(readout, desc);
+        modified = true;
+    }
+
+    /**
+     * Get the grid file of a field map.
+     * @param field The name of the field.
+     * @param source The field map which the grid was parsed from.
+     * @return The grid file, or null if it is not in the snapshot or the field map has changed since.
+     */
+    public synchronized File getFieldGrid(String field, File source) {
+        Grid grid = grids.get(field);
+        if (grid == null || !grid.source.equals(source.getAbsolutePath())
+                || grid.length != source.length() || grid.lastModified != source.lastModified()) {
+            return null;
+        }
+        File file = new File(directory, grid.file);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Create a temporary file in the snapshot directory, to write a field grid to.
+     * @see #putFieldGrid(String, File, File)
+     */
+    public File createTempFile() throws IOException {
+        return File.createTempFile(PREFIX, ".tmp", directory);
+    }
+
+    /**
+     * Add the grid file of a field map to the snapshot.
+     * @param field The name of the field.
+     * @param source The field map which the grid was parsed from.
+     * @param temp The grid, written to a file from {@link #createTempFile()}, which is renamed.
+     */
+    public synchronized void putFieldGrid(String field, File source, File temp) {
+        Grid grid = new Grid();
+        grid.source = source.getAbsolutePath();
+        grid.length = source.length();
+        grid.lastModified = source.lastModified();
+        grid.file = name + "-" + field.replaceAll("[^A-Za-z0-9_.-]", "_") + ".grid";
+        if (!temp.renameTo(new File(directory, grid.file))) {
+            temp.delete();
+            return;
+        }
+        grids.put(field, grid);
+        modified = true;
+    }
+
+    /**
+     * Write the index of this snapshot, if anything has been added to it.
+     */
+    synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        File temp = createTempFile();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(descriptors.size());
+            for (Map.Entry<String, IDDescriptor> entry : descriptors.entrySet()) {
+                IDDescriptor desc = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeUTF(desc.toString());
+                out.writeInt(desc.fieldCount());
+                for (int i = 0; i < desc.fieldCount(); i++) {
+                    out.writeUTF(desc.fieldName(i));
+                    out.writeInt(desc.fieldStart(i));
+                    out.writeInt(desc.isSigned(i) ? -desc.fieldLength(i) : desc.fieldLength(i));
+                }
+            }
+            out.writeInt(grids.size());
+            for (Map.Entry<String, Grid> entry : grids.entrySet()) {
+                Grid grid = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeUTF(grid.source);
+                out.writeLong(grid.length);
+                out.writeLong(grid.lastModified);
+                out.writeUTF(grid.file);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(getFile())) {
+            temp.delete();
+        }
+        modified = false;
+    }
+
+    private void read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a detector snapshot: " + file);
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String readout = in.readUTF();
+                String description = in.readUTF();
+                int nfields = in.readInt();
+                String[] names = new String[nfields];
+                int[] start = new int[nfields];
+                int[] length = new int[nfields];
+                for (int j = 0; j < nfields; j++) {
+                    names[j] = in.readUTF();
+                    start[j] = in.readInt();
+                    length[j] = in.readInt();
+                }
+                descriptors.put(readout, new IDDescriptor(description, names, start, length));
+            }
+            n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String field = in.readUTF();
+                Grid grid = new Grid();
+                grid.source = in.readUTF();
+                grid.length = in.readLong();
+                grid.lastModified = in.readLong();
+                grid.file = in.readUTF();
+                grids.put(field, grid);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String hash(byte[] compact) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(compact)) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private static class Grid {
+        private String source;
+        private long length;
+        private long lastModified;
+        private String file;
+    }
+}
@@ -55,13 +55,25 @@ public class Readout implements org.lcsim.geometry.Readout {
         }
     }
 
-    /** Create a new IDDescriptor by parsing the CDATA from the <id> tag. */
+    /**
+     * Create a new IDDescriptor by parsing the CDATA from the <id> tag,
+     * unless it has already been parsed in the detector snapshot.
+     */
     private void setupIDDescriptor(Element node) throws JDOMException {
+        String id = node.getChild("id").getTextTrim();
+        DetectorSnapshot snapshot = DetectorSnapshot.getCurrent();
+        if (snapshot != null) {
+            desc = snapshot.getIDDescriptor(name, id);
+            if (desc != null)
+                return;
+        }
         try {
-            desc = new IDDescriptor(node.getChild("id").getTextTrim());
+            desc = new IDDescriptor(id);
         } catch (IDException x) {
             throw new JDOMException("Invalid ID", x);
         }
+        if (snapshot != null)
+            snapshot.putIDDescriptor(name, desc);
     }
 
     public Segmentation getSegmentation() {
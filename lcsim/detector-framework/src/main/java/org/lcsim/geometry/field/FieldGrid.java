@@ -0,0 +1,298 @@
+package org.lcsim.geometry.field;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.lcsim.geometry.compact.DetectorSnapshot;
+
+/**
+ * The values of a field map on a regular grid of up to three axes,
+ * stored in one flat array with the components of each point interleaved.
+ * The index of component c at point (i0, i1, i2) is
+ * ((i0*n1 + i1)*n2 + i2)*components + c, so the last axis varies fastest.
+ * <p>
+ * A grid is either filled from a text field map, in which case the values
+ * are kept as doubles, or read from a binary field map file, which is
+ * memory-mapped so that the pages are shared by all the jobs on a node
+ * that use the same file. A grid is not modified once it is built, so it
+ * can be read from any number of threads.
+ * <p>
+ * The binary format is little-endian, with a header of
+ * <pre>
+ *   int    magic ("LCFM")
+ *   int    version
+ *   int    number of components
+ *   int    n0, n1, n2       number of points along each axis
+ *   double min0, min1, min2 coordinates of the first point
+ *   double max0, max1, max2 coordinates of the last point
+ * </pre>
+ * followed by n0*n1*n2*components float32 values in the order above, or
+ * float64 values if the version is {@link #VERSION_DOUBLE}.
+ * Axes that are not used have one point.
+ * <p>
+ * Grids parsed from a text field map while a compact description is read
+ * are kept as float64 binary files in the {@link DetectorSnapshot} of the
+ * compact description, so later jobs map them instead of parsing the text
+ * again, and get exactly the same field values.
+ *
+ * @version $Id$
+ */
+final class FieldGrid
+{
+    static final int MAGIC = 0x4d46434c; // "LCFM" little-endian
+    static final int VERSION = 1;
+    static final int VERSION_DOUBLE = 2;
+    static final int HEADER_SIZE = 6*4 + 6*8;
+
+    final int components;
+    final int n0, n1, n2;
+    final double min0, min1, min2;
+    final double max0, max1, max2;
+
+    private final double[] values;
+    private final FloatBuffer mapped;
+    private final DoubleBuffer mappedDouble;
+
+    /**
+     * Create a grid from values in memory.
+     *
+     * @param values The n0*n1*n2*components values, in the order described above.
+     */
+    FieldGrid(int components, int n0, int n1, int n2,
+            double min0, double min1, double min2,
+            double max0, double max1, double max2, double[] values)
+    {
+        this.components = components;
+        this.n0 = n0;
+        this.n1 = n1;
+        this.n2 = n2;
+        this.min0 = min0;
+        this.min1 = min1;
+        this.min2 = min2;
+        this.max0 = max0;
+        this.max1 = max1;
+        this.max2 = max2;
+        if (values.length != n0*n1*n2*components)
+        {
+            throw new IllegalArgumentException("Expected " + n0*n1*n2*components + " field values, got " + values.length);
+        }
+        this.values = values;
+        this.mapped = null;
+        this.mappedDouble = null;
+    }
+
+    private FieldGrid(ByteBuffer header, FloatBuffer mapped, DoubleBuffer mappedDouble)
+    {
+        this.components = header.getInt(8);
+        this.n0 = header.getInt(12);
+        this.n1 = header.getInt(16);
+        this.n2 = header.getInt(20);
+        this.min0 = header.getDouble(24);
+        this.min1 = header.getDouble(32);
+        this.min2 = header.getDouble(40);
+        this.max0 = header.getDouble(48);
+        this.max1 = header.getDouble(56);
+        this.max2 = header.getDouble(64);
+        this.values = null;
+        this.mapped = mapped;
+        this.mappedDouble = mappedDouble;
+    }
+
+    int index(int i0, int i1, int i2)
+    {
+        return ((i0*n1 + i1)*n2 + i2)*components;
+    }
+
+    double get(int index)
+    {
+        if (values != null)
+        {
+            return values[index];
+        }
+        return mapped != null ? mapped.get(index) : mappedDouble.get(index);
+    }
+
+    /**
+     * Check if a file starts with the magic number of a binary field map.
+     */
+    static boolean isBinary(File file) throws IOException
+    {
+        if (file.length() < HEADER_SIZE)
+        {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            return Integer.reverseBytes(in.readInt()) == MAGIC;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Memory-map a binary field map file.
+     *
+     * @param file The binary file.
+     * @return The grid, which reads its values from the mapped file.
+     * @throws IOException If the file is not a valid binary field map.
+     */
+    static FieldGrid map(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            {
+                throw new IOException("Not a binary field map: " + file);
+            }
+            int version = buffer.getInt(4);
+            if (version != VERSION && version != VERSION_DOUBLE)
+            {
+                throw new IOException("Unsupported binary field map version " + version + " in " + file);
+            }
+            int bytes = version == VERSION_DOUBLE ? 8 : 4;
+            long size = (long) buffer.getInt(8) * buffer.getInt(12) * buffer.getInt(16) * buffer.getInt(20);
+            if (size <= 0 || HEADER_SIZE + bytes*size != buffer.limit())
+            {
+                throw new IOException("Binary field map " + file + " has the wrong size for its header.");
+            }
+            buffer.position(HEADER_SIZE);
+            ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            if (version == VERSION_DOUBLE)
+            {
+                return new FieldGrid(buffer, null, data.asDoubleBuffer());
+            }
+            return new FieldGrid(buffer, data.asFloatBuffer(), null);
+        }
+        finally
+        {
+            // The mapping stays valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    /**
+     * Write this grid as a binary field map, with the values rounded to float32.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    void write(File file) throws IOException
+    {
+        write(file, false);
+    }
+
+    /**
+     * Write this grid as a binary field map.
+     *
+     * @param file The file to write.
+     * @param doubles Whether to write float64 values rather than float32.
+     * @throws IOException If the file cannot be written.
+     */
+    void write(File file, boolean doubles) throws IOException
+    {
+        int size = n0*n1*n2*components;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (doubles ? 8 : 4)*size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(doubles ? VERSION_DOUBLE : VERSION).putInt(components);
+        buffer.putInt(n0).putInt(n1).putInt(n2);
+        buffer.putDouble(min0).putDouble(min1).putDouble(min2);
+        buffer.putDouble(max0).putDouble(max1).putDouble(max2);
+        for (int i = 0; i < size; i++)
+        {
+            if (doubles)
+            {
+                buffer.putDouble(get(i));
+            }
+            else
+            {
+                buffer.putFloat((float) get(i));
+            }
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(buffer.array());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Map the grid of a field from the snapshot of the compact description
+     * being read, if it has one for the given field map.
+     *
+     * @param field The name of the field.
+     * @param source The text field map.
+     * @return The grid, or null if there is none in the snapshot.
+     */
+    static FieldGrid fromSnapshot(String field, File source)
+    {
+        DetectorSnapshot snapshot = DetectorSnapshot.getCurrent();
+        File file = snapshot == null || field == null ? null : snapshot.getFieldGrid(field, source);
+        if (file == null)
+        {
+            return null;
+        }
+        try
+        {
+            return map(file);
+        }
+        catch (IOException x)
+        {
+            // Parse the text field map again.
+            return null;
+        }
+    }
+
+    /**
+     * Add this grid, parsed from a text field map, to the snapshot of the
+     * compact description being read. Failures are ignored, since the grid
+     * can always be parsed again.
+     *
+     * @param field The name of the field.
+     * @param source The text field map.
+     */
+    void toSnapshot(String field, File source)
+    {
+        DetectorSnapshot snapshot = DetectorSnapshot.getCurrent();
+        if (snapshot == null || field == null)
+        {
+            return;
+        }
+        try
+        {
+            File temp = snapshot.createTempFile();
+            try
+            {
+                write(temp, true);
+            }
+            catch (IOException x)
+            {
+                temp.delete();
+                throw x;
+            }
+            snapshot.putFieldGrid(field, source, temp);
+        }
+        catch (IOException x)
+        {
+            // The grid is still used by this job.
+        }
+    }
+}
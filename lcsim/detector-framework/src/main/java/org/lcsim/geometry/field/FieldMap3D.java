@@ -18,6 +18,19 @@ import org.jdom.JDOMException;
 import org.lcsim.util.cache.FileCache;
 
 /**
+ * A field map on a regular 3D grid, with trilinear interpolation.
+ * <p>
+ * The map is read from the file given by the filename attribute, which may
+ * be a URL. This is either the original text format, or a binary field map
+ * written by {@link #convert(File, File)}, which is memory-mapped rather than
+ * parsed. The binary format stores the field as float32 values, so it is
+ * smaller and faster to load, at the cost of float precision. The LCDD
+ * converter passes the filename on to Geant4, which needs the text format.
+ * A text map which has been parsed once is kept at full precision in the
+ * {@link org.lcsim.geometry.compact.DetectorSnapshot} of the compact
+ * description, and mapped from there by later jobs.
+ * <p>
+ * Field lookups do not modify the map, so they can be made from any thread.
  *
  * @author Norman A Graf
  *
@@ -25,9 +38,8 @@ import org.lcsim.util.cache.FileCache;
  */
 public class FieldMap3D extends AbstractFieldMap
 {
-    private double[][][] _xField;
-    private double[][][] _yField;
-    private double[][][] _zField;
+    // The field values, with Bx, By, Bz interleaved and z varying fastest.
+    private FieldGrid _grid;
     // The dimensions of the table
     private int _nx, _ny, _nz;
     // The physical limits of the defined region
@@ -38,9 +50,6 @@ public class FieldMap3D extends AbstractFieldMap
     private double _xOffset;
     private double _yOffset;
     private double _zOffset;
-    // maximum field strength
-    private double _bMax;
-    private double[] _Bfield = new double[3];
     String _filename;
 
     public FieldMap3D(Element node) throws JDOMException
@@ -60,46 +69,101 @@ public class FieldMap3D extends AbstractFieldMap
 
     private void setup(String filename) throws IOException
     {
-        InputStream fis;
-        BufferedReader br;
-        String line;
+        File file;
 
         //FIXME Should specify either filename or url in the xml. Needs change to schema.
         if (filename.startsWith("http")) {
             FileCache cache = new FileCache();
-            File file = cache.getCachedFile(new URL(filename));
-            fis = new FileInputStream(file);
+            file = cache.getCachedFile(new URL(filename));
         } else {
-            fis = new FileInputStream(filename);
+            file = new File(filename);
         }
 
         System.out.println("-----------------------------------------------------------");
         System.out.println("FieldMap3D ");
         System.out.println("-----------------------------------------------------------");
-        System.out.println("Reading the field grid from " + filename + " ... ");
 
-        br = new BufferedReader(new InputStreamReader(fis));
+        if (FieldGrid.isBinary(file)) {
+            System.out.println("Mapping the binary field grid from " + filename + " ... ");
+            _grid = FieldGrid.map(file);
+            if (_grid.components != 3) {
+                throw new IOException("Binary field map " + filename + " has " + _grid.components + " components instead of 3.");
+            }
+        } else if ((_grid = FieldGrid.fromSnapshot(getName(), file)) != null && _grid.components == 3) {
+            System.out.println("Mapping the field grid of " + filename + " from the detector snapshot ... ");
+        } else {
+            System.out.println("Reading the field grid from " + filename + " ... ");
+            InputStream fis = new FileInputStream(file);
+            try {
+                _grid = readText(fis, true);
+            } finally {
+                fis.close();
+            }
+            _grid.toSnapshot(getName(), file);
+        }
+
+        _nx = _grid.n0;
+        _ny = _grid.n1;
+        _nz = _grid.n2;
+        if (_nx < 2 || _ny < 2 || _nz < 2) {
+            throw new IOException("The field grid needs at least 2 points along each axis.");
+        }
+        _minx = _grid.min0;
+        _miny = _grid.min1;
+        _minz = _grid.min2;
+        _maxx = _grid.max0;
+        _maxy = _grid.max1;
+        _maxz = _grid.max2;
+
+        System.out.println("\n ---> ... done reading ");
+        System.out.println(" ---> assumed the order:  x, y, z, Bx, By, Bz "
+                + "\n ---> Min values x,y,z: "
+                + _minx + " " + _miny + " " + _minz
+                + "\n ---> Max values x,y,z: "
+                + _maxx + " " + _maxy + " " + _maxz
+                + "\n ---> The field will be offset by " + _xOffset + " " + _yOffset + " " + _zOffset);
+
+        _dx = _maxx - _minx;
+        _dy = _maxy - _miny;
+        _dz = _maxz - _minz;
+        System.out.println("\n ---> Range of values x,y,z: "
+                + _dx + " " + _dy + " " + _dz
+                + "\n-----------------------------------------------------------");
+    }
+
+    /**
+     * Read a field map in the text format.
+     *
+     * @param fis The text field map.
+     * @param verbose Whether to print the header and the maximum field strength.
+     * @return The grid, with the field converted to internal units.
+     */
+    private static FieldGrid readText(InputStream fis, boolean verbose) throws IOException
+    {
+        BufferedReader br = new BufferedReader(new InputStreamReader(fis));
+        String line;
+
         // ignore the first blank line
         line = br.readLine();
         // next line has table dimensions
         line = br.readLine();
         // read in the table dimensions of the file
         StringTokenizer st = new StringTokenizer(line, " ");
-        _nx = Integer.parseInt(st.nextToken());
-        _ny = Integer.parseInt(st.nextToken());
-        _nz = Integer.parseInt(st.nextToken());
+        int nx = Integer.parseInt(st.nextToken());
+        int ny = Integer.parseInt(st.nextToken());
+        int nz = Integer.parseInt(st.nextToken());
 
         // Set up storage space for table
-        _xField = new double[_nx + 1][_ny + 1][_nz + 1];
-        _yField = new double[_nx + 1][_ny + 1][_nz + 1];
-        _zField = new double[_nx + 1][_ny + 1][_nz + 1];
+        double[] field = new double[nx * ny * nz * 3];
 
         // Ignore other header information    
         // The first line whose second character is '0' is considered to
         // be the last line of the header.
         do {
             line = br.readLine();
-            System.out.println(line);
+            if (verbose) {
+                System.out.println(line);
+            }
             st = new StringTokenizer(line, " ");
         } while (!st.nextToken().trim().equals("0"));
 
@@ -109,89 +173,128 @@ public class FieldMap3D extends AbstractFieldMap
         // Recall that in Geant4 internal units 1 Tesla is equal to 0.001 so convert
         //
         int conversionFactor = 1000;
-        int ix, iy, iz;
+        double minx = 0., miny = 0., minz = 0.;
         double xval = 0.;
         double yval = 0.;
         double zval = 0.;
         double bx, by, bz;
-        for (ix = 0; ix < _nx; ix++) {
-            for (iy = 0; iy < _ny; iy++) {
-                for (iz = 0; iz < _nz; iz++) {
-                    line = br.readLine();
-                    st = new StringTokenizer(line, " ");
-                    xval = Double.parseDouble(st.nextToken());
-                    yval = Double.parseDouble(st.nextToken());
-                    zval = Double.parseDouble(st.nextToken());
-                    bx = Double.parseDouble(st.nextToken())*conversionFactor;
-                    by = Double.parseDouble(st.nextToken())*conversionFactor;
-                    bz = Double.parseDouble(st.nextToken())*conversionFactor;
-                    if (ix == 0 && iy == 0 && iz == 0) {
-                        _minx = xval;
-                        _miny = yval;
-                        _minz = zval;
-                    }
-                    _xField[ix][iy][iz] = bx;
-                    _yField[ix][iy][iz] = by;
-                    _zField[ix][iy][iz] = bz;
-                    double b = bx * bx + by * by + bz * bz;
-                    if (b > _bMax) {
-                        _bMax = b;
-                    }
-                }
+        double bMax = 0.;
+        for (int i = 0; i < field.length; i += 3) {
+            line = br.readLine();
+            st = new StringTokenizer(line, " ");
+            xval = Double.parseDouble(st.nextToken());
+            yval = Double.parseDouble(st.nextToken());
+            zval = Double.parseDouble(st.nextToken());
+            bx = Double.parseDouble(st.nextToken())*conversionFactor;
+            by = Double.parseDouble(st.nextToken())*conversionFactor;
+            bz = Double.parseDouble(st.nextToken())*conversionFactor;
+            if (i == 0) {
+                minx = xval;
+                miny = yval;
+                minz = zval;
+            }
+            field[i] = bx;
+            field[i + 1] = by;
+            field[i + 2] = bz;
+            double b = bx * bx + by * by + bz * bz;
+            if (b > bMax) {
+                bMax = b;
             }
         }
-        _bMax = sqrt(_bMax);
-
-        _maxx = xval;
-        _maxy = yval;
-        _maxz = zval;
+        if (verbose) {
+            System.out.println("\n Maximum Field strength: " + sqrt(bMax));
+        }
 
-        System.out.println("\n ---> ... done reading ");
-        System.out.println(" ---> assumed the order:  x, y, z, Bx, By, Bz "
-                + "\n ---> Min values x,y,z: "
-                + _minx + " " + _miny + " " + _minz
-                + "\n ---> Max values x,y,z: "
-                + _maxx + " " + _maxy + " " + _maxz
-                + "\n Maximum Field strength: " + _bMax + " "
-                + "\n ---> The field will be offset by " + _xOffset + " " + _yOffset + " " + _zOffset);
+        return new FieldGrid(3, nx, ny, nz, minx, miny, minz, xval, yval, zval, field);
+    }
 
-        _dx = _maxx - _minx;
-        _dy = _maxy - _miny;
-        _dz = _maxz - _minz;
-        System.out.println("\n ---> Range of values x,y,z: "
-                + _dx + " " + _dy + " " + _dz
-                + "\n-----------------------------------------------------------");
+    /**
+     * Convert a field map from the text format to the binary format, which
+     * can be memory-mapped. The field is stored in internal units as float32.
+     *
+     * @param text The text field map.
+     * @param binary The binary field map to write.
+     * @throws IOException If the text field map cannot be read or the binary one cannot be written.
+     */
+    public static void convert(File text, File binary) throws IOException
+    {
+        InputStream in = new FileInputStream(text);
+        try {
+            readText(in, false).write(binary);
+        } finally {
+            in.close();
+        }
+    }
 
-        br.close();
+    /**
+     * Convert a text field map to the binary format.
+     *
+     * @param args The text field map and the binary field map to write.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2) {
+            System.err.println("Usage: FieldMap3D <text field map> <binary field map>");
+            System.exit(1);
+        }
+        convert(new File(args[0]), new File(args[1]));
     }
 
     @Override
     public void getField(double[] position, double[] b)
     {
-        getField(position[0], position[1], position[2]);
-        System.arraycopy(_Bfield, 0, b, 0, 3);
+        getField(position[0], position[1], position[2], b, 0);
     }
 
     @Override
     public Hep3Vector getField(Hep3Vector position)
     {
-        getField(position.x(), position.y(), position.z());
-        return new BasicHep3Vector(_Bfield[0], _Bfield[1], _Bfield[2]);
+        double[] b = new double[3];
+        getField(position.x(), position.y(), position.z(), b, 0);
+        return new BasicHep3Vector(b[0], b[1], b[2]);
     }
 
     @Override
     public double[] getField(double[] position)
     {
-        getField(position[0], position[1], position[2]);
-        double[] field = {_Bfield[0], _Bfield[1], _Bfield[2]};
+        double[] field = new double[3];
+        getField(position[0], position[1], position[2], field, 0);
         return field;
     }
 
     @Override
     void getField(double x, double y, double z, BasicHep3Vector field)
     {
-        getField(x, y, z);
-        field.setV(_Bfield[0], _Bfield[1], _Bfield[2]);
+        double[] b = new double[3];
+        getField(x, y, z, b, 0);
+        field.setV(b[0], b[1], b[2]);
+    }
+
+    /**
+     * Get the field at a point, without allocating any objects.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param z The z coordinate of the point.
+     * @param b Set to the field.
+     */
+    public void getField(double x, double y, double z, double[] b)
+    {
+        getField(x, y, z, b, 0);
+    }
+
+    /**
+     * Get the field at many points.
+     *
+     * @param positions The points, as x, y, z of each point in turn.
+     * @param fields Set to the field at each point, as Bx, By, Bz in turn.
+     * @param n The number of points.
+     */
+    public void getFields(double[] positions, double[] fields, int n)
+    {
+        for (int i = 0; i < 3 * n; i += 3) {
+            getField(positions[i], positions[i + 1], positions[i + 2], fields, i);
+        }
     }
 
     public double[] globalOffset()
@@ -199,7 +302,7 @@ public class FieldMap3D extends AbstractFieldMap
         return new double[]{_xOffset, _yOffset, _zOffset};
     }
 
-    private void getField(double x, double y, double z)
+    private void getField(double x, double y, double z, double[] b, int offset)
     {
         // allow for offsets
         x -= _xOffset;
@@ -216,67 +319,58 @@ public class FieldMap3D extends AbstractFieldMap
             double yfraction = (y - _miny) / _dy;
             double zfraction = (z - _minz) / _dz;
 
-            //double xdindex, ydindex, zdindex;
-            // Position of the point within the cuboid defined by the
-            // nearest surrounding tabulated points
-            double[] xmodf = modf(xfraction * (_nx - 1));
-            double[] ymodf = modf(yfraction * (_ny - 1));
-            double[] zmodf = modf(zfraction * (_nz - 1));
-
             // The indices of the nearest tabulated point whose coordinates
-            // are all less than those of the given point
-            int xindex = (int) xmodf[0];
-            int yindex = (int) ymodf[0];
-            int zindex = (int) zmodf[0];
-            double xlocal = xmodf[1];
-            double ylocal = ymodf[1];
-            double zlocal = zmodf[1];
-            // bilinear interpolation
-            _Bfield[0]
-                    = _xField[xindex][yindex][zindex] * (1 - xlocal) * (1 - ylocal) * (1 - zlocal)
-                    + _xField[xindex][yindex][zindex + 1] * (1 - xlocal) * (1 - ylocal) * zlocal
-                    + _xField[xindex][yindex + 1][zindex] * (1 - xlocal) * ylocal * (1 - zlocal)
-                    + _xField[xindex][yindex + 1][zindex + 1] * (1 - xlocal) * ylocal * zlocal
-                    + _xField[xindex + 1][yindex][zindex] * xlocal * (1 - ylocal) * (1 - zlocal)
-                    + _xField[xindex + 1][yindex][zindex + 1] * xlocal * (1 - ylocal) * zlocal
-                    + _xField[xindex + 1][yindex + 1][zindex] * xlocal * ylocal * (1 - zlocal)
-                    + _xField[xindex + 1][yindex + 1][zindex + 1] * xlocal * ylocal * zlocal;
-            _Bfield[1]
-                    = _yField[xindex][yindex][zindex] * (1 - xlocal) * (1 - ylocal) * (1 - zlocal)
-                    + _yField[xindex][yindex][zindex + 1] * (1 - xlocal) * (1 - ylocal) * zlocal
-                    + _yField[xindex][yindex + 1][zindex] * (1 - xlocal) * ylocal * (1 - zlocal)
-                    + _yField[xindex][yindex + 1][zindex + 1] * (1 - xlocal) * ylocal * zlocal
-                    + _yField[xindex + 1][yindex][zindex] * xlocal * (1 - ylocal) * (1 - zlocal)
-                    + _yField[xindex + 1][yindex][zindex + 1] * xlocal * (1 - ylocal) * zlocal
-                    + _yField[xindex + 1][yindex + 1][zindex] * xlocal * ylocal * (1 - zlocal)
-                    + _yField[xindex + 1][yindex + 1][zindex + 1] * xlocal * ylocal * zlocal;
-            _Bfield[2]
-                    = _zField[xindex][yindex][zindex] * (1 - xlocal) * (1 - ylocal) * (1 - zlocal)
-                    + _zField[xindex][yindex][zindex + 1] * (1 - xlocal) * (1 - ylocal) * zlocal
-                    + _zField[xindex][yindex + 1][zindex] * (1 - xlocal) * ylocal * (1 - zlocal)
-                    + _zField[xindex][yindex + 1][zindex + 1] * (1 - xlocal) * ylocal * zlocal
-                    + _zField[xindex + 1][yindex][zindex] * xlocal * (1 - ylocal) * (1 - zlocal)
-                    + _zField[xindex + 1][yindex][zindex + 1] * xlocal * (1 - ylocal) * zlocal
-                    + _zField[xindex + 1][yindex + 1][zindex] * xlocal * ylocal * (1 - zlocal)
-                    + _zField[xindex + 1][yindex + 1][zindex + 1] * xlocal * ylocal * zlocal;
+            // are all less than those of the given point, and the position
+            // of the point within the cuboid defined by the nearest
+            // surrounding tabulated points. A point on the upper edge
+            // uses the last cuboid.
+            double xd = xfraction * (_nx - 1);
+            double yd = yfraction * (_ny - 1);
+            double zd = zfraction * (_nz - 1);
+            int xindex = (int) xd;
+            int yindex = (int) yd;
+            int zindex = (int) zd;
+            double xlocal = xd - xindex;
+            double ylocal = yd - yindex;
+            double zlocal = zd - zindex;
+            if (xindex >= _nx - 1) {
+                xindex = _nx - 2;
+                xlocal = 1.;
+            }
+            if (yindex >= _ny - 1) {
+                yindex = _ny - 2;
+                ylocal = 1.;
+            }
+            if (zindex >= _nz - 1) {
+                zindex = _nz - 2;
+                zlocal = 1.;
+            }
 
+            // trilinear interpolation
+            double xother = 1 - xlocal;
+            double yother = 1 - ylocal;
+            double zother = 1 - zlocal;
+            FieldGrid grid = _grid;
+            int i000 = grid.index(xindex, yindex, zindex);
+            int sz = 3;
+            int sy = 3 * _nz;
+            int sx = 3 * _nz * _ny;
+            for (int c = 0; c < 3; c++) {
+                int i = i000 + c;
+                b[offset + c]
+                        = grid.get(i) * xother * yother * zother
+                        + grid.get(i + sz) * xother * yother * zlocal
+                        + grid.get(i + sy) * xother * ylocal * zother
+                        + grid.get(i + sy + sz) * xother * ylocal * zlocal
+                        + grid.get(i + sx) * xlocal * yother * zother
+                        + grid.get(i + sx + sz) * xlocal * yother * zlocal
+                        + grid.get(i + sx + sy) * xlocal * ylocal * zother
+                        + grid.get(i + sx + sy + sz) * xlocal * ylocal * zlocal;
+            }
         } else {
-            _Bfield[0] = 0.0;
-            _Bfield[1] = 0.0;
-            _Bfield[2] = 0.0;
+            b[offset] = 0.0;
+            b[offset + 1] = 0.0;
+            b[offset + 2] = 0.0;
         }
     }
-
-    //TODO pass double[] as argument to minimize internal array creation
-    private double[] modf(double fullDouble)
-    {
-        int intVal = (int) fullDouble;
-        double remainder = fullDouble - intVal;
-
-        double[] retVal = new double[2];
-        retVal[0] = intVal;
-        retVal[1] = remainder;
-
-        return retVal;
-    }
 }
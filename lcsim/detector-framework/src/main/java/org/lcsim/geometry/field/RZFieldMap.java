@@ -16,6 +16,17 @@ import static java.lang.Math.sin;
 import static java.lang.Math.cos;
 
 /**
+ * A field map on a regular grid in r and z, for a field that is symmetric
+ * around the z axis.
+ * <p>
+ * The map is read from the given url, either in the original text format
+ * or as a binary field map written by {@link #convert}, which is memory-mapped
+ * rather than parsed. The binary format stores the field as float32 values.
+ * A text map which has been parsed once is kept at full precision in the
+ * {@link org.lcsim.geometry.compact.DetectorSnapshot} of the compact
+ * description, and mapped from there by later jobs.
+ * <p>
+ * Field lookups do not modify the map, so they can be made from any thread.
  *
  * @author jeremym
  */
@@ -33,8 +44,8 @@ public class RZFieldMap extends AbstractFieldMap
     
     private String location;
     
-    private double[][] BrArray;
-    private double[][] BzArray;
+    // The field values, with Bz, Br interleaved and r varying fastest.
+    private FieldGrid grid;
     
     public RZFieldMap(Element node) throws JDOMException
     {
@@ -62,9 +73,6 @@ public class RZFieldMap extends AbstractFieldMap
         maxZ = ( numBinsZ - 1 ) * gridSizeZ;
         maxRSquared = maxR*maxR;
         
-        BrArray = new double[numBinsZ][numBinsR];
-        BzArray = new double[numBinsZ][numBinsR];
-               
         location = node.getAttribute("url").getValue();
         
         try
@@ -87,49 +95,158 @@ public class RZFieldMap extends AbstractFieldMap
         FileCache cache = new FileCache();
         File file = cache.getCachedFile(new URL(location));
         
-        BufferedReader reader = new BufferedReader(new FileReader(file));
+        if (FieldGrid.isBinary(file))
+        {
+            grid = FieldGrid.map(file);
+            if (grid.components != 2 || grid.n0 != numBinsZ || grid.n1 != numBinsR || grid.n2 != 1)
+            {
+                throw new IOException("Binary field map " + location + " does not match numBinsZ=" + numBinsZ + " and numBinsR=" + numBinsR);
+            }
+        }
+        else
+        {
+            grid = FieldGrid.fromSnapshot(getName(), file);
+            if (grid == null || grid.components != 2 || grid.n0 != numBinsZ || grid.n1 != numBinsR)
+            {
+                grid = readText(file, numBinsZ, numBinsR, gridSizeZ, gridSizeR);
+                grid.toSnapshot(getName(), file);
+            }
+        }
+    }
+    
+    private static FieldGrid readText(File file, int numBinsZ, int numBinsR, double gridSizeZ, double gridSizeR) throws IOException
+    {
+        double[] field = new double[numBinsZ * numBinsR * 2];
         
-        for (;;)
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try
         {
-            String line = reader.readLine();
-            if (line == null) break;
-            String[] chunks = line.trim().split(" +");
-            
-            if ( chunks.length > 0 )
+            for (;;)
             {
-                if ( chunks.length != 4 )
-                {
-                    throw new IOException("Invalid RZ field map line: " + line);
-                }
-                
-                /* FIXME: Hard-coded unit conversion of cm to mm. */
-                double z = Double.parseDouble(chunks[0]) * 10;
-                double r = Double.parseDouble(chunks[1]) * 10;
+                String line = reader.readLine();
+                if (line == null) break;
+                String[] chunks = line.trim().split(" +");
                 
-                /* FIXME: Hard-coded unit conversion of kilogauss to tesla. */
-                double Bz = Double.parseDouble(chunks[2]) / 10;
-                double Br = Double.parseDouble(chunks[3]) / 10;
-                
-                int iz= (int) ((z + 0.0001)/gridSizeZ);
-                int ir=(int) ((r + 0.0001)/gridSizeR);
-                
-                if ( iz > ( numBinsZ - 1) )
+                if ( chunks.length > 0 )
                 {
-                    throw new IOException("z bin out of range: " + iz);
+                    if ( chunks.length != 4 )
+                    {
+                        throw new IOException("Invalid RZ field map line: " + line);
+                    }
+                    
+                    /* FIXME: Hard-coded unit conversion of cm to mm. */
+                    double z = Double.parseDouble(chunks[0]) * 10;
+                    double r = Double.parseDouble(chunks[1]) * 10;
+                    
+                    /* FIXME: Hard-coded unit conversion of kilogauss to tesla. */
+                    double Bz = Double.parseDouble(chunks[2]) / 10;
+                    double Br = Double.parseDouble(chunks[3]) / 10;
+                    
+                    int iz= (int) ((z + 0.0001)/gridSizeZ);
+                    int ir=(int) ((r + 0.0001)/gridSizeR);
+                    
+                    if ( iz > ( numBinsZ - 1) )
+                    {
+                        throw new IOException("z bin out of range: " + iz);
+                    }
+                    
+                    if ( ir > ( numBinsR - 1) )
+                    {
+                        throw new IOException("r bin out of range:" + ir);
+                    }
+                    
+                    int i = (iz * numBinsR + ir) * 2;
+                    field[i] = Bz;
+                    field[i + 1] = Br;
                 }
-                
-                if ( ir > ( numBinsR - 1) )
-                {
-                    throw new IOException("r bin out of range:" + ir);
-                }
-                
-                BzArray[iz][ir] = Bz;
-                BrArray[iz][ir] = Br;
             }
         }
+        finally
+        {
+            reader.close();
+        }
+        
+        return new FieldGrid(2, numBinsZ, numBinsR, 1,
+                0, 0, 0, (numBinsZ - 1) * gridSizeZ, (numBinsR - 1) * gridSizeR, 0, field);
+    }
+    
+    /**
+     * Convert a field map from the text format to the binary format, which
+     * can be memory-mapped. The grid is given as in the compact description.
+     *
+     * @param text The text field map.
+     * @param binary The binary field map to write.
+     * @param numBinsZ The number of grid points in z.
+     * @param numBinsR The number of grid points in r.
+     * @param gridSizeZ The grid spacing in z, in cm.
+     * @param gridSizeR The grid spacing in r, in cm.
+     * @throws IOException If the text field map cannot be read or the binary one cannot be written.
+     */
+    public static void convert(File text, File binary, int numBinsZ, int numBinsR, double gridSizeZ, double gridSizeR) throws IOException
+    {
+        /* FIXME: Hard-coded conversion of cm to mm. */
+        readText(text, numBinsZ, numBinsR, gridSizeZ * 10, gridSizeR * 10).write(binary);
+    }
+    
+    /**
+     * Convert a text field map to the binary format.
+     *
+     * @param args The text field map, the binary field map to write,
+     *             and numBinsZ, numBinsR, gridSizeZ and gridSizeR as in the compact description.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 6)
+        {
+            System.err.println("Usage: RZFieldMap <text field map> <binary field map> <numBinsZ> <numBinsR> <gridSizeZ> <gridSizeR>");
+            System.exit(1);
+        }
+        convert(new File(args[0]), new File(args[1]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                Double.parseDouble(args[4]), Double.parseDouble(args[5]));
     }
     
     void getField(double x, double y, double z, BasicHep3Vector field)
+    {
+        double[] b = new double[3];
+        getField(x, y, z, b, 0);
+        field.setV(b[0], b[1], b[2]);
+    }
+    
+    public void getField(double[] position, double[] b)
+    {
+        getField(position[0], position[1], position[2], b, 0);
+    }
+    
+    /**
+     * Get the field at a point, without allocating any objects.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param z The z coordinate of the point.
+     * @param b Set to the field.
+     */
+    public void getField(double x, double y, double z, double[] b)
+    {
+        getField(x, y, z, b, 0);
+    }
+    
+    /**
+     * Get the field at many points.
+     *
+     * @param positions The points, as x, y, z of each point in turn.
+     * @param fields Set to the field at each point, as Bx, By, Bz in turn.
+     * @param n The number of points.
+     */
+    public void getFields(double[] positions, double[] fields, int n)
+    {
+        for (int i = 0; i < 3 * n; i += 3)
+        {
+            getField(positions[i], positions[i + 1], positions[i + 2], fields, i);
+        }
+    }
+    
+    private void getField(double x, double y, double z, double[] b, int offset)
     {
         double rSquared = x*x + y*y;
         
@@ -138,7 +255,7 @@ public class RZFieldMap extends AbstractFieldMap
         
         if(abs(z)>maxZ || rSquared>maxRSquared)
         {
-            field.setV(0,0,0);
+            b[offset] = b[offset + 1] = b[offset + 2] = 0;
             return;
         }
         double r = sqrt(rSquared);
@@ -146,22 +263,28 @@ public class RZFieldMap extends AbstractFieldMap
         int iz = (int) ((abs(z)+0.001)/gridSizeZ);
         int ir = (int) ((r+0.001)/gridSizeR);
         
-        // outside
-        if(iz<0 || ir>numBinsR)
+        // On the last grid line there is no next point to take
+        // the gradient from, so the field is taken as constant.
+        boolean zfar = false;
+        if(iz>=numBinsZ-1)
         {
-            field.setV(0,0,0);
-            return;
+            zfar = true;
+            iz = numBinsZ-1;
         }
-        
-        int izfar = 0;
-        if(iz>=numBinsZ)
+        boolean rfar = false;
+        if(ir>=numBinsR-1)
         {
-            izfar = 1;
-            iz = numBinsZ;
+            rfar = true;
+            ir = numBinsR-1;
         }
         
-        double bz0 = BzArray[iz][ir];
-        double br0 = BrArray[iz][ir];
+        FieldGrid grid = this.grid;
+        int i = grid.index(iz, ir, 0);
+        int sz = 2 * numBinsR;
+        int sr = 2;
+        
+        double bz0 = grid.get(i);
+        double br0 = grid.get(i + 1);
         
         double delz = 0.;
         double delr = 0.;
@@ -172,16 +295,16 @@ public class RZFieldMap extends AbstractFieldMap
         if(r>0.0)
         {
             delr = r - ((float)ir) * gridSizeR;
-            brdz = (BrArray[iz+1][ir]-br0)/gridSizeZ;
-            brdr = (BrArray[iz][ir+1]-br0)/gridSizeR;
+            if(!zfar) brdz = (grid.get(i + sz + 1)-br0)/gridSizeZ;
+            if(!rfar) brdr = (grid.get(i + sr + 1)-br0)/gridSizeR;
         }
         
         delz = abs(z) - ((float)iz) * gridSizeZ;
         
-        double bzdz = (BzArray[iz+1][ir]-bz0)/gridSizeZ;
-        double bzdr = (BzArray[iz][ir+1]-bz0)/gridSizeR;
+        double bzdz = zfar ? 0. : (grid.get(i + sz)-bz0)/gridSizeZ;
+        double bzdr = rfar ? 0. : (grid.get(i + sr)-bz0)/gridSizeR;
         
-        if(izfar==1)
+        if(zfar)
         {
             hz = bz0+bzdr*delr;
             hr = br0+brdr*delr;
@@ -195,10 +318,9 @@ public class RZFieldMap extends AbstractFieldMap
         if(z<0.0) hr = -hr;
         
         double theta = atan2(y, x);
-        double hx = hr * cos(theta);
-        double hy = hr * sin(theta);
-        
-        field.setV(hx,hy,hz);
+        b[offset] = hr * cos(theta);
+        b[offset + 1] = hr * sin(theta);
+        b[offset + 2] = hz;
     }
         
     public final int getNumBinsR()
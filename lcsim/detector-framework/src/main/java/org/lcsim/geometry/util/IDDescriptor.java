@@ -73,6 +73,33 @@ public class IDDescriptor
         }
     }
 
+    /**
+     * Create a description from fields which have already been parsed, for example
+     * from a {@link org.lcsim.geometry.compact.DetectorSnapshot}.
+     *
+     * @param idDescriptor The string the fields were parsed from.
+     * @param name The names of the fields.
+     * @param start The first bit of each field.
+     * @param length The number of bits of each field, negative for signed fields.
+     */
+    public IDDescriptor(String idDescriptor, String[] name, int[] start, int[] length)
+    {
+        if (start.length != name.length || length.length != name.length)
+            throw new IllegalArgumentException("Inconsistent number of fields in " + idDescriptor);
+        this.description = idDescriptor;
+        this.nfields = name.length;
+        this.name = name.clone();
+        this.start = start.clone();
+        this.length = length.clone();
+        for (int i = 0; i < nfields; i++)
+        {
+            if (this.start[i] < 0 || this.length[i] == 0)
+                throw new IllegalArgumentException("Invalid field " + name[i] + " in " + idDescriptor);
+            nameMap.put(name[i], i);
+            maxBit = Math.max(maxBit, this.start[i] + Math.abs(this.length[i]));
+        }
+    }
+
     public int fieldCount()
     {
         return name.length;
@@ -0,0 +1,170 @@
+package org.lcsim.detector;
+
+import hep.physics.vec.BasicHep3Vector;
+import hep.physics.vec.Hep3Vector;
+
+import java.io.InputStream;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.lcsim.detector.material.IMaterial;
+import org.lcsim.detector.material.MaterialElement;
+import org.lcsim.detector.solids.Box;
+import org.lcsim.detector.solids.Inside;
+import org.lcsim.geometry.Detector;
+import org.lcsim.geometry.GeometryReader;
+
+/**
+ * Compare the volumes found by {@link PhysicalVolumeNavigator#getPath(Hep3Vector)}
+ * in the full SiD detector, and in volumes with overlapping daughters, with a plain
+ * loop over the daughters.
+ *
+ * @version $Id$
+ */
+public class PhysicalVolumeNavigatorTest extends TestCase
+{
+    private static final String resource = "/org/lcsim/geometry/sidloi3_compact.xml";
+    private static final int POINTS = 20000;
+    private static final boolean debug = false;
+
+    private IPhysicalVolumeNavigator navigator;
+
+    protected void setUp() throws Exception
+    {
+        InputStream in = this.getClass().getResourceAsStream(resource);
+        Detector detector = new GeometryReader().read(in);
+        navigator = detector.getNavigator();
+    }
+
+    public void testGetPath()
+    {
+        // Points along tracks from the origin, so that consecutive points are close,
+        // as they are for the hits of a particle.
+        Hep3Vector[] points = new Hep3Vector[POINTS];
+        Random random = new Random(1);
+        for (int i=0; i<POINTS; i+=100)
+        {
+            double cosTheta = 2*random.nextDouble() - 1;
+            double sinTheta = Math.sqrt(1 - cosTheta*cosTheta);
+            double phi = 2*Math.PI*random.nextDouble();
+            for (int j=0; j<100; j++)
+            {
+                double r = 6000.*j/100;
+                points[i+j] = new BasicHep3Vector(
+                        r*sinTheta*Math.cos(phi), r*sinTheta*Math.sin(phi), r*cosTheta);
+            }
+        }
+
+        IPhysicalVolumePath[] expected = new IPhysicalVolumePath[POINTS];
+        long start = System.nanoTime();
+        for (int i=0; i<POINTS; i++)
+        {
+            expected[i] = scan(points[i]);
+        }
+        long scanTime = System.nanoTime() - start;
+
+        IPhysicalVolumePath[] found = new IPhysicalVolumePath[POINTS];
+        start = System.nanoTime();
+        for (int i=0; i<POINTS; i++)
+        {
+            found[i] = navigator.getPath(points[i]);
+        }
+        long navigatorTime = System.nanoTime() - start;
+
+        for (int i=0; i<POINTS; i++)
+        {
+            assertPath(points[i], expected[i], found[i]);
+        }
+
+        if (debug)
+        {
+            System.out.println("PhysicalVolumeNavigatorTest: " + POINTS + " points, daughter loop "
+                    + scanTime/1000000 + " ms, navigator " + navigatorTime/1000000 + " ms");
+        }
+    }
+
+    public void testOverlappingDaughters()
+    {
+        // Two mothers with the same number of daughters, so that the daughter found in one
+        // is a candidate in the other.  In each, daughters 0 and 1 overlap around the centre,
+        // and there are enough other daughters for the mother to be sliced.
+        IMaterial material = new MaterialElement("PhysicalVolumeNavigatorTestMaterial", 1, 1, 1.0);
+        LogicalVolume lvWorld = new LogicalVolume("world", new Box("world", 100, 100, 100), material);
+        IPhysicalVolume world = new PhysicalVolume(new Transform3D(), "world", lvWorld, null, 0);
+        for (int m=0; m<2; m++)
+        {
+            LogicalVolume mother = new LogicalVolume("mother" + m, new Box("mother" + m, 20, 20, 20), material);
+            new PhysicalVolume(new Transform3D(new Translation3D(m == 0 ? -50 : 50, 0, 0)), "mother" + m, mother, lvWorld, m);
+            double side = m == 0 ? 1 : -1;
+            LogicalVolume half = new LogicalVolume("half" + m, new Box("half" + m, 5, 5, 5), material);
+            new PhysicalVolume(new Transform3D(new Translation3D(-3*side, 0, 0)), "first", half, mother, 0);
+            new PhysicalVolume(new Transform3D(new Translation3D(3*side, 0, 0)), "second", half, mother, 1);
+            LogicalVolume small = new LogicalVolume("small" + m, new Box("small" + m, 1, 1, 1), material);
+            for (int i=0; i<8; i++)
+            {
+                new PhysicalVolume(new Transform3D(new Translation3D(-16 + 4*i, 12, 0)), "small" + i, small, mother, i + 2);
+            }
+        }
+        navigator = new PhysicalVolumeNavigator("PhysicalVolumeNavigatorTest", world);
+
+        // Random walks, so that a point often follows one in the same daughter.
+        Random random = new Random(2);
+        for (int i=0; i<200; i++)
+        {
+            double x = (random.nextBoolean() ? -50 : 50) + 10*random.nextGaussian();
+            double y = 10*random.nextGaussian();
+            double z = 3*random.nextGaussian();
+            for (int j=0; j<50; j++)
+            {
+                x += random.nextGaussian();
+                y += random.nextGaussian();
+                Hep3Vector point = new BasicHep3Vector(x, y, z);
+                assertPath(point, scan(point), navigator.getPath(point));
+            }
+        }
+    }
+
+    private static void assertPath(Hep3Vector point, IPhysicalVolumePath expected, IPhysicalVolumePath found)
+    {
+        assertEquals("Wrong path for point " + point, expected.size(), found.size());
+        for (int j=0; j<found.size(); j++)
+        {
+            assertSame("Wrong path for point " + point, expected.get(j), found.get(j));
+        }
+    }
+
+    /**
+     * Find the path to a point by checking each daughter in turn.
+     */
+    private IPhysicalVolumePath scan(Hep3Vector point)
+    {
+        IPhysicalVolumePath path = new PhysicalVolumePath();
+        IPhysicalVolume world = navigator.getTopPhysicalVolume();
+        ILogicalVolume lv = world.getLogicalVolume();
+        if (lv.getSolid().inside(point) != Inside.INSIDE)
+        {
+            return path;
+        }
+        path.add(world);
+        Hep3Vector local = point;
+        boolean found = true;
+        while (found)
+        {
+            found = false;
+            for (IPhysicalVolume dau : lv.getDaughters())
+            {
+                Hep3Vector check = dau.getTransform().inverse().transformed(local);
+                if (dau.getLogicalVolume().getSolid().inside(check) == Inside.INSIDE)
+                {
+                    path.add(dau);
+                    lv = dau.getLogicalVolume();
+                    local = check;
+                    found = true;
+                    break;
+                }
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,28 @@
+package org.lcsim.detector.converter.compact;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Check the list of subdetector converters that replaces the classpath scan.
+ *
+ * @version $Id$
+ */
+public class SubdetectorConverterIndexTest extends TestCase
+{
+    public void testConverterClasses()
+    {
+        List<Class<? extends AbstractSubdetectorConverter>> converters = SubdetectorConverterIndex.getConverterClasses();
+        assertTrue(converters.contains(SiTrackerBarrelConverter.class));
+        assertTrue(converters.contains(PolyhedraBarrelCalorimeter2Converter.class));
+        assertFalse(converters.contains(AbstractSubdetectorConverter.class));
+        for (int i=1; i<converters.size(); i++)
+        {
+            assertTrue(converters.get(i-1).getName().compareTo(converters.get(i).getName()) < 0);
+        }
+
+        // The list is kept for the lifetime of the JVM.
+        assertSame(converters, SubdetectorConverterIndex.getConverterClasses());
+    }
+}
@@ -0,0 +1,178 @@
+package org.lcsim.geometry.compact;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.jdom.Element;
+import org.lcsim.geometry.field.FieldMap3D;
+import org.lcsim.geometry.util.IDDescriptor;
+
+/**
+ * Save the id descriptions and field grids parsed for a compact description
+ * in a snapshot, and check that reading the description again takes them
+ * from the snapshot, with the same results as parsing.
+ *
+ * @version $Id$
+ */
+public class DetectorSnapshotTest extends TestCase
+{
+    private static final String fieldMap = "src/test/resources/org/lcsim/geometry/field/HPS_b18d36_unfolded.dat";
+    private static final String id = "system:6,barrel:3,layer:8,x:32:-16,y:-16";
+
+    private File directory;
+    private byte[] compact;
+
+    protected void setUp() throws Exception
+    {
+        directory = File.createTempFile("DetectorSnapshotTest", "");
+        directory.delete();
+        directory.mkdir();
+        compact = "<lccdd>test</lccdd>".getBytes(Charset.forName("UTF-8"));
+    }
+
+    protected void tearDown() throws Exception
+    {
+        DetectorSnapshot.setCurrent(null);
+        for (File file : directory.listFiles())
+        {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testSnapshot() throws Exception
+    {
+        FieldMap3D parsed = new FieldMap3D(field());
+
+        DetectorSnapshot snapshot = DetectorSnapshot.open(compact, directory);
+        DetectorSnapshot.setCurrent(snapshot);
+        Readout readout = new Readout(readout(id));
+        new FieldMap3D(field());
+        DetectorSnapshot.setCurrent(null);
+        snapshot.save();
+        assertTrue(snapshot.getFile().exists());
+
+        // A job reading the same description
+        snapshot = DetectorSnapshot.open(compact, directory);
+        IDDescriptor desc = snapshot.getIDDescriptor("TestReadout", id);
+        assertNotNull(desc);
+        assertEquals(readout.getIDDescriptor().fieldCount(), desc.fieldCount());
+        for (int i = 0; i < desc.fieldCount(); i++)
+        {
+            assertEquals(readout.getIDDescriptor().fieldName(i), desc.fieldName(i));
+            assertEquals(readout.getIDDescriptor().fieldStart(i), desc.fieldStart(i));
+            assertEquals(readout.getIDDescriptor().fieldLength(i), desc.fieldLength(i));
+            assertEquals(readout.getIDDescriptor().isSigned(i), desc.isSigned(i));
+        }
+        assertEquals(readout.getIDDescriptor().getMaxBit(), desc.getMaxBit());
+        assertEquals(readout.getIDDescriptor().indexOf("y"), desc.indexOf("y"));
+        assertNull(snapshot.getIDDescriptor("TestReadout", "system:6,barrel:3"));
+        assertNotNull(snapshot.getFieldGrid("FieldMap3DTest", new File(fieldMap)));
+
+        DetectorSnapshot.setCurrent(snapshot);
+        assertSame(desc, new Readout(readout(id)).getIDDescriptor());
+        FieldMap3D mapped = new FieldMap3D(field());
+        DetectorSnapshot.setCurrent(null);
+
+        Random random = new Random(1);
+        double[] b1 = new double[3];
+        double[] b2 = new double[3];
+        for (int i = 0; i < 1000; i++)
+        {
+            double x = -30 + 60 * random.nextDouble();
+            double y = -10 + 20 * random.nextDouble();
+            double z = -120 + 240 * random.nextDouble();
+            parsed.getField(x, y, z, b1);
+            mapped.getField(x, y, z, b2);
+            for (int j = 0; j < 3; j++)
+            {
+                assertEquals(b1[j], b2[j], 0);
+            }
+        }
+    }
+
+    public void testGridIsMapped() throws Exception
+    {
+        FieldMap3D parsed = new FieldMap3D(field());
+
+        DetectorSnapshot snapshot = DetectorSnapshot.open(compact, directory);
+        DetectorSnapshot.setCurrent(snapshot);
+        new FieldMap3D(field());
+
+        // Replace the grid in the snapshot by a float32 grid, which gives slightly different values
+        File grid = snapshot.getFieldGrid("FieldMap3DTest", new File(fieldMap));
+        assertNotNull(grid);
+        FieldMap3D.convert(new File(fieldMap), grid);
+        FieldMap3D mapped = new FieldMap3D(field());
+        DetectorSnapshot.setCurrent(null);
+
+        double[] b1 = new double[3];
+        double[] b2 = new double[3];
+        boolean differ = false;
+        for (int i = 0; i < 100; i++)
+        {
+            parsed.getField(0, 0, i, b1);
+            mapped.getField(0, 0, i, b2);
+            for (int j = 0; j < 3; j++)
+            {
+                assertEquals(b1[j], b2[j], 1e-6 * (1 + Math.abs(b1[j])));
+                differ |= b1[j] != b2[j];
+            }
+        }
+        assertTrue(differ);
+    }
+
+    public void testChangedDescription() throws Exception
+    {
+        DetectorSnapshot snapshot = DetectorSnapshot.open(compact, directory);
+        DetectorSnapshot.setCurrent(snapshot);
+        new Readout(readout(id));
+        DetectorSnapshot.setCurrent(null);
+        snapshot.save();
+
+        compact[1] = 'L';
+        snapshot = DetectorSnapshot.open(compact, directory);
+        assertNull(snapshot.getIDDescriptor("TestReadout", id));
+    }
+
+    public void testChangedFieldMap() throws Exception
+    {
+        File copy = new File(directory, "field.dat");
+        Files.copy(new File(fieldMap).toPath(), copy.toPath());
+
+        DetectorSnapshot snapshot = DetectorSnapshot.open(compact, directory);
+        DetectorSnapshot.setCurrent(snapshot);
+        Element field = field();
+        field.setAttribute("filename", copy.getPath());
+        new FieldMap3D(field);
+        DetectorSnapshot.setCurrent(null);
+        assertNotNull(snapshot.getFieldGrid("FieldMap3DTest", copy));
+
+        copy.setLastModified(copy.lastModified() - 10000);
+        assertNull(snapshot.getFieldGrid("FieldMap3DTest", copy));
+    }
+
+    private static Element readout(String id)
+    {
+        Element node = new Element("readout");
+        node.setAttribute("name", "TestReadout");
+        node.addContent(new Element("id").setText(id));
+        return node;
+    }
+
+    private static Element field()
+    {
+        Element node = new Element("field");
+        node.setAttribute("name", "FieldMap3DTest");
+        node.setAttribute("type", "FieldMap3D");
+        node.setAttribute("filename", fieldMap);
+        node.setAttribute("xoffset", "2.117");
+        node.setAttribute("yoffset", "0.0");
+        node.setAttribute("zoffset", "45.72");
+        return node;
+    }
+}
@@ -0,0 +1,147 @@
+package org.lcsim.geometry.field;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.jdom.Element;
+
+/**
+ * Convert text field maps to the binary format, and check that the
+ * memory-mapped maps give the same field as the text maps, at points
+ * inside their grids.
+ *
+ * @version $Id$
+ */
+public class BinaryFieldMapTest extends TestCase
+{
+    private static final String text = "src/test/resources/org/lcsim/geometry/field/HPS_b18d36_unfolded.dat";
+
+    // The grid of the test field map, in cm, and the offsets it is placed at
+    private static final double[] min = {-25.0, -8.9, -150.0};
+    private static final double[] max = {25.0, 8.9, 150.0};
+    private static final double[] offset = {2.117, 0.0, 45.72};
+
+    // The grid of the generated RZ field map
+    private static final int numBinsZ = 21;
+    private static final int numBinsR = 11;
+    private static final double gridSizeZ = 5.0;
+    private static final double gridSizeR = 2.5;
+
+    public void testFieldMap3D() throws Exception
+    {
+        File binary = File.createTempFile("FieldMap3D", ".fmap");
+        binary.deleteOnExit();
+        FieldMap3D.convert(new File(text), binary);
+
+        FieldMap3D textMap = new FieldMap3D(element(text));
+        FieldMap3D binaryMap = new FieldMap3D(element(binary.getPath()));
+
+        int n = 1000;
+        double[] positions = new double[3 * n];
+        Random random = new Random(1);
+        for (int i = 0; i < 3 * n; i += 3)
+        {
+            for (int j = 0; j < 3; j++)
+            {
+                positions[i + j] = offset[j] + min[j] + (max[j] - min[j]) * random.nextDouble();
+            }
+        }
+
+        double[] fields = new double[3 * n];
+        binaryMap.getFields(positions, fields, n);
+        compare(textMap, positions, fields, n);
+    }
+
+    public void testRZFieldMap() throws Exception
+    {
+        File text = File.createTempFile("RZFieldMap", ".dat");
+        text.deleteOnExit();
+        PrintWriter out = new PrintWriter(text);
+        for (int iz = 0; iz < numBinsZ; iz++)
+        {
+            for (int ir = 0; ir < numBinsR; ir++)
+            {
+                double z = iz * gridSizeZ;
+                double r = ir * gridSizeR;
+                out.println(z + " " + r + " " + (40 - 0.002 * z * z + 0.01 * r) + " " + (0.003 * z * r));
+            }
+        }
+        out.close();
+        File binary = File.createTempFile("RZFieldMap", ".fmap");
+        binary.deleteOnExit();
+        RZFieldMap.convert(text, binary, numBinsZ, numBinsR, gridSizeZ, gridSizeR);
+
+        RZFieldMap textMap = new RZFieldMap(element(text));
+        RZFieldMap binaryMap = new RZFieldMap(element(binary));
+
+        // Points inside the cylinder covered by the grid, in mm
+        double maxZ = textMap.getMaxZ();
+        double maxR = textMap.getMaxR();
+        int n = 1000;
+        double[] positions = new double[3 * n];
+        Random random = new Random(1);
+        for (int i = 0; i < 3 * n; i += 3)
+        {
+            double r = maxR * Math.sqrt(random.nextDouble());
+            double phi = 2 * Math.PI * random.nextDouble();
+            positions[i] = r * Math.cos(phi);
+            positions[i + 1] = r * Math.sin(phi);
+            positions[i + 2] = -maxZ + 2 * maxZ * random.nextDouble();
+        }
+
+        double[] fields = new double[3 * n];
+        binaryMap.getFields(positions, fields, n);
+        compare(textMap, positions, fields, n);
+    }
+
+    /**
+     * Check that the text map gives the same field at each point, and that the
+     * points are inside the map.
+     */
+    private static void compare(AbstractFieldMap textMap, double[] positions, double[] fields, int n)
+    {
+        double[] b = new double[3];
+        int inside = 0;
+        for (int i = 0; i < 3 * n; i += 3)
+        {
+            textMap.getField(new double[]{positions[i], positions[i + 1], positions[i + 2]}, b);
+            for (int j = 0; j < 3; j++)
+            {
+                assertEquals(b[j], fields[i + j], 1e-6 * (1 + Math.abs(b[j])));
+            }
+            if (b[0] != 0 || b[1] != 0 || b[2] != 0)
+            {
+                inside++;
+            }
+        }
+        assertEquals(n, inside);
+    }
+
+    private static Element element(String filename)
+    {
+        Element node = new Element("field");
+        node.setAttribute("name", "FieldMap3DTest");
+        node.setAttribute("type", "FieldMap3D");
+        node.setAttribute("filename", filename);
+        node.setAttribute("xoffset", "2.117");
+        node.setAttribute("yoffset", "0.0");
+        node.setAttribute("zoffset", "45.72");
+        return node;
+    }
+
+    private static Element element(File file) throws Exception
+    {
+        Element node = new Element("field");
+        node.setAttribute("name", "RZFieldMapTest");
+        node.setAttribute("type", "RZFieldMap");
+        node.setAttribute("gridSizeZ", String.valueOf(gridSizeZ));
+        node.setAttribute("gridSizeR", String.valueOf(gridSizeR));
+        node.setAttribute("numBinsZ", String.valueOf(numBinsZ));
+        node.setAttribute("numBinsR", String.valueOf(numBinsR));
+        node.setAttribute("url", file.toURI().toURL().toString());
+        return node;
+    }
+}
@@ -188,6 +188,7 @@ public class BaseLCSimEvent extends BaseEvent implements EventHeader {
     private final ConditionsManager conditionsManager = ConditionsManager.defaultInstance();
 
     private final String detectorName;
+    private Detector detector;
     private final Map<String, float[]> floatParameters = new HashMap<String, float[]>();
     private final Map<String, int[]> intParameters = new HashMap<String, int[]>();    
     private final Map<String, String[]> stringParameters = new HashMap<String, String[]>();
@@ -240,9 +241,20 @@ public class BaseLCSimEvent extends BaseEvent implements EventHeader {
 
     @Override
     public Detector getDetector() {
+        if (detector != null) {
+            return detector;
+        }
         return conditionsManager.getCachedConditions(Detector.class, "compact.xml").getCachedData();
     }
 
+    /**
+     * Look up the detector of this event now and keep it with the event, so that threads
+     * processing the event later do not need the conditions manager, which is not thread safe.
+     */
+    public void attachDetector() {
+        detector = conditionsManager.getCachedConditions(Detector.class, "compact.xml").getCachedData();
+    }
+
     @Override
     public String getDetectorName() {
         return detectorName;
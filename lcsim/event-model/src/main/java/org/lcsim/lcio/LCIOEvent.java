@@ -1,8 +1,15 @@
 package org.lcsim.lcio;
 
+import hep.io.sio.SIOBlock;
 import hep.io.sio.SIOInputStream;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.lcsim.event.base.BaseLCSimEvent;
 
@@ -17,12 +24,23 @@ class LCIOEvent extends BaseLCSimEvent
    private Map<String,String> blockMap;
    private SIOLCParameters eventParameters;
    private static final String WEIGHT = "_weight";
+   private Map<String,PendingBlock> pending; // Blocks not yet decoded, in file order
+   private SIOInputStream pointers;
 
    
    /** Creates a new instance of LCIOEvent */
    LCIOEvent(SIOInputStream in, int version) throws IOException
    {
-      this(in.readInt(),in.readInt(),in.readLong(),in.readString());
+      this(in, version, true);
+   }
+   
+   /**
+    * Creates a new instance of LCIOEvent, optionally without updating the
+    * conditions, which is necessary when events are read on a background thread.
+    */
+   LCIOEvent(SIOInputStream in, int version, boolean updateConditions) throws IOException
+   {
+      this(in.readInt(),in.readInt(),in.readLong(),in.readString(),updateConditions);
       
       int nBlockNames = in.readInt();
       blockMap = new HashMap<String,String>();
@@ -57,9 +75,9 @@ class LCIOEvent extends BaseLCSimEvent
       return weights == null || weights.length == 0 ? 1.0f : weights[0];
    }
    
-   private LCIOEvent(int run, int event, long time, String name)
+   private LCIOEvent(int run, int event, long time, String name, boolean updateConditions)
    {
-      super(run,event,name,time);
+      super(run,event,name,time,updateConditions);
    }
    String getBlockType(String type)
    {
@@ -70,4 +88,180 @@ class LCIOEvent extends BaseLCSimEvent
       SIOLCParameters parameters = collection.getParameters();
       super.put(name,collection,collection.getType(),collection.getFlags(),parameters.getIntMap(), parameters.getFloatMap(), parameters.getStringMap());
    }
+   
+   /**
+    * Add a block which will only be decoded when its collection is first
+    * requested. Pointers into collections which have not been decoded are
+    * resolved by decoding the remaining blocks in order until the target is found.
+    * A block is also decoded before its collection is removed or replaced, so
+    * that pointers into it still resolve as they would have if it had been decoded
+    * when the event was read.
+    * @param handler The handler for the block
+    * @param name The block (collection) name
+    * @param version The packed block version
+    * @param data The buffer holding the (uncompressed) contents of the blocks of the record
+    * @param offset The offset of the block data in the buffer
+    * @param length The length of the block data
+    * @param record The stream from which the record was read, which holds the pointer map for the record
+    */
+   void addPendingBlock(LCIOBlockHandler handler, String name, int version, byte[] data, int offset, int length, SIOInputStream record)
+   {
+      if (pending == null)
+      {
+         pending = new LinkedHashMap<String,PendingBlock>();
+         pointers = new SIOInputStream(new ByteArrayInputStream(data, 0, 0), record);
+         pointers.setPointerResolver(new SIOInputStream.PointerResolver()
+         {
+            public boolean resolve()
+            {
+               if (pending.isEmpty()) return false;
+               decode(pending.keySet().iterator().next());
+               return true;
+            }
+         });
+      }
+      pending.put(name, new PendingBlock(handler, name, version, data, offset, length));
+   }
+   
+   private void decode(String name)
+   {
+      if (pending == null) return;
+      PendingBlock block = pending.remove(name);
+      if (block == null) return;
+      try
+      {
+         LCIOCallback callback = block.handler.readBlock(this, block);
+         if (callback != null) callback.callback();
+      }
+      catch (IOException x)
+      {
+         throw new RuntimeException("Error reading collection "+name, x);
+      }
+   }
+   
+   /**
+    * Decode all the blocks added by {@link #addPendingBlock}, in file order.
+    */
+   void decodePending()
+   {
+      decodeAll(Object.class);
+   }
+
+   private void decodeAll(Class type)
+   {
+      if (pending == null) return;
+      for (PendingBlock block : new ArrayList<PendingBlock>(pending.values()))
+      {
+         if (type.isAssignableFrom(block.handler.getClassForType())) decode(block.name);
+      }
+   }
+
+   public Object get(String name)
+   {
+      decode(name);
+      return super.get(name);
+   }
+
+   public <T> List<List<T>> get(Class<T> type)
+   {
+      decodeAll(type);
+      return super.get(type);
+   }
+
+   public boolean hasCollection(Class type)
+   {
+      decodeAll(type);
+      return super.hasCollection(type);
+   }
+
+   public boolean hasItem(String name)
+   {
+      return (pending != null && pending.containsKey(name)) || super.hasItem(name);
+   }
+
+   public Set keys()
+   {
+      decodeAll(Object.class);
+      return super.keys();
+   }
+
+   public Set<List> getLists()
+   {
+      decodeAll(Object.class);
+      return super.getLists();
+   }
+
+   public Collection<LCMetaData> getMetaData()
+   {
+      decodeAll(Object.class);
+      return super.getMetaData();
+   }
+
+   public void put(String name, List collection, Class type, int flags, Map intMap, Map floatMap, Map stringMap)
+   {
+      decode(name);
+      super.put(name, collection, type, flags, intMap, floatMap, stringMap);
+   }
+
+   public void put(String name, List collection, Class type, int flags, String readoutName)
+   {
+      decode(name);
+      super.put(name, collection, type, flags, readoutName);
+   }
+
+   public void remove(String name)
+   {
+      decode(name);
+      super.remove(name);
+   }
+   
+   private class PendingBlock implements SIOBlock
+   {
+      private final LCIOBlockHandler handler;
+      private final String name;
+      private final int version;
+      private final byte[] data;
+      private final int offset;
+      private final int length;
+      private SIOInputStream in;
+
+      PendingBlock(LCIOBlockHandler handler, String name, int version, byte[] data, int offset, int length)
+      {
+         this.handler = handler;
+         this.name = name;
+         this.version = version;
+         this.data = data;
+         this.offset = offset;
+         this.length = length;
+      }
+      public String getBlockName()
+      {
+         return name;
+      }
+      public int getBlockLength()
+      {
+         return length;
+      }
+      public int getBytesLeft() throws IOException
+      {
+         return in == null ? length : in.available();
+      }
+      public int getVersion()
+      {
+         return version;
+      }
+      public int getMajorVersion()
+      {
+         return (version & 0xffff0000) >> 16;
+      }
+      public int getMinorVersion()
+      {
+         return version & 0xffff;
+      }
+      public SIOInputStream getData()
+      {
+         if (in == null) in = new SIOInputStream(new ByteArrayInputStream(data, offset, length), pointers);
+         return in;
+      }
+   }
 }
@@ -0,0 +1,236 @@
+package org.lcsim.lcio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An index of the events in an LCIO file, giving the run and event number of
+ * each event together with the position in the file of its event header record.
+ * Using the index an event can be read directly with {@link LCIOReader#read(long)}
+ * without reading the events which precede it.
+ * <p>
+ * The index is stored in a sidecar file next to the LCIO file, with the same
+ * name plus the extension <code>.idx</code>. The sidecar records the length and
+ * modification time of the LCIO file, and is ignored if the LCIO file has since
+ * changed.
+ * @version $Id$
+ */
+public class LCIOEventIndex
+{
+   private static final Logger log = Logger.getLogger(LCIOEventIndex.class.getName());
+   private static final int MAGIC = 0x4c43494e; // "LCIN"
+   private static final int VERSION = 1;
+   private int size;
+   private int[] runs = new int[64];
+   private int[] events = new int[64];
+   private long[] positions = new long[64];
+   private Map<Long, Integer> lookup;
+
+   public LCIOEventIndex()
+   {
+   }
+
+   /**
+    * Add an event to the index. Events must be added in the order they appear in the file.
+    * @param run The run number
+    * @param event The event number
+    * @param position The position of the event header record in the file
+    */
+   public void add(int run, int event, long position)
+   {
+      if (size == runs.length)
+      {
+         runs = Arrays.copyOf(runs, size * 2);
+         events = Arrays.copyOf(events, size * 2);
+         positions = Arrays.copyOf(positions, size * 2);
+      }
+      runs[size] = run;
+      events[size] = event;
+      positions[size] = position;
+      size++;
+      lookup = null;
+   }
+
+   /**
+    * The number of events in the index
+    */
+   public int size()
+   {
+      return size;
+   }
+
+   public int getRunNumber(int index)
+   {
+      checkIndex(index);
+      return runs[index];
+   }
+
+   public int getEventNumber(int index)
+   {
+      checkIndex(index);
+      return events[index];
+   }
+
+   /**
+    * The position in the file of the event header record of the given event
+    */
+   public long getPosition(int index)
+   {
+      checkIndex(index);
+      return positions[index];
+   }
+
+   /**
+    * Find an event by run and event number.
+    * @return The index of the first event with the given run and event number, or -1 if there is none
+    */
+   public int find(int run, int event)
+   {
+      if (lookup == null)
+      {
+         lookup = new HashMap<Long, Integer>(size * 2);
+         for (int i = size - 1; i >= 0; i--) lookup.put(key(runs[i], events[i]), i);
+      }
+      Integer result = lookup.get(key(run, event));
+      return result == null ? -1 : result;
+   }
+
+   /**
+    * The sidecar file used to store the index of the given LCIO file
+    */
+   public static File getIndexFile(File file)
+   {
+      return new File(file.getPath() + ".idx");
+   }
+
+   /**
+    * Write the index to the sidecar file of the given LCIO file.
+    * @param file The LCIO file which has been indexed
+    */
+   public void write(File file) throws IOException
+   {
+      File indexFile = getIndexFile(file);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+      try
+      {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeLong(file.length());
+         out.writeLong(file.lastModified());
+         out.writeInt(size);
+         for (int i = 0; i < size; i++)
+         {
+            out.writeInt(runs[i]);
+            out.writeInt(events[i]);
+            out.writeLong(positions[i]);
+         }
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+
+   /**
+    * Read the index of an LCIO file from its sidecar file.
+    * @param file The LCIO file
+    * @return The index, or <code>null</code> if there is no sidecar file, or if it is out of date
+    */
+   public static LCIOEventIndex read(File file) throws IOException
+   {
+      File indexFile = getIndexFile(file);
+      if (!indexFile.canRead()) return null;
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      try
+      {
+         if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+         if (in.readLong() != file.length() || in.readLong() != file.lastModified()) return null;
+         int n = in.readInt();
+         LCIOEventIndex index = new LCIOEventIndex();
+         for (int i = 0; i < n; i++) index.add(in.readInt(), in.readInt(), in.readLong());
+         return index;
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   /**
+    * Build the index of an LCIO file by reading the event headers.
+    * @param file The LCIO file
+    */
+   public static LCIOEventIndex build(File file) throws IOException
+   {
+      LCIOReader reader = new LCIOReader(file);
+      try
+      {
+         return reader.buildIndex();
+      }
+      finally
+      {
+         reader.close();
+      }
+   }
+
+   /**
+    * Get the index of an LCIO file, reading it from the sidecar file if it
+    * is up to date, otherwise building it and writing it to the sidecar file.
+    * Failure to write the sidecar file (for example because the directory is
+    * read-only) is not an error.
+    * @param file The LCIO file
+    */
+   public static LCIOEventIndex open(File file) throws IOException
+   {
+      try
+      {
+         LCIOEventIndex index = read(file);
+         if (index != null) return index;
+      }
+      catch (IOException x)
+      {
+         log.log(Level.FINE, "Ignoring unreadable index for " + file, x);
+      }
+      LCIOEventIndex index = build(file);
+      index.save(file);
+      return index;
+   }
+
+   /**
+    * Write the index to the sidecar file of the given LCIO file, logging
+    * rather than throwing if it cannot be written.
+    */
+   public void save(File file)
+   {
+      try
+      {
+         write(file);
+      }
+      catch (IOException x)
+      {
+         log.log(Level.FINE, "Could not write index for " + file, x);
+         getIndexFile(file).delete();
+      }
+   }
+
+   private void checkIndex(int index)
+   {
+      if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+   }
+
+   private static Long key(int run, int event)
+   {
+      return ((long) run << 32) | (event & 0xffffffffL);
+   }
+}
@@ -0,0 +1,209 @@
+package org.lcsim.lcio;
+
+import hep.io.sio.SIOReader;
+import hep.io.sio.SIORecordBuffer;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads events for an LCIOReader using several threads. A background thread
+ * reads the raw records from the file, and hands each event to a pool of
+ * worker threads which inflate it and split it into blocks. Events are queued
+ * in file order, and the size of the queue is bounded, so the reader thread
+ * waits if the consumer falls behind.
+ * <p>
+ * The blocks are not decoded by the workers, since decoding some of them needs
+ * the detector of the event, which is only set when the event is returned by
+ * {@link LCIOReader#read()}. The reader decodes them on the calling thread
+ * after setting the detector, or leaves them to be decoded on demand in lazy mode.
+ * @version $Id$
+ */
+class LCIOReadPipeline
+{
+   private final LCIOReader owner;
+   private final SIOReader reader;
+   private final ExecutorService workers;
+   private final BlockingQueue<Item> queue;
+   private final Thread readThread;
+   private volatile boolean stopped;
+   private long resumePosition;
+   private long lastEventPosition = -1;
+   private IOException finished;
+
+   LCIOReadPipeline(LCIOReader owner, SIOReader reader, int threads) throws IOException
+   {
+      this.owner = owner;
+      this.reader = reader;
+      this.resumePosition = reader.getNextRecordPosition();
+      this.queue = new ArrayBlockingQueue<Item>(2 * threads);
+      this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory()
+      {
+         private int n;
+         public synchronized Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "LCIODecoder-" + (++n));
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      this.readThread = new Thread("LCIOReader")
+      {
+         public void run()
+         {
+            readRecords();
+         }
+      };
+      readThread.setDaemon(true);
+      readThread.start();
+   }
+
+   /**
+    * Get the next event in file order, waiting for it to be decoded if necessary.
+    * @throws java.io.EOFException At the end of the file
+    */
+   LCIOEvent take() throws IOException
+   {
+      if (finished != null) throw finished;
+      Item item;
+      try
+      {
+         item = queue.take();
+      }
+      catch (InterruptedException x)
+      {
+         throw new InterruptedIOException();
+      }
+      if (item.error != null)
+      {
+         finished = item.error;
+         throw finished;
+      }
+      LCIOEvent event;
+      try
+      {
+         event = item.event.get();
+      }
+      catch (InterruptedException x)
+      {
+         throw new InterruptedIOException();
+      }
+      catch (ExecutionException x)
+      {
+         Throwable cause = x.getCause();
+         if (cause instanceof IOException) throw (IOException) cause;
+         if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+         if (cause instanceof Error) throw (Error) cause;
+         throw new IOException(cause);
+      }
+      lastEventPosition = item.position;
+      resumePosition = item.nextPosition;
+      return event;
+   }
+
+   /**
+    * The position of the event header record of the event last returned by {@link #take()}
+    */
+   long getLastEventPosition()
+   {
+      return lastEventPosition;
+   }
+
+   /**
+    * Stop reading, and discard any events which have been read ahead.
+    * @return The position of the first record following the last event returned by {@link #take()}
+    */
+   long stop()
+   {
+      stopped = true;
+      readThread.interrupt();
+      boolean interrupted = false;
+      for (;;)
+      {
+         try
+         {
+            readThread.join();
+            break;
+         }
+         catch (InterruptedException x)
+         {
+            interrupted = true;
+         }
+      }
+      if (interrupted) Thread.currentThread().interrupt();
+      workers.shutdownNow();
+      queue.clear();
+      return resumePosition;
+   }
+
+   private void readRecords()
+   {
+      try
+      {
+         while (!stopped)
+         {
+            long position = reader.getNextRecordPosition();
+            final SIORecordBuffer header = reader.readRecordBuffer();
+            if (!LCIOConstants.eventHeaderRecordName.equals(header.getRecordName())) continue;
+            final SIORecordBuffer record = reader.readRecordBuffer();
+            if (!LCIOConstants.eventRecordName.equals(record.getRecordName())) throw new IOException("LCIO record order problem");
+
+            Future<LCIOEvent> event = workers.submit(new Callable<LCIOEvent>()
+            {
+               public LCIOEvent call() throws IOException
+               {
+                  header.inflate();
+                  record.inflate();
+                  LCIOEvent event = owner.readEventHeader(header, false);
+                  owner.readLazy(event, record);
+                  return event;
+               }
+            });
+            queue.put(new Item(position, reader.getNextRecordPosition(), event));
+         }
+      }
+      catch (InterruptedException x)
+      {
+         // Stopped
+      }
+      catch (IOException x)
+      {
+         // Includes EOFException at the end of the file
+         try
+         {
+            if (!stopped) queue.put(new Item(x));
+         }
+         catch (InterruptedException xx)
+         {
+            // Stopped
+         }
+      }
+   }
+
+   private static class Item
+   {
+      private long position;
+      private long nextPosition;
+      private Future<LCIOEvent> event;
+      private IOException error;
+
+      Item(long position, long nextPosition, Future<LCIOEvent> event)
+      {
+         this.position = position;
+         this.nextPosition = nextPosition;
+         this.event = event;
+      }
+
+      Item(IOException error)
+      {
+         this.error = error;
+      }
+   }
+}
@@ -6,11 +6,13 @@ import hep.io.sio.SIOReader;
 import hep.io.sio.SIORecord;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.lcsim.conditions.ConditionsManager;
+import org.lcsim.conditions.ConditionsManager.ConditionsNotFoundException;
 import org.lcsim.event.EventHeader;
 
 /**
@@ -22,17 +24,77 @@ public class LCIOReader
    private SIOReader reader;
    private Logger log = Logger.getLogger(LCIOWriter.class.getName());
    private HandlerManager manager = HandlerManager.instance();
+   private long lastEventPosition = -1;
+   private boolean lazy = Boolean.getBoolean("org.lcsim.lcio.lazy");
+   private int threads = Integer.getInteger("org.lcsim.lcio.threads", 0);
+   private LCIOReadPipeline pipeline;
    
    public LCIOReader(File file) throws IOException
    {
-      reader = new SIOReader(new FileInputStream(file));
+      reader = new SIOReader(file);
    }
    public void close() throws IOException
    {
+      stopPipeline();
       reader.close();
    }
+   /**
+    * Set the number of threads used to read events. If more than one thread
+    * is used, records are read ahead on a background thread, and inflated and
+    * split into blocks in parallel on a pool of worker threads. The blocks are
+    * decoded by {@link #read()} on the calling thread, after the detector of
+    * the event has been set, and events are returned in file order. The default is set by the system
+    * property <code>org.lcsim.lcio.threads</code>, and is to read events on
+    * the calling thread.
+    */
+   public void setThreads(int threads)
+   {
+      stopPipeline();
+      this.threads = threads;
+   }
+   public int getThreads()
+   {
+      return threads;
+   }
+   /**
+    * Stop reading ahead, leaving the file positioned at the first event not
+    * yet returned by {@link #read()}.
+    */
+   private void stopPipeline()
+   {
+      if (pipeline != null)
+      {
+         long position = pipeline.stop();
+         pipeline = null;
+         try
+         {
+            reader.seek(position);
+         }
+         catch (IOException x)
+         {
+            log.log(Level.WARNING, "Could not reposition LCIO file", x);
+         }
+      }
+   }
+   /**
+    * In lazy mode the blocks of each event are only copied into a buffer when
+    * the event is read, and each collection is decoded when it is first
+    * requested from the event. This can save a lot of time when only a few
+    * collections are used. The default is set by the system property
+    * <code>org.lcsim.lcio.lazy</code>.
+    */
+   public void setLazy(boolean lazy)
+   {
+      stopPipeline();
+      this.lazy = lazy;
+   }
+   public boolean isLazy()
+   {
+      return lazy;
+   }
    public void skipEvents(int numberToSkip) throws IOException
    {
+      stopPipeline();
       for (int i=0; i<numberToSkip; )
       {
          SIORecord record = reader.readRecord();
@@ -40,54 +102,105 @@ public class LCIOReader
          if (LCIOConstants.eventRecordName.equals(name)) i++; 
       }
    }
+   /**
+    * Read the event whose event header record starts at the given position
+    * in the file, as given by an {@link LCIOEventIndex}. Subsequent calls to
+    * {@link #read()} continue from the following event.
+    */
+   public EventHeader read(long position) throws IOException
+   {
+      stopPipeline();
+      reader.seek(position);
+      return read();
+   }
+   /**
+    * The position in the file of the event header record of the event most
+    * recently read, or -1 if no event has been read.
+    */
+   public long getLastEventPosition()
+   {
+      return lastEventPosition;
+   }
    public EventHeader read() throws IOException
    {
+      if (threads > 1)
+      {
+         if (pipeline == null) pipeline = new LCIOReadPipeline(this, reader, threads);
+         LCIOEvent event = pipeline.take();
+         lastEventPosition = pipeline.getLastEventPosition();
+         try
+         {
+            ConditionsManager.defaultInstance().setDetector(event.getDetectorName(), event.getRunNumber());
+         }
+         catch (ConditionsNotFoundException x)
+         {
+            throw new RuntimeException(x);
+         }
+         // The pipeline only splits the event into blocks, decoding may need the detector
+         if (!lazy) event.decodePending();
+         return event;
+      }
       for (;;)
       {
+         long position = reader.getNextRecordPosition();
          SIORecord record = reader.readRecord();
          String name = record.getRecordName();
          if (!LCIOConstants.eventHeaderRecordName.equals(name)) continue;
+         lastEventPosition = position;
          
-         SIOBlock block = record.getBlock();
-         int major = block.getMajorVersion() ;
-         int minor = block.getMinorVersion() ;
-         int version = major*1000 + minor;
-         if (version < 8)
-            throw new IOException("Sorry: files created with versions older than v00-08" + " are no longer supported !");
-         
-         SIOInputStream in = block.getData();
-         LCIOEvent event = new LCIOEvent(in, version);
+         LCIOEvent event = readEventHeader(record, true);
          
          record = reader.readRecord();
          name = record.getRecordName();
          if (!LCIOConstants.eventRecordName.equals(name)) throw new IOException("LCIO record order problem");
-         
-         List<LCIOCallback> callbacks = new ArrayList<LCIOCallback>();
-         for (;;)
+         readEvent(event, record);
+         return event;
+      }
+   }
+   LCIOEvent readEventHeader(SIORecord record, boolean updateConditions) throws IOException
+   {
+      SIOBlock block = record.getBlock();
+      int major = block.getMajorVersion() ;
+      int minor = block.getMinorVersion() ;
+      int version = major*1000 + minor;
+      if (version < 8)
+         throw new IOException("Sorry: files created with versions older than v00-08" + " are no longer supported !");
+      
+      SIOInputStream in = block.getData();
+      return new LCIOEvent(in, version, updateConditions);
+   }
+   void readEvent(LCIOEvent event, SIORecord record) throws IOException
+   {
+      if (lazy)
+      {
+         readLazy(event, record);
+         return;
+      }
+      
+      List<LCIOCallback> callbacks = new ArrayList<LCIOCallback>();
+      for (;;)
+      {
+         SIOBlock block = record.getBlock();
+         if (block == null) break;
+         String blockName = block.getBlockName();
+         String type = event.getBlockType(blockName);
+         if (type != null)
          {
-            block = record.getBlock();
-            if (block == null) break;
-            String blockName = block.getBlockName();
-            String type = event.getBlockType(blockName);
-            if (type != null)
+            LCIOBlockHandler handler = manager.handlerForType(type);
+            if (handler != null) 
             {
-               LCIOBlockHandler handler = manager.handlerForType(type);
-               if (handler != null) 
-               {
-                  LCIOCallback callback = handler.readBlock(event,block);
-                  if (callback != null) callbacks.add(callback);
-               }
-               else log.warning("No handler found for "+type);
+               LCIOCallback callback = handler.readBlock(event,block);
+               if (callback != null) callbacks.add(callback);
             }
+            else log.warning("No handler found for "+type);
          }
-         // Give block handlers chance to clean up after entire event is read
-         for (LCIOCallback callback : callbacks) callback.callback();
-         
-         return event;
       }
+      // Give block handlers chance to clean up after entire event is read
+      for (LCIOCallback callback : callbacks) callback.callback();
    }
    public int skipEventsChecked(int numberToSkip) throws IOException
    {
+      stopPipeline();
       int i=0;
       while(i < numberToSkip)
       {
@@ -101,4 +214,55 @@ public class LCIOReader
       }
       return i;
    }
+   void readLazy(LCIOEvent event, SIORecord record) throws IOException
+   {
+      byte[] data = new byte[record.getRecordLength()];
+      int offset = 0;
+      for (;;)
+      {
+         SIOBlock block = record.getBlock();
+         if (block == null) break;
+         String blockName = block.getBlockName();
+         String type = event.getBlockType(blockName);
+         if (type == null) continue;
+         LCIOBlockHandler handler = manager.handlerForType(type);
+         if (handler == null)
+         {
+            log.warning("No handler found for "+type);
+            continue;
+         }
+         SIOInputStream in = block.getData();
+         int length = block.getBytesLeft();
+         in.readFully(data, offset, length);
+         event.addPendingBlock(handler, blockName, block.getVersion(), data, offset, length, in);
+         offset += length;
+      }
+   }
+   /**
+    * Build an index of the remaining events in the file. Only the start of
+    * each event header is decoded.
+    */
+   LCIOEventIndex buildIndex() throws IOException
+   {
+      stopPipeline();
+      LCIOEventIndex index = new LCIOEventIndex();
+      for (;;)
+      {
+         long position = reader.getNextRecordPosition();
+         SIORecord record;
+         try
+         {
+            record = reader.readRecord();
+         }
+         catch (EOFException x)
+         {
+            return index;
+         }
+         if (!LCIOConstants.eventHeaderRecordName.equals(record.getRecordName())) continue;
+         SIOInputStream in = record.getBlock().getData();
+         int run = in.readInt();
+         int event = in.readInt();
+         index.add(run, event, position);
+      }
+   }
 }
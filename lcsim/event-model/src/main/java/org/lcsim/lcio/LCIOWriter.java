@@ -8,9 +8,12 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Logger;
 import org.lcsim.event.EventHeader;
 import org.lcsim.event.EventHeader.LCMetaData;
@@ -25,6 +28,10 @@ import org.lcsim.event.EventHeader.LCMetaData;
  * <p>
  * Collections for which the <code>LCIOConstants.BITTransient</code> bit is set in the meta-data 
  * are never written out.
+ * <p>
+ * Output can optionally be compressed and written asynchronously, see 
+ * {@link #setAsynchronous(int, int)}, and split into several files, see
+ * {@link #setRollover(int, long)}.
  * @author Tony Johnson
  */
 public class LCIOWriter
@@ -37,6 +44,17 @@ public class LCIOWriter
 	private Set<String> ignore = new HashSet<String>();
 	private Set<String> only = new HashSet<String>();
 	private File file;
+	private LCIOEventIndex index;
+	private boolean writeIndex = true;
+	private final Queue<int[]> unindexed = new ConcurrentLinkedQueue<int[]>(); // run and event of headers not yet written
+	private volatile long bytesWritten;
+	private int threads;
+	private int maxPendingRecords;
+	private int rolloverEvents;
+	private long rolloverBytes;
+	private int eventsInFile;
+	private final File firstFile;
+	private final List<File> files = new ArrayList<File>();
 
 	/**
 	 * Create a writer for writing LCIO files
@@ -45,6 +63,7 @@ public class LCIOWriter
 	public LCIOWriter(File file) throws IOException
 	{
 		this.file = file;
+		this.firstFile = file;
 		reOpen();
 	}
 	
@@ -137,10 +156,61 @@ public class LCIOWriter
 		only.clear();
 	}
 	
+	/**
+	 * Controls whether an {@link LCIOEventIndex} of the events written is saved
+	 * next to the file when the writer is closed. The default is <code>true</code>.
+	 */
+	public void setWriteIndex(boolean writeIndex)
+	{
+		this.writeIndex = writeIndex;
+	}
+	
+	/**
+	 * Compress and write records asynchronously. Events are still serialized by the
+	 * thread calling {@link #write(EventHeader)}, but are compressed by a pool of 
+	 * threads and written in order by a background thread. If more than 
+	 * <code>maxPendingRecords</code> records are waiting to be written, write blocks.
+	 * @param threads The number of compression threads, or zero to write synchronously
+	 * @param maxPendingRecords The maximum number of records waiting to be written
+	 * @see SIOWriter#setAsynchronous(int, int)
+	 */
+	public void setAsynchronous(int threads, int maxPendingRecords) throws IOException
+	{
+		this.threads = threads;
+		this.maxPendingRecords = maxPendingRecords;
+		if (writer != null) writer.setAsynchronous(threads, maxPendingRecords);
+	}
+	
+	/**
+	 * Start a new file after the given number of events, or once the given number of
+	 * bytes has been written to the current file, whichever comes first. The second and 
+	 * later files are named by adding <code>_1</code>, <code>_2</code>... to the name of 
+	 * the first file, before its extension. Each file starts with a run header, and has 
+	 * its own index. In asynchronous mode the number of bytes is only checked once 
+	 * records have been written, so files may exceed the limit by up to the number 
+	 * of pending records.
+	 * @param events The maximum number of events per file, or zero for no limit
+	 * @param bytes The maximum number of bytes per file, or zero for no limit
+	 */
+	public void setRollover(int events, long bytes)
+	{
+		this.rolloverEvents = events;
+		this.rolloverBytes = bytes;
+	}
+	
+	/**
+	 * The files written so far, including the current file.
+	 */
+	public List<File> getFiles()
+	{
+		return new ArrayList<File>(files);
+	}
+	
 	public void close() throws IOException
 	{
 		writer.close();
 		writer = null;
+		if (writeIndex) index.save(file);
 	}
 	
 	public void flush() throws IOException
@@ -153,12 +223,46 @@ public class LCIOWriter
 		if (writer == null)
 		{
 			writer = new SIOWriter(new FileOutputStream(file));
+			index = new LCIOEventIndex();
+			unindexed.clear();
+			bytesWritten = 0;
+			eventsInFile = 0;
+			if (!files.contains(file)) files.add(file);
+			final LCIOEventIndex fileIndex = index;
+			writer.setRecordListener(new SIOWriter.RecordListener()
+			{
+				public void recordWritten(String name, long position, long length)
+				{
+					bytesWritten = position + length;
+					if (!name.equals(LCIOConstants.eventHeaderRecordName)) return;
+					int[] id = unindexed.poll();
+					if (id != null) fileIndex.add(id[0], id[1], position);
+				}
+			});
+			if (threads > 0) writer.setAsynchronous(threads, maxPendingRecords);
 		}
 		
 		// Reset lastRunNumber to force creation of a new RunHeader.  --JM
 		lastRunNumber = -1;
 	}
 	
+	private void rollover() throws IOException
+	{
+		close();
+		String name = firstFile.getName();
+		int dot = name.lastIndexOf('.');
+		String stem = dot > 0 ? name.substring(0, dot) : name;
+		String extension = dot > 0 ? name.substring(dot) : "";
+		file = new File(firstFile.getParentFile(), stem + "_" + files.size() + extension);
+		reOpen();
+	}
+	
+	private boolean isRolloverDue()
+	{
+		if (eventsInFile == 0) return false;
+		return (rolloverEvents > 0 && eventsInFile >= rolloverEvents) || (rolloverBytes > 0 && bytesWritten >= rolloverBytes);
+	}
+	
 	private void writeData(EventHeader event, boolean headerOnly) throws IOException
 	{
 		if (headerOnly)
@@ -241,6 +345,7 @@ public class LCIOWriter
 	
 	public void write(EventHeader event) throws IOException
 	{
+		if (isRolloverDue()) rollover();
 		if (event.getRunNumber() != lastRunNumber || !lastDetectorName.equals(event.getDetectorName()))
 		{
 			lastRunNumber = event.getRunNumber();
@@ -248,7 +353,9 @@ public class LCIOWriter
 			if (lastDetectorName == null) lastDetectorName = "";
 			write(new DefaultRunHeader(lastRunNumber,lastDetectorName,new SIOLCParameters()));
 		}
+		unindexed.add(new int[]{event.getRunNumber(), event.getEventNumber()});
 		writer.createRecord(LCIOConstants.eventHeaderRecordName,true);
+		eventsInFile++;
 		writeData(event,true);
 		writer.createRecord(LCIOConstants.eventRecordName,true);
 		writeData(event,false);
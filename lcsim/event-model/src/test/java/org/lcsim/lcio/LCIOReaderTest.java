@@ -0,0 +1,156 @@
+package org.lcsim.lcio;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.lcsim.conditions.ConditionsManager;
+import org.lcsim.conditions.ConditionsManagerImplementation;
+import org.lcsim.conditions.ConditionsReader;
+import org.lcsim.event.EventHeader;
+import org.lcsim.event.FloatVec;
+import org.lcsim.event.LCRelation;
+import org.lcsim.event.base.BaseFloatVec;
+import org.lcsim.event.base.BaseLCRelation;
+import org.lcsim.event.base.BaseLCSimEvent;
+
+/**
+ * Write events whose collections point into each other, read them back with
+ * and without lazy decoding, and check that both give the same events, also
+ * when collections are removed or replaced before the ones pointing into them
+ * have been decoded.
+ *
+ * @version $Id$
+ */
+public class LCIOReaderTest extends TestCase
+{
+   private static final int EVENTS = 20;
+   private static final String DETECTOR = "LCIOReaderTest";
+
+   private File file;
+
+   protected void setUp() throws Exception
+   {
+      ConditionsManager manager = ConditionsManager.defaultInstance();
+      ((ConditionsManagerImplementation) manager).setConditionsReader(ConditionsReader.createDummy(), DETECTOR);
+      file = File.createTempFile("LCIOReaderTest", ".slcio");
+      LCIOWriter writer = new LCIOWriter(file);
+      for (int n = 0; n < EVENTS; n++)
+      {
+         writer.write(event(n));
+      }
+      writer.close();
+   }
+
+   protected void tearDown() throws Exception
+   {
+      LCIOEventIndex.getIndexFile(file).delete();
+      file.delete();
+   }
+
+   public void testLazyAndEager() throws Exception
+   {
+      LCIOReader eager = new LCIOReader(file);
+      LCIOReader lazy = new LCIOReader(file);
+      lazy.setLazy(true);
+      for (int n = 0; n < EVENTS; n++)
+      {
+         EventHeader e = eager.read();
+         EventHeader l = lazy.read();
+         assertEquals(n, l.getEventNumber());
+         check(e, n);
+         check(l, n);
+         assertEquals(e.keys(), l.keys());
+         assertEquals(e.getMetaData().size(), l.getMetaData().size());
+         for (Object key : e.keys())
+         {
+            String name = (String) key;
+            assertEquals(e.getMetaData((List) e.get(name)).getType(), l.getMetaData((List) l.get(name)).getType());
+            assertEquals(((List) e.get(name)).size(), ((List) l.get(name)).size());
+         }
+      }
+      eager.close();
+      lazy.close();
+   }
+
+   public void testRemove() throws Exception
+   {
+      for (boolean isLazy : new boolean[]{false, true})
+      {
+         LCIOReader reader = new LCIOReader(file);
+         reader.setLazy(isLazy);
+         for (int n = 0; n < EVENTS; n++)
+         {
+            EventHeader event = reader.read();
+            event.remove("F");
+            assertFalse(event.hasItem("F"));
+            List<LCRelation> relations = event.get(LCRelation.class, "R");
+            for (int i = 0; i < relations.size(); i++)
+            {
+               assertNotNull(relations.get(i).getTo());
+               assertEquals(n * 100f + i, ((FloatVec) relations.get(i).getTo()).toFloatArray()[0]);
+            }
+         }
+         reader.close();
+      }
+   }
+
+   public void testReplace() throws Exception
+   {
+      for (boolean isLazy : new boolean[]{false, true})
+      {
+         LCIOReader reader = new LCIOReader(file);
+         reader.setLazy(isLazy);
+         for (int n = 0; n < EVENTS; n++)
+         {
+            EventHeader event = reader.read();
+            List<FloatVec> replacement = new ArrayList<FloatVec>();
+            replacement.add(new BaseFloatVec(new float[]{-1}));
+            event.put("F", replacement, FloatVec.class, 0);
+            assertSame(replacement, event.get(FloatVec.class, "F"));
+            List<LCRelation> relations = event.get(LCRelation.class, "R");
+            assertEquals(n * 100f, ((FloatVec) relations.get(0).getTo()).toFloatArray()[0]);
+            assertSame(replacement, event.get(FloatVec.class, "F"));
+         }
+         reader.close();
+      }
+   }
+
+   private static void check(EventHeader event, int n)
+   {
+      List<LCRelation> relations = event.get(LCRelation.class, "R");
+      List<FloatVec> from = event.get(FloatVec.class, "A");
+      List<FloatVec> to = event.get(FloatVec.class, "F");
+      assertEquals(3 + n % 5, relations.size());
+      for (int i = 0; i < relations.size(); i++)
+      {
+         assertSame(from.get(i), relations.get(i).getFrom());
+         assertSame(to.get(i), relations.get(i).getTo());
+         assertEquals((float) n, from.get(i).toFloatArray()[1]);
+         assertEquals(n * 100f + i, to.get(i).toFloatArray()[0]);
+      }
+   }
+
+   /**
+    * An event whose relations, written first, point into the collections after them.
+    */
+   private static EventHeader event(int n)
+   {
+      BaseLCSimEvent event = new BaseLCSimEvent(1, n, DETECTOR, 0);
+      List<FloatVec> from = new ArrayList<FloatVec>();
+      List<FloatVec> to = new ArrayList<FloatVec>();
+      List<LCRelation> relations = new ArrayList<LCRelation>();
+      for (int i = 0; i < 3 + n % 5; i++)
+      {
+         from.add(new BaseFloatVec(new float[]{i, n}));
+         to.add(new BaseFloatVec(new float[]{n * 100 + i}));
+         relations.add(new BaseLCRelation(from.get(i), to.get(i)));
+      }
+      event.put("R", relations, LCRelation.class, 0);
+      event.put("A", from, FloatVec.class, 0);
+      event.put("F", to, FloatVec.class, 0);
+      return event;
+   }
+}
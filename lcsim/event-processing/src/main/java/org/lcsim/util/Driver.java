@@ -1,15 +1,20 @@
 package org.lcsim.util;
 
 import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.lcsim.conditions.ConditionsManager;
 import org.lcsim.event.EventHeader;
 import org.lcsim.geometry.Detector;
+import org.lcsim.util.aida.AIDA;
 
 /**
  * A driver is a steering routine which can deal with event processing, and/or call any number of child drivers. 
@@ -22,7 +27,7 @@ import org.lcsim.geometry.Detector;
  * @version $Id: Driver.java,v 1.14 2007/09/11 00:21:00 tonyj Exp $
  */
 
-public class Driver {
+public class Driver implements Cloneable {
     
     // We dont use an enum, because we want to be able to test for level>some value.
     // and because drivers can use special values for special purposes.
@@ -38,8 +43,38 @@ public class Driver {
     private int histogramLevel = HLEVEL_DEFAULT;
     private Random random;
     private final String driverName;
-    private int nEvents;
-    private long nNanos;
+    private final AtomicInteger nEvents = new AtomicInteger();
+    private final AtomicLong nNanos = new AtomicLong();
+    private boolean parallel;
+    private EventSequencer sequencer;
+    private volatile ThreadLocal<Driver> threadCopy = new ThreadLocal<Driver>();
+    private final List<Driver> threadCopies = new ArrayList<Driver>();
+    private Driver original; // set on per-thread copies
+    private Detector copyDetector;
+    private Boolean instrumented;
+    private final DriverStatistics statistics;
+
+    /**
+     * Describes how a driver may be called when events are processed in parallel.
+     * @see #getConcurrency()
+     */
+    public enum Concurrency {
+        /**
+         * Calls to process are serialized, together with any child drivers, and are made in 
+         * the order in which events were read. An event waits until all earlier events have
+         * either been processed by this driver or have finished processing, so serial drivers
+         * which are slow or are reached by few events limit the gain from parallel processing.
+         */
+        SERIAL,
+        /** The driver may process several events at the same time. */
+        THREAD_SAFE,
+        /**
+         * Each thread uses its own copy of the driver, created by {@link Driver#createThreadCopy()}, 
+         * and merged back by {@link Driver#mergeThreadCopy(Driver)} before {@link Driver#endOfData()}.
+         * Copies are called in any order.
+         */
+        COPY_PER_THREAD
+    }
 
     /**
      * Creates a driver
@@ -56,6 +91,7 @@ public class Driver {
         } else {
             driverName = name;
         }
+        statistics = new DriverStatistics(driverName);
     }
 
     /**
@@ -156,6 +192,8 @@ public class Driver {
      * Called before the first event is processed, or after a rewind.
      */
     protected void startOfData() {
+        if (original != null)
+            return; // the children belong to the original driver
         for (Driver driver : subDrivers)
             driver.startOfData();
     }
@@ -166,6 +204,8 @@ public class Driver {
      * @param Detector The new detector
      */
     protected void detectorChanged(Detector detector) {
+        if (original != null)
+            return; // the children belong to the original driver
         for (Driver driver : subDrivers)
             driver.detectorChanged(detector);
     }
@@ -187,12 +227,141 @@ public class Driver {
         processChildren(event);
     }
 
+    /**
+     * Declares how this driver may be called when events are processed in parallel, 
+     * see {@link org.lcsim.util.loop.LCSimLoop#setNumberOfThreads(int)}. Drivers 
+     * which do not override this method are assumed not to be thread safe, and calls 
+     * to them are serialized in event order. The base class, which just calls its children, 
+     * is thread safe.
+     */
+    protected Concurrency getConcurrency() {
+        return getClass() == Driver.class ? Concurrency.THREAD_SAFE : Concurrency.SERIAL;
+    }
+
+    /**
+     * Create a copy of this driver for use by a single event processing thread. Only called 
+     * for drivers which return {@link Concurrency#COPY_PER_THREAD} from {@link #getConcurrency()}.
+     * The copy should be configured like this driver, and should book its own histograms or
+     * other results. The copy's startOfData and detectorChanged methods are called before it 
+     * processes its first event, but are not passed on to any children. When the copy calls 
+     * {@link #processChildren(EventHeader)} the children of this driver are called.
+     * <p>
+     * By default the copy is a shallow clone of this driver, in which each {@link AIDA} field 
+     * refers to a copy of the AIDA from {@link AIDA#createThreadCopy()}, so histograms looked up 
+     * through it in startOfData or process are the copy's own. Drivers with other mutable state,
+     * or which keep histograms booked in their constructor, should override this method.
+     */
+    protected Driver createThreadCopy() {
+        try {
+            Driver copy = (Driver) clone();
+            for (Field field : aidaFields())
+                if (field.get(this) != null)
+                    field.set(copy, ((AIDA) field.get(this)).createThreadCopy());
+            return copy;
+        } catch (CloneNotSupportedException x) {
+            throw new UnsupportedOperationException(getName() + " does not support per-thread copies", x);
+        } catch (IllegalAccessException x) {
+            throw new UnsupportedOperationException(getName() + " does not support per-thread copies", x);
+        }
+    }
+
+    /**
+     * Merge the results accumulated by a per-thread copy of this driver into this driver, for 
+     * example by adding its histograms to the histograms of this driver. Called once for each 
+     * copy at the end of data, before {@link #endOfData()}. By default the histograms of each 
+     * {@link AIDA} field of the copy are added to those of this driver, see {@link AIDA#merge(AIDA)}.
+     * @param copy A copy previously created by {@link #createThreadCopy()}
+     */
+    protected void mergeThreadCopy(Driver copy) {
+        try {
+            for (Field field : aidaFields()) {
+                AIDA aida = (AIDA) field.get(this);
+                AIDA other = (AIDA) field.get(copy);
+                if (aida != null && other != null && other != aida)
+                    aida.merge(other);
+            }
+        } catch (IllegalAccessException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private List<Field> aidaFields() {
+        List<Field> fields = new ArrayList<Field>();
+        for (Class<?> c = getClass(); c != Driver.class; c = c.getSuperclass())
+            for (Field field : c.getDeclaredFields())
+                if (AIDA.class.isAssignableFrom(field.getType()) && !Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+        return fields;
+    }
+
+    /**
+     * Set whether this driver and its children may be called from several threads at once.
+     */
+    void setParallel(boolean parallel) {
+        this.parallel = parallel;
+        sequencer = parallel ? new EventSequencer() : null;
+    }
+
+    boolean isParallel() {
+        return parallel || parent.isParallel();
+    }
+
+    /**
+     * The sequencer which orders calls to serial drivers, or null if events are not processed in parallel.
+     */
+    EventSequencer getSequencer() {
+        return sequencer != null ? sequencer : parent.getSequencer();
+    }
+
+    /**
+     * Merge the per-thread copies of this driver and its children. After merging, new copies 
+     * will be created if more events are processed.
+     */
+    void mergeThreadCopies() {
+        for (Driver driver : subDrivers)
+            driver.mergeThreadCopies();
+        List<Driver> copies;
+        synchronized (threadCopies) {
+            copies = new ArrayList<Driver>(threadCopies);
+            threadCopies.clear();
+            threadCopy = new ThreadLocal<Driver>();
+        }
+        for (Driver copy : copies)
+            mergeThreadCopy(copy);
+    }
+
+    /**
+     * Enable or disable the collection of detailed statistics for this driver and its children, 
+     * see {@link #getStatistics()}. By default drivers inherit this setting from their parent, 
+     * and the top level setting is taken from the system property <code>org.lcsim.instrument</code>.
+     */
+    public void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    public boolean isInstrumented() {
+        return instrumented == null ? parent.isInstrumented() : instrumented;
+    }
+
+    /**
+     * Get the detailed statistics for this driver. The statistics are only updated if 
+     * instrumentation is enabled, see {@link #setInstrumented(boolean)}.
+     */
+    public DriverStatistics getStatistics() {
+        return statistics;
+    }
+
     /**
      * Clear statistics
      */
     public void clearStatistics() {
-        nEvents = 0;
-        nNanos = 0;
+        nEvents.set(0);
+        nNanos.set(0);
+        statistics.reset();
+        for (Driver driver : subDrivers)
+            driver.clearStatistics();
     }
 
     /**
@@ -203,15 +372,16 @@ public class Driver {
     }
 
     private void printStatistics(PrintStream out, int indent, long parentNanos) {
-        printStatisticsLine(out, indent, getName(), nEvents, nNanos, parentNanos);
+        long nanos = nNanos.get();
+        printStatisticsLine(out, indent, getName(), nEvents.get(), nanos, parentNanos);
         if (!subDrivers.isEmpty()) {
             int nIndent = indent + 1;
-            long self = nNanos;
+            long self = nanos;
             for (Driver driver : subDrivers) {
-                driver.printStatistics(out, nIndent, nNanos);
-                self -= driver.nNanos;
+                driver.printStatistics(out, nIndent, nanos);
+                self -= driver.nNanos.get();
             }
-            printStatisticsLine(out, nIndent, "*self", nEvents, self, nNanos);
+            printStatisticsLine(out, nIndent, "*self", nEvents.get(), self, nanos);
         }
     }
 
@@ -256,18 +426,71 @@ public class Driver {
     }
 
     void doProcess(EventHeader event) {
-        nEvents++;
+        nEvents.incrementAndGet();
+        boolean instrument = isInstrumented();
+        long cpu = instrument ? DriverStatistics.currentThreadCpuTime() : 0;
+        long allocated = instrument ? DriverStatistics.currentThreadAllocatedBytes() : 0;
         long start = System.nanoTime();
-        process(event);
-        long stop = System.nanoTime();
-        nNanos += (stop - start);
+        try {
+            processConcurrently(event);
+        } finally {
+            long stop = System.nanoTime();
+            nNanos.addAndGet(stop - start);
+            if (instrument)
+                statistics.record(stop - start, DriverStatistics.currentThreadCpuTime() - cpu, DriverStatistics.currentThreadAllocatedBytes() - allocated);
+        }
+    }
+
+    private void processConcurrently(EventHeader event) {
+        if (!isParallel()) {
+            process(event);
+        } else {
+            switch (getConcurrency()) {
+            case THREAD_SAFE:
+                process(event);
+                break;
+            case COPY_PER_THREAD:
+                getThreadCopy(event).process(event);
+                break;
+            default:
+                EventSequencer sequencer = getSequencer();
+                sequencer.enter(this);
+                try {
+                    synchronized (this) {
+                        process(event);
+                    }
+                } finally {
+                    sequencer.exit(this);
+                }
+            }
+        }
+    }
+
+    private Driver getThreadCopy(EventHeader event) {
+        Driver copy = threadCopy.get();
+        if (copy == null) {
+            copy = createThreadCopy();
+            copy.original = this;
+            copy.parent = parent;
+            copy.startOfData();
+            threadCopy.set(copy);
+            synchronized (threadCopies) {
+                threadCopies.add(copy);
+            }
+        }
+        Detector detector = event.getDetector();
+        if (detector != copy.copyDetector) {
+            copy.copyDetector = detector;
+            copy.detectorChanged(detector);
+        }
+        return copy;
     }
 
     /**
      * Calls the sub-Drivers process() method. <b>Note:</b> This method is only public so that it can be called from Jython, see LCSIM-30
      */
     public void processChildren(EventHeader event) {
-        for (Driver driver : subDrivers)
+        for (Driver driver : (original == null ? this : original).subDrivers)
             driver.doProcess(event);
     }
 
@@ -292,6 +515,7 @@ public class Driver {
     // This is used to set defaults for "inherited" items
     private static class MotherOfAllDrivers extends Driver {
         private Random random = new Random();
+        private final boolean instrumentAll = Boolean.getBoolean("org.lcsim.instrument");
 
         MotherOfAllDrivers() {
             super("TOP");
@@ -309,6 +533,18 @@ public class Driver {
             return ConditionsManager.defaultInstance();
         }
 
+        boolean isParallel() {
+            return false;
+        }
+
+        EventSequencer getSequencer() {
+            return null;
+        }
+
+        public boolean isInstrumented() {
+            return instrumentAll;
+        }
+
         String pathToMother() {
             return getName();
         }
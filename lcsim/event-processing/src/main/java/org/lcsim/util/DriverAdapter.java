@@ -8,6 +8,7 @@ import org.freehep.record.loop.LoopEvent;
 import org.freehep.record.loop.RecordEvent;
 import org.freehep.record.loop.RecordListener;
 import org.lcsim.event.EventHeader;
+import org.lcsim.event.base.BaseLCSimEvent;
 import org.lcsim.geometry.Detector;
 
 
@@ -25,6 +26,7 @@ public class DriverAdapter extends AbstractLoopListener implements RecordListene
    private ConsoleService cs;
    private ConsoleOutputStream out;
    private Detector detector;
+   private boolean parallel;
    
    public DriverAdapter(Driver driver)
    {
@@ -40,6 +42,7 @@ public class DriverAdapter extends AbstractLoopListener implements RecordListene
    public void finish(LoopEvent event)
    {
       if (cs != null) cs.redirectStandardOutputOnThreadToConsole(Thread.currentThread(),out);
+      driver.mergeThreadCopies();
       driver.endOfData();
       if (cs != null) cs.redirectStandardOutputOnThreadToConsole(Thread.currentThread(),null);
    }
@@ -67,7 +70,14 @@ public class DriverAdapter extends AbstractLoopListener implements RecordListene
          {
             EventHeader evt = (EventHeader) event;
             
-            if (detector != evt.getDetector())
+            if (parallel)
+            {
+               synchronized (this)
+               {
+                  if (detector != evt.getDetector()) detectorChanged(evt.getDetector());
+               }
+            }
+            else if (detector != evt.getDetector())
             {
                detectorChanged(evt.getDetector());
             }
@@ -80,6 +90,39 @@ public class DriverAdapter extends AbstractLoopListener implements RecordListene
       }
    }
    
+   /**
+    * Called on the thread reading records, in the order in which they are read, when records
+    * are processed in parallel. Looks up the detector of an event on the reading thread and
+    * attaches it to the event, so the threads processing it do not use the conditions manager,
+    * and numbers the record so that serial drivers are called in the order records were read.
+    */
+   public void recordRead(Object record)
+   {
+      if (record instanceof BaseLCSimEvent) ((BaseLCSimEvent) record).attachDetector();
+      EventSequencer sequencer = driver.getSequencer();
+      if (sequencer != null) sequencer.read(record);
+   }
+   
+   /**
+    * Called on the thread processing a record passed to {@link #recordRead(Object)}, before
+    * it is supplied to any listener.
+    */
+   public void recordStarted(Object record)
+   {
+      EventSequencer sequencer = driver.getSequencer();
+      if (sequencer != null) sequencer.start(record);
+   }
+   
+   /**
+    * Called on the thread processing a record once it has been supplied to all listeners,
+    * even if one of them failed.
+    */
+   public void recordFinished(Object record)
+   {
+      EventSequencer sequencer = driver.getSequencer();
+      if (sequencer != null) sequencer.finish();
+   }
+   
    private void detectorChanged(Detector detector)
    {
       this.detector = detector;
@@ -89,10 +132,21 @@ public class DriverAdapter extends AbstractLoopListener implements RecordListene
    public void start(LoopEvent event)
    {
       if (cs != null) cs.redirectStandardOutputOnThreadToConsole(Thread.currentThread(),out);
+      if (driver.isInstrumented()) DriverStatistics.register(driver);
       driver.startOfData();
       if (cs != null) cs.redirectStandardOutputOnThreadToConsole(Thread.currentThread(),null);
    }
    
+   /**
+    * Set whether records will be supplied from several threads at once. In parallel
+    * mode each driver is called according to its {@link Driver#getConcurrency() concurrency}.
+    */
+   public void setParallel(boolean parallel)
+   {
+      this.parallel = parallel;
+      driver.setParallel(parallel);
+   }
+   
    public Driver getDriver()
    {
       return driver;
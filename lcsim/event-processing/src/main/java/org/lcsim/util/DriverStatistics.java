@@ -0,0 +1,236 @@
+package org.lcsim.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Statistics collected for each call to the process method of an instrumented driver:
+ * wall time, CPU time and allocated bytes, together with a histogram of the wall time
+ * per call. The histogram has one bin per power of two nanoseconds. CPU time and
+ * allocated bytes are measured for the calling thread using the {@link ThreadMXBean},
+ * and are zero if the JVM does not support them.
+ * <p>
+ * Statistics are only collected for drivers for which instrumentation is enabled, see
+ * {@link Driver#setInstrumented(boolean)}. The statistics of all drivers in a job can
+ * be published as MBeans using {@link #register(Driver)}.
+ * @version $Id$
+ */
+public class DriverStatistics implements DriverStatisticsMBean {
+
+    /** The number of bins in the wall time histogram */
+    public static final int BINS = 64;
+    private static final String DOMAIN = "org.lcsim";
+    private static final Logger logger = Logger.getLogger(DriverStatistics.class.getName());
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final boolean cpuTimeSupported;
+    private static final boolean allocationSupported;
+    static {
+        boolean cpu = false;
+        try {
+            cpu = threads.isCurrentThreadCpuTimeSupported();
+            if (cpu && !threads.isThreadCpuTimeEnabled())
+                threads.setThreadCpuTimeEnabled(true);
+        } catch (UnsupportedOperationException x) {
+            cpu = false;
+        }
+        cpuTimeSupported = cpu;
+        boolean allocation = false;
+        try {
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+                allocation = sun.isThreadAllocatedMemorySupported();
+                if (allocation && !sun.isThreadAllocatedMemoryEnabled())
+                    sun.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch (LinkageError x) {
+            allocation = false; // Not a Sun/Oracle derived JVM
+        } catch (UnsupportedOperationException x) {
+            allocation = false;
+        }
+        allocationSupported = allocation;
+    }
+
+    private final String name;
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong wallNanos = new AtomicLong();
+    private final AtomicLong cpuNanos = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong maxWallNanos = new AtomicLong();
+    private final AtomicLongArray wallTimeBins = new AtomicLongArray(BINS);
+
+    DriverStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * The CPU time used so far by the current thread, in nanoseconds, or zero if not supported.
+     */
+    static long currentThreadCpuTime() {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * The number of bytes allocated so far by the current thread, or zero if not supported.
+     */
+    static long currentThreadAllocatedBytes() {
+        return allocationSupported ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /**
+     * Record one call to the driver.
+     */
+    void record(long wall, long cpu, long allocated) {
+        events.incrementAndGet();
+        wallNanos.addAndGet(wall);
+        cpuNanos.addAndGet(cpu);
+        allocatedBytes.addAndGet(allocated);
+        wallTimeBins.incrementAndGet(bin(wall));
+        for (long max = maxWallNanos.get(); wall > max; max = maxWallNanos.get()) {
+            if (maxWallNanos.compareAndSet(max, wall))
+                break;
+        }
+    }
+
+    private static int bin(long nanos) {
+        return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * The lower edge of a bin of the wall time histogram, in nanoseconds. Bin <code>i</code>
+     * counts calls taking from 2<sup>i</sup> up to 2<sup>i+1</sup> nanoseconds, except that
+     * bin zero also counts calls measured as taking no time.
+     */
+    public static long getBinLowerEdge(int bin) {
+        return bin == 0 ? 0 : 1L << bin;
+    }
+
+    /**
+     * The number of calls in each bin of the wall time histogram.
+     */
+    public long[] getWallTimeBins() {
+        long[] result = new long[BINS];
+        for (int i = 0; i < BINS; i++)
+            result[i] = wallTimeBins.get(i);
+        return result;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getEvents() {
+        return events.get();
+    }
+
+    public double getTotalWallTime() {
+        return wallNanos.get() / 1e6;
+    }
+
+    public double getTotalCpuTime() {
+        return cpuNanos.get() / 1e6;
+    }
+
+    public long getTotalAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public double getMeanWallTime() {
+        long n = events.get();
+        return n == 0 ? 0 : getTotalWallTime() / n;
+    }
+
+    public double getMeanCpuTime() {
+        long n = events.get();
+        return n == 0 ? 0 : getTotalCpuTime() / n;
+    }
+
+    public double getMeanAllocatedBytes() {
+        long n = events.get();
+        return n == 0 ? 0 : (double) getTotalAllocatedBytes() / n;
+    }
+
+    public double getMaxWallTime() {
+        return maxWallNanos.get() / 1e6;
+    }
+
+    public double getWallTimePercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        long[] bins = getWallTimeBins();
+        long total = 0;
+        for (long n : bins)
+            total += n;
+        if (total == 0)
+            return 0;
+        long limit = (long) Math.ceil(total * percentile / 100);
+        long sum = 0;
+        for (int i = 0; i < BINS; i++) {
+            sum += bins[i];
+            if (sum >= limit && sum > 0)
+                return Math.min(i < 62 ? 1L << (i + 1) : Long.MAX_VALUE, maxWallNanos.get()) / 1e6;
+        }
+        return getMaxWallTime();
+    }
+
+    public double getMedianWallTime() {
+        return getWallTimePercentile(50);
+    }
+
+    public double get99thPercentileWallTime() {
+        return getWallTimePercentile(99);
+    }
+
+    public void reset() {
+        events.set(0);
+        wallNanos.set(0);
+        cpuNanos.set(0);
+        allocatedBytes.set(0);
+        maxWallNanos.set(0);
+        for (int i = 0; i < BINS; i++)
+            wallTimeBins.set(i, 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d events, wall %.3gms, cpu %.3gms, %.0f bytes per event", name, getEvents(), getMeanWallTime(), getMeanCpuTime(), getMeanAllocatedBytes());
+    }
+
+    /**
+     * Register the statistics of a driver and all its children with the platform MBean server,
+     * replacing any driver statistics previously registered. Each driver is registered with
+     * the name <code>org.lcsim:type=Driver,name=<i>path</i></code>, where the path is made
+     * from the names of the driver and its parents.
+     * @param top The driver at the top of the tree
+     */
+    public static void register(Driver top) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName old : server.queryNames(new ObjectName(DOMAIN + ":type=Driver,*"), null))
+                server.unregisterMBean(old);
+            register(server, top, top.getName());
+        } catch (JMException x) {
+            logger.log(Level.WARNING, "Could not register driver statistics", x);
+        }
+    }
+
+    private static void register(MBeanServer server, Driver driver, String path) throws JMException {
+        server.registerMBean(driver.getStatistics(), new ObjectName(DOMAIN + ":type=Driver,name=" + ObjectName.quote(path)));
+        Map<String, Integer> used = new HashMap<String, Integer>();
+        for (Driver child : driver.drivers()) {
+            String name = child.getName();
+            Integer n = used.get(name);
+            used.put(name, n == null ? 1 : n + 1);
+            register(server, child, path + "/" + (n == null ? name : name + "#" + n));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.lcsim.util;
+
+/**
+ * JMX view of the statistics collected for an instrumented driver.
+ * All times are in milliseconds and include the time spent in child drivers.
+ * @see DriverStatistics
+ * @version $Id$
+ */
+public interface DriverStatisticsMBean {
+
+    String getName();
+
+    long getEvents();
+
+    double getTotalWallTime();
+
+    double getTotalCpuTime();
+
+    long getTotalAllocatedBytes();
+
+    double getMeanWallTime();
+
+    double getMeanCpuTime();
+
+    double getMeanAllocatedBytes();
+
+    double getMaxWallTime();
+
+    /**
+     * An estimate of the given percentile of the wall time per event, accurate to a factor of two.
+     * @param percentile The percentile, between 0 and 100
+     */
+    double getWallTimePercentile(double percentile);
+
+    double getMedianWallTime();
+
+    double get99thPercentileWallTime();
+
+    void reset();
+}
@@ -0,0 +1,126 @@
+package org.lcsim.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Keeps the calls to serial drivers in the order in which events were read, when events are
+ * processed in parallel. Each event is numbered when it is read, and a serial driver is only
+ * called for an event once every earlier event has either been processed by that driver, or
+ * has finished processing without reaching it. An event only ever waits for earlier events,
+ * so the earliest event being processed can always proceed.
+ *
+ * @version $Id$
+ */
+class EventSequencer {
+
+    private final Map<Object, Deque<Long>> numbers = new IdentityHashMap<Object, Deque<Long>>();
+    private final ThreadLocal<Long> current = new ThreadLocal<Long>();
+    private long next; // the number of the next event read
+    private long done; // all events below this one have finished
+    private final SortedSet<Long> finished = new TreeSet<Long>(); // finished events from done on
+    private final Map<Driver, Passed> passed = new IdentityHashMap<Driver, Passed>();
+
+    /**
+     * Number an event. Called on the thread reading events, in the order they are read.
+     */
+    synchronized void read(Object event) {
+        Deque<Long> queue = numbers.get(event);
+        if (queue == null) {
+            queue = new ArrayDeque<Long>(1);
+            numbers.put(event, queue);
+        }
+        queue.add(next++);
+    }
+
+    /**
+     * Called on the thread processing an event, before any driver is called for it.
+     */
+    synchronized void start(Object event) {
+        Deque<Long> queue = numbers.get(event);
+        if (queue == null)
+            return;
+        current.set(queue.remove());
+        if (queue.isEmpty())
+            numbers.remove(event);
+    }
+
+    /**
+     * Called on the thread processing an event, once it has finished processing, even if it failed.
+     */
+    synchronized void finish() {
+        Long n = current.get();
+        if (n == null)
+            return;
+        current.remove();
+        finished.add(n);
+        while (!finished.isEmpty() && finished.first() == done)
+            finished.remove(done++);
+        notifyAll();
+    }
+
+    /**
+     * Wait until the given serial driver may process the event of the current thread. Returns
+     * at once if the current thread is not processing a numbered event.
+     */
+    void enter(Driver driver) {
+        Long n = current.get();
+        if (n == null)
+            return;
+        boolean interrupted = false;
+        synchronized (this) {
+            Passed p = passed.get(driver);
+            if (p == null) {
+                p = new Passed();
+                passed.put(driver, p);
+            }
+            while (!p.ready(n)) {
+                try {
+                    wait();
+                } catch (InterruptedException x) {
+                    interrupted = true; // skipping events would break the order
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Record that the given serial driver has processed the event of the current thread.
+     */
+    void exit(Driver driver) {
+        Long n = current.get();
+        if (n == null)
+            return;
+        synchronized (this) {
+            passed.get(driver).events.add(n);
+            notifyAll();
+        }
+    }
+
+    /**
+     * The events which have passed one serial driver.
+     */
+    private class Passed {
+        private long low; // all events below this one have passed or finished
+        private final SortedSet<Long> events = new TreeSet<Long>(); // passed events from low on
+
+        boolean ready(long n) {
+            for (;;) {
+                if (low < done) {
+                    low = done;
+                    events.headSet(low).clear();
+                } else if (events.remove(low) || finished.contains(low)) {
+                    low++;
+                } else {
+                    return low >= n;
+                }
+            }
+        }
+    }
+}
@@ -17,6 +17,8 @@ import org.lcsim.lcio.LCIOWriter;
  * By default this will write out the entire event, but you can control what collections are written 
  * out by using {@link #setIgnoreCollection(String)}, {@link #setIgnoreCollections(String[])},
  * {@link #setWriteOnlyCollection(String)}, and {@link #setWriteOnlyCollections(String[])}.
+ * Output can be compressed and written on background threads using {@link #setWriterThreads(int)},
+ * and split into several files using {@link #setRolloverEvents(int)} and {@link #setRolloverBytes(long)}.
  * 
  * @author tonyj
  * @see org.lcsim.util.lcio.LCIOWriter
@@ -26,6 +28,10 @@ public class LCIODriver extends Driver {
     private Set<String> listIgnore = new HashSet<String>();
     private Set<String> listKeep = new HashSet<String>();
     private File outputFile;
+    private int writerThreads;
+    private int maxPendingRecords = 16;
+    private int rolloverEvents;
+    private long rolloverBytes;
 
     public LCIODriver(String file) {
         this(addFileExtension(file), null);
@@ -69,6 +75,35 @@ public class LCIODriver extends Driver {
         listKeep.add(writeOnlyCollection);
     }
 
+    /**
+     * Set the number of threads used to compress records. With the default of zero
+     * records are compressed and written by the event processing thread.
+     */
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    /**
+     * Set the maximum number of records waiting to be written when writing asynchronously.
+     */
+    public void setMaxPendingRecords(int maxPendingRecords) {
+        this.maxPendingRecords = maxPendingRecords;
+    }
+
+    /**
+     * Start a new output file after the given number of events.
+     */
+    public void setRolloverEvents(int rolloverEvents) {
+        this.rolloverEvents = rolloverEvents;
+    }
+
+    /**
+     * Start a new output file once the given number of bytes has been written.
+     */
+    public void setRolloverBytes(long rolloverBytes) {
+        this.rolloverBytes = rolloverBytes;
+    }
+
     private void setupWriter() {
         // Cleanup existing writer.
         if (writer != null) {
@@ -89,8 +124,10 @@ public class LCIODriver extends Driver {
         }
         writer.addAllIgnore(listIgnore);
         writer.addAllWriteOnly(listKeep);
+        writer.setRollover(rolloverEvents, rolloverBytes);
 
         try {
+            writer.setAsynchronous(writerThreads, maxPendingRecords);
             writer.reOpen();
         } catch (IOException x) {
             throw new RuntimeException("Error rewinding LCIO file", x);
@@ -29,6 +29,9 @@ public class LCIOEventSource extends AbstractRecordSource {
   
   private long _index = -1L;
   private long[] _size;
+  private LCIOEventIndex[] indexes;
+  private LCIOEventIndex building = new LCIOEventIndex(); // built while reading the current file sequentially
+  private int threads = -1;
 
   /**
    * Create an LCIO event source for reading a single LCIO file
@@ -37,9 +40,10 @@ public class LCIOEventSource extends AbstractRecordSource {
    */
   public LCIOEventSource(File file) throws IOException {
     super(file.getName());
-    this.reader = new LCIOReader(file);
+    this.reader = openReader(file);
     this.files = Collections.singletonList(file);
     _size = new long[1]; _size[0] = -1L;
+    indexes = new LCIOEventIndex[1];
   }
 
   /**
@@ -51,9 +55,10 @@ public class LCIOEventSource extends AbstractRecordSource {
   public LCIOEventSource(String name, List<File> files) throws IOException {
     super(name);
     if (files.isEmpty()) throw new IOException("File list is empty");
-    this.reader = new LCIOReader(files.get(0));
+    this.reader = openReader(files.get(0));
     this.files = files;
     _size = new long[files.size()]; Arrays.fill(_size, -1L);
+    indexes = new LCIOEventIndex[files.size()];
   }
 
   /**
@@ -65,8 +70,9 @@ public class LCIOEventSource extends AbstractRecordSource {
     super(list.getTitle());
     this.files = list.getFileList();
     if (files.isEmpty()) throw new IOException("File list is empty");
-    this.reader = new LCIOReader(files.get(0));
+    this.reader = openReader(files.get(0));
     _size = new long[files.size()]; Arrays.fill(_size, -1L);
+    indexes = new LCIOEventIndex[files.size()];
   }
 
   
@@ -129,15 +135,21 @@ public class LCIOEventSource extends AbstractRecordSource {
         currentEvent = reader.read();
         //currentEvent.put("INPUT_FILE", files.get(currentFile));
         _index++;
+        if (building != null) building.add(currentEvent.getRunNumber(), currentEvent.getEventNumber(), reader.getLastEventPosition());
       } catch (EOFException x) {
         _size[currentFile] = _index;
+        if (building != null && indexes[currentFile] == null) {
+          indexes[currentFile] = building;
+          building.save(files.get(currentFile));
+        }
+        building = new LCIOEventIndex();
         if (currentFile + 1 >= files.size()) {
           atEnd = true;
           throw new NoSuchRecordException();
         } else {
           currentFile++;
           reader.close();
-          reader = new LCIOReader(files.get(currentFile));
+          reader = openReader(files.get(currentFile));
           continue;
         }
       }
@@ -149,64 +161,62 @@ public class LCIOEventSource extends AbstractRecordSource {
     jump(_index-1);
   }
   
+  /**
+   * Jumps directly to the event with the given index, using the
+   * {@link LCIOEventIndex} of each file. Indexes are read from the sidecar
+   * files if present, otherwise they are built on first use.
+   */
   public void jump(long index) throws IOException, NoSuchRecordException {
     if (index < 0L) throw new NoSuchRecordException();
-    long i = _index;
-    int f = -1;
-    while (++f < files.size() && _size[f] != -1L && _size[f] < index);
-    if (f >= files.size()) throw new NoSuchRecordException();
-    atEnd = false;
-    long recoveryTarget = _index;
-    if (f != currentFile || index <= _index) {
-      reader.close();
-      reader = new LCIOReader(files.get(f));
-      i = (f == 0) ? -1L : _size[f-1];
-    }
-    int skipMax = Integer.MAX_VALUE - 10;
-    for (long skip = index - i - 1L; skip > 0L; ) {
-      int skipNow = skip > skipMax ? skipMax : (int)skip ;
-      skip -= skipNow;
-      while (true) {
-        int skipped = reader.skipEventsChecked(skipNow);
-        i += skipped;
-        if (skipped == skipNow) {
-          break;
-        } else {
-          skipNow -= skipped;
-          reader.close();
-          _size[f++] = i;
-          if (f < files.size()) {
-            reader = new LCIOReader(files.get(f));
-          } else {
-            reader = new LCIOReader(files.get(0));
-            if (_index != -1L) {
-              currentFile = 0;
-              atEnd = false;
-              _index = -1L;
-              try {
-                jump(recoveryTarget);
-              } catch (NoSuchRecordException x) {
-                throw new IOException(x);
-              }
-            }
-            throw new NoSuchRecordException();
-          }
+    long first = 0L;
+    for (int f = 0; f < files.size(); f++) {
+      LCIOEventIndex eventIndex = getEventIndex(f);
+      if (index < first + eventIndex.size()) {
+        if (f != currentFile || reader == null) {
+          if (reader != null) reader.close();
+          reader = openReader(files.get(f));
+          currentFile = f;
         }
+        building = null;
+        currentEvent = reader.read(eventIndex.getPosition((int) (index - first)));
+        _index = index;
+        atEnd = false;
+        return;
       }
+      first += eventIndex.size();
     }
-    _index = i;
-    currentFile = f;
-    try {
-      next();
-    } catch (NoSuchRecordException x) {
-      try {
-        jump(recoveryTarget);
-      } catch (NoSuchRecordException xx) {
-        throw new IOException(x);
-      }
+    throw new NoSuchRecordException();
+  }
+
+  /**
+   * Find an event by run and event number.
+   *
+   * @return The index of the event, suitable for passing to {@link #jump(long)}, or -1 if there is no such event
+   */
+  public long findEvent(int run, int event) throws IOException {
+    long first = 0L;
+    for (int f = 0; f < files.size(); f++) {
+      LCIOEventIndex eventIndex = getEventIndex(f);
+      int i = eventIndex.find(run, event);
+      if (i >= 0) return first + i;
+      first += eventIndex.size();
     }
+    return -1L;
   }
-  
+
+  private LCIOEventIndex getEventIndex(int f) throws IOException {
+    if (indexes[f] == null) {
+      indexes[f] = LCIOEventIndex.open(files.get(f));
+      _size[f] = (f == 0 ? -1L : getEventIndexEnd(f - 1)) + indexes[f].size();
+    }
+    return indexes[f];
+  }
+
+  private long getEventIndexEnd(int f) throws IOException {
+    getEventIndex(f);
+    return _size[f];
+  }
+
   public void shift(long numberOfRecords) throws IOException, NoSuchRecordException {
     jump(_index + numberOfRecords);
   }
@@ -214,7 +224,8 @@ public class LCIOEventSource extends AbstractRecordSource {
   public void rewind() throws IOException {
     currentFile = 0;
     reader.close();
-    reader = new LCIOReader(files.get(currentFile));
+    reader = openReader(files.get(currentFile));
+    building = new LCIOEventIndex();
     atEnd = false;
     _index = -1L;
     currentEvent = null;
@@ -228,6 +239,21 @@ public class LCIOEventSource extends AbstractRecordSource {
     currentEvent = null;
   }
 
+  /**
+   * Set the number of threads used to read and decode events, see {@link LCIOReader#setThreads(int)}.
+   * By default the value of the system property <code>org.lcsim.lcio.threads</code> is used.
+   */
+  public void setThreads(int threads) {
+    this.threads = threads;
+    if (reader != null) reader.setThreads(threads);
+  }
+
+  private LCIOReader openReader(File file) throws IOException {
+    LCIOReader result = new LCIOReader(file);
+    if (threads >= 0) result.setThreads(threads);
+    return result;
+  }
+
   public void releaseRecord(Object obj) {
     currentEvent = null;
   }
@@ -3,8 +3,10 @@ package org.lcsim.util.loop;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.freehep.record.loop.DefaultRecordLoop;
+import org.freehep.record.loop.ConcurrentRecordLoop;
 import org.freehep.record.loop.RecordLoop.Command;
 import org.freehep.record.source.NoSuchRecordException;
 import org.freehep.record.source.RecordSource;
@@ -17,11 +19,20 @@ import org.lcsim.util.DriverAdapter;
 
 /**
  * A main loop which can be used for standalone jobs (run outside of JAS).
+ * <p>
+ * By default events are processed one at a time in the thread which calls {@link #loop(long)}.
+ * Several events can be processed in parallel by calling {@link #setNumberOfThreads(int)}, in
+ * which case each driver is called according to its {@link Driver#getConcurrency() concurrency}.
+ * The detector of each event is looked up by the thread reading the events, and serial drivers
+ * are called in the order in which events were read.
  * @author Tony Johnson
  */
-public class LCSimLoop extends DefaultRecordLoop {
+public class LCSimLoop extends ConcurrentRecordLoop {
 
     private Driver top = new Driver();
+    private DriverAdapter da;
+    private Throwable workerError;
+    private ThroughputReporter reporter;
 
     /**
      * Create a new LCSimLoop
@@ -31,9 +42,61 @@ public class LCSimLoop extends DefaultRecordLoop {
         if (!ConditionsManager.isSetup()) 
             // Register a default conditions manager, which can still be overridden later if needed.
             LCSimConditionsManagerImplementation.register();
-        DriverAdapter da = new DriverAdapter(top);
+        da = new DriverAdapter(top);
         addRecordListener(da);
         addLoopListener(da);
+        _threadFactory = new ThreadFactory() {
+            private final AtomicInteger n = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "LCSimLoop-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Set the number of threads used to process events. With the default of zero events are
+     * processed one at a time by the thread calling {@link #loop(long)}. Otherwise events are
+     * read by the calling thread and processed by a pool of the given number of threads.
+     * Drivers which are not thread safe are either serialized or given a copy per thread,
+     * see {@link Driver#getConcurrency()}.
+     * @param nThreads The number of event processing threads
+     */
+    @Override
+    public void setNumberOfThreads(int nThreads) {
+        if (nThreads < 0)
+            throw new IllegalArgumentException("Invalid number of threads: " + nThreads);
+        super.setNumberOfThreads(nThreads);
+        da.setParallel(nThreads > 0);
+    }
+
+    public int getNumberOfThreads() {
+        return _nThreads;
+    }
+
+    /**
+     * Enable or disable detailed per-driver statistics (wall time, CPU time, allocated bytes and 
+     * latency histograms) for all drivers in the loop. The statistics are published as MBeans 
+     * when the loop starts.
+     * @see Driver#getStatistics()
+     * @see org.lcsim.util.DriverStatistics
+     */
+    public void setInstrumented(boolean instrumented) {
+        top.setInstrumented(instrumented);
+    }
+
+    /**
+     * Log the event rate, and if instrumented the most expensive drivers, at the given interval.
+     * @param milliseconds The interval between reports, or zero to disable reports
+     */
+    public void setThroughputReportInterval(long milliseconds) {
+        if (reporter == null && milliseconds > 0) {
+            reporter = new ThroughputReporter(top);
+            addLoopListener(reporter);
+        }
+        setProgressByTime(milliseconds);
     }
 
     /**
@@ -148,12 +211,15 @@ public class LCSimLoop extends DefaultRecordLoop {
      */
     public long loop(long number, PrintStream out) throws IOException {
         top.clearStatistics();
+        workerError = null;
         if (number < 0L) {
             execute(Command.GO, true);
         } else {
             execute(Command.GO_N, number, true);
             execute(Command.STOP); // make sure endOfData() is called on drivers
         }
+        if (workerError != null)
+            throw new RuntimeException(workerError);
         Throwable t = getProgress().getException();
         if (t != null && t instanceof IOException)
             throw (IOException) t;
@@ -182,13 +248,48 @@ public class LCSimLoop extends DefaultRecordLoop {
         cond.registerConditionsConverter(new DummyConditionsConverter(detector));
     }
     
+    @Override
+    protected Object fetchRecord() throws NoSuchRecordException, IOException {
+        Object record = super.fetchRecord();
+        if (_nThreads > 0)
+            da.recordRead(record);
+        return record;
+    }
+
+    @Override
+    protected void consumeRecord(Object record) {
+        if (_nThreads == 0) {
+            super.consumeRecord(record);
+            return;
+        }
+        da.recordStarted(record);
+        try {
+            super.consumeRecord(record);
+        } finally {
+            da.recordFinished(record);
+        }
+    }
+
     public void dispose() {
         super.dispose();
+        if (_consumerExecutor != null)
+            _consumerExecutor.shutdown();
     }
     
     protected void handleClientError(final Throwable x) {
         //System.out.println("LCSimLoop caught client error ...");
         x.printStackTrace();
+        if (_nThreads > 0) {
+            // Called on a worker thread: stop the loop, and rethrow from loop() once the
+            // events already being processed are finished.
+            synchronized (_stateLock) {
+                if (workerError == null)
+                    workerError = x;
+                _pauseRequested = true;
+                _stopRequested = true;
+            }
+            return;
+        }
         this._exception = x;
         this.execute(Command.STOP);
         throw new RuntimeException(x);
@@ -0,0 +1,121 @@
+package org.lcsim.util.loop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.freehep.record.loop.AbstractLoopListener;
+import org.freehep.record.loop.LoopEvent;
+import org.lcsim.util.Driver;
+
+/**
+ * Logs the event rate each time the record loop reports progress. If the drivers are
+ * instrumented the drivers using the most time since the last report are also listed.
+ * The reporting interval is set on the loop, for example using
+ * {@link org.freehep.record.loop.RecordLoop#setProgressByTime(long)}.
+ * @see LCSimLoop#setThroughputReportInterval(long)
+ * @version $Id$
+ */
+public class ThroughputReporter extends AbstractLoopListener {
+
+    private static final Logger logger = Logger.getLogger(ThroughputReporter.class.getName());
+    private final Driver top;
+    private int nDrivers = 5;
+    private long lastEvents;
+    private long lastTime;
+    private Map<Driver, Double> lastWallTime = new IdentityHashMap<Driver, Double>();
+
+    /**
+     * Create a throughput reporter.
+     * @param top The driver tree whose statistics are reported
+     */
+    public ThroughputReporter(Driver top) {
+        this.top = top;
+    }
+
+    /**
+     * Set the number of drivers listed in each report.
+     */
+    public void setNumberOfDrivers(int nDrivers) {
+        this.nDrivers = nDrivers;
+    }
+
+    protected void start(LoopEvent event) {
+        reset(event.getTotalConsumed());
+    }
+
+    protected void resume(LoopEvent event) {
+        reset(event.getTotalConsumed());
+    }
+
+    private void reset(long events) {
+        lastEvents = events;
+        lastTime = System.nanoTime();
+        lastWallTime.clear();
+        snapshot(top, lastWallTime);
+    }
+
+    protected void progress(LoopEvent event) {
+        long now = System.nanoTime();
+        long events = event.getTotalConsumed();
+        double seconds = (now - lastTime) / 1e9;
+        if (seconds <= 0)
+            return;
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Processed %d events, %.1f events/s", events, (events - lastEvents) / seconds));
+        if (event.getTimeInLoop() > 0)
+            report.append(String.format(" (%.1f events/s since start)", event.getConsumed() * 1000. / event.getTimeInLoop()));
+
+        Map<Driver, Double> wallTime = new IdentityHashMap<Driver, Double>();
+        snapshot(top, wallTime);
+        if (top.isInstrumented()) {
+            final Map<Driver, Double> self = new IdentityHashMap<Driver, Double>();
+            selfTime(top, wallTime, self);
+            List<Driver> drivers = new ArrayList<Driver>(self.keySet());
+            Collections.sort(drivers, new Comparator<Driver>() {
+                public int compare(Driver d1, Driver d2) {
+                    return Double.compare(self.get(d2), self.get(d1));
+                }
+            });
+            for (int i = 0; i < nDrivers && i < drivers.size(); i++) {
+                Driver driver = drivers.get(i);
+                if (self.get(driver) <= 0)
+                    break;
+                report.append(String.format("%n   %-30s %5.1f%% %.3gms/event", driver.getName(), 100 * self.get(driver) / (seconds * 1000),
+                        driver.getStatistics().getMeanWallTime()));
+            }
+        }
+        logger.info(report.toString());
+        lastEvents = events;
+        lastTime = now;
+        lastWallTime = wallTime;
+    }
+
+    private static void snapshot(Driver driver, Map<Driver, Double> wallTime) {
+        wallTime.put(driver, driver.getStatistics().getTotalWallTime());
+        for (Driver child : driver.drivers())
+            snapshot(child, wallTime);
+    }
+
+    /**
+     * Compute the wall time since the last report spent in each driver excluding its children
+     */
+    private void selfTime(Driver driver, Map<Driver, Double> wallTime, Map<Driver, Double> self) {
+        double time = delta(driver, wallTime);
+        for (Driver child : driver.drivers()) {
+            time -= delta(child, wallTime);
+            selfTime(child, wallTime, self);
+        }
+        if (driver != top)
+            self.put(driver, time);
+    }
+
+    private double delta(Driver driver, Map<Driver, Double> wallTime) {
+        Double last = lastWallTime.get(driver);
+        return wallTime.get(driver) - (last == null ? 0 : last);
+    }
+}
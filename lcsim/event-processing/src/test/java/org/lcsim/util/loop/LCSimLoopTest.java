@@ -0,0 +1,238 @@
+package org.lcsim.util.loop;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.freehep.record.source.AbstractRecordSource;
+import org.freehep.record.source.NoSuchRecordException;
+import org.lcsim.event.EventHeader;
+import org.lcsim.event.base.BaseLCSimEvent;
+import org.lcsim.geometry.Detector;
+import org.lcsim.util.Driver;
+import org.lcsim.util.aida.AIDA;
+
+/**
+ * Process events with several threads, and check that thread safe, serial and
+ * per-thread copied drivers each see every event, that serial drivers see them
+ * in the order they were read, and that the results of the copies are merged.
+ *
+ * @version $Id$
+ */
+public class LCSimLoopTest extends TestCase
+{
+    private static final int EVENTS = 200;
+    private static final String DETECTOR = "LCSimLoopTest";
+
+    private LCSimLoop loop;
+
+    protected void setUp() throws Exception
+    {
+        loop = new LCSimLoop();
+        loop.setDummyDetector(DETECTOR);
+        loop.setRecordSource(new Source());
+        loop.setNumberOfThreads(4);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        loop.dispose();
+    }
+
+    public void testDrivers() throws Exception
+    {
+        SafeDriver safe = new SafeDriver();
+        SerialDriver serial = new SerialDriver();
+        CopyDriver copy = new CopyDriver();
+        loop.add(safe);
+        loop.add(serial);
+        loop.add(copy);
+        assertEquals(EVENTS, loop.loop(-1, null));
+
+        assertEquals(EVENTS, safe.count.get());
+        assertEquals(0, safe.errors.get());
+        assertEquals(EVENTS, serial.events.size());
+        for (int i = 0; i < EVENTS; i++)
+        {
+            assertEquals(i, serial.events.get(i).intValue());
+        }
+        assertFalse(serial.overlapped);
+        assertEquals(EVENTS, copy.count);
+        assertTrue(copy.merged > 0);
+        assertEquals(EVENTS, copy.ends);
+    }
+
+    public void testSkippedEvents() throws Exception
+    {
+        Driver skip = new Driver()
+        {
+            protected void process(EventHeader event)
+            {
+                if (event.getEventNumber() % 3 == 0)
+                {
+                    throw new NextEventException();
+                }
+            }
+
+            protected Concurrency getConcurrency()
+            {
+                return Concurrency.THREAD_SAFE;
+            }
+        };
+        SerialDriver serial = new SerialDriver();
+        loop.add(new SafeDriver());
+        loop.add(skip);
+        loop.add(serial);
+        assertEquals(EVENTS, loop.loop(-1, null));
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < EVENTS; i++)
+        {
+            if (i % 3 != 0)
+            {
+                expected.add(i);
+            }
+        }
+        assertEquals(expected, serial.events);
+    }
+
+    public void testHistograms() throws Exception
+    {
+        HistogramDriver histograms = new HistogramDriver();
+        loop.add(new SafeDriver());
+        loop.add(histograms);
+        assertEquals(EVENTS, loop.loop(-1, null));
+        assertEquals(EVENTS, histograms.aida.histogram1D(HistogramDriver.PATH).entries());
+    }
+
+    /**
+     * Takes a varying time per event, so that events overtake each other.
+     */
+    private static class SafeDriver extends Driver
+    {
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+
+        protected void process(EventHeader event)
+        {
+            Detector detector = event.getDetector();
+            if (detector == null || !DETECTOR.equals(detector.getName()))
+            {
+                errors.incrementAndGet();
+            }
+            count.incrementAndGet();
+            try
+            {
+                Thread.sleep((event.getEventNumber() * 7) % 3);
+            }
+            catch (InterruptedException x)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        protected Concurrency getConcurrency()
+        {
+            return Concurrency.THREAD_SAFE;
+        }
+    }
+
+    private static class SerialDriver extends Driver
+    {
+        private final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+        private final AtomicInteger active = new AtomicInteger();
+        private volatile boolean overlapped;
+
+        protected void process(EventHeader event)
+        {
+            overlapped |= active.incrementAndGet() > 1;
+            events.add(event.getEventNumber());
+            active.decrementAndGet();
+        }
+    }
+
+    private static class CopyDriver extends Driver
+    {
+        private int count;
+        private int merged;
+        private int ends;
+
+        protected void process(EventHeader event)
+        {
+            count++;
+        }
+
+        protected Concurrency getConcurrency()
+        {
+            return Concurrency.COPY_PER_THREAD;
+        }
+
+        protected void mergeThreadCopy(Driver copy)
+        {
+            super.mergeThreadCopy(copy);
+            count += ((CopyDriver) copy).count;
+            merged++;
+        }
+
+        protected void endOfData()
+        {
+            ends = count;
+            super.endOfData();
+        }
+    }
+
+    private static class HistogramDriver extends Driver
+    {
+        private static final String PATH = "LCSimLoopTest/event";
+        private AIDA aida = AIDA.defaultInstance();
+
+        protected void process(EventHeader event)
+        {
+            aida.histogram1D(PATH, 10, 0, EVENTS).fill(event.getEventNumber());
+        }
+
+        protected Concurrency getConcurrency()
+        {
+            return Concurrency.COPY_PER_THREAD;
+        }
+    }
+
+    private static class Source extends AbstractRecordSource
+    {
+        private int n = -1;
+        private EventHeader current;
+
+        Source()
+        {
+            super("LCSimLoopTest");
+        }
+
+        public boolean supportsNext()
+        {
+            return true;
+        }
+
+        public boolean hasNext()
+        {
+            return n + 1 < EVENTS;
+        }
+
+        public void next() throws IOException, NoSuchRecordException
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchRecordException();
+            }
+            current = new BaseLCSimEvent(1, ++n, DETECTOR);
+        }
+
+        public Object getCurrentRecord() throws IOException
+        {
+            return current;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.lcsim.job;
+
+import hep.aida.IAnalysisFactory;
+import hep.aida.IHistogram1D;
+import hep.aida.IHistogramFactory;
+import hep.aida.ITree;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lcsim.util.Driver;
+import org.lcsim.util.DriverStatistics;
+
+/**
+ * Books histograms of the statistics collected for instrumented drivers into an AIDA tree.
+ * For each driver a directory <code>/DriverStatistics/<i>path</i></code> is created, where
+ * the path is made from the names of the driver and its parents, holding a histogram
+ * <code>wallTime</code> of the wall time per event in milliseconds. The mean wall time, CPU
+ * time and allocated bytes per event are added to the annotation of the histogram.
+ *
+ * @see Driver#setInstrumented(boolean)
+ */
+public final class DriverStatisticsHistograms {
+
+    /**
+     * The directory in the tree holding the histograms.
+     */
+    public static final String DIRECTORY = "/DriverStatistics";
+
+    // Histogram bins from 1 microsecond to about 18 minutes
+    private static final int FIRST_BIN = 10;
+    private static final int LAST_BIN = 40;
+
+    private DriverStatisticsHistograms() {
+    }
+
+    /**
+     * Book histograms for the given drivers and their children, replacing any booked earlier.
+     * @param drivers the drivers
+     * @param tree the tree in which to book the histograms
+     * @param histogramFactory a histogram factory for the tree
+     */
+    public static void fill(final List<Driver> drivers, final ITree tree, final IHistogramFactory histogramFactory) {
+        final double[] edges = new double[LAST_BIN - FIRST_BIN + 2];
+        for (int i = 0; i < edges.length - 1; i++) {
+            edges[i + 1] = DriverStatistics.getBinLowerEdge(FIRST_BIN + i) / 1e6;
+        }
+        fill(drivers, DIRECTORY, tree, histogramFactory, edges);
+    }
+
+    /**
+     * Write histograms for the given drivers and their children to a new AIDA file.
+     * @param drivers the drivers
+     * @param file the output file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(final List<Driver> drivers, final File file) throws IOException {
+        final IAnalysisFactory af = IAnalysisFactory.create();
+        final ITree tree = af.createTreeFactory().create(file.getAbsolutePath(), "xml", false, true);
+        fill(drivers, tree, af.createHistogramFactory(tree));
+        tree.commit();
+        tree.close();
+    }
+
+    private static void fill(final List<Driver> drivers, final String dir, final ITree tree,
+            final IHistogramFactory histogramFactory, final double[] edges) {
+        final Map<String, Integer> used = new HashMap<String, Integer>();
+        for (final Driver driver : drivers) {
+            final String name = driver.getName();
+            final Integer n = used.get(name);
+            used.put(name, n == null ? 1 : n + 1);
+            final String path = dir + "/" + (n == null ? name : name + "#" + n);
+            tree.mkdirs(path);
+            try {
+                tree.rm(path + "/wallTime");
+            } catch (final IllegalArgumentException x) {
+                // Nothing booked yet.
+            }
+            final DriverStatistics statistics = driver.getStatistics();
+            final IHistogram1D histogram = histogramFactory.createHistogram1D(path + "/wallTime",
+                    driver.getName() + " wall time per event (ms)", edges);
+            final long[] bins = statistics.getWallTimeBins();
+            for (int i = 0; i < bins.length; i++) {
+                if (bins[i] > 0) {
+                    final long low = DriverStatistics.getBinLowerEdge(i);
+                    final double centre = i == 0 ? 0.5 : 1.5 * low;
+                    histogram.fill(centre / 1e6, bins[i]);
+                }
+            }
+            histogram.annotation().addItem("meanWallTime", String.valueOf(statistics.getMeanWallTime()));
+            histogram.annotation().addItem("meanCpuTime", String.valueOf(statistics.getMeanCpuTime()));
+            histogram.annotation().addItem("meanAllocatedBytes", String.valueOf(statistics.getMeanAllocatedBytes()));
+            fill(driver.drivers(), path, tree, histogramFactory, edges);
+        }
+    }
+}
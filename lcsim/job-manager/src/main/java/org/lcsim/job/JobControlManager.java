@@ -48,6 +48,7 @@ import org.lcsim.event.EventHeader;
 import org.lcsim.units.Constants;
 import org.lcsim.util.Driver;
 import org.lcsim.util.DriverAdapter;
+import org.lcsim.util.aida.AIDA;
 import org.lcsim.util.cache.FileCache;
 import org.lcsim.util.loop.LCIOEventSource;
 import org.lcsim.util.loop.LCSimLoop;
@@ -234,6 +235,11 @@ public class JobControlManager {
      */
     //private boolean dummyDetector;
 
+    /**
+     * File for writing histograms of driver statistics (null means not written).
+     */
+    private File driverStatisticsFile;
+
     /**
      * Event printing interval (null means no event printing).
      */
@@ -284,11 +290,21 @@ public class JobControlManager {
      */
     private final ParameterConverters paramConverter = new ParameterConverters(factory);
 
+    /**
+     * Set to <code>true</code> to collect detailed driver statistics.
+     */
+    private boolean instrumentDrivers;
+
     /**
      * Set to <code>true</code> to print out driver statistics at the end of the job.
      */
     private boolean printDriverStatistics;
 
+    /**
+     * Throughput report interval in milliseconds (null means no reports).
+     */
+    private Long throughputReportInterval = null;
+
     /**
      * Path for rewriting steering file with variables resolved.
      */
@@ -498,6 +514,12 @@ public class JobControlManager {
         } else {
             LOGGER.config("EventPrintLoopAdapter is disabled.");
         }
+        if (this.instrumentDrivers) {
+            loop.setInstrumented(true);
+        }
+        if (this.throughputReportInterval != null) {
+            loop.setThroughputReportInterval(this.throughputReportInterval);
+        }
     }
 
     /**
@@ -966,6 +988,16 @@ public class JobControlManager {
                     LOGGER.log(Level.SEVERE, "Job was stopped due to an event processing error.", loop.getLastException());
                 }
 
+                // Book histograms of the driver statistics.
+                if (this.instrumentDrivers) {
+                    final AIDA aida = AIDA.defaultInstance();
+                    DriverStatisticsHistograms.fill(driverExec, aida.tree(), aida.histogramFactory());
+                    if (this.driverStatisticsFile != null) {
+                        DriverStatisticsHistograms.write(driverExec, this.driverStatisticsFile);
+                        LOGGER.info("Wrote driver statistics to " + this.driverStatisticsFile);
+                    }
+                }
+
                 // Print some job stats.
                 LOGGER.info("Job processed " + processedEvents + " events.");
                 this.jobEnd = System.currentTimeMillis();
@@ -1398,6 +1430,25 @@ public class JobControlManager {
             printDriverStatistics = Boolean.valueOf(printStatisticsElement.getText());
             LOGGER.config("printDriverStatistics: " + printDriverStatistics);
         }
+
+        final Element instrumentElement = control.getChild("instrumentDrivers");
+        if (instrumentElement != null) {
+            instrumentDrivers = Boolean.valueOf(instrumentElement.getText());
+            LOGGER.config("instrumentDrivers: " + instrumentDrivers);
+        }
+
+        final Element statisticsFileElement = control.getChild("driverStatisticsFile");
+        if (statisticsFileElement != null) {
+            driverStatisticsFile = new File(statisticsFileElement.getText());
+            instrumentDrivers = true;
+            LOGGER.config("driverStatisticsFile: " + driverStatisticsFile);
+        }
+
+        final Element throughputElement = control.getChild("throughputReportInterval");
+        if (throughputElement != null) {
+            throughputReportInterval = Long.valueOf(throughputElement.getText());
+            LOGGER.config("throughputReportInterval: " + throughputReportInterval);
+        }
  
         //final Element dummyDetectorElement = control.getChild("dummyDetector");
         //if (dummyDetectorElement != null) {
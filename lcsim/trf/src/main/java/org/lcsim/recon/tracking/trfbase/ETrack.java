@@ -178,7 +178,7 @@ public class ETrack extends VTrack
         {
             throw new IllegalArgumentException("Matrix indices must be within [0,4]!");
         }
-        return _err.matrix()[i][j];
+        return _err.get(i,j);
     }
     
     //
@@ -194,12 +194,12 @@ public class ETrack extends VTrack
         int nbad = 0;
         for ( int i=0; i<5; ++i )
         {
-            double eii = _err.matrix()[i][i];
+            double eii = _err.get(i,i);
             if ( eii <= 0.0 ) ++nbad;
             for ( int j=0; j<i; ++j )
             {
-                double ejj = _err.matrix()[j][j];
-                double eij = _err.matrix()[j][i];
+                double ejj = _err.get(j,j);
+                double eij = _err.get(j,i);
                 if ( Math.abs(eij*eij) >= eii*ejj ) ++nbad;
             }
         }
@@ -250,7 +250,7 @@ public class ETrack extends VTrack
         trv1.surface().vecDiff( trv1.vector(), trv2.vector() );
         TrackError errsum = trv1.error().plus(trv2.error());
         //  if ( invert(errsum) ) return -2.0;
-        return vecdif.getMatrix().transpose().times( errsum.inverse().getMatrix().times( vecdif.getMatrix() ) ).get(0,0);
+        return TrackVector.chisqDiff(vecdif, errsum.inverse());
     }
     
     //**********************************************************************
@@ -273,7 +273,7 @@ public class ETrack extends VTrack
         TrackError errsum = trv1.error();
         //  if ( invert(errsum) ) return -2.0;
         //  return chisq_diff(vecdif,errsum);
-        return vecdif.getMatrix().transpose().times( errsum.inverse().getMatrix().times( vecdif.getMatrix() ) ).get(0,0);
+        return TrackVector.chisqDiff(vecdif, errsum.inverse());
     }
     
     //**********************************************************************
@@ -9,25 +9,17 @@ import Jama.Matrix;
 
 public class HitError
 {
-    private Matrix _mat;
+    // The lower triangle, packed as described in PackedSymmetricMatrix.
+    private double[] _err;
     private int _size;
     
-    // constructor from implementation
-    private HitError(  Matrix err )
-    {
-        if(err.getRowDimension() != err.getColumnDimension() )
-            throw new IllegalArgumentException("Error Matrix must be symmetric!");
-        _size = err.getRowDimension();
-        _mat = (Matrix) err.clone();
-    }
-    
-    
     // default constructor
     public HitError()
     {
         _size = 0;
-        _mat = new Matrix(_size, _size);
+        _err = new double[0];
     }
+    
     // constructor
     /**
      * @param size
@@ -35,7 +27,7 @@ public class HitError
     public HitError( int size )
     {
         _size = size;
-        _mat = new Matrix(_size, _size);
+        _err = new double[PackedSymmetricMatrix.size(_size)];
     }
     
     // constructor from an array
@@ -48,25 +40,8 @@ public class HitError
     public HitError( int size, double[] arr )
     {
         _size = size;
-        _mat = new Matrix(_size, _size);
-        int i=0;
-        int j=0;
-        int k=0;
-//        System.out.println(_size+" "+arr.length);
-        while(k<(_size*_size+_size)/2)
-        {
-            _mat.set(i,j,arr[k]);
-            _mat.set(j,i,arr[k]);
-            k++;
-            for (j = 1; j<=i; ++j)
-            {
-                _mat.set(i,j,arr[k]);
-                _mat.set(j,i,arr[k]);
-                k++;
-            }
-            i++;
-            j=0;
-        }
+        _err = new double[PackedSymmetricMatrix.size(_size)];
+        System.arraycopy(arr, 0, _err, 0, _err.length);
     }
     
     // constructor for 1D from values
@@ -76,8 +51,7 @@ public class HitError
     public HitError( double e11 )
     {
         _size = 1;
-        _mat = new Matrix(_size,_size);
-        _mat.set(0,0,e11);
+        _err = new double[] { e11 };
     }
     
     // constructor for 2D from values
@@ -89,11 +63,7 @@ public class HitError
     public HitError( double e11, double e12, double e22 )
     {
         _size = 2;
-        _mat = new Matrix(_size,_size);
-        _mat.set(0,0,e11);
-        _mat.set(1,0,e12);
-        _mat.set(0,1,e12);
-        _mat.set(1,1,e22);
+        _err = new double[] { e11, e12, e22 };
     }
     
     // constructor for 3D from values
@@ -109,34 +79,42 @@ public class HitError
             double e31, double e32, double e33 )
     {
         _size = 3;
-        _mat = new Matrix(_size,_size);
-        _mat.set(0,0,e11);
-        _mat.set(1,0,e21);
-        _mat.set(1,1,e22);
-        _mat.set(2,0,e31);
-        _mat.set(2,1,e32);
-        _mat.set(2,2,e33);
-        // now symmetric terms...
-        _mat.set(0,1,e21);
-        _mat.set(0,2,e31);
-        _mat.set(1,2,e32);
+        _err = new double[] { e11, e21, e22, e31, e32, e33 };
     }
     
     // constructor from a track error and a track derivative:
     // E_hit = dhit_dtrack * E_track * dhit_dtrack_transpose
-    
     public HitError( HitDerivative dhit_dtrack,
             TrackError trkerr )
     {
         _size = dhit_dtrack.size();
-        _mat = dhit_dtrack.matrix().times(trkerr.getMatrix().times(dhit_dtrack.matrix().transpose()));
+        _err = new double[PackedSymmetricMatrix.size(_size)];
+        double[] e = trkerr.array();
+        double[] row = new double[5];
+        int k = 0;
+        for(int i=0; i<_size; ++i)
+        {
+            // Row i of dhit_dtrack * E_track.
+            for(int l=0; l<5; ++l)
+            {
+                double sum = 0.0;
+                for(int m=0; m<5; ++m) sum += dhit_dtrack.get(i,m)*e[PackedSymmetricMatrix.index(m,l)];
+                row[l] = sum;
+            }
+            for(int j=0; j<=i; ++j)
+            {
+                double sum = 0.0;
+                for(int l=0; l<5; ++l) sum += row[l]*dhit_dtrack.get(j,l);
+                _err[k++] = sum;
+            }
+        }
     }
     
     // copy constructor
     public HitError( HitError herr )
     {
-        _size = herr.size();
-        _mat = herr.matrix();
+        _size = herr._size;
+        _err = (double[]) herr._err.clone();
     }
     
     // assignment
@@ -150,7 +128,7 @@ public class HitError
     // Return the underlying matrix.
     public  Matrix matrix()
     {
-        return _mat.copy();
+        return PackedSymmetricMatrix.toMatrix(_err, _size);
     }
     
     // return the dimension of the matrix
@@ -162,72 +140,87 @@ public class HitError
     // accessor
     public double get( int i, int j )
     {
-        return _mat.get(i,j);
+        return _err[index(i,j)];
     }
     
     // set
-    // This is a symmetric matrix, so always set the
-    // other element as well.
+    // This is a symmetric matrix, so the
+    // other element is the same.
     public void set(int i, int j, double val)
     {
-        _mat.set(i, j, val);
-        _mat.set(j, i, val);
+        _err[index(i,j)] = val;
     }
     
     // minimum
     public double min( )
-    { return _mat.min(); }
+    {
+        double min = _err.length==0 ? 0.0 : _err[0];
+        for(int k=1; k<_err.length; ++k) if(_err[k]<min) min = _err[k];
+        return min;
+    }
     
     // maximum
     public double max( )
-    { return _mat.max(); }
+    {
+        double max = _err.length==0 ? 0.0 : _err[0];
+        for(int k=1; k<_err.length; ++k) if(_err[k]>max) max = _err[k];
+        return max;
+    }
     
     // absolute minimum
     public double amin( )
-    { return _mat.amin(); }
+    {
+        double amin = _err.length==0 ? 0.0 : Math.abs(_err[0]);
+        for(int k=1; k<_err.length; ++k) if(Math.abs(_err[k])<amin) amin = Math.abs(_err[k]);
+        return amin;
+    }
     
     // absolute maximum
     public double amax( )
-    { return _mat.amax(); }
+    {
+        double amax = _err.length==0 ? 0.0 : Math.abs(_err[0]);
+        for(int k=1; k<_err.length; ++k) if(Math.abs(_err[k])>amax) amax = Math.abs(_err[k]);
+        return amax;
+    }
     
-    // invert -- return 0 for success
+    // invert in place -- return 0 for success
     public int invert()
     {
-        // Count on Matrix class to throw an exception for no inverse
-        // need to check
-        _mat.inverse();
-        return 0;
+        return PackedSymmetricMatrix.invert(_err, _size, new double[_size*_size]);
     }
     
     // +=
     public HitError plusEquals( HitError herr)
     {
         if(_size != herr.size()) throw new IllegalArgumentException("HitVectors have different dimensions!");
-        
-        return new HitError( _mat.plusEquals(herr.matrix()) );
+        for(int k=0; k<_err.length; ++k) _err[k] += herr._err[k];
+        return new HitError( this );
     }
     
-    
     // -=
     public HitError minusEquals( HitError herr)
     {
         if(_size != herr.size()) throw new IllegalArgumentException("HitVectors have different dimensions!");
-        
-        return new HitError( _mat.minusEquals(herr.matrix()) );
+        for(int k=0; k<_err.length; ++k) _err[k] -= herr._err[k];
+        return new HitError( this );
     }
     
     // error + error
     public HitError
             plus( HitError he)
     {
-        return new HitError( _mat.plus(he.matrix()) );
+        HitError sum = new HitError( this );
+        sum.plusEquals(he);
+        return sum;
     }
     
     // error - error
     public HitError
             minus( HitError he)
     {
-        return new HitError( _mat.minus(he.matrix())  );
+        HitError diff = new HitError( this );
+        diff.minusEquals(he);
+        return diff;
     }
     
     // equality
@@ -235,13 +228,9 @@ public class HitError
     public boolean equals( HitError he)
     {
         if ( _size != he.size() ) return false;
-        Matrix tmp = he.matrix();
-        for(int i =0; i<_size; ++i)
+        for(int k=0; k<_err.length; ++k)
         {
-            for (int j=0; j<_size; ++j)
-            {
-                if(_mat.get(i,j)!=tmp.get(i,j)) return false;
-            }
+            if(_err[k]!=he._err[k]) return false;
         }
         return true;
     }
@@ -259,13 +248,24 @@ public class HitError
     //    return is_equal( lhs._err, rhs._err );
     //  }
     
+    // The packed storage of this HitError, for use by the in place kernels.
+    double[] array()
+    {
+        return _err;
+    }
+    
+    private int index(int i, int j)
+    {
+        if( i<0 || i>=_size || j<0 || j>=_size ) throw new ArrayIndexOutOfBoundsException("HitError index ("+i+","+j+") out of range.");
+        return i>=j ? i*(i+1)/2+j : j*(j+1)/2+i;
+    }
+    
     // output stream
     public String toString()
     {
         String className = getClass().getName();
         int lastDot = className.lastIndexOf('.');
         if(lastDot!=-1)className = className.substring(lastDot+1);
-        
-        return className+"\n"+_mat;
+        return className+"\n"+matrix();
     }
 }
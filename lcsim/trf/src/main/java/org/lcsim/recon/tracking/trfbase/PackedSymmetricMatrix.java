@@ -0,0 +1,220 @@
+package org.lcsim.recon.tracking.trfbase;
+
+import Jama.Matrix;
+
+/**
+ * Static kernels for small symmetric matrices stored in packed form.
+ * The lower triangle is stored row by row: (0,0), (1,0), (1,1), (2,0), ...
+ * so element (i,j) with i>=j is at index i*(i+1)/2+j.
+ * A symmetric 5x5 matrix, like the TrackError, has 15 elements.
+ *
+ * @version $Id$
+ */
+public final class PackedSymmetricMatrix
+{
+
+    // ensure that no instances of this class can be created
+    private PackedSymmetricMatrix()
+    {
+    }
+
+    /**
+     * Number of packed elements of an n x n symmetric matrix.
+     *
+     * @param   n  The dimension of the matrix.
+     * @return  n*(n+1)/2
+     */
+    public static int size(int n)
+    {
+        return n*(n+1)/2;
+    }
+
+    /**
+     * Index of element (i,j) in the packed array.
+     *
+     * @param   i  row index.
+     * @param   j  column index.
+     * @return  The index of element (i,j), which is also that of element (j,i).
+     */
+    public static int index(int i, int j)
+    {
+        return i>=j ? i*(i+1)/2+j : j*(j+1)/2+i;
+    }
+
+    /**
+     * Pack the lower triangle of a square matrix.
+     *
+     * @param   mat  The n x n matrix.
+     * @param   packed  The array to fill with n*(n+1)/2 elements.
+     */
+    public static void pack(double[][] mat, double[] packed)
+    {
+        int k = 0;
+        for(int i=0; i<mat.length; ++i)
+        {
+            if (mat[i].length != mat.length)
+            {
+                throw new IllegalArgumentException("All rows must have the same length.");
+            }
+            for(int j=0; j<=i; ++j) packed[k++] = mat[i][j];
+        }
+    }
+
+    /**
+     * Unpack into a full square array.
+     *
+     * @param   packed  The packed elements.
+     * @param   n  The dimension of the matrix.
+     * @return  n x n array of doubles.
+     */
+    public static double[][] unpack(double[] packed, int n)
+    {
+        double[][] mat = new double[n][n];
+        int k = 0;
+        for(int i=0; i<n; ++i)
+        {
+            for(int j=0; j<=i; ++j)
+            {
+                mat[i][j] = packed[k];
+                mat[j][i] = packed[k];
+                ++k;
+            }
+        }
+        return mat;
+    }
+
+    /**
+     * Unpack into a Jama Matrix.
+     *
+     * @param   packed  The packed elements.
+     * @param   n  The dimension of the matrix.
+     * @return  n x n Jama Matrix.
+     */
+    public static Matrix toMatrix(double[] packed, int n)
+    {
+        return new Matrix(unpack(packed, n), n, n);
+    }
+
+    /**
+     * Invert a packed symmetric matrix in place, using Gauss-Jordan
+     * elimination with partial pivoting.
+     *
+     * @param   packed  The packed elements, replaced by those of the inverse.
+     * @param   n  The dimension of the matrix, at most 8.
+     * @param   work  Scratch space of at least n*n elements.
+     * @return  0 for success, 1 if the matrix is singular, in which case
+     *          <em>packed</em> is left unchanged.
+     */
+    public static int invert(double[] packed, int n, double[] work)
+    {
+        if(n>8) throw new IllegalArgumentException("Matrix dimension "+n+" is larger than 8.");
+        // Unpack into the work array, row major.
+        for(int i=0; i<n; ++i)
+        {
+            for(int j=0; j<=i; ++j)
+            {
+                double val = packed[i*(i+1)/2+j];
+                work[i*n+j] = val;
+                work[j*n+i] = val;
+            }
+        }
+
+        // The row swaps are recorded in the bytes of a long.
+        long perm = 0;
+        for(int col=0; col<n; ++col)
+        {
+            // Find the pivot.
+            int piv = col;
+            double big = Math.abs(work[col*n+col]);
+            for(int row=col+1; row<n; ++row)
+            {
+                double a = Math.abs(work[row*n+col]);
+                if(a>big)
+                {
+                    big = a;
+                    piv = row;
+                }
+            }
+            if(big==0.0) return 1;
+            if(piv!=col)
+            {
+                for(int k=0; k<n; ++k)
+                {
+                    double tmp = work[col*n+k];
+                    work[col*n+k] = work[piv*n+k];
+                    work[piv*n+k] = tmp;
+                }
+            }
+            perm |= ((long)piv) << (8*col);
+
+            // Eliminate, building the inverse in place.
+            double pinv = 1.0/work[col*n+col];
+            work[col*n+col] = 1.0;
+            for(int k=0; k<n; ++k) work[col*n+k] *= pinv;
+            for(int row=0; row<n; ++row)
+            {
+                if(row==col) continue;
+                double f = work[row*n+col];
+                if(f==0.0) continue;
+                work[row*n+col] = 0.0;
+                for(int k=0; k<n; ++k) work[row*n+k] -= f*work[col*n+k];
+            }
+        }
+
+        // Undo the row swaps as column swaps, in reverse order.
+        for(int col=n-1; col>=0; --col)
+        {
+            int piv = (int)((perm >>> (8*col)) & 0xff);
+            if(piv!=col)
+            {
+                for(int k=0; k<n; ++k)
+                {
+                    double tmp = work[k*n+col];
+                    work[k*n+col] = work[k*n+piv];
+                    work[k*n+piv] = tmp;
+                }
+            }
+        }
+
+        // Pack the symmetrized inverse.
+        int k = 0;
+        for(int i=0; i<n; ++i)
+        {
+            for(int j=0; j<=i; ++j) packed[k++] = 0.5*(work[i*n+j]+work[j*n+i]);
+        }
+        return 0;
+    }
+
+    /**
+     * Similarity transform of a packed symmetric 5x5 matrix, D * E * D(transpose),
+     * with D a 5x5 matrix stored row major.
+     *
+     * @param   der  The 25 elements of D.
+     * @param   in  The 15 packed elements of E.
+     * @param   out  The 15 packed elements of the result, which may be <em>in</em>.
+     */
+    public static void similarity5(double[] der, double[] in, double[] out)
+    {
+        double e00=in[0];
+        double e10=in[1],  e11=in[2];
+        double e20=in[3],  e21=in[4],  e22=in[5];
+        double e30=in[6],  e31=in[7],  e32=in[8],  e33=in[9];
+        double e40=in[10], e41=in[11], e42=in[12], e43=in[13], e44=in[14];
+
+        // Row i of D*E times the rows j<=i of D gives row i of the result.
+        int k = 0;
+        for(int i=0; i<5; ++i)
+        {
+            double d0=der[5*i], d1=der[5*i+1], d2=der[5*i+2], d3=der[5*i+3], d4=der[5*i+4];
+            double r0 = d0*e00 + d1*e10 + d2*e20 + d3*e30 + d4*e40;
+            double r1 = d0*e10 + d1*e11 + d2*e21 + d3*e31 + d4*e41;
+            double r2 = d0*e20 + d1*e21 + d2*e22 + d3*e32 + d4*e42;
+            double r3 = d0*e30 + d1*e31 + d2*e32 + d3*e33 + d4*e43;
+            double r4 = d0*e40 + d1*e41 + d2*e42 + d3*e43 + d4*e44;
+            for(int j=0; j<=i; ++j)
+            {
+                out[k++] = r0*der[5*j] + r1*der[5*j+1] + r2*der[5*j+2] + r3*der[5*j+3] + r4*der[5*j+4];
+            }
+        }
+    }
+}
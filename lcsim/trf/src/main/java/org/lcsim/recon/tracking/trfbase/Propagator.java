@@ -228,7 +228,8 @@ public abstract class Propagator
         PropStat pstat = vecProp(tre,srf,tder);
         if ( ! pstat.success() ) return pstat;
         TrackError err = tre.error();
-        tre.setError( err.Xform(tder) );
+        err.transform(tder);
+        tre.setError( err );
         if ( tre.checkError() != 0 )
         {
             return new PropStat();
@@ -303,9 +304,8 @@ public abstract class Propagator
         if ( ! pstat.success() ) return pstat;
         //System.out.println("\n pstat= "+pstat+"\n tre= "+tre);
         TrackError err = tre.error();
-        TrackError tmp = err.Xform(deriv);
-        //tre.set_error( err.Xform(deriv) );
-        tre.setError( tmp );
+        err.transform(deriv);
+        tre.setError( err );
         if ( tre.checkError() != 0 )
         {
             return new PropStat();
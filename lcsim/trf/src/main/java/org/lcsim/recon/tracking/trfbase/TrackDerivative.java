@@ -39,19 +39,21 @@ import Jama.Matrix;
 
 public class TrackDerivative
 {
-    private Matrix _mat;
+    // The elements, row by row.
+    private double[] _mat;
     private int _size;
+    
     //
     
     /**
-     * Default constructor creates 5x5 matrix of zeros
+     * Default constructor creates 5x5 identity matrix
      *
      */
     public TrackDerivative( )
     {
         _size = 5;
-        Matrix tmp = Matrix.identity(5,5);
-        _mat = tmp;
+        _mat = new double[25];
+        setIdentity();
     }
     
     //
@@ -63,16 +65,17 @@ public class TrackDerivative
      */
     public TrackDerivative(double[][] mat)
     {
-        _size = mat.length;
+        if( mat.length != 5) throw new IllegalArgumentException("Matrix must be 5x5!");
+        _size = 5;
+        _mat = new double[25];
         for (int i = 0; i < _size; i++)
         {
             if (mat[i].length != _size)
             {
                 throw new IllegalArgumentException("All rows must have the same length.");
             }
+            System.arraycopy(mat[i], 0, _mat, 5*i, 5);
         }
-        _mat = new Matrix(mat, _size, _size);
-        
     }
     
     //
@@ -87,7 +90,7 @@ public class TrackDerivative
         _size = mat.getColumnDimension();
         if( _size!= mat.getRowDimension()) throw new IllegalArgumentException("Matrix must be square!");
         if( _size != 5) throw new IllegalArgumentException("Matrix must be 5x5!");
-        _mat = mat.copy();
+        _mat = mat.getRowPackedCopy();
     }
     
     //
@@ -100,7 +103,8 @@ public class TrackDerivative
     public TrackDerivative( TrackDerivative td)
     {
         _size = td._size;
-        _mat = td._mat.copy();
+        _mat = new double[25];
+        System.arraycopy(td._mat, 0, _mat, 0, 25);
     }
     
     //
@@ -112,7 +116,9 @@ public class TrackDerivative
      */
     public double[][] matrix()
     {
-        return _mat.getArrayCopy();
+        double[][] tmp = new double[5][5];
+        for(int i=0; i<5; ++i) System.arraycopy(_mat, 5*i, tmp[i], 0, 5);
+        return tmp;
     }
     
     
@@ -132,14 +138,13 @@ public class TrackDerivative
         {
             for(int j = 0; j<_size; ++j)
             {
-                sb.append(_mat.get(i,j)).append(" ");
+                sb.append(_mat[5*i+j]).append(" ");
             }
             sb.append("\n");
         }
         return sb.append("\n").toString();
     }
     
-    
     /**
      * Return the TrackDerivative as a Jama Matrix.
      *
@@ -147,10 +152,9 @@ public class TrackDerivative
      */
     public Matrix getMatrix()
     {
-        return _mat.copy();
+        return new Matrix(matrix(), 5, 5);
     }
     
-    
     /**
      * Set an element of the TrackDerivative.
      *
@@ -160,10 +164,9 @@ public class TrackDerivative
      */
     public void set(int i, int j, double val)
     {
-        _mat.set(i,j,val);
+        _mat[index(i,j)] = val;
     }
     
-    
     /**
      * Set the elements equal to those of an existing TrackDerivative.
      *
@@ -171,16 +174,48 @@ public class TrackDerivative
      */
     public void set(TrackDerivative td)
     {
-        for (int i = 0 ; i < _size ; ++i )
+        System.arraycopy(td._mat, 0, _mat, 0, 25);
+    }
+    
+    /**
+     * Set the elements to the product of two TrackDerivatives,
+     * for example the derivatives of two successive propagations.
+     * Either argument may be <em>this</em>.
+     *
+     * @param   second  The TrackDerivative on the left.
+     * @param   first  The TrackDerivative on the right.
+     */
+    public void setProduct(TrackDerivative second, TrackDerivative first)
+    {
+        double[] a = second._mat;
+        double[] b = first._mat;
+        if ( a == _mat && b == _mat ) b = (double[]) b.clone();
+        if ( b == _mat )
         {
-            for (int j = 0 ; j < _size ;++j )
+            // Columns of the result only depend on the same column of b.
+            for(int j=0; j<5; ++j)
             {
-                set(i,j,td.get(i,j));
+                double b0=b[j], b1=b[5+j], b2=b[10+j], b3=b[15+j], b4=b[20+j];
+                for(int i=0; i<5; ++i)
+                {
+                    _mat[5*i+j] = a[5*i]*b0 + a[5*i+1]*b1 + a[5*i+2]*b2 + a[5*i+3]*b3 + a[5*i+4]*b4;
+                }
+            }
+        }
+        else
+        {
+            // Rows of the result only depend on the same row of a.
+            for(int i=0; i<5; ++i)
+            {
+                double a0=a[5*i], a1=a[5*i+1], a2=a[5*i+2], a3=a[5*i+3], a4=a[5*i+4];
+                for(int j=0; j<5; ++j)
+                {
+                    _mat[5*i+j] = a0*b[j] + a1*b[5+j] + a2*b[10+j] + a3*b[15+j] + a4*b[20+j];
+                }
             }
         }
     }
     
-    
     /**
      * Get an element of the TrackDerivative.
      *
@@ -190,20 +225,19 @@ public class TrackDerivative
      */
     public double get(int i, int j)
     {
-        return _mat.get(i, j);
+        return _mat[index(i,j)];
     }
     
-    
     /**
      * Convenience method to set TrackDerivative to the identity.
      *
      */
     public void setIdentity()
     {
-        _mat = Matrix.identity(_size, _size);
+        for(int k=0; k<25; ++k) _mat[k] = 0.0;
+        for(int i=0; i<5; ++i) _mat[6*i] = 1.0;
     }
     
-    
     /**
      * Matrix multiply
      *
@@ -212,11 +246,11 @@ public class TrackDerivative
      */
     public TrackDerivative times(TrackDerivative td)
     {
-        return new TrackDerivative(_mat.times(td._mat));
+        TrackDerivative prod = new TrackDerivative(this);
+        prod.setProduct(this, td);
+        return prod;
     }
     
-    
-    
     /**
      * Absolute maximum TrackDerivative element.
      *
@@ -224,19 +258,14 @@ public class TrackDerivative
      */
     public double amax()
     {
-        double[][] tmp = matrix();
-        double amax = Math.abs(tmp[0][0]);
-        for(int i = 0; i<5; ++i)
+        double amax = Math.abs(_mat[0]);
+        for(int k = 1; k<25; ++k)
         {
-            for(int j = 0; j<5; ++j)
-            {
-                if( Math.abs(tmp[i][j])>amax) amax = Math.abs(tmp[i][j]);
-            }
+            if( Math.abs(_mat[k])>amax) amax = Math.abs(_mat[k]);
         }
         return amax;
     }
     
-    
     /**
      * Maximum TrackDerivative element.
      *
@@ -244,19 +273,14 @@ public class TrackDerivative
      */
     public double max()
     {
-        double[][] tmp = matrix();
-        double max = tmp[0][0];
-        for(int i = 0; i<5; ++i)
+        double max = _mat[0];
+        for(int k = 1; k<25; ++k)
         {
-            for(int j = 0; j<5; ++j)
-            {
-                if( tmp[i][j]>max) max = tmp[i][j];
-            }
+            if( _mat[k]>max) max = _mat[k];
         }
         return max;
     }
     
-    
     /**
      * Minimum TrackDerivative element.
      *
@@ -264,19 +288,14 @@ public class TrackDerivative
      */
     public double min()
     {
-        double[][] tmp = matrix();
-        double min = tmp[0][0];
-        for(int i = 0; i<5; ++i)
+        double min = _mat[0];
+        for(int k = 1; k<25; ++k)
         {
-            for(int j = 0; j<5; ++j)
-            {
-                if( tmp[i][j]<min) min = tmp[i][j];
-            }
+            if( _mat[k]<min) min = _mat[k];
         }
         return min;
     }
     
-    
     /**
      *Absolute minimum TrackDerivative element.
      *
@@ -284,20 +303,14 @@ public class TrackDerivative
      */
     public double amin()
     {
-        double[][] tmp = matrix();
-        double amin = Math.abs(tmp[0][0]);
-        for(int i = 0; i<5; ++i)
+        double amin = Math.abs(_mat[0]);
+        for(int k = 1; k<25; ++k)
         {
-            for(int j = 0; j<5; ++j)
-            {
-                if( Math.abs(tmp[i][j])<amin) amin = Math.abs(tmp[i][j]);
-            }
+            if( Math.abs(_mat[k])<amin) amin = Math.abs(_mat[k]);
         }
         return amin;
     }
     
-    
-    
     /**
      * Math function minus.
      *
@@ -306,10 +319,11 @@ public class TrackDerivative
      */
     public TrackDerivative minus(TrackDerivative td)
     {
-        return new TrackDerivative(getMatrix().minus(td.getMatrix()));
+        TrackDerivative diff = new TrackDerivative(this);
+        for(int k=0; k<25; ++k) diff._mat[k] -= td._mat[k];
+        return diff;
     }
     
-    
     /**
      * Math function plus.
      *
@@ -318,10 +332,11 @@ public class TrackDerivative
      */
     public TrackDerivative plus(TrackDerivative td)
     {
-        return new TrackDerivative(getMatrix().plus(td.getMatrix()));
+        TrackDerivative sum = new TrackDerivative(this);
+        for(int k=0; k<25; ++k) sum._mat[k] += td._mat[k];
+        return sum;
     }
     
-    
     /** Equality.
      *
      * @return true if TrackDerivatives are equal.
@@ -330,17 +345,13 @@ public class TrackDerivative
     public boolean equals( TrackDerivative td)
     {
         if( _size != td._size ) return false;
-        for (int i = 0 ;i < _size ; ++i )
+        for (int k = 0 ;k < 25 ; ++k )
         {
-            for (int j = 0; j < _size ; ++j )
-            {
-                if( _mat.get(i,j) != td._mat.get(i,j) ) return false;
-            }
+            if( _mat[k] != td._mat[k] ) return false;
         }
         return true;
     }
     
-    
     /** Inequality convenience method.
      *
      * @return true if TrackDerivatives are <b> not </b> equal.
@@ -351,7 +362,6 @@ public class TrackDerivative
         return !equals(td);
     }
     
-    
     /** Equality within tolerance.
      *
      * @return true if TrackDerivatives are equal within tolerance.
@@ -360,24 +370,41 @@ public class TrackDerivative
     public boolean isEqual( TrackDerivative td)
     {
         if( _size != td._size ) return false;
-        for (int i = 0 ;i < _size ; ++i )
+        for (int k = 0 ;k < 25 ; ++k )
         {
-            for (int j = 0; j < _size ; ++j )
-            {
-                if( ! TRFMath.isEqual(_mat.get(i,j),td._mat.get(i,j) ) ) return false;
-            }
+            if( ! TRFMath.isEqual(_mat[k],td._mat[k] ) ) return false;
         }
         return true;
     }
     
-    
     /**
      * Matrix transpose.
      * Transposes rows and columns of TrackDerivative in place.
      */
     public void transpose()
     {
-        _mat = _mat.transpose();
+        for(int i=0; i<5; ++i)
+        {
+            for(int j=0; j<i; ++j)
+            {
+                double tmp = _mat[5*i+j];
+                _mat[5*i+j] = _mat[5*j+i];
+                _mat[5*j+i] = tmp;
+            }
+        }
     }
     
+    /**
+     * The storage of this TrackDerivative, for use by the in place kernels.
+     */
+    double[] array()
+    {
+        return _mat;
+    }
+    
+    private static int index(int i, int j)
+    {
+        if( i<0 || i>4 || j<0 || j>4 ) throw new ArrayIndexOutOfBoundsException("TrackDerivative index ("+i+","+j+") out of range.");
+        return 5*i+j;
+    }
 }
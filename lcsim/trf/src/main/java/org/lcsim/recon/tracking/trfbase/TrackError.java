@@ -38,7 +38,8 @@ import Jama.Matrix;
  */
 public class TrackError
 {
-    private Matrix _mat;
+    // The lower triangle, packed as described in PackedSymmetricMatrix.
+    private double[] _err;
     private int _size;
     
     //
@@ -50,45 +51,45 @@ public class TrackError
     public TrackError( )
     {
         _size = 5;
-        _mat = new Matrix(5,5);
+        _err = new double[15];
     }
     
     //
     
     /**
      * Constructor from array.
+     * Only the lower triangle is used, since the matrix is symmetric.
      *
      * @param   mat  5x5 array
      */
     public TrackError(double[][] mat)
     {
-        _size = mat.length;
-        for (int i = 0; i < _size; i++)
+        if(mat.length!=5)
         {
-            if (mat[i].length != _size)
-            {
-                throw new IllegalArgumentException("All rows must have the same length.");
-            }
+            throw new IllegalArgumentException("TrackError array must be 5x5.");
         }
-        _mat = new Matrix(mat, _size, _size);
-        
+        _size = 5;
+        _err = new double[15];
+        PackedSymmetricMatrix.pack(mat, _err);
     }
     
     //
     
     /**
      * Constructor from Jama Matrix.
+     * Only the lower triangle is used, since the matrix is symmetric.
      *
      * @param   mat  5x5 Jama Matrix of doubles representing the Track error matrix.
      */
     public TrackError( Matrix mat)
     {
-        if(mat.getRowDimension()!=5 && mat.getColumnDimension() != 5)
+        if(mat.getRowDimension()!=5 || mat.getColumnDimension() != 5)
         {
             throw new IllegalArgumentException("TrackError Matrix must be 5x5.");
         }
-        _size = mat.getRowDimension();
-        _mat = new Matrix(mat.getArrayCopy());
+        _size = 5;
+        _err = new double[15];
+        PackedSymmetricMatrix.pack(mat.getArray(), _err);
     }
     
     //
@@ -99,7 +100,8 @@ public class TrackError
      */
     public void setIdentity()
     {
-        _mat = Matrix.identity(_size, _size);
+        for(int k=0; k<15; ++k) _err[k] = 0.0;
+        for(int i=0; i<5; ++i) _err[i*(i+1)/2+i] = 1.0;
     }
     
     //
@@ -112,7 +114,8 @@ public class TrackError
     public TrackError( TrackError te)
     {
         _size = 5;
-        _mat = te.getMatrix();
+        _err = new double[15];
+        System.arraycopy(te._err, 0, _err, 0, 15);
     }
     
     //
@@ -123,8 +126,8 @@ public class TrackError
      * @return  5x5 double array.
      */
     public double[][] matrix()
-    { //need to fix this!
-        return _mat.getArrayCopy();
+    {
+        return PackedSymmetricMatrix.unpack(_err, _size);
     }
     
     
@@ -140,11 +143,12 @@ public class TrackError
         if(lastDot!=-1)className = className.substring(lastDot+1);
         
         StringBuffer sb = new StringBuffer(className+"\n");
+        int k = 0;
         for(int i=0; i<_size; ++i)
         {
             for(int j = 0; j<=i; ++j)
             {
-                sb.append(_mat.get(i,j)).append(" ");
+                sb.append(_err[k++]).append(" ");
             }
             sb.append("\n");
         }
@@ -158,7 +162,7 @@ public class TrackError
      */
     public Matrix getMatrix()
     {
-        return _mat.copy();
+        return PackedSymmetricMatrix.toMatrix(_err, _size);
     }
     
     
@@ -174,10 +178,20 @@ public class TrackError
      */
     public void set(int i, int j, double val)
     {
-        // This is a symmetric matrix, so always set the
-        // other element as well.
-        _mat.set(i,j,val);
-        if(i!=j) _mat.set(j,i,val);
+        // This is a symmetric matrix, so the
+        // other element is the same.
+        _err[index(i,j)] = val;
+    }
+    
+    
+    /**
+     * Set the elements equal to those of an existing TrackError.
+     *
+     * @param   te  TrackError to be equivalent to.
+     */
+    public void set(TrackError te)
+    {
+        System.arraycopy(te._err, 0, _err, 0, 15);
     }
     
     
@@ -190,15 +204,9 @@ public class TrackError
      */
     public double get(int i, int j)
     {
-        return _mat.get(i, j);
+        return _err[index(i,j)];
     }
     
-    //cng what is the signature of this method?
-    //	public void Xform( TrackDerivative deriv)
-    //	{
-    //		_mat = deriv.getMatrix().times(getMatrix().times(deriv.getMatrix().transpose()));
-    //	}
-    
     
     /**
      * TrackDerivative * TrackError * TrackDerivative(transpose).
@@ -208,7 +216,21 @@ public class TrackError
      */
     public TrackError Xform( TrackDerivative deriv)
     {
-        return new TrackError(deriv.getMatrix().times(getMatrix().times(deriv.getMatrix().transpose())));
+        TrackError te = new TrackError();
+        PackedSymmetricMatrix.similarity5(deriv.array(), _err, te._err);
+        return te;
+    }
+    
+    
+    /**
+     * Transform in place: replace <em>this</em> by
+     * TrackDerivative * <em>this</em> * TrackDerivative(transpose).
+     *
+     * @param   deriv TrackDerivative by which to transform the TrackError.
+     */
+    public void transform( TrackDerivative deriv)
+    {
+        PackedSymmetricMatrix.similarity5(deriv.array(), _err, _err);
     }
     
     
@@ -220,7 +242,7 @@ public class TrackError
      */
     public TrackError minus(TrackError te)
     {
-        return new TrackError(getMatrix().minus(te.getMatrix()));
+        return new TrackError(this).minusEquals(te);
     }
     
     
@@ -232,19 +254,58 @@ public class TrackError
      */
     public TrackError plus(TrackError te)
     {
-        return new TrackError(getMatrix().plus(te.getMatrix()));
+        return new TrackError(this).plusEquals(te);
+    }
+    
+    
+    /**
+     * Subtract a TrackError in place.
+     *
+     * @param   te  TrackError to be subtracted.
+     * @return     <em>this</em>, minus TrackError te.
+     */
+    public TrackError minusEquals(TrackError te)
+    {
+        for(int k=0; k<15; ++k) _err[k] -= te._err[k];
+        return this;
+    }
+    
+    
+    /**
+     * Add a TrackError in place.
+     *
+     * @param   te  TrackError to be added.
+     * @return     <em>this</em>, plus TrackError te.
+     */
+    public TrackError plusEquals(TrackError te)
+    {
+        for(int k=0; k<15; ++k) _err[k] += te._err[k];
+        return this;
     }
     
     
     /**
      * Math function multiply.
+     * The product of two symmetric matrices is in general not symmetric;
+     * only its lower triangle is kept.
      *
      * @param   te  TrackError to be multiplied by.
      * @return     <em>this</em> times TrackError te.
      */
     public TrackError times(TrackError te)
     {
-        return new TrackError( _mat.times(te._mat) );
+        TrackError prod = new TrackError();
+        int k = 0;
+        for(int i=0; i<5; ++i)
+        {
+            for(int j=0; j<=i; ++j)
+            {
+                double sum = 0.0;
+                for(int l=0; l<5; ++l) sum += get(i,l)*te.get(l,j);
+                prod._err[k++] = sum;
+            }
+        }
+        return prod;
     }
     
     
@@ -255,7 +316,9 @@ public class TrackError
      */
     public TrackError inverse( )
     {
-        return new TrackError(getMatrix().inverse());
+        TrackError te = new TrackError(this);
+        if(te.invert()!=0) throw new RuntimeException("Matrix is singular.");
+        return te;
     }
     
     
@@ -266,14 +329,10 @@ public class TrackError
      */
     public double max()
     {
-        double[][] tmp = matrix();
-        double max = tmp[0][0];
-        for(int i = 0; i<5; ++i)
+        double max = _err[0];
+        for(int k = 1; k<15; ++k)
         {
-            for(int j = 0; j<5; ++j)
-            {
-                if( tmp[i][j]>max) max = tmp[i][j];
-            }
+            if( _err[k]>max) max = _err[k];
         }
         return max;
     }
@@ -286,14 +345,10 @@ public class TrackError
      */
     public double amax()
     {
-        double[][] tmp = matrix();
-        double amax = Math.abs(tmp[0][0]);
-        for(int i = 0; i<5; ++i)
+        double amax = Math.abs(_err[0]);
+        for(int k = 1; k<15; ++k)
         {
-            for(int j = 0; j<5; ++j)
-            {
-                if( Math.abs(tmp[i][j])>amax) amax = Math.abs(tmp[i][j]);
-            }
+            if( Math.abs(_err[k])>amax) amax = Math.abs(_err[k]);
         }
         return amax;
     }
@@ -306,14 +361,10 @@ public class TrackError
      */
     public double min()
     {
-        double[][] tmp = matrix();
-        double min = tmp[0][0];
-        for(int i = 0; i<5; ++i)
+        double min = _err[0];
+        for(int k = 1; k<15; ++k)
         {
-            for(int j = 0; j<5; ++j)
-            {
-                if( tmp[i][j]<min) min = tmp[i][j];
-            }
+            if( _err[k]<min) min = _err[k];
         }
         return min;
     }
@@ -326,14 +377,10 @@ public class TrackError
      */
     public double amin()
     {
-        double[][] tmp = matrix();
-        double amin = Math.abs(tmp[0][0]);
-        for(int i = 0; i<5; ++i)
+        double amin = Math.abs(_err[0]);
+        for(int k = 1; k<15; ++k)
         {
-            for(int j = 0; j<5; ++j)
-            {
-                if( Math.abs(tmp[i][j])<amin) amin = Math.abs(tmp[i][j]);
-            }
+            if( Math.abs(_err[k])<amin) amin = Math.abs(_err[k]);
         }
         return amin;
     }
@@ -349,12 +396,9 @@ public class TrackError
     public boolean equals( TrackError te)
     {
         if( _size != te._size ) return false;
-        for (int i = 0 ;i < _size ; ++i )
+        for (int k = 0 ;k < 15 ; ++k )
         {
-            for (int j = 0; j < _size ; ++j )
-            {
-                if( _mat.get(i,j) != te._mat.get(i,j) ) return false;
-            }
+            if( _err[k] != te._err[k] ) return false;
         }
         return true;
     }
@@ -381,12 +425,9 @@ public class TrackError
     public boolean isEqual( TrackError te)
     {
         if( _size != te._size ) return false;
-        for (int i = 0 ;i < _size ; ++i )
+        for (int k = 0 ;k < 15 ; ++k )
         {
-            for (int j = 0; j < _size ; ++j )
-            {
-                if( !TRFMath.isEqual(_mat.get(i,j), te._mat.get(i,j)) ) return false;
-            }
+            if( !TRFMath.isEqual(_err[k], te._err[k]) ) return false;
         }
         return true;
     }
@@ -399,9 +440,7 @@ public class TrackError
      */
     public int invert()
     {
-        int stat = 0;
-        _mat = _mat.inverse();
-        return stat;
+        return PackedSymmetricMatrix.invert(_err, _size, new double[25]);
     }
     
     /**
@@ -413,17 +452,28 @@ public class TrackError
     {
         
         double[] vec = new double[_size];
+        int k = 0;
         for(int irow=0; irow<_size; irow++ )
         {
-            vec[irow] = 1.0/Math.sqrt( _mat.get(irow,irow) );
-            double rowfac = Math.sqrt( vec[irow] );
+            vec[irow] = 1.0/Math.sqrt( _err[irow*(irow+1)/2+irow] );
             for ( int icol=0; icol<=irow; icol++ )
             {
-                double tmp = _mat.get(irow,icol);
-                tmp *= vec[irow]*vec[icol];
-                _mat.set(irow,icol, tmp);
-                _mat.set(icol,irow, tmp);
+                _err[k++] *= vec[irow]*vec[icol];
             }
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * The packed storage of this TrackError, for use by the in place kernels.
+     */
+    double[] array()
+    {
+        return _err;
+    }
+    
+    private static int index(int i, int j)
+    {
+        if( i<0 || i>4 || j<0 || j>4 ) throw new ArrayIndexOutOfBoundsException("TrackError index ("+i+","+j+") out of range.");
+        return i>=j ? i*(i+1)/2+j : j*(j+1)/2+i;
+    }
+}
@@ -39,7 +39,7 @@ import Jama.Matrix;
  */
 public class TrackVector
 {
-    private Matrix _vec;
+    private double[] _vec;
     private int _length;
     //
     
@@ -51,7 +51,7 @@ public class TrackVector
     public TrackVector( )
     {
         _length = 5;
-        _vec = new Matrix(_length,1);
+        _vec = new double[_length];
     }
     
     //
@@ -65,7 +65,8 @@ public class TrackVector
     {
         _length = vec.length;
         if(_length!=5.) throw new IllegalArgumentException();
-        _vec = new Matrix(vec, _length);
+        _vec = new double[_length];
+        System.arraycopy(vec, 0, _vec, 0, _length);
     }
     
     //
@@ -77,12 +78,12 @@ public class TrackVector
      */
     public TrackVector( Matrix mat)
     {
-        if(mat.getRowDimension()!=5 && mat.getColumnDimension() != 1)
+        if(mat.getRowDimension()!=5 || mat.getColumnDimension() != 1)
         {
             throw new IllegalArgumentException("TrackVector Matrix must be 5x1.");
         }
         _length = mat.getRowDimension();
-        _vec = new Matrix(mat.getArrayCopy());
+        _vec = mat.getColumnPackedCopy();
     }
     
     //
@@ -94,8 +95,9 @@ public class TrackVector
      */
     public TrackVector( TrackVector tv)
     {
-        _length = tv.vector().length;
-        _vec  = new Matrix(tv.vector(),_length);
+        _length = tv._length;
+        _vec = new double[_length];
+        System.arraycopy(tv._vec, 0, _vec, 0, _length);
     }
     
     //
@@ -107,7 +109,9 @@ public class TrackVector
      */
     public double[] vector()
     {
-        return _vec.getColumnPackedCopy();
+        double[] tmp = new double[_length];
+        System.arraycopy(_vec, 0, tmp, 0, _length);
+        return tmp;
     }
     
     
@@ -119,12 +123,7 @@ public class TrackVector
      */
     public TrackVector minus( TrackVector tv)
     {
-        double[] tmp = new double[5];
-        for(int i = 0; i<5; ++i)
-        {
-            tmp[i] = _vec.get(i,0)-tv.get(i);
-        }
-        return new TrackVector(tmp);
+        return new TrackVector(this).minusEquals(tv);
     }
     
     
@@ -136,12 +135,49 @@ public class TrackVector
      */
     public TrackVector plus( TrackVector tv)
     {
-        double[] tmp = new double[5];
+        return new TrackVector(this).plusEquals(tv);
+    }
+    
+    
+    /**
+     * Subtract a TrackVector in place.
+     *
+     * @param   tv TrackVector to be subtracted.
+     * @return  <em>this</em>, minus TrackVector tv.
+     */
+    public TrackVector minusEquals( TrackVector tv)
+    {
+        for(int i = 0; i<5; ++i) _vec[i] -= tv._vec[i];
+        return this;
+    }
+    
+    
+    /**
+     * Add a TrackVector in place.
+     *
+     * @param   tv TrackVector to be added.
+     * @return  <em>this</em>, plus TrackVector tv.
+     */
+    public TrackVector plusEquals( TrackVector tv)
+    {
+        for(int i = 0; i<5; ++i) _vec[i] += tv._vec[i];
+        return this;
+    }
+    
+    
+    /**
+     * Transport in place: replace <em>this</em> by TrackDerivative * <em>this</em>.
+     *
+     * @param   deriv TrackDerivative by which to transport the TrackVector.
+     */
+    public void transform( TrackDerivative deriv)
+    {
+        double[] d = deriv.array();
+        double v0=_vec[0], v1=_vec[1], v2=_vec[2], v3=_vec[3], v4=_vec[4];
         for(int i = 0; i<5; ++i)
         {
-            tmp[i] = _vec.get(i,0)+tv.get(i);
+            _vec[i] = d[5*i]*v0 + d[5*i+1]*v1 + d[5*i+2]*v2 + d[5*i+3]*v3 + d[5*i+4]*v4;
         }
-        return new TrackVector(tmp);
     }
     
     
@@ -159,7 +195,7 @@ public class TrackVector
         StringBuffer sb = new StringBuffer(className+" ");
         for(int i=0; i<_length; ++i)
         {
-            sb.append(_vec.get(i,0)).append(" ");
+            sb.append(_vec[i]).append(" ");
         }
         return sb.append("\n").toString();
     }
@@ -171,7 +207,7 @@ public class TrackVector
      */
     public Matrix getMatrix()
     {
-        return _vec.copy();
+        return new Matrix(_vec, _length);
     }
     
     /**
@@ -181,7 +217,7 @@ public class TrackVector
      */
     public Matrix matrix()
     {
-        return _vec.copy();
+        return new Matrix(_vec, _length);
     }
     
     /**
@@ -192,7 +228,17 @@ public class TrackVector
      */
     public void set(int i, double val)
     {
-        _vec.set(i, 0, val);
+        _vec[i] = val;
+    }
+    
+    /**
+     * Set the elements equal to those of an existing TrackVector.
+     *
+     * @param   tv  TrackVector to be equivalent to.
+     */
+    public void set(TrackVector tv)
+    {
+        System.arraycopy(tv._vec, 0, _vec, 0, _length);
     }
     
     /**
@@ -203,9 +249,16 @@ public class TrackVector
      */
     public double get(int i)
     {
-        return _vec.get(i,0);
+        return _vec[i];
     }
     
+    /**
+     * The storage of this TrackVector, for use by the in place kernels.
+     */
+    double[] array()
+    {
+        return _vec;
+    }
     
     /**
      * Equality operator.
@@ -324,8 +377,16 @@ public class TrackVector
      */
     public static double chisqDiff(TrackVector tv, TrackError te)
     {
-        // cng needs to be checked...
-        return (tv._vec.transpose()).times(te.getMatrix()).times(tv._vec).get(0,0);
+        double[] v = tv._vec;
+        double[] e = te.array();
+        double chsq = 0.0;
+        int k = 0;
+        for(int i = 0; i<5; ++i)
+        {
+            for(int j = 0; j<i; ++j) chsq += 2.0*v[i]*e[k++]*v[j];
+            chsq += v[i]*e[k++]*v[i];
+        }
+        return chsq;
     }
     
 }
@@ -170,7 +170,7 @@ public class BSurfCylinder extends SurfCylinder
     {
         double nsigma = CrossStat.staticNSigma();
         double prec = CrossStat.staticPrecision();
-        double dztrk = nsigma*Math.sqrt(tre.error().matrix()[1][1]) + prec;
+        double dztrk = nsigma*Math.sqrt(tre.error(1,1)) + prec;
         return status(tre,dztrk);
     }
     
@@ -210,7 +210,7 @@ public class PropJoinCyl extends PropDirected
         // Calculate the overall derivative matrix.
         if ( der != null )
         {
-            der = new TrackDerivative( tmpder2.times(tmpder1) );
+            der.setProduct(tmpder2, tmpder1);
         }
         
         // Return the final status.
@@ -277,7 +277,7 @@ public class PropJoinCyl extends PropDirected
         // Calculate the overall derivative matrix.
         if ( der != null )
         {
-            der = new TrackDerivative( tmpder2.times(tmpder1) );
+            der.setProduct(tmpder2, tmpder1);
         }
         // Return the final status.
         return pstat;
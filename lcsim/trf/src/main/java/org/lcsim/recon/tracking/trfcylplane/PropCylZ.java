@@ -152,7 +152,7 @@ public class PropCylZ extends PropDirected
         if ( pstat.success() )
         {
             trv = trv0;
-            if ( deriv != null )  deriv.set(deriv2.times(deriv1));
+            if ( deriv != null )  deriv.setProduct(deriv2, deriv1);
         }
         
         return pstat;
@@ -1,12 +1,13 @@
 package org.lcsim.recon.tracking.trffit;
-import java.util.List;
-import java.util.ArrayList;
 import org.lcsim.recon.tracking.trfutil.Assert;
 import org.lcsim.recon.tracking.trfbase.ETrack;
 import org.lcsim.recon.tracking.trfbase.Hit;
+import org.lcsim.recon.tracking.trfbase.HitDerivative;
+import org.lcsim.recon.tracking.trfbase.HitError;
+import org.lcsim.recon.tracking.trfbase.HitVector;
+import org.lcsim.recon.tracking.trfbase.PackedSymmetricMatrix;
 import org.lcsim.recon.tracking.trfbase.TrackVector;
 import org.lcsim.recon.tracking.trfbase.TrackError;
-import Jama.Matrix;
 // Fit tracks using Kalman filter.
 
 /**
@@ -25,105 +26,28 @@ public class AddFitKalman extends AddFitter
     // Maximum allowed hit dimension.
     private static final int MAXDIM = 3;
     
-    // Maximum number of track vectors.
-    private static final int MAXVECTOR = 1;
+    // Hit containers, sized for the largest hit.
+    // dhit_dtrk, row by row (MAXDIMx5).
+    private final double[] _dhit_dtrk = new double[MAXDIM*5];
+    // hit prediction minus measurement.
+    private final double[] _diff = new double[MAXDIM];
+    // total hit error, then its inverse (packed).
+    private final double[] _hit_err_tot = new double[PackedSymmetricMatrix.size(MAXDIM)];
+    // residual error, then its inverse (packed).
+    private final double[] _hit_res_err = new double[PackedSymmetricMatrix.size(MAXDIM)];
+    // trk_err * dhit_dtrk(transpose) (5xMAXDIM).
+    private final double[] _trk_err_dhit_dtrk = new double[5*MAXDIM];
+    // gain matrix (5xMAXDIM).
+    private final double[] _gain = new double[5*MAXDIM];
+    // dhit_dtrk * new_err (MAXDIMx5).
+    private final double[] _dhit_dtrk_new_err = new double[MAXDIM*5];
+    // scratch space for matrix inversion.
+    private final double[] _work = new double[MAXDIM*MAXDIM];
+    
+    // Track containers.
+    private final TrackVector _new_vec = new TrackVector();
+    private final TrackError _new_err = new TrackError();
     
-    // Maximum number of track errors.
-    private static final int MAXERROR = 1;
-    
-    //private:  // nested classes
-    
-    // The nested class Box holds the vectors, matrices and symmetric
-    // matrices needed for adding a hit in the main class.
-    class Box
-    {
-                /*
-                private:  // typedefs
-                typedef Ptr<TrfVector,AutoPolicy>   VectorPtr;
-                typedef Ptr<TrfSMatrix,AutoPolicy>  SMatrixPtr;
-                typedef Ptr<TrfMatrix,AutoPolicy>   MatrixPtr;
-                typedef vector<VectorPtr>           VectorList;
-                typedef vector<SMatrixPtr>          SMatrixList;
-                typedef vector<MatrixPtr>           MatrixList;
-                 */
-        
-        // enums
-        // number of vectors
-        private static final int  NVECTOR = 2 ;
-        // number of errors
-        private static final int NERROR = 3 ;
-        // number of vectors
-        private static final int  NDERIV = 2 ;
-        // number of gains
-        private static final int  NGAIN = 2 ;
-        
-        // attributes
-        // dimension of the vector, matrix, etc
-        private int _size;
-        // array of vectors
-        List  _vectors;
-        // array of error matrices
-        List _errors;
-        // array of derivatives (Nx5 matrices)
-        List _derivs;
-        // array of gains (5xN matrices)
-        List _gains;
-        
-        // methods
-        // constructor
-        public Box(int size)
-        {
-            _size= size;
-            _vectors = new ArrayList();
-            _errors = new ArrayList();
-            _derivs = new ArrayList();
-            _gains = new ArrayList();
-            
-            int icnt;
-            // Track vectors
-            for ( icnt=0; icnt<NVECTOR; ++icnt )
-                _vectors.add(  new Matrix(size,1) );
-            // Track errors
-            for ( icnt=0; icnt<NERROR; ++icnt )
-                _errors.add(  new Matrix(size,size) );
-            // Track derivatives
-            for ( icnt=0; icnt<NDERIV; ++icnt )
-                _derivs.add(  new Matrix(size,5) );
-            // Gains
-            for ( icnt=0; icnt<NDERIV; ++icnt )
-                _gains.add(  new Matrix(5,size) );
-            
-        }
-        
-        // return the dimension
-        public int get_size()
-        { return _size;
-        }
-        // fetch a vector
-        public Matrix get_vector(int ivec)
-        {
-            return (Matrix) _vectors.get(ivec);
-        }
-        // fetch an error
-        public Matrix get_error(int ierr)
-        {
-            return (Matrix) _errors.get(ierr);
-        }
-        // fetch a derivative
-        public Matrix get_deriv(int ider)
-        {
-            return (Matrix) _derivs.get(ider);
-        }
-        // fetch a gain
-        public Matrix get_gain(int igai)
-        {
-            return (Matrix) _gains.get(igai);
-        }
-    } // end of Box inner class
-    
-    // static methods
-    
-    //
     
     /**
      *Return a String representation of the class' the type name.
@@ -147,48 +71,15 @@ public class AddFitKalman extends AddFitter
     { return typeName();
     }
     
-    // attributes
-    
-    // Array of boxes for each supported size.
-    private List _boxes;
-    
-    // Track vectors.
-    private List _tvectors;
-    
-    // Track errors.
-    private List _terrors;
-    
-    //methods
-    
-    //
-    
-    
     /**
      *Construct a default instance.
-     * Allocate space needed for hits of dimension from 1 to MAXDIM.
+     * Space is allocated for hits of dimension from 1 to MAXDIM.
      *
      */
     public AddFitKalman()
     {
-        _boxes = new ArrayList();
-        _tvectors = new ArrayList();
-        _terrors = new ArrayList();
-        
-        // Create boxes for hit containers.
-        for ( int dim=1; dim<MAXDIM; ++dim )
-            _boxes.add( new Box(dim) );
-        
-        int icnt;
-        
-        for ( icnt=0; icnt<MAXVECTOR; ++icnt )
-            _tvectors.add(  new Matrix(5, 1) );
-        
-        for ( icnt=0; icnt<MAXERROR; ++icnt )
-            _terrors.add(  new Matrix(5,5) );
-        
     }
     
-    //
     
     /**
      *Return a String representation of the class' the type name.
@@ -207,14 +98,14 @@ public class AddFitKalman extends AddFitter
      *Add a hit and fit with the new hit.
      * Use a Kalman filter to add a hit to a track.
      * The hit is updated with the input track.
-     * Note: We make direct use of the underlying vector and matrix
-     *       classes here.  It will probably be neccessary to modify
-     *       this routine if these are changed.
+     * The update is done on primitive arrays held by this instance,
+     * so an instance must not be used from several threads at once.
      *
      * @param   tre The ETrack to update.
      * @param   chsq The chi-square for the fit.
      * @param   hit The Hit to add to the track.
-     * @return  0 if successful.
+     * @return  0 if successful, 3 or 4 if the hit error or residual error
+     *          cannot be inverted, 5 if the new track error is not valid.
      */
     public int addHitFit(ETrack tre, double chsq,  Hit hit)
     {
@@ -225,82 +116,75 @@ public class AddFitKalman extends AddFitter
         int dim = hit.size();
         Assert.assertTrue( dim <= MAXDIM );
         
-        // Fetch the box holding the needed hit containers.
-        // The chice of boxes depends on the size of the hit.
-        Box box = (Box)_boxes.get(dim-1);
-        Assert.assertTrue( box.get_size() == dim );
-        
-        // Fetch the hit containers.
-        Matrix diff    = box.get_vector(0);
-        Matrix hit_res = box.get_vector(1);
-        Matrix hit_err     = box.get_error(0);
-        Matrix hit_err_tot = box.get_error(1);
-        Matrix hit_res_err = box.get_error(2);
-        Matrix dhit_dtrk         = box.get_deriv(0);
-        Matrix new_dhit_dtrk     = box.get_deriv(1);
-        Matrix trk_err_dhit_dtrk = box.get_gain(0);
-        Matrix gain              = box.get_gain(1);
-        
-        // Fetch the track containers.
-        Matrix new_vec = (Matrix) _tvectors.get(0);
-        Matrix new_err = (Matrix)  _terrors.get(0);
-        
-        hit_err = hit.measuredError().matrix();
-        //System.out.println("hit_err= \n"+hit_err);
+        // Fetch the hit information.
+        HitError hit_err = hit.measuredError();
+        HitError hit_pre_err = hit.predictedError();
+        HitVector diff = hit.differenceVector();
+        HitDerivative dhit_dtrk = hit.dHitdTrack();
+        for ( int i=0; i<dim; ++i )
+        {
+            _diff[i] = diff.get(i);
+            for ( int l=0; l<5; ++l ) _dhit_dtrk[5*i+l] = dhit_dtrk.get(i,l);
+        }
         
-        // Fetch track prediction of hit.
-        diff = hit.differenceVector().matrix();
-        //System.out.println("diff= \n"+diff);
-        dhit_dtrk = hit.dHitdTrack().matrix();
-        //System.out.println("dhit_dtrk= \n"+dhit_dtrk);
         // Fetch track info.
-        Matrix trk_vec = tre.vector().matrix();
-        Matrix trk_err = tre.error().getMatrix(); //need to fix this!
-        
-        //System.out.println("trk_vec= \n"+trk_vec);
-        //System.out.println("trk_err= \n"+trk_err);
+        TrackVector trk_vec = tre.vector();
+        TrackError trk_err = tre.error();
         
         // Build gain matrix.
-        hit_err_tot = hit.predictedError().matrix().plus(
-                hit_err);
-        //System.out.println("hit_err_tot= \n"+hit_err_tot);
-        //if ( invert(hit_err_tot)!=0 ) return 3;
-        hit_err_tot= hit_err_tot.inverse();
-        //System.out.println("hit_err_tot inverse= \n"+hit_err_tot);
-        trk_err_dhit_dtrk = trk_err.times(dhit_dtrk.transpose());
-        gain = trk_err_dhit_dtrk.times(hit_err_tot);
-        //System.out.println("trk_err_dhit_dtrk= \n"+trk_err_dhit_dtrk);
-        //System.out.println("gain= \n"+gain);
-        
-        //  if ( get_debug() ) {
-        //System.out.println("\n");
-        //System.out.println("      trk_vec: " + "\n"+       trk_vec + "\n");
-        //System.out.println("      trk_err: " + "\n"+       trk_err + "\n");
-        //System.out.println("    dhit_dtrk: " + "\n"+     dhit_dtrk + "\n");
-        //  }
+        int k = 0;
+        for ( int i=0; i<dim; ++i )
+            for ( int j=0; j<=i; ++j, ++k )
+                _hit_err_tot[k] = hit_pre_err.get(i,j) + hit_err.get(i,j);
+        if ( PackedSymmetricMatrix.invert(_hit_err_tot, dim, _work)!=0 ) return 3;
+        for ( int l=0; l<5; ++l )
+        {
+            for ( int i=0; i<dim; ++i )
+            {
+                double sum = 0.0;
+                for ( int m=0; m<5; ++m ) sum += trk_err.get(l,m)*_dhit_dtrk[5*i+m];
+                _trk_err_dhit_dtrk[dim*l+i] = sum;
+            }
+            for ( int i=0; i<dim; ++i )
+            {
+                double sum = 0.0;
+                for ( int j=0; j<dim; ++j )
+                    sum += _trk_err_dhit_dtrk[dim*l+j]*_hit_err_tot[PackedSymmetricMatrix.index(j,i)];
+                _gain[dim*l+i] = sum;
+            }
+        }
         
-        // We need to return dhit_dtrk to its original state for the
-        // next call.
-        // dhit_dtrk = dhit_dtrk.transpose(); //need to check this!
-        dhit_dtrk.transpose();
         // Build new track vector.
-        new_vec = trk_vec.minus(gain.times(diff));
-        //System.out.println("new_vec= \n"+new_vec);
+        for ( int l=0; l<5; ++l )
+        {
+            double sum = 0.0;
+            for ( int i=0; i<dim; ++i ) sum += _gain[dim*l+i]*_diff[i];
+            _new_vec.set(l, trk_vec.get(l) - sum);
+        }
         
         // Build new error;
-        new_err = trk_err.minus(trk_err_dhit_dtrk.times(hit_err_tot.times(trk_err_dhit_dtrk.transpose())));
-        //System.out.println("new_err= \n"+new_err);
+        // trk_err_dhit_dtrk * hit_err_tot * trk_err_dhit_dtrk(transpose) = gain * trk_err_dhit_dtrk(transpose)
+        for ( int l=0; l<5; ++l )
+        {
+            for ( int m=0; m<=l; ++m )
+            {
+                double sum = 0.0;
+                for ( int i=0; i<dim; ++i ) sum += _gain[dim*l+i]*_trk_err_dhit_dtrk[dim*m+i];
+                _new_err.set(l, m, trk_err.get(l,m) - sum);
+            }
+        }
+        
         // Check the error.
         {
             int nbad = 0;
             for ( int i=0; i<5; ++i )
             {
-                if ( new_err.get(i,i) < 0.0 ) ++nbad;
-                double eii = new_err.get(i,i);
+                if ( _new_err.get(i,i) < 0.0 ) ++nbad;
+                double eii = _new_err.get(i,i);
                 for ( int j=0; j<i; ++j )
                 {
-                    double ejj = new_err.get(j,j);
-                    double eij = new_err.get(j,i);
+                    double ejj = _new_err.get(j,j);
+                    double eij = _new_err.get(j,i);
                     if ( Math.abs(eij*eij) >= eii*ejj ) ++nbad;
                 }
             }
@@ -308,42 +192,46 @@ public class AddFitKalman extends AddFitter
         }
         
         // Create track vector with new values.
-        tre.setVectorAndKeepDirection(new TrackVector(new_vec));
-        tre.setError(new TrackError(new_err));
+        tre.setVectorAndKeepDirection(_new_vec);
+        tre.setError(_new_err);
         
         // Calculate residual vector.
         
         // Update the hit with the new track.
-        //System.out.println("update the hit");
         hit.update(tre);
-        
-        hit_res = hit.differenceVector().matrix();
-        new_dhit_dtrk = hit.dHitdTrack().matrix();
-        //System.out.println("new_dhit_dtrk= \n"+new_dhit_dtrk);
+        HitVector hit_res = hit.differenceVector();
         
         // Calculate residual covariance and invert.
-        hit_res_err = hit_err.minus(dhit_dtrk.times(new_err.times(dhit_dtrk.transpose())));
-        //		System.out.println("hit_res_err= \n"+hit_res_err);
-        hit_res_err = hit_res_err.inverse();
-        //System.out.println("hit_res_err inverse= \n"+hit_res_err);
+        // This uses the derivative at the input track.
+        for ( int i=0; i<dim; ++i )
+        {
+            for ( int l=0; l<5; ++l )
+            {
+                double sum = 0.0;
+                for ( int m=0; m<5; ++m ) sum += _dhit_dtrk[5*i+m]*_new_err.get(m,l);
+                _dhit_dtrk_new_err[5*i+l] = sum;
+            }
+        }
+        k = 0;
+        for ( int i=0; i<dim; ++i )
+        {
+            for ( int j=0; j<=i; ++j, ++k )
+            {
+                double sum = 0.0;
+                for ( int l=0; l<5; ++l ) sum += _dhit_dtrk_new_err[5*i+l]*_dhit_dtrk[5*j+l];
+                _hit_res_err[k] = hit_err.get(i,j) - sum;
+            }
+        }
+        if ( PackedSymmetricMatrix.invert(_hit_res_err, dim, _work)!=0 ) return 4;
+        
         // Update chi-square.
-        // result should be 1x1 matrix, so should be able to do the following
-        //System.out.println( " hr*hre*hrT=\n"+(hit_res.transpose()).times(hit_res_err.times(hit_res)) );
-        double dchsq = (hit_res.transpose()).times(hit_res_err.times(hit_res)).get(0,0);
-        //System.out.println("chsq= "+chsq+", dchsq= "+dchsq);
+        double dchsq = 0.0;
+        for ( int i=0; i<dim; ++i )
+            for ( int j=0; j<dim; ++j )
+                dchsq += hit_res.get(i)*_hit_res_err[PackedSymmetricMatrix.index(i,j)]*hit_res.get(j);
         chsq = chsq + dchsq;
         setChisquared(chsq);
         
-        //  if ( get_debug() ) {
-        //System.out.println("         gain: " + "\n"+          gain + "\n");
-        //System.out.println("      new_vec: " + "\n"+       new_vec + "\n");
-        //System.out.println("      new_err: " + "\n"+       new_err + "\n");
-        //System.out.println("new_dhit_dtrk: " + "\n"+ new_dhit_dtrk + "\n");
-        //System.out.println("      hit_res: " + "\n"+       hit_res + "\n");
-        //System.out.println("  hit_res_err: " + "\n"+   hit_res_err + "\n");
-        //System.out.println(" dchsq & chsq: " + "\n"+ dchsq + " " + chsq + "\n");
-        //  }
-        
         return 0;
         
     }
@@ -0,0 +1,70 @@
+package org.lcsim.recon.tracking.trfbase;
+
+import Jama.Matrix;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Compare the packed symmetric matrix kernels with Jama.
+ *
+ * @version $Id$
+ */
+public class PackedSymmetricMatrix_Test extends TestCase
+{
+    private boolean debug;
+
+    public void testPackedSymmetricMatrix()
+    {
+        String ok_prefix = "PackedSymmetricMatrix (I): ";
+        String error_prefix = "PackedSymmetricMatrix test (E): ";
+
+        if(debug) System.out.println( ok_prefix
+                + "-------- Testing component PackedSymmetricMatrix. --------" );
+
+        Random rand = new Random(1);
+        for(int n = 1; n<=5; ++n)
+        {
+            // Build a positive definite matrix A*A(transpose) + 1.
+            Matrix a = Matrix.random(n, n);
+            Matrix m = a.times(a.transpose()).plus(Matrix.identity(n, n));
+            double[] packed = new double[PackedSymmetricMatrix.size(n)];
+            PackedSymmetricMatrix.pack(m.getArray(), packed);
+            assertTrue( equal(PackedSymmetricMatrix.toMatrix(packed, n), m) );
+
+            if(debug) System.out.println( ok_prefix + "Invert " + n + "x" + n + "." );
+            assertEquals(0, PackedSymmetricMatrix.invert(packed, n, new double[n*n]));
+            assertTrue( equal(PackedSymmetricMatrix.toMatrix(packed, n), m.inverse()) );
+        }
+
+        // A singular matrix is left unchanged.
+        double[] singular = { 1., 2., 4. };
+        assertEquals(1, PackedSymmetricMatrix.invert(singular, 2, new double[4]));
+        assertEquals(2., singular[1], 0.);
+
+        if(debug) System.out.println( ok_prefix + "Similarity transform." );
+        double[] der = new double[25];
+        for(int i = 0; i<25; ++i) der[i] = rand.nextGaussian();
+        Matrix d = new Matrix(der, 5).transpose();
+        Matrix a = Matrix.random(5, 5);
+        Matrix e = a.times(a.transpose());
+        double[] packed = new double[15];
+        PackedSymmetricMatrix.pack(e.getArray(), packed);
+        PackedSymmetricMatrix.similarity5(der, packed, packed);
+        assertTrue( equal(PackedSymmetricMatrix.toMatrix(packed, 5), d.times(e).times(d.transpose())) );
+
+        if(debug) System.out.println( ok_prefix
+                + "------------- All tests passed. -------------" );
+    }
+
+    private static boolean equal(Matrix a, Matrix b)
+    {
+        for(int i = 0; i<a.getRowDimension(); ++i)
+        {
+            for(int j = 0; j<a.getColumnDimension(); ++j)
+            {
+                if(Math.abs(a.get(i,j)-b.get(i,j)) > 1.e-10*(1.+Math.abs(b.get(i,j)))) return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,12 +1,15 @@
 package hep.io.root;
 
+import hep.io.root.core.BasketCache;
+import hep.io.root.core.BasketPrefetcher;
 import hep.io.root.core.DefaultClassFactory;
-import hep.io.root.core.FastInputStream;
+import hep.io.root.core.MappedRootInput;
 import hep.io.root.core.FileClassFactory;
 import hep.io.root.core.RootClassFactory;
 import hep.io.root.core.RootDaemonInputStream;
 import hep.io.root.core.RootInput;
 import hep.io.root.core.RootRandomAccessFile;
+import hep.io.root.core.TreeScanner;
 import hep.io.root.daemon.DaemonInputStream;
 import hep.io.root.interfaces.TDatime;
 import hep.io.root.interfaces.TDirectory;
@@ -17,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.FileChannel;
 import java.util.List;
 import java.util.Map;
 
@@ -35,6 +39,8 @@ public class RootFileReader implements TFile
    private java.util.Date fDatimeM;
    private RootClass fileClass;
    private RootClassFactory factory;
+   private BasketCache basketCache = new BasketCache();
+   private FileChannel channel;
    private RootInput in;
    private String name;
    private String title;
@@ -153,8 +159,11 @@ public class RootFileReader implements TFile
    {
       RootRandomAccessFile raf = new RootRandomAccessFile(file, this);
       RootInput in = raf;
-      if (System.getProperty("useNIO") != null) in = new FastInputStream(this, raf);
+      if (System.getProperty("useNIO") != null) in = new MappedRootInput(this, raf);
+      channel = raf.getChannel();
       init(in, shared);
+      Integer prefetch = Integer.getInteger("rootPrefetch");
+      if (prefetch != null) setPrefetch(prefetch.intValue());
    }
    private void init(RootInput in, RootFileReader shared) throws IOException
    {
@@ -330,6 +339,59 @@ public class RootFileReader implements TFile
       return factory;
    }
 
+   /**
+    * Get the cache of decompressed baskets shared by all the branches in this file.
+    * The maximum size of the cache can be changed using {@link BasketCache#setMaxSize(long)}.
+    */
+   public BasketCache getBasketCache()
+   {
+      return basketCache;
+   }
+
+   /**
+    * Enable reading ahead of baskets on background threads. When enabled the
+    * baskets following the one currently being read are read and decompressed
+    * in the background for all branches being read, so that disk and decompression
+    * time overlaps with the processing of entries. Prefetched baskets are kept in
+    * the basket cache, which should be large enough to hold them.
+    * Read-ahead is only supported for local files.
+    * @param depth The number of baskets to read ahead, or 0 to disable read-ahead
+    * @param nThreads The number of background threads to use
+    */
+   public void setPrefetch(int depth, int nThreads) throws IOException
+   {
+      BasketPrefetcher old = basketCache.getPrefetcher();
+      if (old != null) old.close();
+      if (depth <= 0)
+      {
+         basketCache.setPrefetcher(null);
+         return;
+      }
+      if (channel == null) throw new IOException("Prefetching is only supported for local files");
+      basketCache.setPrefetcher(new BasketPrefetcher(channel, in, basketCache, depth, nThreads));
+   }
+
+   /**
+    * Enable reading ahead of baskets using two background threads.
+    * @see #setPrefetch(int,int)
+    */
+   public void setPrefetch(int depth) throws IOException
+   {
+      setPrefetch(depth, 2);
+   }
+
+   /**
+    * Create a scanner for processing the entries of trees in this file in
+    * parallel. The scanner should be closed when it is no longer needed.
+    * @param nThreads The number of worker threads to use
+    * @throws IOException If the file is not a local file
+    */
+   public TreeScanner createScanner(int nThreads) throws IOException
+   {
+      if (channel == null) throw new IOException("Parallel scanning is only supported for local files");
+      return new TreeScanner(channel, in, nThreads);
+   }
+
    public TKey getKey(int index)
    {
       return dir.getKey(index);
@@ -421,6 +483,9 @@ public class RootFileReader implements TFile
 
    public void close() throws IOException
    {
+      BasketPrefetcher prefetcher = basketCache.getPrefetcher();
+      if (prefetcher != null) prefetcher.close();
+      basketCache.clear();
       in.close();
    }
 
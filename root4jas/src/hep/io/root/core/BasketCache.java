@@ -0,0 +1,225 @@
+package hep.io.root.core;
+
+import hep.io.root.interfaces.TBasket;
+import hep.io.root.interfaces.TBranch;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of decompressed baskets, shared by all the branches of one file.
+ * The cache is limited by the (approximate) number of bytes held, and the
+ * least recently used baskets are discarded first once the limit is reached.
+ * @version $Id$
+ */
+public class BasketCache
+{
+   /** Default maximum size of the cache, may be overridden using the rootBasketCacheSize property */
+   public static final long DEFAULT_MAX_SIZE = Long.getLong("rootBasketCacheSize", 64 * 1024 * 1024).longValue();
+
+   private LinkedHashMap<Key, Entry> map = new LinkedHashMap<Key, Entry>(64, 0.75f, true);
+   private long maxSize;
+   private long size;
+   private long hits;
+   private long misses;
+   private long evictions;
+   private BasketPrefetcher prefetcher;
+
+   public BasketCache()
+   {
+      this(DEFAULT_MAX_SIZE);
+   }
+
+   /**
+    * Create a basket cache
+    * @param maxSize The maximum number of bytes to keep in the cache, 0 disables caching.
+    */
+   public BasketCache(long maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+   /**
+    * Get a basket from the cache.
+    * @return The basket, or <code>null</code> if it is not in the cache.
+    */
+   public synchronized TBasket get(TBranch branch, int index)
+   {
+      Entry entry = map.get(new Key(branch, index));
+      if (entry == null)
+      {
+         misses++;
+         return null;
+      }
+      hits++;
+      return entry.basket;
+   }
+
+   /**
+    * Get a basket from the cache without affecting the statistics.
+    * @return The basket, or <code>null</code> if it is not in the cache.
+    */
+   public synchronized TBasket peek(TBranch branch, int index)
+   {
+      Entry entry = map.get(new Key(branch, index));
+      return entry == null ? null : entry.basket;
+   }
+
+   /**
+    * Add a basket to the cache, evicting older baskets if necessary.
+    * @param bytes The (approximate) number of bytes used by the basket in memory.
+    */
+   public synchronized void put(TBranch branch, int index, TBasket basket, int bytes)
+   {
+      if (bytes > maxSize) return;
+      Entry old = map.put(new Key(branch, index), new Entry(basket, bytes));
+      if (old != null) size -= old.bytes;
+      size += bytes;
+      trim();
+   }
+
+   public synchronized void clear()
+   {
+      map.clear();
+      size = 0;
+   }
+
+   /**
+    * Returns <code>true</code> if the given basket is currently in the cache.
+    * Unlike {@link #get(TBranch,int)} this does not affect the LRU order or the statistics.
+    */
+   public synchronized boolean contains(TBranch branch, int index)
+   {
+      return map.containsKey(new Key(branch, index));
+   }
+
+   /**
+    * The prefetcher used to read baskets ahead of time into this cache,
+    * or <code>null</code> if read-ahead is not enabled.
+    */
+   public synchronized BasketPrefetcher getPrefetcher()
+   {
+      return prefetcher;
+   }
+
+   public synchronized void setPrefetcher(BasketPrefetcher prefetcher)
+   {
+      this.prefetcher = prefetcher;
+   }
+
+   public synchronized long getMaxSize()
+   {
+      return maxSize;
+   }
+
+   public synchronized void setMaxSize(long maxSize)
+   {
+      this.maxSize = maxSize;
+      trim();
+   }
+
+   /** The number of bytes currently held in the cache */
+   public synchronized long getSize()
+   {
+      return size;
+   }
+
+   /** The number of baskets currently held in the cache */
+   public synchronized int getBasketCount()
+   {
+      return map.size();
+   }
+
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+
+   public synchronized long getMisses()
+   {
+      return misses;
+   }
+
+   public synchronized long getEvictions()
+   {
+      return evictions;
+   }
+
+   public synchronized double getHitRate()
+   {
+      long total = hits + misses;
+      return total == 0 ? 0 : (double) hits / total;
+   }
+
+   public synchronized void resetStatistics()
+   {
+      hits = 0;
+      misses = 0;
+      evictions = 0;
+   }
+
+   public synchronized String toString()
+   {
+      return "BasketCache[baskets=" + map.size() + " size=" + size + "/" + maxSize
+            + " hits=" + hits + " misses=" + misses + " evictions=" + evictions + "]";
+   }
+
+   /**
+    * Estimate the number of bytes used in memory by a basket.
+    * @param basket The basket
+    * @param bytes The number of bytes occupied by the basket on file
+    * @param entryOffsetLen The length of the entry offset table
+    */
+   public static int sizeOf(TBasket basket, int bytes, int entryOffsetLen)
+   {
+      return Math.max(basket.getBufferSize(), bytes) + 4 * entryOffsetLen;
+   }
+
+   private void trim()
+   {
+      Iterator<Map.Entry<Key, Entry>> i = map.entrySet().iterator();
+      while (size > maxSize && i.hasNext())
+      {
+         Entry entry = i.next().getValue();
+         i.remove();
+         size -= entry.bytes;
+         evictions++;
+      }
+   }
+
+   static class Key
+   {
+      private TBranch branch;
+      private int index;
+
+      Key(TBranch branch, int index)
+      {
+         this.branch = branch;
+         this.index = index;
+      }
+
+      public int hashCode()
+      {
+         return System.identityHashCode(branch) * 31 + index;
+      }
+
+      public boolean equals(Object o)
+      {
+         if (!(o instanceof Key)) return false;
+         Key other = (Key) o;
+         return branch == other.branch && index == other.index;
+      }
+   }
+
+   private static class Entry
+   {
+      private TBasket basket;
+      private int bytes;
+
+      Entry(TBasket basket, int bytes)
+      {
+         this.basket = basket;
+         this.bytes = bytes;
+      }
+   }
+}
@@ -0,0 +1,73 @@
+package hep.io.root.core;
+
+import hep.io.root.interfaces.TBasket;
+import hep.io.root.interfaces.TBranch;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A RootInput holding the raw bytes of a single basket read from a file.
+ * Unlike a slice this stream acts as its own top, so that the basket data
+ * is sliced from the buffer rather than from the (shared) file stream,
+ * which allows baskets to be read from a background thread.
+ * @version $Id$
+ */
+class BasketInputStream extends RootInputStream
+{
+   private RootInput file;
+
+   BasketInputStream(byte[] buf, RootInput file)
+   {
+      super(new RootByteArrayInputStream(buf, 0), null);
+      this.file = file;
+   }
+
+   /**
+    * Read a basket using a positional read on the file channel. This does not
+    * change the position of the file, and may be called from any thread.
+    * The basket returned is not shared with the branch or the basket cache.
+    * @param channel The channel from which to read the basket
+    * @param file The top level RootInput of the file
+    * @param branch The branch to which the basket belongs
+    * @param index The index of the basket
+    */
+   static TBasket readBasket(FileChannel channel, RootInput file, TBranch branch, int index) throws IOException
+   {
+      long seek = branch.getBasketSeek()[index];
+      int size = branch.getBasketBytes()[index];
+      ByteBuffer buf = ByteBuffer.allocate(size);
+      while (buf.hasRemaining())
+      {
+         int n = channel.read(buf, seek + buf.position());
+         if (n < 0) throw new EOFException();
+      }
+      RootInput in = new BasketInputStream(buf.array(), file);
+      TBasket basket = (TBasket) in.readObject("TBasket");
+
+      int len = branch.getEntryOffsetLen();
+      if (len > 0) basket.readEntryOffsets(len);
+      return basket;
+   }
+
+   public RootClassFactory getFactory()
+   {
+      return file.getFactory();
+   }
+
+   public BasketCache getBasketCache()
+   {
+      return file.getBasketCache();
+   }
+
+   public int getRootVersion()
+   {
+      return file.getRootVersion();
+   }
+
+   public RootInput getTop()
+   {
+      return this;
+   }
+}
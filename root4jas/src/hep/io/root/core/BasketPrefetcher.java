@@ -0,0 +1,258 @@
+package hep.io.root.core;
+
+import hep.io.root.interfaces.TBasket;
+import hep.io.root.interfaces.TBranch;
+import hep.io.root.interfaces.TTree;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads and decompresses baskets ahead of time on a pool of background threads,
+ * in a similar way to ROOT's TTreeCache. Whenever a branch moves to a new basket
+ * the baskets covering the next <code>depth</code> baskets worth of entries are
+ * scheduled for all of the active branches (the branches which have been read
+ * so far in the current scan of the same tree), sorted by their position in the
+ * file. A branch stops being active once the read-ahead window reaches the end
+ * of its tree.
+ * The baskets are delivered through the {@link BasketCache}, so the cache must
+ * be large enough to hold the baskets being read ahead.
+ * <p>
+ * The baskets are read using positional reads on the file channel, so the
+ * prefetcher does not interfere with the file position of the reader. The
+ * channel is shared with the reader, so the background threads are never
+ * interrupted: an interrupted read would close the channel.
+ * @version $Id$
+ */
+public class BasketPrefetcher
+{
+   private static final AtomicInteger threadNumber = new AtomicInteger();
+   private FileChannel channel;
+   private RootInput file;
+   private BasketCache cache;
+   private int depth;
+   private ExecutorService executor;
+   private Map<BasketCache.Key, FutureTask<TBasket>> pending = new HashMap<BasketCache.Key, FutureTask<TBasket>>();
+   private Map<TBranch, TTree> active = new LinkedHashMap<TBranch, TTree>();
+
+   /**
+    * Create a prefetcher
+    * @param channel The channel from which to read baskets
+    * @param file The top level RootInput of the file
+    * @param cache The cache into which prefetched baskets will be placed
+    * @param depth The number of baskets to read ahead
+    * @param nThreads The number of background threads to use
+    */
+   public BasketPrefetcher(FileChannel channel, RootInput file, BasketCache cache, int depth, int nThreads)
+   {
+      this.channel = channel;
+      this.file = file;
+      this.cache = cache;
+      this.depth = depth;
+      this.executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory()
+      {
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "BasketPrefetcher-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }
+
+   public int getDepth()
+   {
+      return depth;
+   }
+
+   /**
+    * If the given basket is currently being read, wait for it and return it.
+    * The read is claimed under the prefetcher lock, and a read which has
+    * completed since the caller last looked in the cache is found in the cache,
+    * so a basket which has been read ahead is never read a second time.
+    * @return The basket, or <code>null</code> if it has not been read ahead.
+    */
+   public TBasket take(TBranch branch, int index) throws IOException
+   {
+      FutureTask<TBasket> future;
+      synchronized (this)
+      {
+         future = pending.remove(new BasketCache.Key(branch, index));
+         // The caller has already counted this lookup as a miss
+         if (future == null) return cache.peek(branch, index);
+      }
+      try
+      {
+         return future.get();
+      }
+      catch (InterruptedException x)
+      {
+         throw new InterruptedIOException("Interrupted while waiting for basket " + index);
+      }
+      catch (ExecutionException x)
+      {
+         // Leave it to the caller to read the basket again and report the error
+         return null;
+      }
+      catch (CancellationException x)
+      {
+         // The prefetcher has been closed
+         return null;
+      }
+   }
+
+   /**
+    * Schedule read-ahead following the given basket.
+    * @param tree The tree to which the branch belongs
+    * @param branch The branch which has just moved to a new basket
+    * @param index The index of the basket
+    */
+   public synchronized void prefetch(TTree tree, TBranch branch, int index)
+   {
+      if (executor.isShutdown()) return;
+      long[] entries = branch.getBasketEntry();
+      int n = branch.getWriteBasket();
+      if (entries == null || index >= n) return;
+      long first = entries[index];
+      long last = index + depth < n ? entries[index + depth] : branch.getEntries();
+
+      active.put(branch, tree);
+      List<Request> requests = new ArrayList<Request>();
+      for (Iterator<Map.Entry<TBranch, TTree>> i = active.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry<TBranch, TTree> e = i.next();
+         // Only consider branches from the same tree
+         if (e.getValue() != tree) continue;
+         TBranch b = e.getKey();
+         collect(b, first, last, requests);
+         // The window has reached the end of the tree, so this scan is finished
+         if (last >= b.getEntries()) i.remove();
+      }
+      Collections.sort(requests, new Comparator<Request>()
+      {
+         public int compare(Request r1, Request r2)
+         {
+            return r1.seek < r2.seek ? -1 : r1.seek == r2.seek ? 0 : 1;
+         }
+      });
+      for (Request request : requests)
+      {
+         pending.put(request.key, request.task);
+         executor.execute(request.task);
+      }
+   }
+
+   /**
+    * Stop all background reads. Reads which have not started yet are cancelled,
+    * and reads already in progress are allowed to finish, so that the channel
+    * is still usable once this method returns.
+    */
+   public void close()
+   {
+      synchronized (this)
+      {
+         for (FutureTask<TBasket> task : pending.values()) task.cancel(false);
+         pending.clear();
+         active.clear();
+         executor.shutdown();
+      }
+      try
+      {
+         // Must not hold the lock here, finishing reads need it
+         while (!executor.awaitTermination(1, TimeUnit.SECONDS));
+      }
+      catch (InterruptedException x)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private void collect(TBranch branch, long first, long last, List<Request> requests)
+   {
+      long[] entries = branch.getBasketEntry();
+      long[] seeks = branch.getBasketSeek();
+      int[] bytes = branch.getBasketBytes();
+      int n = branch.getWriteBasket();
+      if (entries == null || seeks == null || bytes == null) return;
+
+      for (int i = findBasket(entries, n, first); i < n && entries[i] < last; i++)
+      {
+         if (seeks[i] == 0 || bytes[i] <= 0) continue;
+         BasketCache.Key key = new BasketCache.Key(branch, i);
+         if (pending.containsKey(key) || cache.contains(branch, i)) continue;
+         requests.add(new Request(key, branch, i, seeks[i], bytes[i]));
+      }
+   }
+
+   private static int findBasket(long[] entries, int n, long entry)
+   {
+      int low = 0;
+      int high = n - 1;
+      int result = 0;
+      while (low <= high)
+      {
+         int mid = (low + high) >>> 1;
+         if (entries[mid] <= entry)
+         {
+            result = mid;
+            low = mid + 1;
+         }
+         else high = mid - 1;
+      }
+      return result;
+   }
+
+   private class Request implements Callable<TBasket>
+   {
+      private BasketCache.Key key;
+      private TBranch branch;
+      private int index;
+      private long seek;
+      private int size;
+      private FutureTask<TBasket> task = new FutureTask<TBasket>(this);
+
+      Request(BasketCache.Key key, TBranch branch, int index, long seek, int size)
+      {
+         this.key = key;
+         this.branch = branch;
+         this.index = index;
+         this.seek = seek;
+         this.size = size;
+      }
+
+      public TBasket call() throws IOException
+      {
+         try
+         {
+            TBasket basket = BasketInputStream.readBasket(channel, file, branch, index);
+            cache.put(branch, index, basket, BasketCache.sizeOf(basket, size, branch.getEntryOffsetLen()));
+            return basket;
+         }
+         finally
+         {
+            synchronized (BasketPrefetcher.this)
+            {
+               // The basket may have been claimed and scheduled again since
+               if (pending.get(key) == task) pending.remove(key);
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,156 @@
+package hep.io.root.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Inflater;
+
+/**
+ * Per-thread pool of the scratch objects used while decompressing records:
+ * the buffer holding the compressed bytes, the Inflaters and the ZSTD decoder.
+ * These are only needed for the duration of a single call to
+ * {@link RootInputStream#slice(RootInput,int,int)}, so each thread can safely
+ * reuse them instead of creating new ones for every basket.
+ * <p>
+ * The static counters can be used to check how effective the pool is.
+ * @version $Id$
+ */
+public final class BufferPool
+{
+   /** Compressed buffers larger than this (in bytes) are not kept for reuse, may be set using the rootMaxPooledBuffer property */
+   public static final int MAX_POOLED_SIZE = Integer.getInteger("rootMaxPooledBuffer", 16 * 1024 * 1024).intValue();
+
+   private static final AtomicLong bufferRequests = new AtomicLong();
+   private static final AtomicLong bufferAllocations = new AtomicLong();
+   private static final AtomicLong allocatedBytes = new AtomicLong();
+   private static final AtomicLong inflaterRequests = new AtomicLong();
+   private static final AtomicLong inflaterAllocations = new AtomicLong();
+
+   private static final ThreadLocal<BufferPool> pool = new ThreadLocal<BufferPool>()
+   {
+      protected BufferPool initialValue()
+      {
+         return new BufferPool();
+      }
+   };
+
+   private byte[] buffer = new byte[0];
+   private Inflater inflater;
+   private Inflater rawInflater;
+   private ZstdDecompressor zstd;
+
+   private BufferPool()
+   {
+   }
+
+   /**
+    * Get a scratch buffer for the current thread of at least the given size.
+    * The contents of the buffer are only valid until the next call from the same thread.
+    */
+   static byte[] buffer(int size)
+   {
+      bufferRequests.incrementAndGet();
+      BufferPool local = pool.get();
+      if (local.buffer.length >= size) return local.buffer;
+
+      bufferAllocations.incrementAndGet();
+      allocatedBytes.addAndGet(size);
+      byte[] result = new byte[size];
+      if (size <= MAX_POOLED_SIZE) local.buffer = result;
+      return result;
+   }
+
+   /**
+    * Remove a buffer returned by {@link #buffer(int)} from the current thread's pool,
+    * so that it stays valid while the thread runs other work which may ask for a buffer.
+    * @see #reattach(byte[])
+    */
+   static void detach(byte[] buffer)
+   {
+      BufferPool local = pool.get();
+      if (local.buffer == buffer) local.buffer = new byte[0];
+   }
+
+   /**
+    * Return a detached buffer to the current thread's pool, unless the pool has
+    * since acquired a larger one.
+    */
+   static void reattach(byte[] buffer)
+   {
+      BufferPool local = pool.get();
+      if (buffer.length <= MAX_POOLED_SIZE && buffer.length > local.buffer.length) local.buffer = buffer;
+   }
+
+   /**
+    * Get a reset Inflater for the current thread. The Inflater must not be ended by the caller.
+    * @param nowrap If <code>true</code> the Inflater expects raw deflate data without a zlib header
+    */
+   static Inflater inflater(boolean nowrap)
+   {
+      inflaterRequests.incrementAndGet();
+      BufferPool local = pool.get();
+      Inflater result = nowrap ? local.rawInflater : local.inflater;
+      if (result == null)
+      {
+         inflaterAllocations.incrementAndGet();
+         result = new Inflater(nowrap);
+         if (nowrap) local.rawInflater = result;
+         else local.inflater = result;
+      }
+      else result.reset();
+      return result;
+   }
+
+   /**
+    * Get the ZSTD decoder for the current thread
+    */
+   static ZstdDecompressor zstd()
+   {
+      BufferPool local = pool.get();
+      if (local.zstd == null) local.zstd = new ZstdDecompressor();
+      return local.zstd;
+   }
+
+   /** The number of times a compressed buffer has been requested */
+   public static long getBufferRequests()
+   {
+      return bufferRequests.get();
+   }
+
+   /** The number of times a new compressed buffer had to be allocated */
+   public static long getBufferAllocations()
+   {
+      return bufferAllocations.get();
+   }
+
+   /** The total number of bytes allocated for compressed buffers */
+   public static long getAllocatedBytes()
+   {
+      return allocatedBytes.get();
+   }
+
+   /** The number of times an Inflater has been requested */
+   public static long getInflaterRequests()
+   {
+      return inflaterRequests.get();
+   }
+
+   /** The number of Inflaters created */
+   public static long getInflaterAllocations()
+   {
+      return inflaterAllocations.get();
+   }
+
+   public static void resetStatistics()
+   {
+      bufferRequests.set(0);
+      bufferAllocations.set(0);
+      allocatedBytes.set(0);
+      inflaterRequests.set(0);
+      inflaterAllocations.set(0);
+   }
+
+   public static String statistics()
+   {
+      return "BufferPool[buffers=" + bufferAllocations + "/" + bufferRequests + " allocatedBytes=" + allocatedBytes
+            + " inflaters=" + inflaterAllocations + "/" + inflaterRequests + "]";
+   }
+}
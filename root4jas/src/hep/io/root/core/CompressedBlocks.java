@@ -0,0 +1,210 @@
+package hep.io.root.core;
+
+import hep.io.root.core.RootInputStream.ZAlgo;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The compression blocks making up one compressed record. ROOT compresses large
+ * objects in blocks of at most 16MB, each preceded by a 9 byte header giving the
+ * algorithm and the compressed and uncompressed sizes of the block. Since the
+ * blocks are independent, the headers are parsed up front and large records are
+ * decompressed in parallel on the common ForkJoin pool, each block writing to
+ * its own region of the output array.
+ * @version $Id$
+ */
+final class CompressedBlocks
+{
+   private static final int HDRSIZE = 9;
+
+   /** Records smaller than this (in bytes) are always decompressed on the caller's thread, may be set using the rootParallelUnzipThreshold property */
+   static final int PARALLEL_THRESHOLD = Integer.getInteger("rootParallelUnzipThreshold", 4 * 1024 * 1024).intValue();
+
+   private byte[] buf;
+   private byte[] out;
+   private int nBlocks;
+   private ZAlgo[] algo;
+   private int[] inOffset;
+   private int[] inSize;
+   private int[] outOffset;
+   private int[] outSize;
+
+   /**
+    * Parse the block headers of a compressed record
+    * @param buf The compressed record, starting with the first block header
+    * @param size The size of the compressed record
+    * @param out The array into which the record will be decompressed
+    */
+   CompressedBlocks(byte[] buf, int size, byte[] out) throws IOException
+   {
+      this.buf = buf;
+      this.out = out;
+      int capacity = 1 + out.length / 0xffffff;
+      algo = new ZAlgo[capacity];
+      inOffset = new int[capacity];
+      inSize = new int[capacity];
+      outOffset = new int[capacity];
+      outSize = new int[capacity];
+
+      int nin = 0;
+      int nout = 0;
+      while (nout < out.length)
+      {
+         if (nin + HDRSIZE > size) throw new IOException("Truncated compression block header at " + nin);
+         if (nBlocks == algo.length) grow();
+         algo[nBlocks] = ZAlgo.getAlgo(buf, nin);
+         inSize[nBlocks] = blockSize(buf, nin + 3);
+         outSize[nBlocks] = blockSize(buf, nin + 6);
+         inOffset[nBlocks] = nin + HDRSIZE;
+         outOffset[nBlocks] = nout;
+         nin += HDRSIZE + inSize[nBlocks];
+         nout += outSize[nBlocks];
+         if (nin > size || nout > out.length) throw new IOException("Compression block " + nBlocks + " extends beyond the record");
+         nBlocks++;
+      }
+   }
+
+   int getBlockCount()
+   {
+      return nBlocks;
+   }
+
+   /**
+    * Decompress all the blocks, in parallel if the record is large enough
+    */
+   void decompress() throws IOException
+   {
+      if (nBlocks > 1 && out.length >= PARALLEL_THRESHOLD)
+      {
+         // If this thread is itself a ForkJoin worker it may run other tasks while
+         // waiting for the blocks, and those may decompress other records using this
+         // thread's pooled buffer, so the compressed data must not stay in the pool.
+         BufferPool.detach(buf);
+         try
+         {
+            ForkJoinPool.commonPool().invoke(new BlockTask(0, nBlocks));
+         }
+         catch (RuntimeException x)
+         {
+            for (Throwable t = x; t != null; t = t.getCause())
+            {
+               if (t instanceof IOException) throw (IOException) t;
+            }
+            throw x;
+         }
+         finally
+         {
+            BufferPool.reattach(buf);
+         }
+      }
+      else
+      {
+         for (int i = 0; i < nBlocks; i++) decompress(i);
+      }
+   }
+
+   private void decompress(int i) throws IOException
+   {
+      switch (algo[i])
+      {
+         case ZLIB:
+            inflate(i);
+            break;
+         case LZ4:
+            LZ4Decompressor.decompressWithChecksum(buf, inOffset[i], inSize[i], out, outOffset[i], outSize[i]);
+            break;
+         case ZSTD:
+            BufferPool.zstd().decode(buf, inOffset[i], inSize[i], out, outOffset[i], outSize[i]);
+            break;
+         default:
+            throw new IOException("Unsupported compression algorithm " + algo[i] + " in block " + i);
+      }
+   }
+
+   private void inflate(int i) throws IOException
+   {
+      Inflater inf = BufferPool.inflater(false);
+      inf.setInput(buf, inOffset[i], inSize[i]);
+      int n = 0;
+      try
+      {
+         while (n < outSize[i])
+         {
+            int rc = inf.inflate(out, outOffset[i] + n, outSize[i] - n);
+            if (rc == 0 && (inf.finished() || inf.needsInput() || inf.needsDictionary())) break;
+            n += rc;
+         }
+      }
+      catch (DataFormatException x)
+      {
+         IOException xx = new IOException("Corrupt ZLIB data in block " + i);
+         xx.initCause(x);
+         throw xx;
+      }
+      if (n != outSize[i]) throw new IOException("ZLIB block " + i + " decompressed to " + n + " bytes, expected " + outSize[i]);
+   }
+
+   private void grow()
+   {
+      int capacity = 2 * algo.length;
+      ZAlgo[] newAlgo = new ZAlgo[capacity];
+      System.arraycopy(algo, 0, newAlgo, 0, nBlocks);
+      algo = newAlgo;
+      inOffset = grow(inOffset, capacity);
+      inSize = grow(inSize, capacity);
+      outOffset = grow(outOffset, capacity);
+      outSize = grow(outSize, capacity);
+   }
+
+   private int[] grow(int[] array, int capacity)
+   {
+      int[] result = new int[capacity];
+      System.arraycopy(array, 0, result, 0, nBlocks);
+      return result;
+   }
+
+   /**
+    * Read one of the 3 byte (little-endian) sizes from a compression block header
+    */
+   static int blockSize(byte[] buf, int offset)
+   {
+      return (buf[offset] & 0xff) | ((buf[offset + 1] & 0xff) << 8) | ((buf[offset + 2] & 0xff) << 16);
+   }
+
+   private class BlockTask extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+
+      private int from;
+      private int to;
+
+      BlockTask(int from, int to)
+      {
+         this.from = from;
+         this.to = to;
+      }
+
+      protected void compute()
+      {
+         if (to - from > 1)
+         {
+            int mid = (from + to) >>> 1;
+            invokeAll(new BlockTask(from, mid), new BlockTask(mid, to));
+         }
+         else
+         {
+            try
+            {
+               decompress(from);
+            }
+            catch (IOException x)
+            {
+               throw new RuntimeException(x);
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,279 @@
+package hep.io.root.core;
+
+import hep.io.root.interfaces.TBasket;
+import hep.io.root.interfaces.TBranch;
+import hep.io.root.interfaces.TLeaf;
+import hep.io.root.interfaces.TLeafD;
+import hep.io.root.interfaces.TLeafF;
+import hep.io.root.interfaces.TLeafI;
+import hep.io.root.interfaces.TObjArray;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A range of entries of a tree, together with a private view of the baskets
+ * needed to read them. Baskets are read with positional reads on the file
+ * channel and are not shared with the branches or with other ranges, and
+ * each range keeps track of its own current baskets, so different ranges can
+ * be read concurrently from different threads. A single EntryRange must only
+ * be used by one thread at a time.
+ * <p>
+ * Only branches with a single scalar leaf are supported.
+ * @see TreeScanner
+ * @version $Id$
+ */
+public class EntryRange
+{
+   private FileChannel channel;
+   private RootInput file;
+   private long first;
+   private long end;
+   private Map<TBranch, Slot> slots = new IdentityHashMap<TBranch, Slot>();
+   private byte[] scratch = new byte[0];
+
+   EntryRange(FileChannel channel, RootInput file, long first, long end)
+   {
+      this.channel = channel;
+      this.file = file;
+      this.first = first;
+      this.end = end;
+   }
+
+   /** The first entry in this range */
+   public long getFirst()
+   {
+      return first;
+   }
+
+   /** The entry following the last entry in this range */
+   public long getEnd()
+   {
+      return end;
+   }
+
+   public long getEntries()
+   {
+      return end - first;
+   }
+
+   public float getFloat(TBranch branch, long index) throws IOException
+   {
+      return values(branch, TLeafF.class, index, 1, 4).getFloat();
+   }
+
+   public double getDouble(TBranch branch, long index) throws IOException
+   {
+      return values(branch, TLeafD.class, index, 1, 8).getDouble();
+   }
+
+   public int getInt(TBranch branch, long index) throws IOException
+   {
+      return values(branch, TLeafI.class, index, 1, 4).getInt();
+   }
+
+   /**
+    * Read the values of a float branch for consecutive entries
+    * @param branch The branch to read
+    * @param first The first entry to read
+    * @param count The number of entries to read
+    * @param dst The array to fill, starting at index 0
+    */
+   public void readRange(TBranch branch, long first, int count, float[] dst) throws IOException
+   {
+      check(count, dst.length);
+      for (int n = 0; n < count;)
+      {
+         int m = available(branch, first + n, count - n);
+         values(branch, TLeafF.class, first + n, m, 4).asFloatBuffer().get(dst, n, m);
+         n += m;
+      }
+   }
+
+   /**
+    * Read the values of a double branch for consecutive entries
+    * @see #readRange(TBranch,long,int,float[])
+    */
+   public void readRange(TBranch branch, long first, int count, double[] dst) throws IOException
+   {
+      check(count, dst.length);
+      for (int n = 0; n < count;)
+      {
+         int m = available(branch, first + n, count - n);
+         values(branch, TLeafD.class, first + n, m, 8).asDoubleBuffer().get(dst, n, m);
+         n += m;
+      }
+   }
+
+   /**
+    * Read the values of an int branch for consecutive entries
+    * @see #readRange(TBranch,long,int,float[])
+    */
+   public void readRange(TBranch branch, long first, int count, int[] dst) throws IOException
+   {
+      check(count, dst.length);
+      for (int n = 0; n < count;)
+      {
+         int m = available(branch, first + n, count - n);
+         values(branch, TLeafI.class, first + n, m, 4).asIntBuffer().get(dst, n, m);
+         n += m;
+      }
+   }
+
+   public String toString()
+   {
+      return "EntryRange[" + first + "," + end + ")";
+   }
+
+   private static void check(int count, int length)
+   {
+      if ((count < 0) || (count > length))
+         throw new ArrayIndexOutOfBoundsException("count=" + count);
+   }
+
+   /**
+    * The number of entries, up to max, which can be read from the basket containing index
+    */
+   private int available(TBranch branch, long index, int max) throws IOException
+   {
+      Slot slot = slot(branch, index);
+      return (int) Math.min(max, slot.end - index);
+   }
+
+   /**
+    * Returns a buffer holding the values of n consecutive entries, which must all be in the same basket
+    */
+   private ByteBuffer values(TBranch branch, Class type, long index, int n, int size) throws IOException
+   {
+      Slot slot = slot(branch, index);
+      if (!type.isInstance(slot.leaf))
+         throw new IllegalArgumentException("Branch " + branch.getName() + " is not of type " + type.getName());
+      int len = n * size;
+      if (scratch.length < len) scratch = new byte[len];
+
+      TBasket basket = slot.basket;
+      if (slot.shared)
+      {
+         // The last basket of a branch is held in memory by the branch itself
+         synchronized (basket)
+         {
+            copy(slot, index, n, size);
+         }
+      }
+      else copy(slot, index, n, size);
+      return ByteBuffer.wrap(scratch, 0, len);
+   }
+
+   private void copy(Slot slot, long index, int n, int size) throws IOException
+   {
+      RootInput in = slot.basket.setPosition(index, slot.start, slot.leaf);
+      int[] entryOffset = slot.basket.getEntryOffset();
+      int entrySize = slot.basket.getNevBufSize();
+      if ((entryOffset == null) && (entrySize == size))
+      {
+         in.readFully(scratch, 0, n * size);
+      }
+      else
+      {
+         int offset = (int) (index - slot.start);
+         for (int j = 0; j < n; j++)
+         {
+            if (j > 0)
+            {
+               if (entryOffset == null)
+                  in.skipBytes(entrySize - size);
+               else
+                  in.setPosition(entryOffset[offset + j]);
+            }
+            in.readFully(scratch, j * size, size);
+         }
+      }
+   }
+
+   private Slot slot(TBranch branch, long index) throws IOException
+   {
+      Slot slot = slots.get(branch);
+      if ((slot != null) && (index >= slot.start) && (index < slot.end))
+         return slot;
+
+      TObjArray leaves = branch.getLeaves();
+      if ((leaves == null) || (leaves.size() != 1))
+         throw new IllegalArgumentException("Branch " + branch.getName() + " does not have a single leaf");
+      TLeaf leaf = (TLeaf) leaves.get(0);
+      if (leaf.getArrayDim() != 0)
+         throw new IllegalArgumentException("Branch " + branch.getName() + " is not scalar");
+
+      long[] basketEntry = branch.getBasketEntry();
+      int n = branch.getWriteBasket();
+      int i = findBasket(branch, basketEntry, n, index, slot);
+      TObjArray baskets = branch.getBaskets();
+      TBasket basket = null;
+      boolean shared = false;
+      if (i < baskets.getLast())
+      {
+         basket = (TBasket) baskets.get(i);
+         shared = basket != null;
+      }
+      if (basket == null)
+         basket = BasketInputStream.readBasket(channel, file, branch, i);
+
+      slot = new Slot();
+      slot.index = i;
+      slot.leaf = leaf;
+      slot.basket = basket;
+      slot.shared = shared;
+      slot.start = (i == 0) ? 0 : basketEntry[i];
+      slot.end = ((basketEntry != null) && (i < n)) ? basketEntry[i + 1] : branch.getEntries();
+      slots.put(branch, slot);
+      return slot;
+   }
+
+   /**
+    * The index of the basket containing the given entry. This does the same as
+    * {@link TBranch#findBasketForIndex(long)}, but without using the current
+    * basket of the branch, which belongs to the thread reading the branch.
+    * @param previous The slot last used for the branch, or <code>null</code>
+    */
+   private static int findBasket(TBranch branch, long[] entries, int n, long index, Slot previous)
+   {
+      if ((index < 0) || (index >= branch.getEntries()))
+         throw new ArrayIndexOutOfBoundsException("index=" + index);
+      if (entries == null) return 0;
+
+      // Ranges are normally read in order, so try the basket after the previous one first
+      if (previous != null)
+      {
+         int next = previous.index + 1;
+         if ((next < n) && (index >= entries[next]) && (index < entries[next + 1])) return next;
+      }
+
+      int low = 0;
+      int high = n - 1;
+      int result = -1;
+      while (low <= high)
+      {
+         int mid = (low + high) >>> 1;
+         if (entries[mid] <= index)
+         {
+            result = mid;
+            low = mid + 1;
+         }
+         else high = mid - 1;
+      }
+      if (result < 0) return n;
+      if ((result == n - 1) && (index >= entries[n])) return n;
+      return result;
+   }
+
+   private static class Slot
+   {
+      private int index;
+      private TLeaf leaf;
+      private TBasket basket;
+      private boolean shared;
+      private long start;
+      private long end;
+   }
+}
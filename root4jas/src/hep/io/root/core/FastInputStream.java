@@ -13,8 +13,10 @@ import java.util.zip.Inflater;
 /**
  *
  * @author tonyj
+ * @deprecated Limited to files smaller than 2GB and ZLIB compression, use {@link MappedRootInput} instead.
  * @version $Id: FastInputStream.java 13617 2009-04-09 22:48:46Z tonyj $
  */
+@Deprecated
 public class FastInputStream implements RootInput
 {
    private static long elapsed;
@@ -51,6 +53,11 @@ public class FastInputStream implements RootInput
       return top.rfr.getFactory();
    }
 
+   public BasketCache getBasketCache()
+   {
+      return top.rfr.getBasketCache();
+   }
+
    public void setMap(int offset)
    {
       this.offset = offset - buffer.position();
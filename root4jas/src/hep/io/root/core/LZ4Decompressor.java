@@ -0,0 +1,110 @@
+package hep.io.root.core;
+
+import java.io.IOException;
+
+/**
+ * Decoder for LZ4 compressed blocks as written by ROOT. Each ROOT LZ4 block
+ * starts with an 8 byte (big-endian) xxHash64 checksum of the compressed data,
+ * followed by a raw LZ4 block.
+ * @version $Id$
+ */
+final class LZ4Decompressor
+{
+   /** Size of the checksum which precedes the LZ4 data */
+   static final int CHECKSUM_SIZE = 8;
+
+   private LZ4Decompressor()
+   {
+   }
+
+   /**
+    * Decompress a ROOT LZ4 block (checksum followed by LZ4 data)
+    * @param src The source buffer
+    * @param srcOff The offset of the checksum in the source buffer
+    * @param srcLen The length of the checksum plus compressed data
+    * @param dst The destination buffer
+    * @param dstOff The offset at which to write the decompressed data
+    * @param dstLen The expected length of the decompressed data
+    */
+   static void decompressWithChecksum(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException
+   {
+      if (srcLen < CHECKSUM_SIZE) throw new IOException("LZ4 block too short");
+      long expected = 0;
+      for (int i = 0; i < CHECKSUM_SIZE; i++) expected = (expected << 8) | (src[srcOff + i] & 0xFF);
+      long actual = XXHash64.hash(src, srcOff + CHECKSUM_SIZE, srcLen - CHECKSUM_SIZE, 0);
+      if (expected != actual) throw new IOException("LZ4 checksum mismatch");
+      decompress(src, srcOff + CHECKSUM_SIZE, srcLen - CHECKSUM_SIZE, dst, dstOff, dstLen);
+   }
+
+   /**
+    * Decompress a raw LZ4 block.
+    */
+   static void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException
+   {
+      int sp = srcOff;
+      int send = srcOff + srcLen;
+      int dp = dstOff;
+      int dend = dstOff + dstLen;
+      try
+      {
+         while (true)
+         {
+            int token = src[sp++] & 0xFF;
+
+            int literals = token >>> 4;
+            if (literals == 15)
+            {
+               int b;
+               do
+               {
+                  b = src[sp++] & 0xFF;
+                  literals += b;
+               }
+               while (b == 255);
+            }
+            if (sp + literals > send || dp + literals > dend) throw new IOException("Corrupt LZ4 block");
+            System.arraycopy(src, sp, dst, dp, literals);
+            sp += literals;
+            dp += literals;
+
+            // The last sequence contains only literals
+            if (sp == send) break;
+
+            int offset = (src[sp] & 0xFF) | ((src[sp + 1] & 0xFF) << 8);
+            sp += 2;
+            int match = dp - offset;
+            if (offset == 0 || match < dstOff) throw new IOException("Corrupt LZ4 block");
+
+            int length = token & 0xF;
+            if (length == 15)
+            {
+               int b;
+               do
+               {
+                  b = src[sp++] & 0xFF;
+                  length += b;
+               }
+               while (b == 255);
+            }
+            length += 4;
+            if (dp + length > dend) throw new IOException("Corrupt LZ4 block");
+
+            if (offset >= length)
+            {
+               System.arraycopy(dst, match, dst, dp, length);
+               dp += length;
+            }
+            else
+            {
+               // Overlapping copy, must be done byte by byte
+               for (int i = 0; i < length; i++) dst[dp++] = dst[match++];
+            }
+         }
+      }
+      catch (ArrayIndexOutOfBoundsException x)
+      {
+         throw new IOException("Corrupt LZ4 block");
+      }
+      if (dp != dend) throw new IOException("LZ4 block decompressed to " + (dp - dstOff) + " bytes, expected " + dstLen);
+   }
+}
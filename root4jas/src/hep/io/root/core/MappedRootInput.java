@@ -0,0 +1,445 @@
+package hep.io.root.core;
+
+import hep.io.root.RootFileReader;
+import hep.io.root.RootObject;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * An implementation of RootInput which reads a local file using memory mapped
+ * byte buffers. Since a single mapping is limited to 2GB, large files are mapped
+ * in chunks, which are created as they are needed. Primitive arrays are
+ * read with bulk gets through big-endian view buffers, and slices of
+ * uncompressed data are returned as views of the mapped buffer without copying.
+ * @version $Id$
+ */
+public class MappedRootInput implements RootInput
+{
+   /** The maximum size of each mapped region of the file */
+   static final int CHUNK_SIZE = 1 << 30;
+
+   private RootFileReader reader;
+   private RandomAccessFile raf;
+   private MappedRootInput top;
+   private HashMap map = new HashMap();
+   private ByteBuffer[] chunks;
+   private ByteBuffer current;
+   private ByteBuffer scratch = ByteBuffer.allocate(8);
+   private long base;
+   private long length;
+   private long offset;
+   private int last;
+
+   public MappedRootInput(RootFileReader reader, RandomAccessFile raf) throws IOException
+   {
+      this.reader = reader;
+      this.raf = raf;
+      this.top = this;
+      this.length = raf.length();
+      if (length < 4) throw new IOException("Not a root file");
+      this.chunks = new ByteBuffer[(int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+      seek(0);
+
+      // Read the root header
+      if ((readByte() != 'r') || (readByte() != 'o') || (readByte() != 'o') || (readByte() != 't'))
+         throw new IOException("Not a root file");
+   }
+
+   private MappedRootInput(ByteBuffer buffer, MappedRootInput top)
+   {
+      this.top = top;
+      this.length = buffer.limit();
+      this.chunks = new ByteBuffer[] { buffer };
+      this.current = buffer;
+   }
+
+   public RootClassFactory getFactory()
+   {
+      return top.reader.getFactory();
+   }
+
+   public BasketCache getBasketCache()
+   {
+      return top.reader.getBasketCache();
+   }
+
+   public void setMap(int keylen) throws IOException
+   {
+      offset = absolutePosition() - keylen;
+   }
+
+   public void setPosition(long pos) throws IOException
+   {
+      seek(pos + offset);
+   }
+
+   public long getPosition() throws IOException
+   {
+      return absolutePosition() - offset;
+   }
+
+   public int getRootVersion()
+   {
+      return top.reader.getVersion();
+   }
+
+   public RootInput getTop()
+   {
+      return top;
+   }
+
+   public void checkLength(AbstractRootObject obj) throws IOException
+   {
+      RootInputStream.checkLength(this, obj);
+   }
+
+   public void clearMap()
+   {
+      map.clear();
+      offset = 0;
+   }
+
+   private long absolutePosition()
+   {
+      return base + current.position();
+   }
+
+   private void seek(long pos) throws IOException
+   {
+      if (pos < 0 || pos > length) throw new EOFException("Seek to " + pos + " outside of file (length=" + length + ")");
+      int index = (int) (pos / CHUNK_SIZE);
+      if (index == chunks.length) index--;
+      current = chunk(index);
+      base = (long) index * CHUNK_SIZE;
+      current.position((int) (pos - base));
+   }
+
+   private ByteBuffer chunk(int index) throws IOException
+   {
+      ByteBuffer chunk = chunks[index];
+      if (chunk == null)
+      {
+         long start = (long) index * CHUNK_SIZE;
+         long size = Math.min(CHUNK_SIZE, length - start);
+         chunk = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, size);
+         chunk.order(ByteOrder.BIG_ENDIAN);
+         chunks[index] = chunk;
+      }
+      return chunk;
+   }
+
+   /**
+    * Returns a buffer from which the next n bytes can be read. Normally this is
+    * the current chunk, but if the bytes span two chunks they are copied into
+    * a scratch buffer.
+    */
+   private ByteBuffer buffer(int n) throws IOException
+   {
+      if (current.remaining() >= n) return current;
+      if (absolutePosition() + n > length) throw new EOFException();
+      scratch.clear();
+      for (int i = 0; i < n; i++)
+      {
+         if (!current.hasRemaining()) seek(absolutePosition());
+         scratch.put(current.get());
+      }
+      scratch.flip();
+      return scratch;
+   }
+
+   public boolean readBoolean() throws IOException
+   {
+      return readByte() != 0;
+   }
+
+   public byte readByte() throws IOException
+   {
+      if (!current.hasRemaining()) seek(absolutePosition());
+      try
+      {
+         return current.get();
+      }
+      catch (BufferUnderflowException x)
+      {
+         throw new EOFException();
+      }
+   }
+
+   public int readUnsignedByte() throws IOException
+   {
+      return readByte() & 0xff;
+   }
+
+   public short readShort() throws IOException
+   {
+      return buffer(2).getShort();
+   }
+
+   public int readUnsignedShort() throws IOException
+   {
+      return readShort() & 0xffff;
+   }
+
+   public char readChar() throws IOException
+   {
+      return buffer(2).getChar();
+   }
+
+   public int readInt() throws IOException
+   {
+      return buffer(4).getInt();
+   }
+
+   public long readLong() throws IOException
+   {
+      return buffer(8).getLong();
+   }
+
+   public float readFloat() throws IOException
+   {
+      return buffer(4).getFloat();
+   }
+
+   public double readDouble() throws IOException
+   {
+      return buffer(8).getDouble();
+   }
+
+   public double readTwistedDouble() throws IOException
+   {
+      return RootInputStream.readTwistedDouble(this);
+   }
+
+   public void readFully(byte[] data) throws IOException
+   {
+      readFully(data, 0, data.length);
+   }
+
+   public void readFully(byte[] data, int off, int len) throws IOException
+   {
+      if (absolutePosition() + len > length) throw new EOFException();
+      while (len > 0)
+      {
+         if (!current.hasRemaining()) seek(absolutePosition());
+         int n = Math.min(len, current.remaining());
+         current.get(data, off, n);
+         off += n;
+         len -= n;
+      }
+   }
+
+   public int skipBytes(int n) throws IOException
+   {
+      long pos = absolutePosition();
+      n = (int) Math.min(n, length - pos);
+      seek(pos + n);
+      return n;
+   }
+
+   public String readLine() throws IOException
+   {
+      throw new IOException("Unimplemented method: readLine");
+   }
+
+   public String readUTF() throws IOException
+   {
+      return DataInputStream.readUTF(this);
+   }
+
+   public int readArray(int[] data) throws IOException
+   {
+      int n = readInt();
+      readFixedArray(data, n);
+      return n;
+   }
+
+   public int readArray(byte[] data) throws IOException
+   {
+      int n = readInt();
+      readFully(data, 0, n);
+      return n;
+   }
+
+   public int readArray(short[] data) throws IOException
+   {
+      int n = readInt();
+      readFixedArray(data, n);
+      return n;
+   }
+
+   public int readArray(float[] data) throws IOException
+   {
+      int n = readInt();
+      readFixedArray(data, n);
+      return n;
+   }
+
+   public int readArray(double[] data) throws IOException
+   {
+      int n = readInt();
+      readFixedArray(data, n);
+      return n;
+   }
+
+   public void readFixedArray(byte[] data) throws IOException
+   {
+      readFully(data);
+   }
+
+   public void readFixedArray(int[] data) throws IOException
+   {
+      readFixedArray(data, data.length);
+   }
+
+   public void readFixedArray(short[] data) throws IOException
+   {
+      readFixedArray(data, data.length);
+   }
+
+   public void readFixedArray(float[] data) throws IOException
+   {
+      readFixedArray(data, data.length);
+   }
+
+   public void readFixedArray(double[] data) throws IOException
+   {
+      readFixedArray(data, data.length);
+   }
+
+   public void readFixedArray(long[] data) throws IOException
+   {
+      if (current.remaining() >= data.length * 8)
+      {
+         current.asLongBuffer().get(data);
+         current.position(current.position() + data.length * 8);
+      }
+      else RootInputStream.readFixedArray(this, data);
+   }
+
+   private void readFixedArray(int[] data, int n) throws IOException
+   {
+      if (current.remaining() >= n * 4)
+      {
+         current.asIntBuffer().get(data, 0, n);
+         current.position(current.position() + n * 4);
+      }
+      else for (int i = 0; i < n; i++) data[i] = readInt();
+   }
+
+   private void readFixedArray(short[] data, int n) throws IOException
+   {
+      if (current.remaining() >= n * 2)
+      {
+         current.asShortBuffer().get(data, 0, n);
+         current.position(current.position() + n * 2);
+      }
+      else for (int i = 0; i < n; i++) data[i] = readShort();
+   }
+
+   private void readFixedArray(float[] data, int n) throws IOException
+   {
+      if (current.remaining() >= n * 4)
+      {
+         current.asFloatBuffer().get(data, 0, n);
+         current.position(current.position() + n * 4);
+      }
+      else for (int i = 0; i < n; i++) data[i] = readFloat();
+   }
+
+   private void readFixedArray(double[] data, int n) throws IOException
+   {
+      if (current.remaining() >= n * 8)
+      {
+         current.asDoubleBuffer().get(data, 0, n);
+         current.position(current.position() + n * 8);
+      }
+      else for (int i = 0; i < n; i++) data[i] = readDouble();
+   }
+
+   public void readMultiArray(Object[] array) throws IOException
+   {
+      RootInputStream.readMultiArray(this, array);
+   }
+
+   public String readNullTerminatedString(int maxLength) throws IOException
+   {
+      return RootInputStream.readNullTerminatedString(this, maxLength);
+   }
+
+   public RootObject readObject(String type) throws IOException
+   {
+      return RootInputStream.readObject(this, type);
+   }
+
+   public RootObject readObjectRef() throws IOException
+   {
+      return RootInputStream.readObjectRef(this, map);
+   }
+
+   public String readString() throws IOException
+   {
+      return RootInputStream.readString(this);
+   }
+
+   public int readVersion() throws IOException
+   {
+      return RootInputStream.readVersion(this, null);
+   }
+
+   public int readVersion(AbstractRootObject obj) throws IOException
+   {
+      return RootInputStream.readVersion(this, obj);
+   }
+
+   public void skipObject() throws IOException
+   {
+      RootInputStream.skipObject(this);
+   }
+
+   /**
+    * Slices which lie within a single mapped region are returned as views
+    * of the mapped buffer, without copying the data.
+    */
+   public RootInput slice(int size) throws IOException
+   {
+      if (current.remaining() < size) return RootInputStream.slice(this, size);
+      int pos = current.position();
+      ByteBuffer view = current.duplicate();
+      view.limit(pos + size);
+      view = view.slice();
+      current.position(pos + size);
+      return new MappedRootInput(view, top);
+   }
+
+   public RootInput slice(int inSize, int outSize) throws IOException
+   {
+      return RootInputStream.slice(this, inSize, outSize);
+   }
+
+   public void dump() throws IOException
+   {
+      RootInputStream.dump(this, 200);
+   }
+
+   public void close() throws IOException
+   {
+      if (raf != null) raf.close();
+   }
+
+   public int getLast()
+   {
+      return last;
+   }
+
+   public void setLast(int last)
+   {
+      this.last = last;
+   }
+}
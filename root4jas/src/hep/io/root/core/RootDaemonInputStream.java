@@ -36,6 +36,11 @@ public class RootDaemonInputStream extends DataInputStream implements RootInput
       return reader.getFactory();
    }
 
+   public BasketCache getBasketCache()
+   {
+      return reader.getBasketCache();
+   }
+
    public void setMap(int keylen) throws IOException
    {
       offset = source.getPosition() - keylen;
@@ -16,6 +16,11 @@ public interface RootInput extends DataInput
     */
    RootClassFactory getFactory();
 
+   /**
+    * @return The cache of decompressed baskets shared by all branches of the file
+    */
+   BasketCache getBasketCache();
+
    void setMap(int offset) throws IOException;
 
    void setPosition(long pos) throws IOException;
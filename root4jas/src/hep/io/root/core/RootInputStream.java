@@ -35,6 +35,8 @@ class RootInputStream extends DataInputStream implements RootInput
        ZLIB,
        LZMA,
        OLD,
+       LZ4,
+       ZSTD,
        UNDEFINED;
        
        public static ZAlgo getAlgo(int fCompress){
@@ -47,12 +49,22 @@ class RootInputStream extends DataInputStream implements RootInput
        }
        
        public static ZAlgo getAlgo(byte[] header){
-           if(header[0] == 'Z' && header[1] == 'L'){
+           return getAlgo(header, 0);
+       }
+       
+       public static ZAlgo getAlgo(byte[] header, int offset){
+           if(header[offset] == 'Z' && header[offset+1] == 'L'){
                return ZLIB;
            }
-           if(header[0] == 'X' && header[1] == 'Z'){
+           if(header[offset] == 'X' && header[offset+1] == 'Z'){
                return LZMA;
            }
+           if(header[offset] == 'L' && header[offset+1] == '4'){
+               return LZ4;
+           }
+           if(header[offset] == 'Z' && header[offset+1] == 'S'){
+               return ZSTD;
+           }
            return UNDEFINED;
        }
    }
@@ -67,6 +79,11 @@ class RootInputStream extends DataInputStream implements RootInput
    {
       return top.getFactory();
    }
+
+   public BasketCache getBasketCache()
+   {
+      return top.getBasketCache();
+   }
    
    public void setMap(int offset)
    {
@@ -564,8 +581,10 @@ class RootInputStream extends DataInputStream implements RootInput
       // not possible if we need to support random access into the unpacked array.
       try
       {
-         byte[] buf = new byte[size];
-         in.readFixedArray(buf);
+         // The compressed bytes are only needed until the record has been
+         // decompressed, so a per-thread scratch buffer is used for them.
+         byte[] buf = BufferPool.buffer(size);
+         in.readFully(buf, 0, size);
          byte[] out = new byte[decompressedSize];
       
          int nout = 0;
@@ -573,27 +592,28 @@ class RootInputStream extends DataInputStream implements RootInput
 
          switch (algo) {
              case ZLIB:
+             case LZ4:
+             case ZSTD:
+                 // Each block has its own header giving the compressed and uncompressed sizes,
+                 // large records are decompressed in parallel.
+                 new CompressedBlocks( buf, size, out ).decompress();
+                 break;
              case UNDEFINED:
-                 boolean hasHeader = algo != ZAlgo.UNDEFINED;
-                 Inflater inf = new Inflater( !hasHeader );
-                 try {
-                     // Skip the header when we have to restart
-                     for(int nin = HDRSIZE; nout < decompressedSize; nin += HDRSIZE){
-                         inf.setInput( buf, nin, buf.length - nin );
-                         int rc = inf.inflate( out, nout, out.length - nout );
-                         if ( rc == 0 ) {
-                             throw new IOException( "Inflate unexpectedly returned 0 (perhaps OutOfMemory?)" );
-                         }
-                         nout += rc;
-                         nin += inf.getTotalIn();
-                         inf.reset();
+                 Inflater inf = BufferPool.inflater( true );
+                 // Skip the header when we have to restart
+                 for(int nin = HDRSIZE; nout < decompressedSize; nin += HDRSIZE){
+                     inf.setInput( buf, nin, size - nin );
+                     int rc = inf.inflate( out, nout, out.length - nout );
+                     if ( rc == 0 ) {
+                         throw new IOException( "Inflate unexpectedly returned 0 (perhaps OutOfMemory?)" );
                      }
-                 } finally {
-                     inf.end();
+                     nout += rc;
+                     nin += inf.getTotalIn();
+                     inf.reset();
                  }
                  break;
              case LZMA:
-                 ByteArrayInputStream bufStr = new ByteArrayInputStream( buf );
+                 ByteArrayInputStream bufStr = new ByteArrayInputStream( buf, 0, size );
                  bufStr.skip( HDRSIZE );
                  XZCompressorInputStream unc = new XZCompressorInputStream( bufStr );
                  try{
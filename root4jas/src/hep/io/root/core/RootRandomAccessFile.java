@@ -33,6 +33,11 @@ public class RootRandomAccessFile extends RandomAccessFile implements RootInput
       return reader.getFactory();
    }
 
+   public BasketCache getBasketCache()
+   {
+      return reader.getBasketCache();
+   }
+
    public void setMap(int keylen) throws IOException
    {
       offset = getFilePointer() - keylen;
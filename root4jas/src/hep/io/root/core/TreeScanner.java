@@ -0,0 +1,195 @@
+package hep.io.root.core;
+
+import hep.io.root.interfaces.TBranch;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes the entries of a tree in parallel. The entries are split into
+ * ranges which start and end on basket boundaries, and each range is given
+ * to a worker thread as an {@link EntryRange}, which reads its own copy of
+ * the baskets using positional reads. The results from each range are
+ * combined, in entry order, using a user supplied reducer.
+ * <p>
+ * The file channel is shared with the reader, so worker threads are never
+ * interrupted, since an interrupted read would close the channel. Ranges which
+ * have not started when a scan fails are cancelled, and ranges already being
+ * processed are allowed to finish.
+ * <p>
+ * While a scan is in progress the branches being scanned should not be read
+ * in the normal way from other threads.
+ * <pre>
+ * TreeScanner scanner = reader.createScanner(8);
+ * Double sum = scanner.scan(new TBranch[] { px }, new TreeScanner.RangeProcessor&lt;Double&gt;()
+ * {
+ *    public Double process(EntryRange range) throws IOException
+ *    {
+ *       double sum = 0;
+ *       for (long i = range.getFirst(); i &lt; range.getEnd(); i++) sum += range.getFloat(px, i);
+ *       return sum;
+ *    }
+ * }, ...);
+ * </pre>
+ * @see hep.io.root.RootFileReader#createScanner(int)
+ * @version $Id$
+ */
+public class TreeScanner
+{
+   private static final AtomicInteger threadNumber = new AtomicInteger();
+   private FileChannel channel;
+   private RootInput file;
+   private int nThreads;
+   private ExecutorService executor;
+
+   /**
+    * Process one range of entries
+    */
+   public interface RangeProcessor<T>
+   {
+      T process(EntryRange range) throws IOException;
+   }
+
+   /**
+    * Combine the results of two ranges. The first argument is the combined
+    * result of all of the preceding ranges.
+    */
+   public interface Reducer<T>
+   {
+      T reduce(T a, T b);
+   }
+
+   /**
+    * Create a scanner
+    * @param channel The channel from which to read baskets
+    * @param file The top level RootInput of the file
+    * @param nThreads The number of worker threads to use
+    */
+   public TreeScanner(FileChannel channel, RootInput file, int nThreads)
+   {
+      this.channel = channel;
+      this.file = file;
+      this.nThreads = nThreads;
+      this.executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory()
+      {
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "TreeScanner-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }
+
+   public int getThreads()
+   {
+      return nThreads;
+   }
+
+   /**
+    * Split the entries of the given branches into ranges aligned to basket
+    * boundaries. The boundaries are taken from the branch with the fewest
+    * baskets, so baskets of the other branches may be read by two ranges.
+    * @param branches The branches which will be read, all from the same tree
+    * @param nRanges The (approximate) number of ranges wanted
+    */
+   public List<EntryRange> split(TBranch[] branches, int nRanges)
+   {
+      if (branches.length == 0) throw new IllegalArgumentException("No branches to scan");
+      TBranch coarsest = branches[0];
+      for (int i = 1; i < branches.length; i++)
+      {
+         if (branches[i].getEntries() != coarsest.getEntries())
+            throw new IllegalArgumentException("Branches " + coarsest.getName() + " and " + branches[i].getName() + " have different numbers of entries");
+         if (branches[i].getWriteBasket() < coarsest.getWriteBasket()) coarsest = branches[i];
+      }
+
+      long entries = coarsest.getEntries();
+      long[] basketEntry = coarsest.getBasketEntry();
+      int n = coarsest.getWriteBasket();
+      long target = Math.max(1, (entries + nRanges - 1) / Math.max(1, nRanges));
+
+      List<EntryRange> result = new ArrayList<EntryRange>();
+      long first = 0;
+      for (int i = 1; (basketEntry != null) && (i <= n); i++)
+      {
+         long boundary = basketEntry[i];
+         if ((boundary - first >= target) && (boundary < entries))
+         {
+            result.add(new EntryRange(channel, file, first, boundary));
+            first = boundary;
+         }
+      }
+      if (first < entries) result.add(new EntryRange(channel, file, first, entries));
+      return result;
+   }
+
+   /**
+    * Process all of the entries of the given branches in parallel. The
+    * entries are split into about four ranges per thread to balance the load.
+    * @param branches The branches which will be read, all from the same tree
+    * @param processor Called once for each range, on one of the worker threads
+    * @param reducer Used to combine the results of the ranges, in entry order
+    * @return The combined result, or <code>null</code> if there are no entries
+    */
+   public <T> T scan(TBranch[] branches, final RangeProcessor<T> processor, Reducer<T> reducer) throws IOException
+   {
+      List<Future<T>> futures = new ArrayList<Future<T>>();
+      for (final EntryRange range : split(branches, 4 * nThreads))
+      {
+         futures.add(executor.submit(new Callable<T>()
+         {
+            public T call() throws IOException
+            {
+               return processor.process(range);
+            }
+         }));
+      }
+
+      T result = null;
+      try
+      {
+         for (int i = 0; i < futures.size(); i++)
+         {
+            T value = futures.get(i).get();
+            result = (i == 0) ? value : reducer.reduce(result, value);
+         }
+         return result;
+      }
+      catch (InterruptedException x)
+      {
+         throw new InterruptedIOException("Interrupted while scanning tree");
+      }
+      catch (ExecutionException x)
+      {
+         Throwable cause = x.getCause();
+         if (cause instanceof IOException) throw (IOException) cause;
+         if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+         if (cause instanceof Error) throw (Error) cause;
+         IOException xx = new IOException("Error while scanning tree");
+         xx.initCause(cause);
+         throw xx;
+      }
+      finally
+      {
+         for (Future<T> future : futures) future.cancel(false);
+      }
+   }
+
+   /**
+    * Stop the worker threads once any ranges being processed have finished
+    */
+   public void close()
+   {
+      executor.shutdown();
+   }
+}
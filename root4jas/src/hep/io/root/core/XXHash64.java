@@ -0,0 +1,95 @@
+package hep.io.root.core;
+
+/**
+ * Implementation of the 64 bit xxHash algorithm, used for the checksums
+ * stored with LZ4 compressed records, and in ZSTD frames.
+ * @version $Id$
+ */
+final class XXHash64
+{
+   private static final long P1 = 0x9E3779B185EBCA87L;
+   private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+   private static final long P3 = 0x165667B19E3779F9L;
+   private static final long P4 = 0x85EBCA77C2B2AE63L;
+   private static final long P5 = 0x27D4EB2F165667C5L;
+
+   private XXHash64()
+   {
+   }
+
+   static long hash(byte[] buf, int off, int len, long seed)
+   {
+      int end = off + len;
+      long h;
+      if (len >= 32)
+      {
+         long v1 = seed + P1 + P2;
+         long v2 = seed + P2;
+         long v3 = seed;
+         long v4 = seed - P1;
+         int limit = end - 32;
+         do
+         {
+            v1 = round(v1, getLong(buf, off));
+            v2 = round(v2, getLong(buf, off + 8));
+            v3 = round(v3, getLong(buf, off + 16));
+            v4 = round(v4, getLong(buf, off + 24));
+            off += 32;
+         }
+         while (off <= limit);
+         h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+         h = merge(h, v1);
+         h = merge(h, v2);
+         h = merge(h, v3);
+         h = merge(h, v4);
+      }
+      else h = seed + P5;
+
+      h += len;
+      for (; off + 8 <= end; off += 8)
+      {
+         h ^= round(0, getLong(buf, off));
+         h = Long.rotateLeft(h, 27) * P1 + P4;
+      }
+      if (off + 4 <= end)
+      {
+         h ^= (getInt(buf, off) & 0xFFFFFFFFL) * P1;
+         h = Long.rotateLeft(h, 23) * P2 + P3;
+         off += 4;
+      }
+      for (; off < end; off++)
+      {
+         h ^= (buf[off] & 0xFF) * P5;
+         h = Long.rotateLeft(h, 11) * P1;
+      }
+      h ^= h >>> 33;
+      h *= P2;
+      h ^= h >>> 29;
+      h *= P3;
+      h ^= h >>> 32;
+      return h;
+   }
+
+   private static long round(long acc, long input)
+   {
+      acc += input * P2;
+      acc = Long.rotateLeft(acc, 31);
+      return acc * P1;
+   }
+
+   private static long merge(long acc, long val)
+   {
+      acc ^= round(0, val);
+      return acc * P1 + P4;
+   }
+
+   static long getLong(byte[] buf, int off)
+   {
+      return (getInt(buf, off) & 0xFFFFFFFFL) | ((long) getInt(buf, off + 4) << 32);
+   }
+
+   static int getInt(byte[] buf, int off)
+   {
+      return (buf[off] & 0xFF) | ((buf[off + 1] & 0xFF) << 8) | ((buf[off + 2] & 0xFF) << 16) | ((buf[off + 3] & 0xFF) << 24);
+   }
+}
@@ -0,0 +1,791 @@
+package hep.io.root.core;
+
+import java.io.IOException;
+
+/**
+ * A pure Java decoder for Zstandard (RFC 8878) frames, as written by ROOT
+ * for files using ZSTD compression. Dictionaries are not supported.
+ * @version $Id$
+ */
+final class ZstdDecompressor
+{
+   private static final int MAGIC = 0xFD2FB528;
+   private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+   private static final int SKIPPABLE_MASK = 0xFFFFFFF0;
+
+   private static final int BLOCK_RAW = 0;
+   private static final int BLOCK_RLE = 1;
+   private static final int BLOCK_COMPRESSED = 2;
+
+   private static final int LITERALS_RAW = 0;
+   private static final int LITERALS_RLE = 1;
+   private static final int LITERALS_COMPRESSED = 2;
+
+   private static final int MODE_PREDEFINED = 0;
+   private static final int MODE_RLE = 1;
+   private static final int MODE_FSE = 2;
+
+   private static final int MAX_BLOCK_SIZE = 128 * 1024;
+   private static final int MAX_HUFFMAN_BITS = 11;
+
+   private static final int LL_MAX_LOG = 9;
+   private static final int ML_MAX_LOG = 9;
+   private static final int OF_MAX_LOG = 8;
+   private static final int LL_MAX_SYMBOL = 35;
+   private static final int ML_MAX_SYMBOL = 52;
+   private static final int OF_MAX_SYMBOL = 31;
+
+   private static final short[] LL_DEFAULT =
+   {
+      4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1, -1, -1, -1, -1
+   };
+   private static final short[] ML_DEFAULT =
+   {
+      1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+      1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1, -1, -1
+   };
+   private static final short[] OF_DEFAULT =
+   {
+      1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1
+   };
+
+   private static final int[] LL_BASE =
+   {
+      0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 18, 20, 22, 24, 28, 32, 40,
+      48, 64, 128, 256, 512, 1024, 2048, 4096, 8192, 16384, 32768, 65536
+   };
+   private static final int[] LL_BITS =
+   {
+      0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3,
+      4, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16
+   };
+   private static final int[] ML_BASE =
+   {
+      3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26,
+      27, 28, 29, 30, 31, 32, 33, 34, 35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131,
+      259, 515, 1027, 2051, 4099, 8195, 16387, 32771, 65539
+   };
+   private static final int[] ML_BITS =
+   {
+      0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+      0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7,
+      8, 9, 10, 11, 12, 13, 14, 15, 16
+   };
+
+   private static final FSETable LL_PREDEFINED = FSETable.build(LL_DEFAULT, LL_DEFAULT.length - 1, 6);
+   private static final FSETable ML_PREDEFINED = FSETable.build(ML_DEFAULT, ML_DEFAULT.length - 1, 6);
+   private static final FSETable OF_PREDEFINED = FSETable.build(OF_DEFAULT, OF_DEFAULT.length - 1, 5);
+
+   private byte[] src;
+   private byte[] dst;
+   private byte[] literals = new byte[MAX_BLOCK_SIZE];
+   private int literalsSize;
+   private int[] repeat = new int[3];
+   private FSETable llTable;
+   private FSETable mlTable;
+   private FSETable ofTable;
+   private HuffmanTable huffman;
+   private int frameStart;
+
+   ZstdDecompressor()
+   {
+   }
+
+   /**
+    * Decompress one or more ZSTD frames
+    * @param src The source buffer
+    * @param srcOff Offset of the first frame in the source buffer
+    * @param srcLen Length of the compressed data
+    * @param dst The destination buffer
+    * @param dstOff Offset at which to write the decompressed data
+    * @param dstLen The expected decompressed length
+    */
+   static void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException
+   {
+      new ZstdDecompressor().decode(src, srcOff, srcLen, dst, dstOff, dstLen);
+   }
+
+   /**
+    * Decompress one or more ZSTD frames, reusing the literals buffer of this decoder.
+    * @see #decompress(byte[],int,int,byte[],int,int)
+    */
+   void decode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException
+   {
+      this.src = src;
+      this.dst = dst;
+      int sp = srcOff;
+      int send = srcOff + srcLen;
+      int dp = dstOff;
+      int dend = dstOff + dstLen;
+      try
+      {
+         while (sp < send)
+         {
+            int magic = XXHash64.getInt(src, sp);
+            if ((magic & SKIPPABLE_MASK) == SKIPPABLE_MAGIC)
+            {
+               sp += 8 + XXHash64.getInt(src, sp + 4);
+               continue;
+            }
+            if (magic != MAGIC) throw new IOException("Bad ZSTD magic number " + Integer.toHexString(magic));
+            long result = decodeFrame(sp + 4, send, dp, dend);
+            sp = (int) (result >>> 32);
+            dp = (int) result;
+         }
+      }
+      catch (ArrayIndexOutOfBoundsException x)
+      {
+         throw new IOException("Corrupt ZSTD data");
+      }
+      finally
+      {
+         this.src = null;
+         this.dst = null;
+         llTable = mlTable = ofTable = null;
+         huffman = null;
+      }
+      if (dp != dend) throw new IOException("ZSTD data decompressed to " + (dp - dstOff) + " bytes, expected " + dstLen);
+   }
+
+   /**
+    * Decode a single frame.
+    * @return The new source position (upper 32 bits) and destination position (lower 32 bits)
+    */
+   private long decodeFrame(int sp, int send, int dp, int dend) throws IOException
+   {
+      int descriptor = src[sp++] & 0xFF;
+      int fcsFlag = descriptor >>> 6;
+      boolean singleSegment = (descriptor & 0x20) != 0;
+      boolean hasChecksum = (descriptor & 0x04) != 0;
+      int dictIdFlag = descriptor & 0x03;
+      if ((descriptor & 0x08) != 0) throw new IOException("Reserved bit set in ZSTD frame header");
+
+      if (!singleSegment) sp++; // window descriptor
+      int dictIdSize = dictIdFlag == 3 ? 4 : dictIdFlag;
+      long dictId = 0;
+      for (int i = 0; i < dictIdSize; i++) dictId |= (src[sp++] & 0xFFL) << (8 * i);
+      if (dictId != 0) throw new IOException("ZSTD dictionaries are not supported");
+      int fcsSize = fcsFlag == 0 ? (singleSegment ? 1 : 0) : 1 << fcsFlag;
+      sp += fcsSize;
+
+      frameStart = dp;
+      repeat[0] = 1;
+      repeat[1] = 4;
+      repeat[2] = 8;
+      llTable = mlTable = ofTable = null;
+      huffman = null;
+
+      boolean last;
+      do
+      {
+         int header = (src[sp] & 0xFF) | ((src[sp + 1] & 0xFF) << 8) | ((src[sp + 2] & 0xFF) << 16);
+         sp += 3;
+         last = (header & 1) != 0;
+         int type = (header >>> 1) & 3;
+         int size = header >>> 3;
+         switch (type)
+         {
+            case BLOCK_RAW:
+               if (sp + size > send || dp + size > dend) throw new IOException("Corrupt ZSTD block");
+               System.arraycopy(src, sp, dst, dp, size);
+               sp += size;
+               dp += size;
+               break;
+            case BLOCK_RLE:
+               if (dp + size > dend) throw new IOException("Corrupt ZSTD block");
+               byte value = src[sp++];
+               for (int i = 0; i < size; i++) dst[dp++] = value;
+               break;
+            case BLOCK_COMPRESSED:
+               if (size > MAX_BLOCK_SIZE || sp + size > send) throw new IOException("Corrupt ZSTD block");
+               dp = decodeCompressedBlock(sp, sp + size, dp, dend);
+               sp += size;
+               break;
+            default:
+               throw new IOException("Reserved ZSTD block type");
+         }
+      }
+      while (!last);
+
+      if (hasChecksum)
+      {
+         int expected = XXHash64.getInt(src, sp);
+         int actual = (int) XXHash64.hash(dst, frameStart, dp - frameStart, 0);
+         if (expected != actual) throw new IOException("ZSTD checksum mismatch");
+         sp += 4;
+      }
+      return ((long) sp << 32) | (dp & 0xFFFFFFFFL);
+   }
+
+   private int decodeCompressedBlock(int sp, int send, int dp, int dend) throws IOException
+   {
+      sp = decodeLiterals(sp, send);
+
+      // Sequences section header
+      int nbSeq = src[sp++] & 0xFF;
+      if (nbSeq >= 128)
+      {
+         if (nbSeq == 255)
+         {
+            nbSeq = (src[sp] & 0xFF) + ((src[sp + 1] & 0xFF) << 8) + 0x7F00;
+            sp += 2;
+         }
+         else nbSeq = ((nbSeq - 128) << 8) + (src[sp++] & 0xFF);
+      }
+      if (nbSeq == 0)
+      {
+         if (sp != send) throw new IOException("Corrupt ZSTD block");
+         if (dp + literalsSize > dend) throw new IOException("ZSTD output overflow");
+         System.arraycopy(literals, 0, dst, dp, literalsSize);
+         return dp + literalsSize;
+      }
+
+      int modes = src[sp++] & 0xFF;
+      if ((modes & 3) != 0) throw new IOException("Reserved bits set in ZSTD sequence modes");
+      int[] pos = {sp};
+      llTable = readTable(modes >>> 6, pos, LL_PREDEFINED, llTable, LL_MAX_SYMBOL, LL_MAX_LOG);
+      ofTable = readTable((modes >>> 4) & 3, pos, OF_PREDEFINED, ofTable, OF_MAX_SYMBOL, OF_MAX_LOG);
+      mlTable = readTable((modes >>> 2) & 3, pos, ML_PREDEFINED, mlTable, ML_MAX_SYMBOL, ML_MAX_LOG);
+      sp = pos[0];
+
+      return executeSequences(sp, send, nbSeq, dp, dend);
+   }
+
+   private FSETable readTable(int mode, int[] pos, FSETable predefined, FSETable previous, int maxSymbol, int maxLog) throws IOException
+   {
+      switch (mode)
+      {
+         case MODE_PREDEFINED:
+            return predefined;
+         case MODE_RLE:
+            return FSETable.rle(src[pos[0]++] & 0xFF);
+         case MODE_FSE:
+            short[] norm = new short[maxSymbol + 1];
+            int[] result = readNormalizedCounts(src, pos[0], norm, maxSymbol, maxLog);
+            pos[0] += result[0];
+            return FSETable.build(norm, result[2], result[1]);
+         default:
+            if (previous == null) throw new IOException("ZSTD repeat mode without previous table");
+            return previous;
+      }
+   }
+
+   private int executeSequences(int sp, int send, int nbSeq, int dp, int dend) throws IOException
+   {
+      BitReader bits = new BitReader(src, sp, send - sp);
+      int llState = (int) bits.read(llTable.log);
+      int ofState = (int) bits.read(ofTable.log);
+      int mlState = (int) bits.read(mlTable.log);
+      bits.reload();
+
+      int lp = 0;
+      for (int n = nbSeq; n > 0; n--)
+      {
+         int llCode = llTable.symbol[llState];
+         int mlCode = mlTable.symbol[mlState];
+         int ofCode = ofTable.symbol[ofState];
+         if (ofCode > OF_MAX_SYMBOL) throw new IOException("Corrupt ZSTD offset code");
+
+         long offsetValue = (1L << ofCode) + bits.read(ofCode);
+         bits.reload();
+         int matchLength = ML_BASE[mlCode] + (int) bits.read(ML_BITS[mlCode]);
+         int literalLength = LL_BASE[llCode] + (int) bits.read(LL_BITS[llCode]);
+         bits.reload();
+
+         int offset;
+         if (offsetValue > 3)
+         {
+            if (offsetValue - 3 > Integer.MAX_VALUE) throw new IOException("ZSTD offset too large");
+            offset = (int) (offsetValue - 3);
+            repeat[2] = repeat[1];
+            repeat[1] = repeat[0];
+            repeat[0] = offset;
+         }
+         else
+         {
+            int index = (int) offsetValue + (literalLength == 0 ? 1 : 0);
+            if (index == 1) offset = repeat[0];
+            else
+            {
+               offset = index == 4 ? repeat[0] - 1 : repeat[index - 1];
+               if (index != 2) repeat[2] = repeat[1];
+               repeat[1] = repeat[0];
+               repeat[0] = offset;
+            }
+         }
+
+         // Copy literals
+         if (lp + literalLength > literalsSize || dp + literalLength + matchLength > dend) throw new IOException("Corrupt ZSTD sequence");
+         System.arraycopy(literals, lp, dst, dp, literalLength);
+         lp += literalLength;
+         dp += literalLength;
+
+         // Copy match
+         int match = dp - offset;
+         if (offset <= 0 || match < frameStart) throw new IOException("Corrupt ZSTD offset");
+         if (offset >= matchLength)
+         {
+            System.arraycopy(dst, match, dst, dp, matchLength);
+            dp += matchLength;
+         }
+         else
+         {
+            for (int i = 0; i < matchLength; i++) dst[dp++] = dst[match++];
+         }
+
+         if (n > 1)
+         {
+            llState = llTable.newState[llState] + (int) bits.read(llTable.nbBits[llState]);
+            mlState = mlTable.newState[mlState] + (int) bits.read(mlTable.nbBits[mlState]);
+            bits.reload();
+            ofState = ofTable.newState[ofState] + (int) bits.read(ofTable.nbBits[ofState]);
+            bits.reload();
+         }
+      }
+      if (bits.reload() != BitReader.COMPLETED) throw new IOException("Corrupt ZSTD sequence bitstream");
+
+      int remaining = literalsSize - lp;
+      if (dp + remaining > dend) throw new IOException("ZSTD output overflow");
+      System.arraycopy(literals, lp, dst, dp, remaining);
+      return dp + remaining;
+   }
+
+   private int decodeLiterals(int sp, int send) throws IOException
+   {
+      int b0 = src[sp] & 0xFF;
+      int type = b0 & 3;
+      int sizeFormat = (b0 >>> 2) & 3;
+      int regenerated;
+      if (type == LITERALS_RAW || type == LITERALS_RLE)
+      {
+         switch (sizeFormat)
+         {
+            case 0:
+            case 2:
+               regenerated = b0 >>> 3;
+               sp += 1;
+               break;
+            case 1:
+               regenerated = (b0 >>> 4) + ((src[sp + 1] & 0xFF) << 4);
+               sp += 2;
+               break;
+            default:
+               regenerated = (b0 >>> 4) + ((src[sp + 1] & 0xFF) << 4) + ((src[sp + 2] & 0xFF) << 12);
+               sp += 3;
+               break;
+         }
+         if (regenerated > MAX_BLOCK_SIZE) throw new IOException("Corrupt ZSTD literals");
+         if (type == LITERALS_RAW)
+         {
+            System.arraycopy(src, sp, literals, 0, regenerated);
+            sp += regenerated;
+         }
+         else
+         {
+            byte value = src[sp++];
+            for (int i = 0; i < regenerated; i++) literals[i] = value;
+         }
+         literalsSize = regenerated;
+         return sp;
+      }
+
+      int b1 = src[sp + 1] & 0xFF;
+      int b2 = src[sp + 2] & 0xFF;
+      int compressed;
+      boolean singleStream = sizeFormat == 0;
+      switch (sizeFormat)
+      {
+         case 0:
+         case 1:
+            regenerated = (b0 >>> 4) | ((b1 & 0x3F) << 4);
+            compressed = (b1 >>> 6) | (b2 << 2);
+            sp += 3;
+            break;
+         case 2:
+         {
+            int b3 = src[sp + 3] & 0xFF;
+            regenerated = (b0 >>> 4) | (b1 << 4) | ((b2 & 0x03) << 12);
+            compressed = (b2 >>> 2) | (b3 << 6);
+            sp += 4;
+            break;
+         }
+         default:
+         {
+            int b3 = src[sp + 3] & 0xFF;
+            int b4 = src[sp + 4] & 0xFF;
+            regenerated = (b0 >>> 4) | (b1 << 4) | ((b2 & 0x3F) << 12);
+            compressed = (b2 >>> 6) | (b3 << 2) | (b4 << 10);
+            sp += 5;
+            break;
+         }
+      }
+      if (regenerated > MAX_BLOCK_SIZE || sp + compressed > send) throw new IOException("Corrupt ZSTD literals");
+
+      int end = sp + compressed;
+      if (type == LITERALS_COMPRESSED)
+      {
+         huffman = new HuffmanTable();
+         sp = huffman.read(src, sp, end);
+      }
+      else if (huffman == null) throw new IOException("ZSTD treeless literals without previous Huffman table");
+
+      if (singleStream)
+      {
+         decodeHuffmanStream(sp, end - sp, 0, regenerated);
+      }
+      else
+      {
+         int size1 = (src[sp] & 0xFF) | ((src[sp + 1] & 0xFF) << 8);
+         int size2 = (src[sp + 2] & 0xFF) | ((src[sp + 3] & 0xFF) << 8);
+         int size3 = (src[sp + 4] & 0xFF) | ((src[sp + 5] & 0xFF) << 8);
+         int start = sp + 6;
+         int size4 = end - start - size1 - size2 - size3;
+         if (size4 < 1) throw new IOException("Corrupt ZSTD literals jump table");
+         int segment = (regenerated + 3) / 4;
+         decodeHuffmanStream(start, size1, 0, segment);
+         decodeHuffmanStream(start + size1, size2, segment, segment);
+         decodeHuffmanStream(start + size1 + size2, size3, 2 * segment, segment);
+         decodeHuffmanStream(start + size1 + size2 + size3, size4, 3 * segment, regenerated - 3 * segment);
+      }
+      literalsSize = regenerated;
+      return end;
+   }
+
+   private void decodeHuffmanStream(int sp, int size, int off, int count) throws IOException
+   {
+      BitReader bits = new BitReader(src, sp, size);
+      int log = huffman.log;
+      byte[] symbols = huffman.symbol;
+      byte[] nbBits = huffman.nbBits;
+      for (int i = off, end = off + count; i < end; i++)
+      {
+         int state = (int) bits.peek(log);
+         literals[i] = symbols[state];
+         bits.skip(nbBits[state]);
+         bits.reload();
+      }
+      if (bits.reload() != BitReader.COMPLETED) throw new IOException("Corrupt ZSTD Huffman stream");
+   }
+
+   /**
+    * Read an FSE table description.
+    * @return The number of bytes read, the accuracy log and the maximum symbol used
+    */
+   static int[] readNormalizedCounts(byte[] src, int sp, short[] norm, int maxSymbol, int maxLog) throws IOException
+   {
+      long bitPos = 0;
+      int log = (int) peekForward(src, sp, bitPos, 4) + 5;
+      bitPos += 4;
+      if (log > maxLog) throw new IOException("ZSTD FSE accuracy log too large");
+
+      int remaining = (1 << log) + 1;
+      int threshold = 1 << log;
+      int nbBits = log + 1;
+      int symbol = 0;
+      while (remaining > 1 && symbol <= maxSymbol)
+      {
+         int max = (2 * threshold - 1) - remaining;
+         int value = (int) peekForward(src, sp, bitPos, nbBits);
+         int count;
+         if ((value & (threshold - 1)) < max)
+         {
+            count = value & (threshold - 1);
+            bitPos += nbBits - 1;
+         }
+         else
+         {
+            count = value & (2 * threshold - 1);
+            if (count >= threshold) count -= max;
+            bitPos += nbBits;
+         }
+         count--;
+         remaining -= count < 0 ? -count : count;
+         norm[symbol++] = (short) count;
+         if (count == 0)
+         {
+            int repeat;
+            do
+            {
+               repeat = (int) peekForward(src, sp, bitPos, 2);
+               bitPos += 2;
+               for (int i = 0; i < repeat; i++)
+               {
+                  if (symbol > maxSymbol) throw new IOException("Corrupt ZSTD FSE table");
+                  norm[symbol++] = 0;
+               }
+            }
+            while (repeat == 3);
+         }
+         while (remaining < threshold)
+         {
+            nbBits--;
+            threshold >>= 1;
+         }
+      }
+      if (remaining != 1) throw new IOException("Corrupt ZSTD FSE table");
+      for (int i = symbol; i <= maxSymbol; i++) norm[i] = 0;
+      return new int[] { (int) ((bitPos + 7) >>> 3), log, symbol - 1 };
+   }
+
+   /**
+    * Read n bits (n &lt;= 25) from a little-endian forward bit stream
+    */
+   private static long peekForward(byte[] src, int sp, long bitPos, int n)
+   {
+      int p = sp + (int) (bitPos >>> 3);
+      long value = 0;
+      for (int i = 0; i < 4 && p + i < src.length; i++) value |= (src[p + i] & 0xFFL) << (8 * i);
+      return (value >>> (bitPos & 7)) & ((1L << n) - 1);
+   }
+
+   /**
+    * A backward bit stream, as used by FSE and Huffman coded data.
+    */
+   static final class BitReader
+   {
+      static final int UNFINISHED = 0;
+      static final int END_OF_BUFFER = 1;
+      static final int COMPLETED = 2;
+      static final int OVERFLOW = 3;
+
+      private byte[] src;
+      private int start;
+      private int ptr;
+      private long container;
+      private int consumed;
+
+      BitReader(byte[] src, int start, int size) throws IOException
+      {
+         if (size < 1) throw new IOException("Empty ZSTD bitstream");
+         this.src = src;
+         this.start = start;
+         int last = src[start + size - 1] & 0xFF;
+         if (last == 0) throw new IOException("Corrupt ZSTD bitstream");
+         if (size >= 8)
+         {
+            ptr = start + size - 8;
+            container = XXHash64.getLong(src, ptr);
+            consumed = 0;
+         }
+         else
+         {
+            ptr = start;
+            container = 0;
+            for (int i = 0; i < size; i++) container |= (src[start + i] & 0xFFL) << (8 * i);
+            consumed = (8 - size) * 8;
+         }
+         consumed += 8 - (31 - Integer.numberOfLeadingZeros(last));
+      }
+
+      long peek(int n)
+      {
+         return ((container << (consumed & 63)) >>> 1) >>> (63 - n);
+      }
+
+      void skip(int n)
+      {
+         consumed += n;
+      }
+
+      long read(int n)
+      {
+         if (n == 0) return 0;
+         long value = peek(n);
+         consumed += n;
+         return value;
+      }
+
+      int reload()
+      {
+         if (consumed > 64) return OVERFLOW;
+         if (ptr >= start + 8)
+         {
+            ptr -= consumed >>> 3;
+            consumed &= 7;
+            container = XXHash64.getLong(src, ptr);
+            return UNFINISHED;
+         }
+         if (ptr == start) return consumed < 64 ? END_OF_BUFFER : COMPLETED;
+         int nbBytes = consumed >>> 3;
+         int status = UNFINISHED;
+         if (ptr - nbBytes < start)
+         {
+            nbBytes = ptr - start;
+            status = END_OF_BUFFER;
+         }
+         ptr -= nbBytes;
+         consumed -= nbBytes * 8;
+         container = XXHash64.getLong(src, ptr);
+         return status;
+      }
+   }
+
+   /**
+    * An FSE decoding table
+    */
+   static final class FSETable
+   {
+      int log;
+      int[] symbol;
+      int[] nbBits;
+      int[] newState;
+
+      static FSETable rle(int symbol)
+      {
+         FSETable table = new FSETable();
+         table.log = 0;
+         table.symbol = new int[] { symbol };
+         table.nbBits = new int[1];
+         table.newState = new int[1];
+         return table;
+      }
+
+      static FSETable build(short[] norm, int maxSymbol, int log)
+      {
+         int size = 1 << log;
+         FSETable table = new FSETable();
+         table.log = log;
+         table.symbol = new int[size];
+         table.nbBits = new int[size];
+         table.newState = new int[size];
+
+         int[] next = new int[maxSymbol + 1];
+         int high = size - 1;
+         for (int s = 0; s <= maxSymbol; s++)
+         {
+            if (norm[s] == -1)
+            {
+               table.symbol[high--] = s;
+               next[s] = 1;
+            }
+            else next[s] = norm[s];
+         }
+         int step = (size >>> 1) + (size >>> 3) + 3;
+         int mask = size - 1;
+         int position = 0;
+         for (int s = 0; s <= maxSymbol; s++)
+         {
+            for (int i = 0; i < norm[s]; i++)
+            {
+               table.symbol[position] = s;
+               do
+               {
+                  position = (position + step) & mask;
+               }
+               while (position > high);
+            }
+         }
+         for (int u = 0; u < size; u++)
+         {
+            int s = table.symbol[u];
+            int nextState = next[s]++;
+            int bits = log - (31 - Integer.numberOfLeadingZeros(nextState));
+            table.nbBits[u] = bits;
+            table.newState[u] = (nextState << bits) - size;
+         }
+         return table;
+      }
+   }
+
+   /**
+    * A Huffman decoding table for literals
+    */
+   static final class HuffmanTable
+   {
+      int log;
+      byte[] symbol;
+      byte[] nbBits;
+
+      /**
+       * Read the Huffman tree description.
+       * @return The position following the description
+       */
+      int read(byte[] src, int sp, int end) throws IOException
+      {
+         int header = src[sp++] & 0xFF;
+         int[] weights = new int[256];
+         int nWeights;
+         if (header < 128)
+         {
+            // FSE compressed weights
+            if (sp + header > end) throw new IOException("Corrupt ZSTD Huffman description");
+            short[] norm = new short[256];
+            int[] result = readNormalizedCounts(src, sp, norm, 255, 6);
+            FSETable table = FSETable.build(norm, result[2], result[1]);
+            BitReader bits = new BitReader(src, sp + result[0], header - result[0]);
+            int state1 = (int) bits.read(table.log);
+            int state2 = (int) bits.read(table.log);
+            nWeights = 0;
+            while (true)
+            {
+               if (nWeights > 253) throw new IOException("Corrupt ZSTD Huffman weights");
+               weights[nWeights++] = table.symbol[state1];
+               state1 = table.newState[state1] + (int) bits.read(table.nbBits[state1]);
+               if (bits.reload() == BitReader.OVERFLOW)
+               {
+                  weights[nWeights++] = table.symbol[state2];
+                  break;
+               }
+               weights[nWeights++] = table.symbol[state2];
+               state2 = table.newState[state2] + (int) bits.read(table.nbBits[state2]);
+               if (bits.reload() == BitReader.OVERFLOW)
+               {
+                  weights[nWeights++] = table.symbol[state1];
+                  break;
+               }
+            }
+            sp += header;
+         }
+         else
+         {
+            nWeights = header - 127;
+            for (int i = 0; i < nWeights; i += 2)
+            {
+               int b = src[sp++] & 0xFF;
+               weights[i] = b >>> 4;
+               weights[i + 1] = b & 0xF;
+            }
+         }
+
+         // The weight of the last symbol is implied
+         int total = 0;
+         for (int i = 0; i < nWeights; i++)
+         {
+            if (weights[i] > MAX_HUFFMAN_BITS) throw new IOException("Corrupt ZSTD Huffman weights");
+            if (weights[i] > 0) total += 1 << (weights[i] - 1);
+         }
+         if (total == 0) throw new IOException("Corrupt ZSTD Huffman weights");
+         int maxBits = 32 - Integer.numberOfLeadingZeros(total);
+         int rest = (1 << maxBits) - total;
+         if (Integer.bitCount(rest) != 1 || maxBits > MAX_HUFFMAN_BITS) throw new IOException("Corrupt ZSTD Huffman weights");
+         weights[nWeights++] = 32 - Integer.numberOfLeadingZeros(rest);
+
+         log = maxBits;
+         symbol = new byte[1 << maxBits];
+         nbBits = new byte[1 << maxBits];
+         int[] rankStart = new int[maxBits + 2];
+         for (int i = 0; i < nWeights; i++) rankStart[weights[i]] += (1 << weights[i]) >>> 1;
+         int position = 0;
+         for (int w = 1; w <= maxBits; w++)
+         {
+            int count = rankStart[w];
+            rankStart[w] = position;
+            position += count;
+         }
+         for (int s = 0; s < nWeights; s++)
+         {
+            int w = weights[s];
+            if (w == 0) continue;
+            int length = (1 << w) >>> 1;
+            int p = rankStart[w];
+            for (int i = 0; i < length; i++)
+            {
+               symbol[p + i] = (byte) s;
+               nbBits[p + i] = (byte) (maxBits + 1 - w);
+            }
+            rankStart[w] += length;
+         }
+         return sp;
+      }
+   }
+}
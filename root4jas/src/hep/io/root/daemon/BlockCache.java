@@ -0,0 +1,535 @@
+package hep.io.root.daemon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A client side cache of fixed size blocks of remote files, shared by all
+ * rootd and xrootd streams. Blocks are kept in memory, and optionally in a
+ * second tier on local disk, in both cases discarding the least recently used
+ * blocks first. Files are identified by their URL together with the size and
+ * modification time returned by the server, so a file which changes on the
+ * server is never served from stale blocks.
+ * <p>
+ * The cache is configured using system properties:
+ * <ul>
+ * <li>hep.io.root.daemon.cache.memory -- Maximum bytes held in memory (default 0, which disables the cache)
+ * <li>hep.io.root.daemon.cache.blockSize -- Size of each block (default 64KB)
+ * <li>hep.io.root.daemon.cache.dir -- Directory for the disk tier (default none)
+ * <li>hep.io.root.daemon.cache.disk -- Maximum bytes held on disk (default 1GB)
+ * </ul>
+ * The cache is off by default, in which case xrootd streams use their own
+ * pipelined read-ahead instead.
+ * <p>
+ * Blocks stored on disk are kept between runs. Each block is written to a
+ * temporary file which is then renamed, and the file name records the length
+ * of the block, so partially written blocks are never used. Problems with the
+ * disk tier are logged and the block is simply not cached. The cache only
+ * reads, replaces or deletes files whose names have its own prefix and format,
+ * so the disk tier may share a directory with other files.
+ * @version $Id$
+ */
+public class BlockCache
+{
+   private static Logger logger = Logger.getLogger("hep.io.root.daemon");
+   private static BlockCache theCache;
+   private static final String PREFIX = "rootblock-";
+   private static final String BLOCK_SUFFIX = ".blk";
+   private static final String TEMP_SUFFIX = ".tmp";
+   private static final Pattern BLOCK_NAME = Pattern.compile(PREFIX + "[0-9a-f]{40}-(\\d+)\\" + BLOCK_SUFFIX);
+   private static final Pattern TEMP_NAME = Pattern.compile(PREFIX + "\\d+\\" + TEMP_SUFFIX);
+   private static final long STALE_TEMP_AGE = 60 * 60 * 1000;
+
+   private int blockSize;
+   private long maxMemory;
+   private long memorySize;
+   private File dir;
+   private long maxDisk;
+   private long diskSize;
+   private LinkedHashMap<String, byte[]> memory = new LinkedHashMap<String, byte[]>(64, 0.75f, true);
+   private LinkedHashMap<String, File> disk = new LinkedHashMap<String, File>(64, 0.75f, true); // keyed by file name
+   private long hits;
+   private long diskHits;
+   private long misses;
+   private long evictions;
+
+   /**
+    * The source of blocks which are not in the cache
+    */
+   public interface Source
+   {
+      /**
+       * Read blocks from the remote file. Each buffer must be filled completely.
+       * @param positions The position in the file of each block
+       * @param buffers The buffers to read the blocks into
+       */
+      void readBlocks(long[] positions, byte[][] buffers) throws IOException;
+   }
+
+   /**
+    * Create a block cache
+    * @param blockSize The size of each block
+    * @param maxMemory The maximum number of bytes to hold in memory
+    * @param dir The directory for the disk tier, or <code>null</code> for no disk tier
+    * @param maxDisk The maximum number of bytes to hold on disk
+    */
+   public BlockCache(int blockSize, long maxMemory, File dir, long maxDisk)
+   {
+      this.blockSize = blockSize;
+      this.maxMemory = maxMemory;
+      this.maxDisk = maxDisk;
+      if (dir != null && maxDisk > 0)
+      {
+         if (dir.isDirectory() || dir.mkdirs())
+         {
+            this.dir = dir;
+            loadDiskIndex();
+         }
+         else logger.warning("Cannot create block cache directory " + dir);
+      }
+   }
+
+   /**
+    * The cache shared by all streams, configured from the system properties.
+    */
+   public static synchronized BlockCache instance()
+   {
+      if (theCache == null)
+      {
+         String dir = System.getProperty("hep.io.root.daemon.cache.dir");
+         theCache = new BlockCache(Integer.getInteger("hep.io.root.daemon.cache.blockSize", 65536).intValue(),
+               Long.getLong("hep.io.root.daemon.cache.memory", 0).longValue(),
+               dir == null ? null : new File(dir),
+               Long.getLong("hep.io.root.daemon.cache.disk", 1024 * 1024 * 1024).longValue());
+      }
+      return theCache;
+   }
+
+   /**
+    * Build the string used to identify a file in the cache
+    */
+   public static String fileKey(String url, long size, long lastModified)
+   {
+      return url + "@" + size + ":" + lastModified;
+   }
+
+   public boolean isEnabled()
+   {
+      return maxMemory > 0;
+   }
+
+   public int getBlockSize()
+   {
+      return blockSize;
+   }
+
+   /**
+    * Read from a file through the cache. Any blocks covering the requested range
+    * which are not in the cache are read from the source with a single call,
+    * together with up to <code>readAhead</code> following blocks.
+    * @param file The key identifying the file, see {@link #fileKey(String,long,long)}
+    * @param fileSize The size of the file
+    * @param source The source for blocks not in the cache
+    * @param pos The position in the file to read from
+    * @param dst The buffer to read into
+    * @param off The offset in the buffer
+    * @param len The number of bytes to read
+    * @param readAhead The number of extra blocks to read when blocks have to be read from the source
+    * @return The number of bytes read, or -1 at end of file
+    */
+   public int read(String file, long fileSize, Source source, long pos, byte[] dst, int off, int len, int readAhead) throws IOException
+   {
+      if (pos >= fileSize) return -1;
+      len = (int) Math.min(len, fileSize - pos);
+      if (len <= 0) return 0;
+      long first = pos / blockSize;
+      long last = (pos + len - 1) / blockSize;
+      int n = (int) (last - first + 1);
+
+      byte[][] blocks = new byte[n][];
+      List<Long> missing = new ArrayList<Long>();
+      for (int i = 0; i < n; i++)
+      {
+         blocks[i] = get(key(file, first + i), blockLength(fileSize, first + i));
+         if (blocks[i] == null) missing.add(first + i);
+      }
+      if (!missing.isEmpty())
+      {
+         long lastBlock = (fileSize - 1) / blockSize;
+         for (long b = last + 1; b <= last + readAhead && b <= lastBlock; b++)
+         {
+            if (!contains(key(file, b), blockLength(fileSize, b))) missing.add(b);
+         }
+         long[] positions = new long[missing.size()];
+         byte[][] buffers = new byte[missing.size()][];
+         for (int i = 0; i < positions.length; i++)
+         {
+            positions[i] = missing.get(i) * blockSize;
+            buffers[i] = new byte[blockLength(fileSize, missing.get(i))];
+         }
+         source.readBlocks(positions, buffers);
+         for (int i = 0; i < positions.length; i++)
+         {
+            long b = missing.get(i);
+            put(key(file, b), buffers[i]);
+            if (b <= last) blocks[(int) (b - first)] = buffers[i];
+         }
+      }
+
+      int copied = 0;
+      for (int i = 0; i < n; i++)
+      {
+         int start = (i == 0) ? (int) (pos - first * blockSize) : 0;
+         int l = Math.min(len - copied, blocks[i].length - start);
+         System.arraycopy(blocks[i], start, dst, off + copied, l);
+         copied += l;
+      }
+      return copied;
+   }
+
+   /**
+    * Remove all blocks from the cache, including those on disk
+    */
+   public synchronized void clear()
+   {
+      memory.clear();
+      memorySize = 0;
+      for (File f : disk.values()) f.delete();
+      disk.clear();
+      diskSize = 0;
+   }
+
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+
+   public synchronized long getDiskHits()
+   {
+      return diskHits;
+   }
+
+   public synchronized long getMisses()
+   {
+      return misses;
+   }
+
+   public synchronized long getEvictions()
+   {
+      return evictions;
+   }
+
+   public synchronized double getHitRate()
+   {
+      long total = hits + diskHits + misses;
+      return total == 0 ? 0 : (double) (hits + diskHits) / total;
+   }
+
+   /** The number of bytes currently held in memory */
+   public synchronized long getMemorySize()
+   {
+      return memorySize;
+   }
+
+   /** The number of bytes currently held on disk */
+   public synchronized long getDiskSize()
+   {
+      return diskSize;
+   }
+
+   public synchronized void resetStatistics()
+   {
+      hits = 0;
+      diskHits = 0;
+      misses = 0;
+      evictions = 0;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return "BlockCache[memory=" + memorySize + "/" + maxMemory + " disk=" + diskSize + "/" + maxDisk
+            + " hits=" + hits + " diskHits=" + diskHits + " misses=" + misses + " evictions=" + evictions + "]";
+   }
+
+   private static String key(String file, long block)
+   {
+      return file + "#" + block;
+   }
+
+   /**
+    * The length of a block, which is shorter than the block size for the last block of a file
+    */
+   private int blockLength(long fileSize, long block)
+   {
+      return (int) Math.min(blockSize, fileSize - block * blockSize);
+   }
+
+   private synchronized boolean contains(String key, int length)
+   {
+      return memory.containsKey(key) || (dir != null && disk.containsKey(fileName(key, length)));
+   }
+
+   /**
+    * Get a block from memory or disk.
+    * @param length The expected length of the block, blocks of any other length are discarded
+    * @return The block, or <code>null</code> if it is not in the cache
+    */
+   private byte[] get(String key, int length)
+   {
+      File f;
+      synchronized (this)
+      {
+         byte[] data = memory.get(key);
+         if (data != null && data.length == length)
+         {
+            hits++;
+            return data;
+         }
+         if (data != null) memorySize -= memory.remove(key).length;
+         f = (dir == null) ? null : disk.get(fileName(key, length));
+         if (f == null)
+         {
+            misses++;
+            return null;
+         }
+      }
+      byte[] data = readFile(f);
+      List<Map.Entry<String, byte[]>> evicted;
+      synchronized (this)
+      {
+         if (data == null || data.length != length)
+         {
+            misses++;
+            if (disk.remove(f.getName()) != null) diskSize -= length;
+            f.delete();
+            return null;
+         }
+         diskHits++;
+         evicted = putInMemory(key, data);
+      }
+      writeToDisk(evicted);
+      return data;
+   }
+
+   private void put(String key, byte[] data)
+   {
+      List<Map.Entry<String, byte[]>> evicted;
+      synchronized (this)
+      {
+         evicted = putInMemory(key, data);
+      }
+      writeToDisk(evicted);
+   }
+
+   /**
+    * Add a block to memory, evicting the least recently used blocks if necessary.
+    * @return The evicted blocks, which the caller should pass to {@link #writeToDisk(List)}
+    * once it no longer holds the lock.
+    */
+   private List<Map.Entry<String, byte[]>> putInMemory(String key, byte[] data)
+   {
+      byte[] old = memory.put(key, data);
+      if (old != null) memorySize -= old.length;
+      memorySize += data.length;
+
+      List<Map.Entry<String, byte[]>> evicted = new ArrayList<Map.Entry<String, byte[]>>();
+      for (Iterator<Map.Entry<String, byte[]>> i = memory.entrySet().iterator(); memorySize > maxMemory && i.hasNext();)
+      {
+         Map.Entry<String, byte[]> entry = i.next();
+         i.remove();
+         memorySize -= entry.getValue().length;
+         evictions++;
+         evicted.add(entry);
+      }
+      return evicted;
+   }
+
+   /**
+    * Write blocks evicted from memory to the disk tier. Must not be called while holding the lock,
+    * so that other readers do not wait for the disk.
+    */
+   private void writeToDisk(List<Map.Entry<String, byte[]>> evicted)
+   {
+      if (dir == null) return;
+      for (Map.Entry<String, byte[]> entry : evicted)
+      {
+         byte[] data = entry.getValue();
+         String name = fileName(entry.getKey(), data.length);
+         synchronized (this)
+         {
+            if (disk.containsKey(name) || data.length > maxDisk) continue;
+         }
+         File f = new File(dir, name);
+         File temp = null;
+         try
+         {
+            temp = File.createTempFile(PREFIX, TEMP_SUFFIX, dir);
+            FileOutputStream out = new FileOutputStream(temp);
+            try
+            {
+               out.write(data);
+            }
+            finally
+            {
+               out.close();
+            }
+            if (!temp.renameTo(f)) throw new IOException("Could not rename " + temp + " to " + f);
+         }
+         catch (IOException x)
+         {
+            logger.log(Level.WARNING, "Could not write block cache file " + f, x);
+            if (temp != null) temp.delete();
+            continue;
+         }
+         catch (RuntimeException x)
+         {
+            logger.log(Level.WARNING, "Could not write block cache file " + f, x);
+            if (temp != null) temp.delete();
+            continue;
+         }
+         List<File> deleted = new ArrayList<File>();
+         synchronized (this)
+         {
+            if (disk.put(name, f) == null) diskSize += data.length;
+            for (Iterator<File> i = disk.values().iterator(); diskSize > maxDisk && i.hasNext();)
+            {
+               File old = i.next();
+               i.remove();
+               diskSize -= lengthFromName(old.getName());
+               deleted.add(old);
+            }
+         }
+         for (File old : deleted) old.delete();
+      }
+   }
+
+   private static byte[] readFile(File f)
+   {
+      try
+      {
+         FileInputStream in = new FileInputStream(f);
+         try
+         {
+            byte[] data = new byte[(int) f.length()];
+            int n = 0;
+            while (n < data.length)
+            {
+               int l = in.read(data, n, data.length - n);
+               if (l < 0) return null;
+               n += l;
+            }
+            return data;
+         }
+         finally
+         {
+            in.close();
+         }
+      }
+      catch (IOException x)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * Blocks on disk are stored in files named using a digest of the block key
+    * and the block size, so they can be found again in later runs, followed by
+    * the length of the block, so truncated files can be recognized.
+    */
+   private String fileName(String key, int length)
+   {
+      try
+      {
+         MessageDigest md = MessageDigest.getInstance("SHA-1");
+         byte[] digest = md.digest((key + "/" + blockSize).getBytes("UTF-8"));
+         StringBuilder result = new StringBuilder(PREFIX);
+         for (byte b : digest) result.append(String.format("%02x", b & 0xff));
+         return result.append('-').append(length).append(BLOCK_SUFFIX).toString();
+      }
+      catch (NoSuchAlgorithmException x)
+      {
+         throw new RuntimeException(x);
+      }
+      catch (IOException x)
+      {
+         throw new RuntimeException(x);
+      }
+   }
+
+   /**
+    * The length of a block recorded in its file name
+    * @return The length, or -1 if the name is not that of a block file
+    */
+   private static int lengthFromName(String name)
+   {
+      Matcher m = BLOCK_NAME.matcher(name);
+      if (!m.matches()) return -1;
+      try
+      {
+         return Integer.parseInt(m.group(1));
+      }
+      catch (NumberFormatException x)
+      {
+         return -1;
+      }
+   }
+
+   private void loadDiskIndex()
+   {
+      // Blocks from earlier runs are added in order of last modification,
+      // which is the best approximation we have to the LRU order.
+      File[] files = dir.listFiles();
+      if (files == null) return;
+      long now = System.currentTimeMillis();
+      Arrays.sort(files, new Comparator<File>()
+      {
+         public int compare(File f1, File f2)
+         {
+            return f1.lastModified() < f2.lastModified() ? -1 : f1.lastModified() == f2.lastModified() ? 0 : 1;
+         }
+      });
+      for (File f : files)
+      {
+         String name = f.getName();
+         if (TEMP_NAME.matcher(name).matches())
+         {
+            // Left by a run which died while writing, unless another process is writing it now
+            if (now - f.lastModified() > STALE_TEMP_AGE) f.delete();
+            continue;
+         }
+         int length = lengthFromName(name);
+         if (length < 0) continue; // not one of ours
+         if (length == 0 || length > blockSize || f.length() != length)
+         {
+            logger.fine("Discarding invalid block cache file " + f);
+            f.delete();
+            continue;
+         }
+         disk.put(name, f);
+         diskSize += length;
+      }
+      for (Iterator<File> i = disk.values().iterator(); diskSize > maxDisk && i.hasNext();)
+      {
+         File old = i.next();
+         i.remove();
+         diskSize -= lengthFromName(old.getName());
+         old.delete();
+      }
+   }
+}
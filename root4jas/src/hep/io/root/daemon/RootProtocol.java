@@ -2,6 +2,7 @@ package hep.io.root.daemon;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -142,7 +143,16 @@ public class RootProtocol
    }
    public DaemonInputStream openStream(long size)
    {
-      return new RootStream(size);
+      return openStream(size, null);
+   }
+   /**
+    * Open a stream for reading the file
+    * @param size The size of the file
+    * @param cacheKey The key identifying the file in the {@link BlockCache}, or <code>null</code> to bypass the cache
+    */
+   public DaemonInputStream openStream(long size, String cacheKey)
+   {
+      return new RootStream(size, cacheKey);
    }
    public String[] ls(String dir) throws IOException
    {
@@ -262,16 +272,20 @@ public class RootProtocol
          super("Root Deamon exception: "+response.dataAsInt());
       }
    }
-   private class RootStream extends DaemonInputStream
+   private class RootStream extends DaemonInputStream implements BlockCache.Source
    {
       private byte[] buffer = new byte[bufferSize];
       private int bpos = 0;
       private int blen = 0;
       private long fsize;
+      private BlockCache cache;
+      private String cacheKey;
       
-      RootStream(long fsize)
+      RootStream(long fsize, String cacheKey)
       {
          this.fsize = fsize;
+         this.cacheKey = cacheKey;
+         if (cacheKey != null && BlockCache.instance().isEnabled()) cache = BlockCache.instance();
       }
       long getSize()
       {
@@ -303,9 +317,14 @@ public class RootProtocol
             if (position >= fsize) return -1;
             long n = Math.min(fsize-position,size);
             if (MAXGETSIZE > 0 && n > MAXGETSIZE) n = MAXGETSIZE;
-            String where = position+" "+n;
-            message.send(kROOTD_GET,where);
-            int l = response.read(values,offset,(int) n);
+            int l;
+            if (cache != null) l = cache.read(cacheKey,fsize,this,position,values,offset,(int) n,0);
+            else
+            {
+               String where = position+" "+n;
+               message.send(kROOTD_GET,where);
+               l = response.read(values,offset,(int) n);
+            }
             this.position += l;
             return l;
          }
@@ -350,12 +369,32 @@ public class RootProtocol
         long n = Math.min(fsize-position,buffer.length);
         if (n <= 0) return false;
         if (MAXGETSIZE > 0 && n > MAXGETSIZE) n = MAXGETSIZE;
+        if (cache != null)
+        {
+           blen = cache.read(cacheKey,fsize,this,position,buffer,0,(int) n,0);
+           return blen > 0;
+        }
         String where = position+" "+n;
         message.send(kROOTD_GET,where);
         blen = response.read(buffer,0,(int) n); 
         return true;
       }
       
+      public void readBlocks(long[] positions, byte[][] buffers) throws IOException
+      {
+         for (int i=0; i<positions.length; i++)
+         {
+            byte[] block = buffers[i];
+            for (int done = 0; done < block.length; )
+            {
+               message.send(kROOTD_GET,(positions[i]+done)+" "+(block.length-done));
+               int l = response.read(block,done,block.length-done);
+               if (l <= 0) throw new EOFException();
+               done += l;
+            }
+         }
+      }
+      
       public long getPosition()
       {
          return position + bpos;
@@ -82,7 +82,7 @@ public class RootURLConnection extends URLConnection
       fSize = Long.parseLong(fstat[1]);
       date = Long.parseLong(fstat[3])*1000;
       
-      connection = rp.openStream(fSize);
+      connection = rp.openStream(fSize, BlockCache.fileKey(url.toString(), fSize, date));
       connected = true;
    }
    
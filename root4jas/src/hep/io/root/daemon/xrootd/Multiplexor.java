@@ -1,5 +1,6 @@
 package hep.io.root.daemon.xrootd;
 
+import hep.io.root.daemon.BlockCache;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
@@ -28,11 +29,13 @@ class Multiplexor implements MultiplexorMBean {
     private BitSet handles = new BitSet();
     private Thread thread;
     private Map<Short, ResponseListener> responseMap = new HashMap<Short, ResponseListener>();
+    private final Object sendLock = new Object();
     private boolean socketClosed = false;
     private long bytesSent;
     private long bytesReceived;
     private Date createDate = new Date();
     private Date lastActive = new Date();
+    private int peakOutstanding;
     private int pval;
     private int flag;
 
@@ -106,6 +109,10 @@ class Multiplexor implements MultiplexorMBean {
         return handles.cardinality();
     }
 
+    public synchronized int getPeakOutstandingResponseCount() {
+        return peakOutstanding;
+    }
+
     public long getIdleTime() {
         return System.currentTimeMillis() - lastActive.getTime();
     }
@@ -118,6 +125,30 @@ class Multiplexor implements MultiplexorMBean {
         return flag;
     }
 
+    // The block cache is shared by all connections, but is reported here so that
+    // it can be monitored alongside the connection statistics.
+
+    public long getBlockCacheHits() {
+        BlockCache cache = BlockCache.instance();
+        return cache.getHits() + cache.getDiskHits();
+    }
+
+    public long getBlockCacheMisses() {
+        return BlockCache.instance().getMisses();
+    }
+
+    public double getBlockCacheHitRate() {
+        return BlockCache.instance().getHitRate();
+    }
+
+    public long getBlockCacheMemorySize() {
+        return BlockCache.instance().getMemorySize();
+    }
+
+    public long getBlockCacheDiskSize() {
+        return BlockCache.instance().getDiskSize();
+    }
+
     boolean isIdle() {
         return getOutstandingResponseCount() == 0 && getIdleTime() > MAX_IDLE;
     }
@@ -157,6 +188,7 @@ class Multiplexor implements MultiplexorMBean {
         short handle = (short) handles.nextClearBit(0);
         handles.set(handle);
         responseMap.put(handle, listener);
+        peakOutstanding = Math.max(peakOutstanding, handles.cardinality());
         return handle;
     }
 
@@ -166,8 +198,12 @@ class Multiplexor implements MultiplexorMBean {
     }
 
     private void sendMessage(short id, Message message) throws IOException {
-        bytesSent += message.send(id, channel);
-        lastActive.setTime(System.currentTimeMillis());
+        // Messages may be sent from many threads at once (several requests can be
+        // outstanding on one connection), but each must be written to the socket whole.
+        synchronized (sendLock) {
+            bytesSent += message.send(id, channel);
+            lastActive.setTime(System.currentTimeMillis());
+        }
     }
 
     private void handleResponse() throws IOException {
@@ -24,7 +24,19 @@ public interface MultiplexorMBean {
 
     int getOutstandingResponseCount();
 
+    int getPeakOutstandingResponseCount();
+
     int getProtocolVersion();
 
     int getServerFlag();
+
+    long getBlockCacheHits();
+
+    long getBlockCacheMisses();
+
+    double getBlockCacheHitRate();
+
+    long getBlockCacheMemorySize();
+
+    long getBlockCacheDiskSize();
 }
@@ -0,0 +1,158 @@
+package hep.io.root.daemon.xrootd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The buffer of an {@link XrootdInputStream} together with the reads started ahead
+ * of it. Reads ahead are only started while the stream is read sequentially, that is
+ * when a buffer is filled from a read started ahead, or from the position where the
+ * previous buffer ended. After a seek elsewhere the pending reads are discarded, and
+ * their buffers are reused once their responses have arrived.
+ * @version $Id$
+ */
+class ReadAhead {
+
+    /**
+     * Reads the file into a buffer.
+     */
+    interface Source {
+
+        int read(long pos, byte[] buffer, int size) throws IOException;
+
+        FutureResponse<Integer> readAsync(long pos, byte[] buffer, int size);
+    }
+
+    private Source source;
+    private int depth;
+    private byte[] buffer;
+    private long end = -1;
+    private List<PendingRead> pending = new ArrayList<PendingRead>();
+    private List<PendingRead> discarded = new ArrayList<PendingRead>();
+    private List<byte[]> spare = new ArrayList<byte[]>();
+
+    /**
+     * @param source The source to read from
+     * @param bufferSize The size of each buffer
+     * @param depth The number of buffers to read ahead
+     */
+    ReadAhead(Source source, int bufferSize, int depth) {
+        this.source = source;
+        this.depth = depth;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * The buffer holding the data of the last call to {@link #fill(long, int)}.
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Fill the buffer with the data at the given position, and read ahead if the
+     * stream is being read sequentially.
+     * @param pos The position in the file
+     * @param size The number of bytes to read, at most the buffer size
+     * @return The number of bytes read
+     */
+    int fill(long pos, int size) throws IOException {
+        PendingRead ahead = take(pos);
+        boolean sequential = ahead != null || pos == end;
+        int n;
+        if (ahead != null) {
+            n = ahead.future.getResponse();
+            spare.add(buffer);
+            buffer = ahead.buffer;
+        } else {
+            n = source.read(pos, buffer, size);
+        }
+        end = n > 0 ? pos + n : -1;
+        if (n > 0 && sequential) {
+            readAhead(pos + n, size);
+        }
+        return n;
+    }
+
+    /**
+     * Forget all pending reads.
+     */
+    void clear() {
+        pending.clear();
+        discarded.clear();
+        end = -1;
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Remove the pending read for the given position, if any. Pending reads for
+     * earlier positions are no longer useful, and if there is no pending read for
+     * the position the stream has moved elsewhere and all of them are discarded.
+     */
+    private PendingRead take(long pos) {
+        PendingRead result = null;
+        for (PendingRead read : pending) {
+            if (read.position == pos) {
+                result = read;
+            }
+        }
+        for (Iterator<PendingRead> i = pending.iterator(); i.hasNext();) {
+            PendingRead read = i.next();
+            if (result == null || read.position < pos) {
+                discarded.add(read);
+                i.remove();
+            } else if (read == result) {
+                i.remove();
+            }
+        }
+        return result;
+    }
+
+    private void readAhead(long pos, int n) {
+        for (int k = 0; k < depth; k++, pos += n) {
+            boolean found = false;
+            for (PendingRead read : pending) {
+                found |= read.position == pos;
+            }
+            if (found) continue;
+            byte[] buf = spareBuffer();
+            pending.add(new PendingRead(pos, buf, source.readAsync(pos, buf, n)));
+        }
+    }
+
+    /**
+     * Get a buffer which is not in use. The buffer of a discarded read is only
+     * reused once its response has arrived, since until then it may still be
+     * written to.
+     */
+    private byte[] spareBuffer() {
+        for (Iterator<PendingRead> i = discarded.iterator(); i.hasNext();) {
+            PendingRead read = i.next();
+            if (read.future.isDone()) {
+                i.remove();
+                if (spare.size() < depth) {
+                    spare.add(read.buffer);
+                }
+            }
+        }
+        return spare.isEmpty() ? new byte[buffer.length] : spare.remove(spare.size() - 1);
+    }
+
+    private static class PendingRead {
+
+        private long position;
+        private byte[] buffer;
+        private FutureResponse<Integer> future;
+
+        PendingRead(long position, byte[] buffer, FutureResponse<Integer> future) {
+            this.position = position;
+            this.buffer = buffer;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package hep.io.root.daemon.xrootd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Read many ranges of an open file in a single request (kXR_readv).
+ * The ranges must respect the limits imposed by the protocol, see
+ * {@link Session#readv(OpenFile, long[], byte[][], int[], int[])}
+ * which splits arbitrary requests into valid operations.
+ */
+class ReadVOperation extends Operation<Integer> {
+
+    private OpenFile file;
+
+    /**
+     * Create the ReadVOperation.
+     * @param file The file to read from
+     * @param fileOffsets The offset in the file of each range
+     * @param buffers The buffers to read into, the number of bytes remaining in each buffer gives the length of the range
+     */
+    ReadVOperation(OpenFile file, long[] fileOffsets, ByteBuffer[] buffers) {
+        super("readv", new ReadVMessage(file, fileOffsets, buffers), new ReadVCallback(fileOffsets, buffers));
+        this.file = file;
+    }
+
+    @Override
+    Operation getPrerequisite() {
+        return new OpenOperation(file);
+    }
+
+    @Override
+    Destination getDestination() {
+        return file.getDestination();
+    }
+
+    @Override
+    Multiplexor getMultiplexor() {
+        return file.getMultiplexor();
+    }
+
+    private static class ReadVMessage extends Message {
+
+        private OpenFile file;
+        private long[] fileOffsets;
+        private int[] sizes;
+
+        ReadVMessage(OpenFile file, long[] fileOffsets, ByteBuffer[] buffers) {
+            super(XrootdProtocol.kXR_readv);
+            this.file = file;
+            this.fileOffsets = fileOffsets;
+            this.sizes = new int[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                sizes[i] = buffers[i].remaining();
+            }
+        }
+
+        @Override
+        void writeExtra(ByteBuffer out) throws IOException {
+            // The read list is rebuilt every time the message is sent, since the
+            // file handle may have changed as a result of a redirect.
+            ByteBuffer list = ByteBuffer.allocate(16 * sizes.length);
+            for (int i = 0; i < sizes.length; i++) {
+                list.putInt(file.getHandle());
+                list.putInt(sizes[i]);
+                list.putLong(fileOffsets[i]);
+            }
+            setData(list.array(), 0, list.capacity());
+        }
+    }
+
+    /**
+     * The response consists of a 16 byte header for each range (handle, length, offset)
+     * followed by the data. The response may be split into several partial responses
+     * at arbitrary points, so the parsing state is kept between calls.
+     */
+    static class ReadVCallback extends Callback<Integer> {
+
+        private long[] fileOffsets;
+        private ByteBuffer[] buffers;
+        private int[] initialPositions;
+        private ByteBuffer header = ByteBuffer.allocate(16);
+        private int current;
+        private int remaining;
+        private int total;
+
+        ReadVCallback(long[] fileOffsets, ByteBuffer[] buffers) {
+            this.fileOffsets = fileOffsets;
+            this.buffers = buffers;
+            this.initialPositions = new int[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                initialPositions[i] = buffers[i].position();
+            }
+        }
+
+        public Integer responseReady(Response response) throws IOException {
+            return consume(response.getData());
+        }
+
+        /**
+         * Parse the data of one (possibly partial) response.
+         * @return The number of bytes of data read so far
+         */
+        int consume(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                if (remaining == 0) {
+                    while (header.hasRemaining() && data.hasRemaining()) {
+                        header.put(data.get());
+                    }
+                    if (header.hasRemaining()) {
+                        break;
+                    }
+                    header.flip();
+                    header.getInt(); // file handle
+                    int length = header.getInt();
+                    long offset = header.getLong();
+                    header.clear();
+                    if (current >= buffers.length || offset != fileOffsets[current] || length > buffers[current].remaining()) {
+                        throw new IOException("Unexpected readv response (offset=" + offset + " length=" + length + ")");
+                    }
+                    remaining = length;
+                    if (remaining == 0) {
+                        current++;
+                    }
+                } else {
+                    int n = Math.min(remaining, data.remaining());
+                    ByteBuffer slice = data.duplicate();
+                    slice.limit(slice.position() + n);
+                    buffers[current].put(slice);
+                    data.position(data.position() + n);
+                    remaining -= n;
+                    total += n;
+                    if (remaining == 0) {
+                        current++;
+                    }
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public void clear() {
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i].position(initialPositions[i]);
+            }
+            header.clear();
+            current = 0;
+            remaining = 0;
+            total = 0;
+        }
+    }
+}
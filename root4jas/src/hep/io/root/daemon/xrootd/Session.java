@@ -1,6 +1,8 @@
 package hep.io.root.daemon.xrootd;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -88,6 +90,73 @@ public class Session {
         return send(new ReadOperation(file,fileOffset, buffer,bufOffset,size)).getResponse();
     }
     
+    /**
+     * Start an asynchronous read. Several reads may be outstanding at the same
+     * time, in which case they are pipelined on the connection to the server.
+     * @return A future which will contain the number of bytes read, or -1 at end of file.
+     */
+    public FutureResponse<Integer> readAsync(OpenFile file, long fileOffset, byte[] buffer, int bufOffset, int size) {
+        return send(new ReadOperation(file, fileOffset, buffer, bufOffset, size));
+    }
+
+    /**
+     * Read many ranges of a file using vectored reads (kXR_readv). The ranges are
+     * split into as many requests as the protocol limits require, and all of the
+     * requests are sent before waiting for any of the responses.
+     * @param file The file to read from
+     * @param fileOffsets The offset in the file of each range
+     * @param buffers The buffers to read each range into
+     * @param bufOffsets The offset in each buffer at which to store the data
+     * @param sizes The number of bytes to read for each range
+     * @return The total number of bytes read
+     */
+    public int readv(OpenFile file, long[] fileOffsets, byte[][] buffers, int[] bufOffsets, int[] sizes) throws IOException {
+        List<long[]> requestOffsets = new ArrayList<long[]>();
+        List<ByteBuffer[]> requestBuffers = splitReadv(fileOffsets, buffers, bufOffsets, sizes, requestOffsets);
+        List<FutureResponse<Integer>> futures = new ArrayList<FutureResponse<Integer>>();
+        for (int i = 0; i < requestBuffers.size(); i++) {
+            futures.add(send(new ReadVOperation(file, requestOffsets.get(i), requestBuffers.get(i))));
+        }
+
+        int total = 0;
+        for (FutureResponse<Integer> future : futures) {
+            total += future.getResponse();
+        }
+        return total;
+    }
+
+    /**
+     * Split ranges into readv requests which respect the protocol limits, at most
+     * kXR_maxRvecsz elements per request, each of at most kXR_maxRvecln bytes.
+     * @param requestOffsets Receives the file offsets of the elements of each request
+     * @return The buffers of the elements of each request
+     */
+    static List<ByteBuffer[]> splitReadv(long[] fileOffsets, byte[][] buffers, int[] bufOffsets, int[] sizes, List<long[]> requestOffsets) {
+        List<Long> offsets = new ArrayList<Long>();
+        List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < fileOffsets.length; i++) {
+            for (int done = 0; done < sizes[i]; done += XrootdProtocol.kXR_maxRvecln) {
+                int n = Math.min(sizes[i] - done, XrootdProtocol.kXR_maxRvecln);
+                offsets.add(fileOffsets[i] + done);
+                chunks.add(ByteBuffer.wrap(buffers[i], bufOffsets[i] + done, n));
+            }
+        }
+
+        List<ByteBuffer[]> requests = new ArrayList<ByteBuffer[]>();
+        for (int start = 0; start < chunks.size(); start += XrootdProtocol.kXR_maxRvecsz) {
+            int n = Math.min(chunks.size() - start, XrootdProtocol.kXR_maxRvecsz);
+            long[] elementOffsets = new long[n];
+            ByteBuffer[] elementBuffers = new ByteBuffer[n];
+            for (int i = 0; i < n; i++) {
+                elementOffsets[i] = offsets.get(start + i);
+                elementBuffers[i] = chunks.get(start + i);
+            }
+            requestOffsets.add(elementOffsets);
+            requests.add(elementBuffers);
+        }
+        return requests;
+    }
+
     public void write(OpenFile file, long fileOffset, byte[] buffer, int offset, int length) throws IOException {
         send(new WriteOperation(file,fileOffset,buffer,offset,length));
     }
@@ -1,27 +1,51 @@
 package hep.io.root.daemon.xrootd;
 
+import hep.io.root.daemon.BlockCache;
 import hep.io.root.daemon.DaemonInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 
 /**
- *
+ * An input stream for reading an xrootd file. Reads are buffered, and while
+ * the stream is read sequentially the following buffers are requested ahead
+ * of time, so that several reads are pipelined on the connection and the
+ * stream is not limited by the round trip time to the server. Reading ahead
+ * stops when the stream seeks elsewhere, and resumes once it is read
+ * sequentially again, see {@link ReadAhead}.
+ * <p>
+ * If the shared {@link BlockCache} has been enabled (it is off by default) reads
+ * go through the cache instead, and the blocks following a cache miss are fetched
+ * with the same vectored read.
  * @author tonyj
  */
 public class XrootdInputStream extends DaemonInputStream {
 
     private static int MAXGETSIZE = -1;
+    /** The number of buffers to read ahead, may be set using the hep.io.root.daemon.xrootd.ReadAhead property */
+    private static final int READ_AHEAD = Integer.getInteger("hep.io.root.daemon.xrootd.ReadAhead", 2);
+    private ReadAhead readAhead;
     private byte[] buffer;
     private int bpos = 0;
     private int blen = 0;
     private OpenFile file;
     private Session handle;
     private XrootdURLConnection connection;
+    private BlockCache cache;
+    private String cacheKey;
+    private long fileSize;
 
     public XrootdInputStream(XrootdURLConnection conn) throws IOException {
         this.connection = conn;
         this.handle = conn.getSession();
         this.file = handle.open(conn.getURL().getFile(), 0, XrootdProtocol.kXR_open_read);
-        buffer = new byte[conn.getBufferSize()];
+        readAhead = new ReadAhead(new SessionSource(), conn.getBufferSize(), READ_AHEAD);
+        buffer = readAhead.getBuffer();
+        BlockCache blockCache = BlockCache.instance();
+        if (blockCache.isEnabled() && conn.getLongContentLength() >= 0) {
+            cache = blockCache;
+            fileSize = conn.getLongContentLength();
+            cacheKey = BlockCache.fileKey(conn.getURL().toString(), fileSize, conn.getLastModified());
+        }
     }
 
     public int read() throws IOException {
@@ -37,8 +61,22 @@ public class XrootdInputStream extends DaemonInputStream {
         return i;
     }
 
+    /**
+     * Read many ranges of the file with vectored reads. This does not change
+     * the position of the stream.
+     * @param fileOffsets The offset in the file of each range
+     * @param buffers The buffers to read each range into, starting at index 0
+     * @param sizes The number of bytes to read for each range
+     * @return The total number of bytes read
+     * @see Session#readv(OpenFile, long[], byte[][], int[], int[])
+     */
+    public int readv(long[] fileOffsets, byte[][] buffers, int[] sizes) throws IOException {
+        return handle.readv(file, fileOffsets, buffers, new int[buffers.length], sizes);
+    }
+
     @Override
     public void close() throws IOException {
+        readAhead.clear();
         if (handle != null) {
             handle.close(file);
             handle = null;
@@ -56,7 +94,8 @@ public class XrootdInputStream extends DaemonInputStream {
             if (MAXGETSIZE > 0 && n > MAXGETSIZE) {
                 n = MAXGETSIZE;
             }
-            int l = handle.read(file, pos, values, offset, n);
+            int l = cache != null ? cache.read(cacheKey, fileSize, new CacheSource(), pos, values, offset, n, READ_AHEAD)
+                    : handle.read(file, pos, values, offset, n);
             if (l > 0) {
                 this.position += l;
             } else {
@@ -98,7 +137,12 @@ public class XrootdInputStream extends DaemonInputStream {
         if (MAXGETSIZE > 0 && n > MAXGETSIZE) {
             n = MAXGETSIZE;
         }
-        blen = handle.read(file, position, buffer, 0, n);
+        if (cache != null) {
+            blen = cache.read(cacheKey, fileSize, new CacheSource(), position, buffer, 0, n, READ_AHEAD);
+            return blen > 0;
+        }
+        blen = readAhead.fill(position, n);
+        buffer = readAhead.getBuffer();
         return true;
     }
 
@@ -107,6 +151,38 @@ public class XrootdInputStream extends DaemonInputStream {
         return position + bpos;
     }
 
+    /**
+     * Reads the blocks missing from the cache, using a single vectored read when
+     * more than one block is needed.
+     */
+    private class CacheSource implements BlockCache.Source {
+
+        public void readBlocks(long[] positions, byte[][] buffers) throws IOException {
+            int[] sizes = new int[buffers.length];
+            int expected = 0;
+            for (int i = 0; i < buffers.length; i++) {
+                sizes[i] = buffers[i].length;
+                expected += sizes[i];
+            }
+            int l = buffers.length == 1 ? handle.read(file, positions[0], buffers[0])
+                    : handle.readv(file, positions, buffers, new int[buffers.length], sizes);
+            if (l != expected) {
+                throw new EOFException("Expected " + expected + " bytes but read " + l);
+            }
+        }
+    }
+
+    private class SessionSource implements ReadAhead.Source {
+
+        public int read(long pos, byte[] buffer, int size) throws IOException {
+            return handle.read(file, pos, buffer, 0, size);
+        }
+
+        public FutureResponse<Integer> readAsync(long pos, byte[] buffer, int size) {
+            return handle.readAsync(file, pos, buffer, 0, size);
+        }
+    }
+
     @Override
     protected void finalize() throws Throwable {
         close();
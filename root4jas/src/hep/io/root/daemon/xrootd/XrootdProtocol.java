@@ -111,5 +111,8 @@ class XrootdProtocol
    
    final static int kXR_asyncap = 128;
    
+   final static int kXR_maxRvecsz = 1024;    // Maximum number of elements in a readv request
+   final static int kXR_maxRvecln = 2097136; // Maximum length of a single readv element
+   
    final static int XRD_CLIENT_CURRENTVER = 2; //???
 }
@@ -58,6 +58,12 @@ public interface TBranch extends hep.io.root.RootObject, TNamed
 
    hep.io.root.core.RootInput setPosition(TLeaf leaf, long index) throws java.io.IOException;
 
+   /** Index of the basket containing the given entry */
+   int findBasketForIndex(long index);
+
+   /** Get the basket with the given index, reading it if necessary */
+   TBasket getBasket(int index) throws java.io.IOException;
+
    /** Total number of bytes in all leaves before compression */
    long getTotBytes();
 
@@ -17,4 +17,14 @@ public interface TLeafD extends hep.io.root.RootObject, TLeaf
    double getMinimum();
 
    double getValue(long index) throws java.io.IOException;
+
+   /**
+    * Read the values of a range of consecutive entries into an array. This is
+    * much faster than calling getValue for each entry, since the values are
+    * copied a basket at a time. Only supported for scalar leaves.
+    * @param first The first entry to read
+    * @param count The number of entries to read
+    * @param dst The array to fill, starting at index 0
+    */
+   void readRange(long first, int count, double[] dst) throws java.io.IOException;
 }
@@ -1,12 +1,15 @@
 package hep.io.root.reps;
 
 import hep.io.root.core.AbstractRootObject;
+import hep.io.root.core.BasketCache;
+import hep.io.root.core.BasketPrefetcher;
 import hep.io.root.core.NameMangler;
 import hep.io.root.core.RootInput;
 import hep.io.root.interfaces.TBasket;
 import hep.io.root.interfaces.TBranch;
 import hep.io.root.interfaces.TLeaf;
 import hep.io.root.interfaces.TObjArray;
+import hep.io.root.interfaces.TTree;
 
 import java.io.IOException;
 import java.lang.reflect.Array;
@@ -23,6 +26,7 @@ public abstract class TBranchRep extends AbstractRootObject implements hep.io.ro
    private HashMap mangledMap;
    private HashMap map;
    private RootInput rin;
+   private TTree tree;
    private TBasket curBasket;
    private int curIndex;
    private int fWriteBasket;
@@ -130,7 +134,7 @@ public abstract class TBranchRep extends AbstractRootObject implements hep.io.ro
       curIndex = -1;
    }
    
-   private TBasket getBasket(int index) throws IOException
+   public TBasket getBasket(int index) throws IOException
    {
       try
       {
@@ -141,14 +145,25 @@ public abstract class TBranchRep extends AbstractRootObject implements hep.io.ro
          }
          
          if (index == curIndex) return curBasket;
-         // Ok read the TBasket
-         rin.setPosition(getBasketSeek()[index]);
-         
-         TBasket basket = (TBasket) rin.readObject("TBasket");
-         
-         int len = getEntryOffsetLen();
-         if (len > 0) basket.readEntryOffsets(len);
          
+         BasketCache cache = rin.getBasketCache();
+         BasketPrefetcher prefetcher = cache.getPrefetcher();
+         TBasket basket = cache.get(this, index);
+         if (basket == null && prefetcher != null) basket = prefetcher.take(this, index);
+         if (basket == null)
+         {
+            // Ok read the TBasket
+            rin.setPosition(getBasketSeek()[index]);
+
+            basket = (TBasket) rin.readObject("TBasket");
+
+            int len = getEntryOffsetLen();
+            if (len > 0) basket.readEntryOffsets(len);
+
+            int[] bytes = getBasketBytes();
+            cache.put(this, index, basket, BasketCache.sizeOf(basket, bytes == null ? 0 : bytes[index], len));
+         }
+         if (prefetcher != null) prefetcher.prefetch(tree, this, index);
          curIndex = index;
          return curBasket = basket;
       }
@@ -183,7 +198,20 @@ public abstract class TBranchRep extends AbstractRootObject implements hep.io.ro
       }
    }
    
-   private int findBasketForIndex(long index)
+   /**
+    * The tree to which this branch belongs, or <code>null</code> if not known.
+    */
+   public TTree getTree()
+   {
+      return tree;
+   }
+   
+   public void setTree(TTree tree)
+   {
+      this.tree = tree;
+   }
+   
+   public int findBasketForIndex(long index)
    {
       // Figure out which basket the entry is in
       if ((index < 0) || (index >= getEntries()))
@@ -191,16 +219,26 @@ public abstract class TBranchRep extends AbstractRootObject implements hep.io.ro
       
       long[] entries = getBasketEntry();
       if (entries == null) return 0;
-      // TODO: we should do a binary search here
       int n = getWriteBasket();
-      for (int i = 0; i < n; i++)
+      if (curIndex >= 0 && curIndex < n && index >= entries[curIndex] && index < entries[curIndex + 1]) return curIndex;
+      
+      // Binary search for the last basket starting at or before index. Only the first
+      // n entries are searched since the array may contain trailing zeros.
+      int low = 0;
+      int high = n - 1;
+      int result = -1;
+      while (low <= high)
       {
-         if ((index >= entries[i]) && (index < entries[i + 1])) return i;
+         int mid = (low + high) >>> 1;
+         if (entries[mid] <= index)
+         {
+            result = mid;
+            low = mid + 1;
+         }
+         else high = mid - 1;
       }
-      return n;
-      // binary search has problems if arrays contain trailing zeros
-//      int result = Arrays.binarySearch(entries,index);
-//      if (result < 0) result = - result - 2;
-//      return result;
+      if (result < 0) return n;
+      if (result == n - 1 && index >= entries[n]) return n;
+      return result;
    }
 }
@@ -2,10 +2,12 @@ package hep.io.root.reps;
 
 import hep.io.root.core.AbstractRootObject;
 import hep.io.root.core.RootInput;
+import hep.io.root.interfaces.TBasket;
 import hep.io.root.interfaces.TBranch;
 import hep.io.root.interfaces.TLeafI;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.bcel.Constants;
 import org.apache.bcel.generic.ConstantPoolGen;
@@ -25,6 +27,7 @@ public abstract class TLeafIRep extends AbstractRootObject implements TLeafI, Co
    private int lastInteger;
    private long lastIntegerIndex;
    private long lastValueIndex;
+   private byte[] rangeBuffer;
 
    public void setBranch(TBranch branch)
    {
@@ -50,6 +53,55 @@ public abstract class TLeafIRep extends AbstractRootObject implements TLeafI, Co
       }
    }
 
+   public void readRange(long first, int count, int[] dst) throws IOException
+   {
+      if (getArrayDim() != 0)
+         throw new UnsupportedOperationException("readRange is only supported for scalar leaves");
+      if ((count < 0) || (count > dst.length))
+         throw new ArrayIndexOutOfBoundsException("count=" + count);
+
+      long[] basketEntry = branch.getBasketEntry();
+      int n = 0;
+      while (n < count)
+      {
+         long index = first + n;
+         int i = branch.findBasketForIndex(index);
+         TBasket basket = branch.getBasket(i);
+         long start = (i == 0) ? 0 : basketEntry[i];
+         long end = ((basketEntry != null) && (i < branch.getWriteBasket())) ? basketEntry[i + 1] : branch.getEntries();
+         int m = (int) Math.min(count - n, end - index);
+
+         RootInput in = basket.setPosition(index, start, this);
+         int[] entryOffset = basket.getEntryOffset();
+         int entrySize = basket.getNevBufSize();
+         if ((entryOffset == null) && (entrySize == 4))
+         {
+            // Fixed size entries are contiguous, so the whole range can be copied at once
+            int len = m * 4;
+            if ((rangeBuffer == null) || (rangeBuffer.length < len))
+               rangeBuffer = new byte[len];
+            in.readFully(rangeBuffer, 0, len);
+            ByteBuffer.wrap(rangeBuffer, 0, len).asIntBuffer().get(dst, n, m);
+         }
+         else
+         {
+            int offset = (int) (index - start);
+            for (int j = 0; j < m; j++)
+            {
+               if (j > 0)
+               {
+                  if (entryOffset == null)
+                     in.skipBytes(entrySize - 4);
+                  else
+                     in.setPosition(entryOffset[offset + j]);
+               }
+               dst[n + j] = in.readInt();
+            }
+         }
+         n += m;
+      }
+   }
+
    public Object getWrappedValue(long index) throws IOException
    {
       try
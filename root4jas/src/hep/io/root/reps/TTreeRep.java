@@ -6,7 +6,10 @@
 package hep.io.root.reps;
 
 import hep.io.root.core.AbstractRootObject;
+import hep.io.root.core.RootInput;
 import hep.io.root.interfaces.TBranch;
+import hep.io.root.interfaces.TObjArray;
+import java.io.IOException;
 
 
 /**
@@ -39,4 +42,23 @@ public abstract class TTreeRep extends AbstractRootObject implements hep.io.root
    {
       return getBranches().size();
    }
+
+   public void read(RootInput in) throws IOException
+   {
+      super.read(in);
+
+      // The branches need to know which tree they are on
+      setTree(getBranches());
+   }
+
+   private void setTree(TObjArray branches)
+   {
+      if (branches == null) return;
+      for (int i = 0; i < branches.size(); i++)
+      {
+         TBranch branch = (TBranch) branches.get(i);
+         if (branch instanceof TBranchRep) ((TBranchRep) branch).setTree(this);
+         setTree(branch.getBranches());
+      }
+   }
 }
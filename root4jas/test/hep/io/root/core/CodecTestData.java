@@ -0,0 +1,150 @@
+package hep.io.root.core;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Known answer test vectors for the LZ4, ZSTD and xxHash64 decoders.
+ * The compressed data and hashes were produced by the reference C libraries
+ * (liblz4 1.9.4, libzstd 1.5.4 and libxxhash 0.8.1) from the inputs generated
+ * by {@link #text(int)} and {@link #noise(int, int)}.
+ * @version $Id$
+ */
+final class CodecTestData
+{
+   /** noise(300, 1) compressed by LZ4_compress_default: a single run of literals longer than 270 bytes. */
+   static final byte[] LZ4_NOISE = bytes(
+      "f0ff1ec67e816b4bfbe2fb54f6bddf7c1ce18701bf31de56720f4767668759aa" +
+      "883c59ea56137bd285a1d83c54552f37ae655bda027998cce31a768e5fd9998f" +
+      "1f3f36ee43784d0dfabea6dae4868edc296d4eff56e17020fb8fb1580590c509" +
+      "dc53cdaa3b489952d3529d069feab5c206139849b2011eac3288319c52469571" +
+      "368f57f6391d16fa8874f5987c175c41bb6d718e0f7059c7011b2f333d91c01d" +
+      "a50d0dab338d7e5e8f3ee66874a63ab1c39311a864c7dbcae060e1f3bf090067" +
+      "a2e325a0213187d562c5a84f7e2e096b949fb06da99e5a0b467080b6cf470ca6" +
+      "a52ad8acfba0ebb779247223924880c5a6a785b7d78c90e4ab63445266e39c33" +
+      "25f95eaaba73605d4b717ebea98c571971c3ca5ee52a33ac885166a17b756764" +
+      "9a69ef6f5642a01d51c502f7bb9245");
+
+   /** text(300), 600 dashes, text(300) compressed by LZ4_compress_default: short matches and one match longer than 270 bytes. */
+   static final byte[] LZ4_MIXED = bytes(
+      "f205656e74727920303a2070783d302070793d303b2014001131140010371400" +
+      "1431140011321400103114001434140011331400103814001439140011341400" +
+      "1032140024313615001135150010391500243235150011361500103315000514" +
+      "001137140011318f002431382a001138160010342a0014321400113914001131" +
+      "910015317e001231cf0010352b0014372b001231d00011319500153256001231" +
+      "d30010362c001632fc0002d50002820005ea001f2d0100ffff4602700302b502" +
+      "01730206880201e0020f8403f4506e74727920");
+
+   /** noise(300, 1) compressed at level 3: a single raw block. */
+   static final byte[] ZSTD_RAW = bytes(
+      "28b52ffd602c00610900c67e816b4bfbe2fb54f6bddf7c1ce18701bf31de5672" +
+      "0f4767668759aa883c59ea56137bd285a1d83c54552f37ae655bda027998cce3" +
+      "1a768e5fd9998f1f3f36ee43784d0dfabea6dae4868edc296d4eff56e17020fb" +
+      "8fb1580590c509dc53cdaa3b489952d3529d069feab5c206139849b2011eac32" +
+      "88319c52469571368f57f6391d16fa8874f5987c175c41bb6d718e0f7059c701" +
+      "1b2f333d91c01da50d0dab338d7e5e8f3ee66874a63ab1c39311a864c7dbcae0" +
+      "60e1f3bf090067a2e325a0213187d562c5a84f7e2e096b949fb06da99e5a0b46" +
+      "7080b6cf470ca6a52ad8acfba0ebb779247223924880c5a6a785b7d78c90e4ab" +
+      "63445266e39c3325f95eaaba73605d4b717ebea98c571971c3ca5ee52a33ac88" +
+      "5166a17b7567649a69ef6f5642a01d51c502f7bb9245");
+
+   /** text(1000) followed by 300000 bytes of 'a' compressed at level 3: a compressed block with Huffman literals and FSE tables, then two RLE blocks. */
+   static final byte[] ZSTD_RLE = bytes(
+      "28b52ffda0c89704001c080072091815b025e9826db60a461222a01129a5dc29" +
+      "25a9973818823206bac9efaf6f2df257f33399c944eeb7eba3c7bf9e95aa5452" +
+      "be75d99e9d697d673423a748976865119257a228e3666499488f10fb339f6571" +
+      "048628ca1822a08c61465100200c0278a8c1c49df63730030946ab0712806272" +
+      "04e55c26f7ffff3f0314fc68b612fa0579524d634efb42ecb6e59002a904994c" +
+      "e7986ab472c31d372c167461e1e4000a08937a067ecd5856de9ee22a3e365c66" +
+      "fb216aa85be5ac561c44fb6de9d20490c9761ac0efb4f221b3e073cd8cc3a65d" +
+      "64fb4ed582db35c5ee3fdeace0c45498661e4901819252d37e309b9c648c9fc3" +
+      "50241c8d0a8c85d08283ce736656050200106143be0461");
+
+   /** text(200) compressed at level 3: raw literals and sequences using the predefined tables. */
+   static final byte[] ZSTD_PREDEFINED = bytes(
+      "28b52ffd20c83d03002403656e74727920303a2070783d302070793d303b2031" +
+      "37313231343338393432313635393235363337313038383439313120701a0040" +
+      "08200077a03178420882e0f2cd32100c5c81931004832ba8400882812b800e04" +
+      "0357001d0806ae003a100c5ce186c904");
+
+   /** text(1000) compressed at level 3 with the content checksum flag. */
+   static final byte[] ZSTD_CHECKSUM = bytes(
+      "28b52ffd64e802b5070002891614b0271d68d6aa85515069444a29774a49ea25" +
+      "0e06650c7492fff56b2df257f33399c944eeb7eba3c7bf9e95aa5452be75d99e" +
+      "9d697d673423a74897581621793723cb447a84d89ff92c8b03304451c6108532" +
+      "8619c58020080477a8d1c4debf0340c3d1ea0111a04848a8942dbb01e7a4c603" +
+      "c671439b2db0f1dd040ee923d52092e11c4b9216102876e3f429021699639d70" +
+      "aed0197022b1b36e0ed5a0fb107e99ff4348e87226999921c87bbb744d7c4452" +
+      "4dcfb8771e4e43b8e0e3128681d0ceb3a5446baff62305ff8f322bb659282160" +
+      "3ae0425a050a4ad71e5ff855494b56fb392ef0b42c159f1a64eb70c7c281b50a" +
+      "0e936689");
+
+   /** XXH64 of LZ4_NOISE and LZ4_MIXED with seed 0, as written before the data by ROOT. */
+   static final long LZ4_NOISE_CHECKSUM = 0x30558c196508c44aL;
+   static final long LZ4_MIXED_CHECKSUM = 0xfd837d4234efd80bL;
+
+   private CodecTestData()
+   {
+   }
+
+   /**
+    * Compressible text.
+    * @param n The number of bytes
+    */
+   static byte[] text(int n)
+   {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; sb.length() < n; i++)
+      {
+         sb.append("entry ").append(i).append(": px=").append(i * 7 % 13).append(" py=").append(i * i % 31).append("; ");
+      }
+      try
+      {
+         return sb.substring(0, n).getBytes("US-ASCII");
+      }
+      catch (UnsupportedEncodingException x)
+      {
+         throw new RuntimeException(x);
+      }
+   }
+
+   /**
+    * Incompressible bytes from a linear congruential generator.
+    * @param n The number of bytes
+    * @param seed The seed of the generator
+    */
+   static byte[] noise(int n, int seed)
+   {
+      byte[] result = new byte[n];
+      int x = seed;
+      for (int i = 0; i < n; i++)
+      {
+         x = (x * 1103515245 + 12345) & 0x7fffffff;
+         result[i] = (byte) (x >>> 16);
+      }
+      return result;
+   }
+
+   static byte[] concat(byte[]... parts)
+   {
+      int length = 0;
+      for (byte[] part : parts) length += part.length;
+      byte[] result = new byte[length];
+      int pos = 0;
+      for (byte[] part : parts)
+      {
+         System.arraycopy(part, 0, result, pos, part.length);
+         pos += part.length;
+      }
+      return result;
+   }
+
+   private static byte[] bytes(String hex)
+   {
+      byte[] result = new byte[hex.length() / 2];
+      for (int i = 0; i < result.length; i++)
+      {
+         result[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+      }
+      return result;
+   }
+}
@@ -0,0 +1,90 @@
+package hep.io.root.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Decompress LZ4 blocks written by the reference implementation.
+ * @version $Id$
+ */
+public class LZ4DecompressorTest extends TestCase
+{
+   public void testLiterals() throws IOException
+   {
+      byte[] expected = CodecTestData.noise(300, 1);
+      byte[] result = new byte[expected.length];
+      LZ4Decompressor.decompress(CodecTestData.LZ4_NOISE, 0, CodecTestData.LZ4_NOISE.length, result, 0, result.length);
+      assertTrue(Arrays.equals(expected, result));
+   }
+
+   public void testMatches() throws IOException
+   {
+      byte[] expected = mixed();
+      byte[] result = new byte[expected.length];
+      LZ4Decompressor.decompress(CodecTestData.LZ4_MIXED, 0, CodecTestData.LZ4_MIXED.length, result, 0, result.length);
+      assertTrue(Arrays.equals(expected, result));
+   }
+
+   public void testChecksum() throws IOException
+   {
+      byte[] expected = mixed();
+      byte[] block = withChecksum(CodecTestData.LZ4_MIXED_CHECKSUM, CodecTestData.LZ4_MIXED);
+      byte[] src = CodecTestData.concat(new byte[5], block);
+      byte[] result = new byte[expected.length + 3];
+      LZ4Decompressor.decompressWithChecksum(src, 5, block.length, result, 3, expected.length);
+      assertTrue(Arrays.equals(expected, Arrays.copyOfRange(result, 3, result.length)));
+
+      block = withChecksum(CodecTestData.LZ4_NOISE_CHECKSUM, CodecTestData.LZ4_NOISE);
+      result = new byte[300];
+      LZ4Decompressor.decompressWithChecksum(block, 0, block.length, result, 0, result.length);
+      assertTrue(Arrays.equals(CodecTestData.noise(300, 1), result));
+   }
+
+   public void testBadChecksum()
+   {
+      byte[] block = withChecksum(CodecTestData.LZ4_MIXED_CHECKSUM, CodecTestData.LZ4_MIXED);
+      block[block.length - 10] ^= 1;
+      try
+      {
+         LZ4Decompressor.decompressWithChecksum(block, 0, block.length, new byte[1200], 0, 1200);
+         fail("Corrupt block was accepted");
+      }
+      catch (IOException x)
+      {
+         // expected
+      }
+   }
+
+   public void testTruncated()
+   {
+      byte[] src = CodecTestData.LZ4_MIXED;
+      try
+      {
+         LZ4Decompressor.decompress(src, 0, src.length - 20, new byte[1200], 0, 1200);
+         fail("Truncated block was accepted");
+      }
+      catch (IOException x)
+      {
+         // expected
+      }
+   }
+
+   private static byte[] mixed()
+   {
+      byte[] dashes = new byte[600];
+      Arrays.fill(dashes, (byte) '-');
+      return CodecTestData.concat(CodecTestData.text(300), dashes, CodecTestData.text(300));
+   }
+
+   private static byte[] withChecksum(long checksum, byte[] data)
+   {
+      byte[] result = new byte[LZ4Decompressor.CHECKSUM_SIZE + data.length];
+      for (int i = 0; i < LZ4Decompressor.CHECKSUM_SIZE; i++)
+      {
+         result[i] = (byte) (checksum >>> (56 - 8 * i));
+      }
+      System.arraycopy(data, 0, result, LZ4Decompressor.CHECKSUM_SIZE, data.length);
+      return result;
+   }
+}
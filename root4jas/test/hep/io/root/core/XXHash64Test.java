@@ -0,0 +1,34 @@
+package hep.io.root.core;
+
+import junit.framework.TestCase;
+
+/**
+ * Check {@link XXHash64} against hashes computed by the reference implementation.
+ * @version $Id$
+ */
+public class XXHash64Test extends TestCase
+{
+   public void testShortInputs() throws Exception
+   {
+      byte[] abc = "abc".getBytes("US-ASCII");
+      assertEquals(0xef46db3751d8e999L, XXHash64.hash(abc, 0, 0, 0));
+      assertEquals(0xd24ec4f1a98c6e5bL, XXHash64.hash(abc, 0, 1, 0));
+      assertEquals(0x44bc2cf5ad770999L, XXHash64.hash(abc, 0, 3, 0));
+   }
+
+   public void testLongInputs()
+   {
+      // 3 stripes of 32 bytes, then a 4 byte tail
+      assertEquals(0x84d3dfe545573e51L, XXHash64.hash(CodecTestData.text(100), 0, 100, 0));
+      // 3 stripes, then 8, 4 and 3 single byte tails
+      assertEquals(0x9cac75ae37da1238L, XXHash64.hash(CodecTestData.text(111), 0, 111, 0));
+      assertEquals(0xe64b0f3ca7160586L, XXHash64.hash(CodecTestData.text(111), 0, 111, 0x9e3779b1L));
+   }
+
+   public void testOffset()
+   {
+      byte[] text = CodecTestData.text(111);
+      byte[] shifted = CodecTestData.concat(new byte[7], text);
+      assertEquals(XXHash64.hash(text, 0, text.length, 0), XXHash64.hash(shifted, 7, text.length, 0));
+   }
+}
@@ -0,0 +1,92 @@
+package hep.io.root.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Decompress ZSTD frames written by the reference implementation, covering
+ * raw, RLE and compressed blocks, predefined and compressed sequence tables,
+ * Huffman literals and the content checksum.
+ * @version $Id$
+ */
+public class ZstdDecompressorTest extends TestCase
+{
+   public void testRawBlock() throws IOException
+   {
+      check(CodecTestData.noise(300, 1), CodecTestData.ZSTD_RAW);
+   }
+
+   public void testRLEBlocks() throws IOException
+   {
+      byte[] run = new byte[300000];
+      Arrays.fill(run, (byte) 'a');
+      check(CodecTestData.concat(CodecTestData.text(1000), run), CodecTestData.ZSTD_RLE);
+   }
+
+   public void testPredefinedTables() throws IOException
+   {
+      check(CodecTestData.text(200), CodecTestData.ZSTD_PREDEFINED);
+   }
+
+   public void testChecksum() throws IOException
+   {
+      check(CodecTestData.text(1000), CodecTestData.ZSTD_CHECKSUM);
+
+      byte[] corrupt = CodecTestData.ZSTD_CHECKSUM.clone();
+      corrupt[corrupt.length - 1] ^= 1;
+      try
+      {
+         ZstdDecompressor.decompress(corrupt, 0, corrupt.length, new byte[1000], 0, 1000);
+         fail("Bad checksum was accepted");
+      }
+      catch (IOException x)
+      {
+         // expected
+      }
+   }
+
+   public void testFrames() throws IOException
+   {
+      // Two frames with a skippable frame between them
+      byte[] skippable = { 0x50, 0x2a, 0x4d, 0x18, 3, 0, 0, 0, 1, 2, 3 };
+      byte[] src = CodecTestData.concat(CodecTestData.ZSTD_RAW, skippable, CodecTestData.ZSTD_PREDEFINED);
+      check(CodecTestData.concat(CodecTestData.noise(300, 1), CodecTestData.text(200)), src);
+   }
+
+   public void testReuse() throws IOException
+   {
+      // One decoder must not carry tables or repeat offsets from one call to the next
+      ZstdDecompressor decoder = new ZstdDecompressor();
+      byte[][] frames = { CodecTestData.ZSTD_CHECKSUM, CodecTestData.ZSTD_PREDEFINED, CodecTestData.ZSTD_CHECKSUM };
+      byte[][] expected = { CodecTestData.text(1000), CodecTestData.text(200), CodecTestData.text(1000) };
+      for (int i = 0; i < frames.length; i++)
+      {
+         byte[] result = new byte[expected[i].length];
+         decoder.decode(frames[i], 0, frames[i].length, result, 0, result.length);
+         assertTrue(Arrays.equals(expected[i], result));
+      }
+   }
+
+   public void testWrongLength()
+   {
+      try
+      {
+         ZstdDecompressor.decompress(CodecTestData.ZSTD_PREDEFINED, 0, CodecTestData.ZSTD_PREDEFINED.length, new byte[201], 0, 201);
+         fail("Wrong length was accepted");
+      }
+      catch (IOException x)
+      {
+         // expected
+      }
+   }
+
+   private static void check(byte[] expected, byte[] compressed) throws IOException
+   {
+      // Use non zero offsets to check the offset handling
+      byte[] src = CodecTestData.concat(new byte[3], compressed);
+      byte[] result = new byte[expected.length + 5];
+      ZstdDecompressor.decompress(src, 3, compressed.length, result, 5, expected.length);
+      assertTrue(Arrays.equals(expected, Arrays.copyOfRange(result, 5, result.length)));
+   }
+}
@@ -0,0 +1,157 @@
+package hep.io.root.daemon;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Read a file through the block cache, including blocks which have been
+ * evicted to disk, and check that damaged disk blocks are never used.
+ * @version $Id$
+ */
+public class BlockCacheTest extends TestCase
+{
+   private static final int BLOCK_SIZE = 1000;
+   private static final int FILE_SIZE = 20500;
+   private static final String FILE = BlockCache.fileKey("root://host//file", FILE_SIZE, 1);
+
+   private File dir;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      dir = File.createTempFile("BlockCacheTest", "");
+      dir.delete();
+      dir.mkdir();
+   }
+
+   @Override
+   protected void tearDown()
+   {
+      File[] files = dir.listFiles();
+      if (files != null) for (File f : files) f.delete();
+      dir.delete();
+   }
+
+   public void testMemoryAndDisk() throws IOException
+   {
+      CountingSource source = new CountingSource();
+      BlockCache cache = new BlockCache(BLOCK_SIZE, 5 * BLOCK_SIZE, dir, 100 * BLOCK_SIZE);
+      readAll(cache, source);
+      assertEquals(21, source.blocks);
+      assertTrue(cache.getDiskSize() > 0);
+
+      // A new cache in the same directory reads the blocks written by the first one
+      BlockCache cache2 = new BlockCache(BLOCK_SIZE, 5 * BLOCK_SIZE, dir, 100 * BLOCK_SIZE);
+      readAll(cache2, source);
+      assertTrue(cache2.getDiskHits() > 0);
+      assertTrue(source.blocks < 42);
+   }
+
+   public void testDamagedBlocks() throws IOException
+   {
+      BlockCache cache = new BlockCache(BLOCK_SIZE, BLOCK_SIZE, dir, 100 * BLOCK_SIZE);
+      readAll(cache, new CountingSource());
+
+      // Truncate every block, and add a partial file left by a crashed run
+      File[] files = dir.listFiles();
+      assertTrue(files.length > 0);
+      for (File f : files) write(f, new byte[10]);
+      write(new File(dir, "rootblock-0123456789abcdef0123456789abcdef01234567-1000.blk"), new byte[500]);
+
+      BlockCache cache2 = new BlockCache(BLOCK_SIZE, BLOCK_SIZE, dir, 100 * BLOCK_SIZE);
+      assertEquals(0, cache2.getDiskSize());
+      assertEquals(0, dir.listFiles().length);
+      CountingSource source = new CountingSource();
+      readAll(cache2, source);
+      assertEquals(21, source.blocks);
+
+      // Damage the blocks while the cache is using them
+      for (File f : dir.listFiles()) write(f, new byte[10]);
+      readAll(cache2, new CountingSource());
+   }
+
+   public void testSharedDirectory() throws IOException
+   {
+      // Files which do not belong to the cache, but look a little like its own
+      String[] foreign = { "notes.txt", "other.tmp", "block123.tmp", "data-10.blk", "rootblock-x-10.blk" };
+      for (String name : foreign)
+      {
+         File f = new File(dir, name);
+         write(f, new byte[3]);
+         f.setLastModified(0);
+      }
+      File staleTemp = new File(dir, "rootblock-123.tmp");
+      write(staleTemp, new byte[3]);
+      staleTemp.setLastModified(0);
+
+      // A disk tier smaller than the file, so that blocks are evicted
+      BlockCache cache = new BlockCache(BLOCK_SIZE, BLOCK_SIZE, dir, 5 * BLOCK_SIZE);
+      assertFalse(staleTemp.exists());
+      readAll(cache, new CountingSource());
+      assertTrue(cache.getDiskSize() <= 5 * BLOCK_SIZE);
+      new BlockCache(BLOCK_SIZE, BLOCK_SIZE, dir, BLOCK_SIZE);
+      for (String name : foreign)
+      {
+         assertTrue(name + " was deleted", new File(dir, name).exists());
+         assertEquals(3, new File(dir, name).length());
+      }
+   }
+
+   public void testUnwritableDisk() throws IOException
+   {
+      BlockCache cache = new BlockCache(BLOCK_SIZE, BLOCK_SIZE, dir, 100 * BLOCK_SIZE);
+      tearDown();
+      // The disk tier has gone away, but reads must still succeed
+      readAll(cache, new CountingSource());
+      assertEquals(0, cache.getDiskSize());
+   }
+
+   private static void readAll(BlockCache cache, CountingSource source) throws IOException
+   {
+      Random random = new Random(1);
+      for (int k = 0; k < 200; k++)
+      {
+         long pos = random.nextInt(FILE_SIZE);
+         byte[] buffer = new byte[1 + random.nextInt(3000)];
+         int n = cache.read(FILE, FILE_SIZE, source, pos, buffer, 0, buffer.length, 2);
+         assertEquals(Math.min(buffer.length, FILE_SIZE - pos), n);
+         for (int i = 0; i < n; i++) assertEquals(content(pos + i), buffer[i]);
+      }
+      assertEquals(-1, cache.read(FILE, FILE_SIZE, source, FILE_SIZE, new byte[10], 0, 10, 2));
+   }
+
+   private static byte content(long pos)
+   {
+      return (byte) (pos * 7 + pos / 251);
+   }
+
+   private static void write(File f, byte[] data) throws IOException
+   {
+      FileOutputStream out = new FileOutputStream(f);
+      try
+      {
+         out.write(data);
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+
+   private static class CountingSource implements BlockCache.Source
+   {
+      private int blocks;
+
+      public void readBlocks(long[] positions, byte[][] buffers)
+      {
+         for (int i = 0; i < positions.length; i++)
+         {
+            for (int j = 0; j < buffers[i].length; j++) buffers[i][j] = content(positions[i] + j);
+            blocks++;
+         }
+      }
+   }
+}
@@ -0,0 +1,164 @@
+package hep.io.root.daemon.xrootd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Check that reads are only started ahead while a stream is read sequentially,
+ * and that the buffers of discarded reads are reused once they are complete.
+ * @version $Id$
+ */
+public class ReadAheadTest extends TestCase
+{
+   private static final int SIZE = 100;
+
+   public void testSequential() throws IOException
+   {
+      TestSource source = new TestSource();
+      ReadAhead ahead = new ReadAhead(source, SIZE, 2);
+
+      // The first read might be followed by a seek, so nothing is read ahead yet
+      assertEquals(SIZE, ahead.fill(0, SIZE));
+      assertEquals(1, source.reads);
+      assertEquals(0, source.started.size());
+
+      // Continuing where the last buffer ended starts reading ahead
+      assertEquals(SIZE, ahead.fill(SIZE, SIZE));
+      assertEquals(2, source.reads);
+      assertEquals(2, source.started.size());
+      assertEquals(2 * SIZE, source.started.get(0).pos);
+      assertEquals(3 * SIZE, source.started.get(1).pos);
+
+      // Reads ahead are used, and one more is started each time
+      for (int i = 2; i < 10; i++)
+      {
+         assertEquals(SIZE, ahead.fill(i * SIZE, SIZE));
+         assertEquals(i * SIZE, position(ahead.getBuffer()));
+         assertEquals(2, source.reads);
+         assertEquals(i + 1, source.started.size());
+         assertEquals((i + 2) * SIZE, source.started.get(i).pos);
+      }
+      assertEquals(2, ahead.getPendingCount());
+   }
+
+   public void testSeek() throws IOException
+   {
+      TestSource source = new TestSource();
+      ReadAhead ahead = new ReadAhead(source, SIZE, 2);
+      ahead.fill(0, SIZE);
+      ahead.fill(SIZE, SIZE);
+      assertEquals(2, source.started.size());
+
+      // A seek discards the reads ahead and does not start new ones
+      ahead.fill(50 * SIZE, SIZE);
+      assertEquals(3, source.reads);
+      assertEquals(2, source.started.size());
+      assertEquals(0, ahead.getPendingCount());
+
+      // Nor does a buffer which does not follow on from the last one
+      ahead.fill(20 * SIZE, SIZE);
+      assertEquals(4, source.reads);
+      assertEquals(2, source.started.size());
+
+      // Reading sequentially again reuses the buffers of the discarded reads, once complete
+      source.started.get(0).done = true;
+      ahead.fill(21 * SIZE, SIZE);
+      assertEquals(4, source.started.size());
+      assertSame(source.started.get(0).buffer, source.started.get(2).buffer);
+      assertNotSame(source.started.get(1).buffer, source.started.get(3).buffer);
+      assertNotSame(ahead.getBuffer(), source.started.get(3).buffer);
+   }
+
+   public void testSkipAhead() throws IOException
+   {
+      TestSource source = new TestSource();
+      ReadAhead ahead = new ReadAhead(source, SIZE, 3);
+      ahead.fill(0, SIZE);
+      ahead.fill(SIZE, SIZE);
+      assertEquals(3, source.started.size());
+
+      // Skipping one buffer still uses the next read ahead
+      ahead.fill(3 * SIZE, SIZE);
+      assertEquals(2, source.reads);
+      assertEquals(3 * SIZE, position(ahead.getBuffer()));
+      assertEquals(3, ahead.getPendingCount());
+   }
+
+   public void testEndOfFile() throws IOException
+   {
+      TestSource source = new TestSource();
+      source.length = 2 * SIZE + 10;
+      ReadAhead ahead = new ReadAhead(source, SIZE, 2);
+      ahead.fill(0, SIZE);
+      ahead.fill(SIZE, SIZE);
+      assertEquals(10, ahead.fill(2 * SIZE, SIZE));
+      assertEquals(-1, ahead.fill(2 * SIZE + 10, SIZE));
+   }
+
+   private static int position(byte[] buffer)
+   {
+      return (buffer[0] & 0xff) | (buffer[1] & 0xff) << 8;
+   }
+
+   /**
+    * A file whose buffers start with their position, read asynchronously only
+    * when the response is asked for.
+    */
+   private static class TestSource implements ReadAhead.Source
+   {
+      private long length = Long.MAX_VALUE;
+      private int reads;
+      private List<Started> started = new ArrayList<Started>();
+
+      public int read(long pos, byte[] buffer, int size)
+      {
+         reads++;
+         return fill(pos, buffer, size);
+      }
+
+      public FutureResponse<Integer> readAsync(long pos, byte[] buffer, int size)
+      {
+         Started read = new Started(pos, buffer, size);
+         started.add(read);
+         return read;
+      }
+
+      private int fill(long pos, byte[] buffer, int size)
+      {
+         int n = (int) Math.min(size, length - pos);
+         if (n <= 0) return -1;
+         buffer[0] = (byte) pos;
+         buffer[1] = (byte) (pos >> 8);
+         return n;
+      }
+
+      private class Started extends FutureResponse<Integer>
+      {
+         private long pos;
+         private byte[] buffer;
+         private int size;
+         private boolean done;
+
+         Started(long pos, byte[] buffer, int size)
+         {
+            this.pos = pos;
+            this.buffer = buffer;
+            this.size = size;
+         }
+
+         public Integer getResponse(long timeout, TimeUnit unit)
+         {
+            done = true;
+            return fill(pos, buffer, size);
+         }
+
+         public boolean isDone()
+         {
+            return done;
+         }
+      }
+   }
+}
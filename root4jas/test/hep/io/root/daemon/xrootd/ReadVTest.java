@@ -0,0 +1,135 @@
+package hep.io.root.daemon.xrootd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Check the splitting of vectored reads into requests within the protocol
+ * limits, and the parsing of readv responses split at arbitrary points.
+ * @version $Id$
+ */
+public class ReadVTest extends TestCase
+{
+   public void testSplitLongRange()
+   {
+      int size = 2 * XrootdProtocol.kXR_maxRvecln + 10;
+      byte[] buffer = new byte[size + 5];
+      List<long[]> offsets = new ArrayList<long[]>();
+      List<ByteBuffer[]> requests = Session.splitReadv(new long[]{1000}, new byte[][]{buffer}, new int[]{5}, new int[]{size}, offsets);
+      assertEquals(1, requests.size());
+      ByteBuffer[] elements = requests.get(0);
+      long[] elementOffsets = offsets.get(0);
+      assertEquals(3, elements.length);
+      int total = 0;
+      for (int i = 0; i < elements.length; i++)
+      {
+         assertTrue(elements[i].remaining() <= XrootdProtocol.kXR_maxRvecln);
+         assertSame(buffer, elements[i].array());
+         assertEquals(5 + total, elements[i].position());
+         assertEquals(1000 + total, elementOffsets[i]);
+         total += elements[i].remaining();
+      }
+      assertEquals(size, total);
+   }
+
+   public void testSplitManyRanges()
+   {
+      int n = 2 * XrootdProtocol.kXR_maxRvecsz + 1;
+      long[] fileOffsets = new long[n];
+      byte[][] buffers = new byte[n][];
+      int[] sizes = new int[n];
+      for (int i = 0; i < n; i++)
+      {
+         fileOffsets[i] = 100L * i;
+         buffers[i] = new byte[10];
+         sizes[i] = 10;
+      }
+      List<long[]> offsets = new ArrayList<long[]>();
+      List<ByteBuffer[]> requests = Session.splitReadv(fileOffsets, buffers, new int[n], sizes, offsets);
+      assertEquals(3, requests.size());
+      assertEquals(XrootdProtocol.kXR_maxRvecsz, requests.get(0).length);
+      assertEquals(XrootdProtocol.kXR_maxRvecsz, requests.get(1).length);
+      assertEquals(1, requests.get(2).length);
+      assertEquals(100L * (n - 1), offsets.get(2)[0]);
+      assertSame(buffers[n - 1], requests.get(2)[0].array());
+   }
+
+   public void testSplitResponses() throws IOException
+   {
+      Random random = new Random(5);
+      long[] fileOffsets = {0, 5000, 12345, 70000};
+      int[] sizes = {1000, 0, 4000, 33};
+      byte[] response = response(fileOffsets, sizes);
+      for (int k = 0; k < 100; k++)
+      {
+         ByteBuffer[] buffers = new ByteBuffer[sizes.length];
+         for (int i = 0; i < sizes.length; i++)
+         {
+            buffers[i] = ByteBuffer.allocate(sizes[i] + 3);
+            buffers[i].position(3);
+            buffers[i].limit(3 + sizes[i]);
+         }
+         ReadVOperation.ReadVCallback callback = new ReadVOperation.ReadVCallback(fileOffsets, buffers);
+         int total = 0;
+         for (int start = 0; start < response.length;)
+         {
+            int end = Math.min(response.length, start + 1 + random.nextInt(k < 50 ? 20 : 2000));
+            total = callback.consume(ByteBuffer.wrap(response, start, end - start));
+            start = end;
+         }
+         assertEquals(5033, total);
+         for (int i = 0; i < sizes.length; i++)
+         {
+            assertFalse(buffers[i].hasRemaining());
+            for (int j = 0; j < sizes[i]; j++)
+            {
+               assertEquals(data(fileOffsets[i] + j), buffers[i].get(3 + j));
+            }
+         }
+      }
+   }
+
+   public void testUnexpectedResponse()
+   {
+      long[] fileOffsets = {0, 5000};
+      int[] sizes = {10, 10};
+      byte[] response = response(new long[]{0, 6000}, sizes);
+      ByteBuffer[] buffers = {ByteBuffer.allocate(10), ByteBuffer.allocate(10)};
+      try
+      {
+         new ReadVOperation.ReadVCallback(fileOffsets, buffers).consume(ByteBuffer.wrap(response));
+         fail("Wrong offset not detected");
+      }
+      catch (IOException x)
+      {
+         // expected
+      }
+   }
+
+   /**
+    * A readv response: a header (handle, length, offset) followed by the data for each range.
+    */
+   private static byte[] response(long[] fileOffsets, int[] sizes)
+   {
+      int length = 0;
+      for (int size : sizes) length += 16 + size;
+      ByteBuffer out = ByteBuffer.allocate(length);
+      for (int i = 0; i < sizes.length; i++)
+      {
+         out.putInt(7);
+         out.putInt(sizes[i]);
+         out.putLong(fileOffsets[i]);
+         for (int j = 0; j < sizes[i]; j++) out.put(data(fileOffsets[i] + j));
+      }
+      return out.array();
+   }
+
+   private static byte data(long pos)
+   {
+      return (byte) (pos * 31 + (pos >> 8));
+   }
+}